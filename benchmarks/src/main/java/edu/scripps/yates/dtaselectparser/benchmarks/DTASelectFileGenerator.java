@@ -0,0 +1,297 @@
+package edu.scripps.yates.dtaselectparser.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Writes synthetic DTASelect-filter.txt files with the same structure than
+ * the ones written by DTASelect: header, command line parameters, protein and
+ * PSM column headers, protein groups (one or more protein rows followed by
+ * their PSM rows) and the final summary.<br>
+ * The proteins of a group share the same sequence, built by concatenating
+ * tryptic peptides, and the PSMs of the group are assigned to those peptides,
+ * so a FASTA file written by {@link #writeFasta(File)} can be indexed and
+ * used to map the peptides back to the proteins.
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectFileGenerator {
+	private static final Logger log = Logger.getLogger(DTASelectFileGenerator.class);
+	private static final String AMINOACIDS = "ACDEFGHILMNPQSTVWY";
+	private int numProteins = 1000;
+	private int psmsPerProtein = 5;
+	private int maxGroupSize = 3;
+	private double decoyRatio = 0.05;
+	private int numRuns = 4;
+	private boolean ppm = true;
+	private boolean xic = false;
+	private boolean estimatedXIC = false;
+	private boolean ccs = false;
+	private long seed = 1234;
+	private final List<String> fastaEntries = new ArrayList<String>();
+
+	public DTASelectFileGenerator setNumProteins(int numProteins) {
+		this.numProteins = numProteins;
+		return this;
+	}
+
+	public DTASelectFileGenerator setPsmsPerProtein(int psmsPerProtein) {
+		this.psmsPerProtein = psmsPerProtein;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of proteins per group. The size of each group is
+	 * random between 1 and this number.
+	 *
+	 * @param maxGroupSize
+	 * @return
+	 */
+	public DTASelectFileGenerator setMaxGroupSize(int maxGroupSize) {
+		this.maxGroupSize = maxGroupSize;
+		return this;
+	}
+
+	/**
+	 * Sets the fraction of proteins that are decoys (with the 'Reverse_'
+	 * prefix)
+	 *
+	 * @param decoyRatio
+	 * @return
+	 */
+	public DTASelectFileGenerator setDecoyRatio(double decoyRatio) {
+		this.decoyRatio = decoyRatio;
+		return this;
+	}
+
+	public DTASelectFileGenerator setNumRuns(int numRuns) {
+		this.numRuns = numRuns;
+		return this;
+	}
+
+	public DTASelectFileGenerator setPPM(boolean ppm) {
+		this.ppm = ppm;
+		return this;
+	}
+
+	public DTASelectFileGenerator setXIC(boolean xic) {
+		this.xic = xic;
+		return this;
+	}
+
+	public DTASelectFileGenerator setEstimatedXIC(boolean estimatedXIC) {
+		this.estimatedXIC = estimatedXIC;
+		return this;
+	}
+
+	public DTASelectFileGenerator setCCS(boolean ccs) {
+		this.ccs = ccs;
+		return this;
+	}
+
+	public DTASelectFileGenerator setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	public String getProteinHeader() {
+		return "Locus\tSequence Count\tSpectrum Count\tSequence Coverage\tLength\tMolWt\tpI\tValidation Status\tNSAF\tEMPAI\tDescriptive Name";
+	}
+
+	public String getPSMHeader() {
+		final StringBuilder sb = new StringBuilder("Unique\tFileName\tXCorr\tDeltCN\tConf%\tM+H+\tCalcM+H+");
+		if (ppm) {
+			sb.append("\tPPM");
+		}
+		sb.append("\tTotalIntensity\tSpR\tProb Score\tpI\tIonProportion\tRedundancy\tSequence\tRT");
+		if (xic) {
+			sb.append("\tXIC");
+		}
+		if (estimatedXIC) {
+			sb.append("\tEstimated_XIC");
+		}
+		if (ccs) {
+			sb.append("\tCCS");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the DTASelect file
+	 *
+	 * @param file
+	 * @return the number of protein and PSM rows written
+	 * @throws IOException
+	 */
+	public int write(File file) throws IOException {
+		final Random random = new Random(seed);
+		fastaEntries.clear();
+		final BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		int rows = 0;
+		try {
+			writer.write("DTASelect v2.1.12\n");
+			writer.write(file.getAbsoluteFile().getParent() + "\n");
+			writer.write("/data/fasta/UniProt_human_reviewed_contaminant.fasta\n");
+			writer.write("ProLuCID 1.4 in SQT format.\n");
+			writer.write(" --trypstat --fp 0.01 --modstat --extra --pI --DB --dm -p 1 -y 1 --quiet\n");
+			writer.write("true\tUse criteria\n");
+			writer.write("0.0\tMinimum peptide probability\n");
+			writer.write(getProteinHeader() + "\n");
+			writer.write(getPSMHeader() + "\n");
+			int proteinNumber = 0;
+			while (proteinNumber < numProteins) {
+				final int groupSize = 1 + random.nextInt(maxGroupSize);
+				final List<String> peptides = new ArrayList<String>();
+				final StringBuilder groupSequence = new StringBuilder();
+				final int numPeptides = 5 + random.nextInt(20);
+				for (int i = 0; i < numPeptides; i++) {
+					final String peptide = randomPeptide(random);
+					peptides.add(peptide);
+					groupSequence.append(peptide);
+				}
+				for (int i = 0; i < groupSize && proteinNumber < numProteins; i++, proteinNumber++) {
+					final boolean decoy = random.nextDouble() < decoyRatio;
+					final String accession = String.format("P%05d", proteinNumber);
+					final String locus = (decoy ? "Reverse_" : "") + "sp|" + accession + "|PROT" + proteinNumber
+							+ "_HUMAN";
+					final String description = "Synthetic protein " + proteinNumber + " OS=Homo sapiens OX=9606 GN=GENE"
+							+ proteinNumber + " PE=1 SV=1";
+					fastaEntries.add(">" + locus + " " + description + "\n" + groupSequence + "\n");
+					writer.write(String.format(Locale.US, "%s\t%d\t%d\t%.1f%%\t%d\t%d\t%.1f\tU\t%.7f\t%.4f\t%s\n", locus,
+							numPeptides, psmsPerProtein * groupSize, random.nextDouble() * 100,
+							groupSequence.length(), groupSequence.length() * 110, 4 + random.nextDouble() * 7,
+							random.nextDouble() / 1000, random.nextDouble() * 3, description));
+					rows++;
+				}
+				final int numPSMs = psmsPerProtein * groupSize;
+				for (int i = 0; i < numPSMs; i++) {
+					writer.write(psmRow(random, peptides, groupSequence));
+					writer.write("\n");
+					rows++;
+				}
+			}
+			writer.write("\tProteins\tPeptide IDs\tSpectra\n");
+			writer.write("Unfiltered\t" + numProteins + "\t" + numProteins * psmsPerProtein + "\t"
+					+ numProteins * psmsPerProtein + "\n");
+			writer.write("Filtered\t" + numProteins + "\t" + numProteins * psmsPerProtein + "\t"
+					+ numProteins * psmsPerProtein + "\n");
+		} finally {
+			writer.close();
+		}
+		return rows;
+	}
+
+	private String psmRow(Random random, List<String> peptides, StringBuilder groupSequence) {
+		final String peptide = peptides.get(random.nextInt(peptides.size()));
+		final int position = groupSequence.indexOf(peptide);
+		final char before = position > 0 ? groupSequence.charAt(position - 1) : '-';
+		final int end = position + peptide.length();
+		final char after = end < groupSequence.length() ? groupSequence.charAt(end) : '-';
+		final int scan = 1 + random.nextInt(100000);
+		final int charge = 1 + random.nextInt(4);
+		final float mh = 500 + random.nextFloat() * 3000;
+		final StringBuilder sb = new StringBuilder();
+		sb.append(random.nextBoolean() ? "*" : "").append('\t');
+		sb.append("run_").append(random.nextInt(numRuns)).append('.').append(scan).append('.').append(scan).append('.')
+				.append(charge).append('\t');
+		sb.append(String.format(Locale.US, "%.4f\t%.4f\t%.1f\t%.4f\t%.4f", random.nextFloat() * 6,
+				random.nextFloat(), random.nextFloat() * 100, mh, mh + random.nextFloat() / 100));
+		if (ppm) {
+			sb.append(String.format(Locale.US, "\t%.2f", random.nextFloat() * 20 - 10));
+		}
+		sb.append(String.format(Locale.US, "\t%.1f\t%d\t%.4f\t%.2f\t%.1f\t%d\t%c.%s.%c\t%.3f",
+				random.nextFloat() * 1e6f, 1 + random.nextInt(50), random.nextFloat(), 4 + random.nextFloat() * 7,
+				random.nextFloat() * 100, 1 + random.nextInt(3), before, peptide, after, random.nextFloat() * 120));
+		if (xic) {
+			sb.append(String.format(Locale.US, "\t%.1f", random.nextFloat() * 1e7f));
+		}
+		if (estimatedXIC) {
+			sb.append(String.format(Locale.US, "\t%.1f", random.nextFloat() * 1e7f));
+		}
+		if (ccs) {
+			sb.append(String.format(Locale.US, "\t%.2f", 300 + random.nextFloat() * 500));
+		}
+		return sb.toString();
+	}
+
+	private static String randomPeptide(Random random) {
+		final int length = 6 + random.nextInt(10);
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append(AMINOACIDS.charAt(random.nextInt(AMINOACIDS.length())));
+		}
+		sb.append(random.nextBoolean() ? 'K' : 'R');
+		return sb.toString();
+	}
+
+	/**
+	 * Writes the sequences of the proteins of the last file written by
+	 * {@link #write(File)} into a FASTA file
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeFasta(File file) throws IOException {
+		writeFasta(file, false);
+	}
+
+	/**
+	 * Writes the sequences of the proteins of the last file written by
+	 * {@link #write(File)} into a FASTA file, optionally after the entries
+	 * already in the file, so that a FASTA file can have the proteins of
+	 * several DTASelect files
+	 *
+	 * @param file
+	 * @param append
+	 * @throws IOException
+	 */
+	public void writeFasta(File file, boolean append) throws IOException {
+		final BufferedWriter writer = new BufferedWriter(new FileWriter(file, append));
+		try {
+			for (final String entry : fastaEntries) {
+				writer.write(entry);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Usage: DTASelectFileGenerator output_file [num_proteins] [psms_per_protein]
+	 * [max_group_size] [decoy_ratio]
+	 *
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println(
+					"Usage: DTASelectFileGenerator output_file [num_proteins] [psms_per_protein] [max_group_size] [decoy_ratio]");
+			System.exit(1);
+		}
+		final DTASelectFileGenerator generator = new DTASelectFileGenerator();
+		if (args.length > 1) {
+			generator.setNumProteins(Integer.valueOf(args[1]));
+		}
+		if (args.length > 2) {
+			generator.setPsmsPerProtein(Integer.valueOf(args[2]));
+		}
+		if (args.length > 3) {
+			generator.setMaxGroupSize(Integer.valueOf(args[3]));
+		}
+		if (args.length > 4) {
+			generator.setDecoyRatio(Double.valueOf(args[4]));
+		}
+		final int rows = generator.write(new File(args[0]));
+		log.info(rows + " rows written to " + args[0]);
+	}
+}
@@ -0,0 +1,153 @@
+package edu.scripps.yates.dtaselectparser.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.scripps.yates.dbindex.DBIndexImpl;
+import edu.scripps.yates.dtaselectparser.DTASelectParser;
+import edu.scripps.yates.dtaselectparser.DTASelectStreamListener;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.utilities.fasta.dbindex.DBIndexInterface;
+import edu.scripps.yates.utilities.fasta.dbindex.DBIndexSearchParams;
+import edu.scripps.yates.utilities.grouping.ProteinGroup;
+
+/**
+ * End to end parsing of synthetic DTASelect files, building the whole model,
+ * building it with the proteins of the peptides looked up in a dbIndex, and
+ * in streaming mode.<br>
+ * Run it with '-prof gc' to get the allocation rate per operation. Each
+ * operation parses the whole set of files, so the time and the allocation
+ * reported are per file set, not per row. Divide them by the number of rows
+ * logged in the setup, or use {@link RowParsingBenchmark} for the cost of
+ * each row.
+ *
+ * @author Salva
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParserBenchmark {
+	private static final Logger log = Logger.getLogger(ParserBenchmark.class);
+	@Param({ "20000" })
+	public int numProteins;
+	@Param({ "4" })
+	public int numFiles;
+	@Param({ "1", "4" })
+	public int numThreads;
+	@Param({ "false", "true" })
+	public boolean memoryMap;
+	@Param({ "false", "true" })
+	public boolean lazyPSMs;
+
+	private File directory;
+	private final List<File> files = new ArrayList<File>();
+	private File fastaFile;
+
+	/**
+	 * The dbIndex over the proteins of the files, only built for the
+	 * benchmarks that use it
+	 *
+	 * @author Salva
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class DBIndexState {
+		private DBIndexInterface dbIndex;
+
+		@Setup(Level.Trial)
+		public void buildDBIndex(ParserBenchmark benchmark) {
+			final DBIndexSearchParams params = DBIndexImpl.getDefaultDBIndexParams(benchmark.fastaFile);
+			dbIndex = new DBIndexImpl(params);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void generateFiles() throws IOException {
+		directory = File.createTempFile("dtaselect-benchmark", "");
+		directory.delete();
+		directory.mkdirs();
+		fastaFile = new File(directory, "proteins.fasta");
+		int rows = 0;
+		for (int i = 0; i < numFiles; i++) {
+			final File file = new File(directory, "DTASelect-filter_" + i + ".txt");
+			final DTASelectFileGenerator generator = new DTASelectFileGenerator().setNumProteins(numProteins)
+					.setSeed(i);
+			rows += generator.write(file);
+			generator.writeFasta(fastaFile, i > 0);
+			files.add(file);
+		}
+		log.info(rows + " protein and PSM rows in " + numFiles + " files");
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFiles() {
+		// the dbIndex is written next to the FASTA file
+		delete(directory);
+		files.clear();
+	}
+
+	private static void delete(File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private DTASelectParser createParser() throws IOException {
+		final DTASelectParser parser = new DTASelectParser(files);
+		parser.setNumThreads(numThreads);
+		parser.setMemoryMapLocalFiles(memoryMap);
+		parser.setLazyPSMs(lazyPSMs);
+		parser.setDecoyPattern("Reverse");
+		return parser;
+	}
+
+	@Benchmark
+	public int process() throws IOException {
+		return createParser().getProteinGroups().size();
+	}
+
+	@Benchmark
+	public int processWithDBIndex(DBIndexState dbIndexState) throws IOException {
+		final DTASelectParser parser = createParser();
+		parser.setDbIndex(dbIndexState.dbIndex);
+		return parser.getProteinGroups().size();
+	}
+
+	@Benchmark
+	public int stream() throws IOException {
+		final int[] psms = new int[1];
+		createParser().stream(new DTASelectStreamListener() {
+			@Override
+			public void onProteinGroup(String analysisID, ProteinGroup proteinGroup, List<DTASelectPSM> groupPSMs) {
+				psms[0] += groupPSMs.size();
+			}
+		});
+		return psms[0];
+	}
+}
@@ -0,0 +1,123 @@
+package edu.scripps.yates.dtaselectparser.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProtein;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProteinSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRow;
+
+/**
+ * Parsing of single PSM and protein rows, without reading the file. The
+ * scores are reported per row.<br>
+ * Run it with '-prof gc' to get the bytes allocated per row.
+ *
+ * @author Salva
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RowParsingBenchmark {
+	private static final int ROWS = 1000;
+	@Param({ "false", "true" })
+	public boolean optionalColumns;
+
+	private final String[] psmLines = new String[ROWS];
+	private final String[] proteinLines = new String[ROWS];
+	private final DTASelectRow row = new DTASelectRow();
+	private DTASelectPSMSchema psmSchema;
+	private DTASelectProteinSchema proteinSchema;
+	private String runPath;
+
+	@Setup(Level.Trial)
+	public void loadRows() throws IOException {
+		final File file = File.createTempFile("dtaselect-rows", ".txt");
+		try {
+			final DTASelectFileGenerator generator = new DTASelectFileGenerator().setNumProteins(ROWS)
+					.setXIC(optionalColumns).setEstimatedXIC(optionalColumns).setCCS(optionalColumns);
+			generator.write(file);
+			psmSchema = DTASelectPSMSchema.parse(generator.getPSMHeader());
+			proteinSchema = DTASelectProteinSchema.parse(generator.getProteinHeader());
+			runPath = file.getParent();
+			final List<String> psms = new ArrayList<String>();
+			final List<String> proteins = new ArrayList<String>();
+			final BufferedReader reader = new BufferedReader(new FileReader(file));
+			try {
+				String line;
+				int numLine = 0;
+				while ((line = reader.readLine()) != null) {
+					// skip the header, the command line parameters and the
+					// column headers
+					if (numLine++ < 9 || line.startsWith("\t") || line.startsWith("Unfiltered")
+							|| line.startsWith("Filtered")) {
+						continue;
+					}
+					if (line.contains("Synthetic protein")) {
+						proteins.add(line);
+					} else {
+						psms.add(line);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			for (int i = 0; i < ROWS; i++) {
+				psmLines[i] = psms.get(i % psms.size());
+				proteinLines[i] = proteins.get(i % proteins.size());
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void psmRow(Blackhole blackhole) {
+		for (final String line : psmLines) {
+			blackhole.consume(new DTASelectPSM(row.reset(line), psmSchema, runPath, false, true));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void proteinRow(Blackhole blackhole) {
+		for (final String line : proteinLines) {
+			blackhole.consume(new DTASelectProtein(row.reset(line), proteinSchema, false));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void tokenizeOnly(Blackhole blackhole) {
+		for (final String line : psmLines) {
+			// only the XCorr, to compare against the full PSM construction
+			blackhole.consume(row.reset(line).getFloat(2));
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectLocusResolver;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProteinSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRow;
+import edu.scripps.yates.dtaselectparser.util.ExternalSorter;
+import edu.scripps.yates.utilities.fasta.FastaParser;
+
+/**
+ * Adds to the sorters of
+ * {@link DTASelectParser#aggregate(DTASelectAggregationListener)} a record per
+ * PSM row, with the accessions of the proteins of its group, and a record per
+ * protein row. The rows are kept as text, and no protein or PSM is created:
+ * the PSM rows are sorted by a key made of their 'FileName' and 'Sequence'
+ * columns, with the same values than the identifiers of the PSMs.
+ *
+ * @author Salva
+ *
+ */
+class DTASelectAggregatingSink implements DTASelectRowSink {
+	private final DTASelectParser parser;
+	private final String fileIndex;
+	private final ExternalSorter psmSorter;
+	private final ExternalSorter proteinSorter;
+	private final boolean distinguishModifiedSequences;
+	private final boolean chargeSensible;
+	private final Map<String, String> groupProteins = new LinkedHashMap<String, String>();
+	private final Map<String, String> groupPSMs = new LinkedHashMap<String, String>();
+	private final StringBuilder keyBuilder = new StringBuilder();
+	private DTASelectPSMSchema psmSchema;
+	private DTASelectProteinSchema proteinSchema;
+	private String streamRunPath;
+	private boolean isPsm = false;
+
+	/**
+	 *
+	 * @param parser
+	 * @param fileIndex     the position of the input stream, which is stored
+	 *                      in the records
+	 * @param psmSorter
+	 * @param proteinSorter
+	 * @param distinguishModifiedSequences
+	 * @param chargeSensible
+	 */
+	DTASelectAggregatingSink(DTASelectParser parser, int fileIndex, ExternalSorter psmSorter,
+			ExternalSorter proteinSorter, boolean distinguishModifiedSequences, boolean chargeSensible) {
+		this.parser = parser;
+		this.fileIndex = String.valueOf(fileIndex);
+		this.psmSorter = psmSorter;
+		this.proteinSorter = proteinSorter;
+		this.distinguishModifiedSequences = distinguishModifiedSequences;
+		this.chargeSensible = chargeSensible;
+	}
+
+	DTASelectPSMSchema getPSMSchema() {
+		return psmSchema;
+	}
+
+	DTASelectProteinSchema getProteinSchema() {
+		return proteinSchema;
+	}
+
+	String getStreamRunPath() {
+		return streamRunPath;
+	}
+
+	@Override
+	public void dtaSelectVersion(String version) {
+		parser.dtaSelectVersionRead(version);
+	}
+
+	@Override
+	public void runPath(String path) {
+		parser.runPathRead(path);
+		streamRunPath = path;
+	}
+
+	@Override
+	public void fastaPath(String path) {
+		parser.fastaPathRead(path);
+	}
+
+	@Override
+	public void searchEngine(String searchEngine, String version) {
+		parser.searchEngineRead(searchEngine, version);
+	}
+
+	@Override
+	public boolean commandLineParameters(String line) {
+		parser.commandLineParametersRead(line);
+		return true;
+	}
+
+	@Override
+	public void proteinHeader(String line) {
+		proteinSchema = DTASelectProteinSchema.parse(line);
+	}
+
+	@Override
+	public void psmHeader(String line) {
+		psmSchema = DTASelectPSMSchema.parse(line);
+	}
+
+	@Override
+	public boolean protein(DTASelectRow row) throws IOException {
+		if (isPsm) {
+			closeGroup();
+		}
+		isPsm = false;
+		final DTASelectLocusResolver.Locus locus = parser.getLocusResolver()
+				.resolve(row.getString(proteinSchema.getLocusColumn()));
+		if (locus.isDecoy()) {
+			parser.decoySkipped();
+		} else if (!groupProteins.containsKey(locus.getAccession())) {
+			groupProteins.put(locus.getAccession(), row.getLine().toString());
+		}
+		return true;
+	}
+
+	@Override
+	public boolean psm(DTASelectRow row) {
+		isPsm = true;
+		final String key = getPSMKey(row);
+		if (!groupPSMs.containsKey(key)) {
+			groupPSMs.put(key, row.getLine().toString());
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the key of a PSM row from its columns: the MS run, the scan number,
+	 * the charge state if the parser is charge sensible, and the sequence
+	 * without the flanking residues, and without modifications unless the
+	 * parser distinguishes modified sequences
+	 *
+	 * @param row
+	 * @return
+	 */
+	private String getPSMKey(DTASelectRow row) {
+		final String psmId = row.getString(psmSchema.getPSMIdColumn());
+		final String fullSequence = row.getString(psmSchema.getSequenceColumn());
+		keyBuilder.setLength(0);
+		keyBuilder.append(FastaParser.getFileNameFromPSMIdentifier(psmId)).append('-')
+				.append(FastaParser.getScanFromPSMIdentifier(psmId)).append('-');
+		if (chargeSensible) {
+			keyBuilder.append(FastaParser.getChargeStateFromPSMIdentifier(psmId)).append('-');
+		}
+		int start = fullSequence.indexOf('.');
+		int end = fullSequence.lastIndexOf('.');
+		if (start == end) {
+			start = -1;
+			end = fullSequence.length();
+		}
+		for (int i = start + 1; i < end; i++) {
+			final char c = fullSequence.charAt(i);
+			if (distinguishModifiedSequences || c >= 'A' && c <= 'Z') {
+				keyBuilder.append(c);
+			}
+		}
+		return keyBuilder.toString();
+	}
+
+	/**
+	 * Adds the records of the rows of the current group to the sorters
+	 *
+	 * @throws IOException
+	 */
+	void closeGroup() throws IOException {
+		final StringBuilder accessions = new StringBuilder();
+		for (final String accession : groupProteins.keySet()) {
+			if (accessions.length() > 0) {
+				accessions.append('\t');
+			}
+			accessions.append(accession);
+		}
+		for (final Map.Entry<String, String> entry : groupPSMs.entrySet()) {
+			psmSorter.add(entry.getKey(), fileIndex, entry.getValue(), accessions.toString());
+		}
+		for (final Map.Entry<String, String> entry : groupProteins.entrySet()) {
+			proteinSorter.add(entry.getKey(), fileIndex, entry.getValue());
+		}
+		groupProteins.clear();
+		groupPSMs.clear();
+	}
+
+	@Override
+	public void endOfStream() {
+		// the last group is closed by aggregate(), which can throw an
+		// IOException
+	}
+}
@@ -0,0 +1,35 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.util.Set;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProtein;
+
+/**
+ * Receives the PSMs and proteins of all the input streams, once each one, as
+ * aggregated by {@link DTASelectParser#aggregate(DTASelectAggregationListener)}
+ *
+ * @author Salva
+ *
+ */
+public interface DTASelectAggregationListener {
+	/**
+	 * Receives a PSM, as read the first time it appears, with the accessions of
+	 * the proteins of all the groups in which it appears. The PSMs are
+	 * received in the order of their 'FileName' column, before any protein.
+	 *
+	 * @param psm
+	 * @param proteinAccessions
+	 */
+	void onPSM(DTASelectPSM psm, Set<String> proteinAccessions);
+
+	/**
+	 * Receives a protein, as read the first time it appears, with the
+	 * identifiers of the PSMs of all the groups in which it appears. The
+	 * proteins are received in the order of their accessions.
+	 *
+	 * @param protein
+	 * @param psmIdentifiers
+	 */
+	void onProtein(DTASelectProtein protein, Set<String> psmIdentifiers);
+}
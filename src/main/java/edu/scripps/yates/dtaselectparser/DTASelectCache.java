@@ -0,0 +1,242 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Binary cache file of the rows of a DTASelect file, already decoded. It is
+ * valid as long as the DTASelect file is the same (path, size, modification
+ * time and checksum of its content) and the parser options that change the
+ * result are the same.<br>
+ * The cache file contains a sequence of records, each one starting by one of
+ * the tags defined here, which are replayed into a {@link DTASelectRowSink}
+ * when reading it.
+ *
+ * @author Salva
+ *
+ */
+class DTASelectCache {
+	private static final Logger log = Logger.getLogger(DTASelectCache.class);
+	static final String EXTENSION = ".dtaselectcache";
+	private static final int MAGIC = 0x44544143;
+	private static final int FORMAT_VERSION = 2;
+	private static final int CHECKSUM_BLOCK_SIZE = 64 * 1024;
+	private static final int FULL_CHECKSUM_BUFFER_SIZE = 1024 * 1024;
+	static final byte VERSION = 1;
+	static final byte RUN_PATH = 2;
+	static final byte FASTA_PATH = 3;
+	static final byte SEARCH_ENGINE = 4;
+	static final byte PARAMETERS = 5;
+	static final byte PROTEIN_HEADER = 6;
+	static final byte PSM_HEADER = 7;
+	static final byte PROTEIN = 8;
+	static final byte PSM = 9;
+	static final byte END = 10;
+	private final File cacheFile;
+	private final String key;
+
+	/**
+	 *
+	 * @param inputFile      the DTASelect file
+	 * @param cacheDirectory the folder in which to store the cache file. If
+	 *                       null, it is stored in the same folder than the
+	 *                       DTASelect file
+	 * @param options        the parser options that change the result
+	 * @param partialChecksum  if true, only the first and the last blocks of
+	 *                         the DTASelect file are checksummed, instead of
+	 *                         the whole file
+	 * @throws IOException
+	 */
+	DTASelectCache(File inputFile, File cacheDirectory, String options, boolean partialChecksum)
+			throws IOException {
+		final File file = inputFile.getAbsoluteFile();
+		cacheFile = getSidecarFile(file, cacheDirectory, EXTENSION);
+		key = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified() + "|"
+				+ getChecksum(file, partialChecksum) + "|" + options;
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @param partial if true, only the first and the last blocks of the file
+	 *                are checksummed
+	 * @return the checksum of the file, with the kind of checksum, so that the
+	 *         checksums of both kinds are never equal
+	 * @throws IOException
+	 */
+	static String getChecksum(File file, boolean partial) throws IOException {
+		return partial ? "partial:" + partialChecksum(file) : "full:" + checksum(file);
+	}
+
+	/**
+	 *
+	 * @param inputFile the DTASelect file
+	 * @param directory the folder of the file, or null for the folder of the
+	 *                  DTASelect file
+	 * @param extension
+	 * @return a file associated to the DTASelect file
+	 */
+	static File getSidecarFile(File inputFile, File directory, String extension) {
+		final File file = inputFile.getAbsoluteFile();
+		if (directory == null) {
+			return new File(file.getParentFile(), file.getName() + extension);
+		}
+		// files with the same name in different folders share the folder
+		return new File(directory,
+				file.getName() + "-" + Integer.toHexString(file.getAbsolutePath().hashCode()) + extension);
+	}
+
+	/**
+	 * Computes the checksum of the whole file, which is read sequentially,
+	 * much faster than it is parsed
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private static long checksum(File file) throws IOException {
+		final CRC32 crc = new CRC32();
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+			final ByteBuffer buffer = ByteBuffer.allocateDirect(FULL_CHECKSUM_BUFFER_SIZE);
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				crc.update(buffer);
+				buffer.clear();
+			}
+		} finally {
+			raf.close();
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Computes the checksum of the first and the last blocks of the file
+	 * only, so that it doesn't depend on the size of the file. The rest of the
+	 * content is only covered by the size and the modification time of the
+	 * file, so a change in the middle of the file that keeps its size and its
+	 * modification time (such as a copy preserving the time over a file of the
+	 * same size) is not detected.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private static long partialChecksum(File file) throws IOException {
+		final CRC32 crc = new CRC32();
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+			final long size = channel.size();
+			final ByteBuffer buffer = ByteBuffer.allocate(CHECKSUM_BLOCK_SIZE);
+			update(crc, channel, 0, buffer);
+			if (size > CHECKSUM_BLOCK_SIZE) {
+				update(crc, channel, Math.max(CHECKSUM_BLOCK_SIZE, size - CHECKSUM_BLOCK_SIZE), buffer);
+			}
+		} finally {
+			raf.close();
+		}
+		return crc.getValue();
+	}
+
+	private static void update(CRC32 crc, FileChannel channel, long position, ByteBuffer buffer)
+			throws IOException {
+		buffer.clear();
+		// until the block is full or the end of the file
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) <= 0) {
+				break;
+			}
+		}
+		buffer.flip();
+		crc.update(buffer);
+	}
+
+	File getCacheFile() {
+		return cacheFile;
+	}
+
+	/**
+	 *
+	 * @return the cache, positioned at the first record, or null if the cache
+	 *         file doesn't exist or it was created from a different file or
+	 *         with different options
+	 * @throws IOException
+	 */
+	DataInputStream openForReading() throws IOException {
+		if (!cacheFile.isFile()) {
+			return null;
+		}
+		final DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(cacheFile), 1024 * 1024));
+		boolean valid = false;
+		try {
+			valid = in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION && key.equals(in.readUTF());
+		} catch (final IOException e) {
+			log.warn("Error reading cache file " + cacheFile.getAbsolutePath() + ": " + e.getMessage());
+		} finally {
+			if (!valid) {
+				in.close();
+			}
+		}
+		if (!valid) {
+			log.info("Cache file " + cacheFile.getAbsolutePath() + " is not valid anymore");
+			return null;
+		}
+		return in;
+	}
+
+	/**
+	 *
+	 * @return a new cache file, which is not visible until calling to
+	 *         {@link #commit(DataOutputStream)}
+	 * @throws IOException
+	 */
+	DataOutputStream openForWriting() throws IOException {
+		final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(getTemporaryFile()), 1024 * 1024));
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeUTF(key);
+		return out;
+	}
+
+	private File getTemporaryFile() {
+		return new File(cacheFile.getAbsolutePath() + ".tmp");
+	}
+
+	void commit(DataOutputStream out) throws IOException {
+		out.writeByte(END);
+		out.close();
+		final File tmp = getTemporaryFile();
+		if (cacheFile.exists() && !cacheFile.delete()) {
+			throw new IOException("Cannot replace cache file " + cacheFile.getAbsolutePath());
+		}
+		if (!tmp.renameTo(cacheFile)) {
+			throw new IOException("Cannot create cache file " + cacheFile.getAbsolutePath());
+		}
+		log.info("Cache file " + cacheFile.getAbsolutePath() + " created");
+	}
+
+	void discard(DataOutputStream out) {
+		try {
+			out.close();
+		} catch (final IOException e) {
+			log.warn(e.getMessage());
+		}
+		getTemporaryFile().delete();
+	}
+}
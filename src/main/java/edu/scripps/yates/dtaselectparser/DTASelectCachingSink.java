@@ -0,0 +1,152 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectLocusResolver;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProtein;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProteinSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRow;
+
+/**
+ * Writes the rows read into a cache file, decoded, before sending them to
+ * another sink. If the cache file cannot be written, the parsing continues and
+ * the cache file is discarded.
+ *
+ * @author Salva
+ *
+ */
+class DTASelectCachingSink implements DTASelectRowSink {
+	private static final Logger log = Logger.getLogger(DTASelectCachingSink.class);
+	private final DTASelectRowSink sink;
+	private final DataOutputStream out;
+	private final DTASelectLocusResolver locusResolver;
+	private DTASelectPSMSchema psmSchema;
+	private DTASelectProteinSchema proteinSchema;
+	private boolean failed = false;
+
+	/**
+	 *
+	 * @param sink          where the rows are sent
+	 * @param out           the cache file
+	 * @param locusResolver to store the accession of the proteins and whether
+	 *                      they are decoys
+	 */
+	DTASelectCachingSink(DTASelectRowSink sink, DataOutputStream out, DTASelectLocusResolver locusResolver) {
+		this.sink = sink;
+		this.out = out;
+		this.locusResolver = locusResolver;
+	}
+
+	/**
+	 *
+	 * @return true if the cache file could not be written
+	 */
+	boolean isFailed() {
+		return failed;
+	}
+
+	private void write(byte tag, String... values) {
+		if (failed) {
+			return;
+		}
+		try {
+			out.writeByte(tag);
+			for (final String value : values) {
+				out.writeUTF(value);
+			}
+		} catch (final IOException e) {
+			fail(e);
+		}
+	}
+
+	private void fail(IOException e) {
+		log.warn("Error writing cache file: " + e.getMessage());
+		failed = true;
+	}
+
+	@Override
+	public void dtaSelectVersion(String version) {
+		write(DTASelectCache.VERSION, version);
+		sink.dtaSelectVersion(version);
+	}
+
+	@Override
+	public void runPath(String path) {
+		write(DTASelectCache.RUN_PATH, path);
+		sink.runPath(path);
+	}
+
+	@Override
+	public void fastaPath(String path) {
+		write(DTASelectCache.FASTA_PATH, path);
+		sink.fastaPath(path);
+	}
+
+	@Override
+	public void searchEngine(String searchEngine, String version) {
+		write(DTASelectCache.SEARCH_ENGINE, searchEngine, version);
+		sink.searchEngine(searchEngine, version);
+	}
+
+	@Override
+	public boolean commandLineParameters(String line) {
+		write(DTASelectCache.PARAMETERS, line);
+		return sink.commandLineParameters(line);
+	}
+
+	@Override
+	public void proteinHeader(String line) {
+		proteinSchema = DTASelectProteinSchema.parse(line);
+		write(DTASelectCache.PROTEIN_HEADER, line);
+		sink.proteinHeader(line);
+	}
+
+	@Override
+	public void psmHeader(String line) {
+		psmSchema = DTASelectPSMSchema.parse(line);
+		write(DTASelectCache.PSM_HEADER, line);
+		sink.psmHeader(line);
+	}
+
+	@Override
+	public boolean protein(DTASelectRow row) throws IOException {
+		if (!failed) {
+			try {
+				final DTASelectLocusResolver.Locus locus = locusResolver
+						.resolve(row.getString(proteinSchema.getLocusColumn()));
+				final boolean decoy = locus.isDecoy();
+				write(DTASelectCache.PROTEIN, locus.getAccession());
+				out.writeBoolean(decoy);
+				if (!decoy) {
+					DTASelectProtein.write(row, proteinSchema, out);
+				}
+			} catch (final IOException e) {
+				fail(e);
+			}
+		}
+		return sink.protein(row);
+	}
+
+	@Override
+	public boolean psm(DTASelectRow row) throws IOException {
+		if (!failed) {
+			try {
+				write(DTASelectCache.PSM);
+				DTASelectPSM.write(row, psmSchema, out);
+			} catch (final IOException e) {
+				fail(e);
+			}
+		}
+		return sink.psm(row);
+	}
+
+	@Override
+	public void endOfStream() {
+		sink.endOfStream();
+	}
+}
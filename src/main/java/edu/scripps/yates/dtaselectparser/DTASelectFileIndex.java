@@ -0,0 +1,555 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import edu.scripps.yates.utilities.fasta.FastaParser;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.THashMap;
+
+/**
+ * Index of a DTASelect file, stored in a file next to it, with the position in
+ * the file of the protein group of each locus and of the PSM rows of each
+ * spectrum, so that they can be read without reading the whole file. It is
+ * created by {@link DTASelectParser#setBuildIndex(boolean)} and queried by
+ * {@link DTASelectParser#queryProteinGroups(DTASelectFileIndex, String, DTASelectStreamListener)}
+ * and {@link DTASelectParser#queryPSMs(DTASelectFileIndex, String, String, int)}.
+ * <br>
+ * The positions are kept in memory while the index is built, and they are
+ * written sorted by locus and by spectrum. A loaded index is memory-mapped and
+ * each query is a binary search in the file, so it doesn't take heap per locus
+ * or spectrum, no matter the size of the DTASelect file.<br>
+ * The index is valid as long as the DTASelect file has the same path, size,
+ * modification time and checksum, which is the checksum of the whole file
+ * unless the partial checksum is enabled, as for the cache files.
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectFileIndex {
+	private static final Logger log = Logger.getLogger(DTASelectFileIndex.class);
+	static final String EXTENSION = ".dtaselectindex";
+	private static final int MAGIC = 0x44544149;
+	private static final int FORMAT_VERSION = 2;
+	private final File file;
+	private final boolean partialChecksum;
+	private String runPath;
+	private String proteinHeader;
+	private String psmHeader;
+	// while building, the start and end of each block, one after the other
+	private final Map<String, TLongArrayList> blocksByLocus = new THashMap<String, TLongArrayList>();
+	private final Map<String, TLongArrayList> psmRowsBySpectrum = new THashMap<String, TLongArrayList>();
+	// once loaded, the same positions in the index file
+	private SortedPositions loadedBlocksByLocus;
+	private SortedPositions loadedPSMRowsBySpectrum;
+
+	/**
+	 *
+	 * @param file            the DTASelect file
+	 * @param partialChecksum if true, only the first and the last blocks of
+	 *                        the DTASelect file are checksummed
+	 */
+	DTASelectFileIndex(File file, boolean partialChecksum) {
+		this.file = file.getAbsoluteFile();
+		this.partialChecksum = partialChecksum;
+	}
+
+	private static String getKey(File file, boolean partialChecksum) throws IOException {
+		return file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified() + "|"
+				+ DTASelectCache.getChecksum(file, partialChecksum);
+	}
+
+	static File getIndexFile(File file, File indexDirectory) {
+		return DTASelectCache.getSidecarFile(file, indexDirectory, EXTENSION);
+	}
+
+	/**
+	 *
+	 * @param file           the DTASelect file
+	 * @param indexDirectory  the folder of the index, or null if it is in the
+	 *                        same folder than the DTASelect file
+	 * @param partialChecksum if true, only the first and the last blocks of
+	 *                        the DTASelect file are checksummed
+	 * @return true if the DTASelect file has a valid index
+	 */
+	static boolean exists(File file, File indexDirectory, boolean partialChecksum) {
+		final File indexFile = getIndexFile(file, indexDirectory);
+		if (!indexFile.isFile()) {
+			return false;
+		}
+		try {
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			try {
+				return readHeader(in, file, partialChecksum);
+			} finally {
+				in.close();
+			}
+		} catch (final IOException e) {
+			return false;
+		}
+	}
+
+	private static boolean readHeader(DataInputStream in, File file, boolean partialChecksum) throws IOException {
+		return in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION
+				&& getKey(file.getAbsoluteFile(), partialChecksum).equals(in.readUTF());
+	}
+
+	/**
+	 * Loads the index of a DTASelect file, memory-mapping it
+	 *
+	 * @param file            the DTASelect file
+	 * @param indexDirectory  the folder of the index, or null if it is in the
+	 *                        same folder than the DTASelect file
+	 * @param partialChecksum if true, only the first and the last blocks of
+	 *                        the DTASelect file are checksummed
+	 * @return the index, or null if the file has no index or it was created
+	 *         from a different version of the file
+	 * @throws IOException
+	 */
+	public static DTASelectFileIndex load(File file, File indexDirectory, boolean partialChecksum)
+			throws IOException {
+		final File indexFile = getIndexFile(file, indexDirectory);
+		if (!indexFile.isFile()) {
+			return null;
+		}
+		final ByteBuffer buffer;
+		final RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Index file " + indexFile.getAbsolutePath() + " is too large");
+			}
+			// the mapping is kept after closing the file
+			buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+		final DataInputStream in = new DataInputStream(new InputStream() {
+			@Override
+			public int read() {
+				return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+			}
+		});
+		if (!readHeader(in, file, partialChecksum)) {
+			log.info("Index file " + indexFile.getAbsolutePath() + " is not valid anymore");
+			return null;
+		}
+		final DTASelectFileIndex ret = new DTASelectFileIndex(file, partialChecksum);
+		ret.runPath = readString(in);
+		ret.proteinHeader = readString(in);
+		ret.psmHeader = readString(in);
+		ret.loadedBlocksByLocus = new SortedPositions(buffer);
+		ret.loadedPSMRowsBySpectrum = new SortedPositions(buffer);
+		return ret;
+	}
+
+	/**
+	 * Writes the index next to the DTASelect file, replacing the existing one
+	 *
+	 * @param indexDirectory the folder of the index, or null to write it in
+	 *                       the same folder than the DTASelect file
+	 * @throws IOException
+	 */
+	void write(File indexDirectory) throws IOException {
+		final File indexFile = getIndexFile(file, indexDirectory);
+		final File tmp = new File(indexFile.getAbsolutePath() + ".tmp");
+		final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp), 1024 * 1024));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(getKey(file, partialChecksum));
+			writeString(out, runPath);
+			writeString(out, proteinHeader);
+			writeString(out, psmHeader);
+			writePositions(out, blocksByLocus);
+			writePositions(out, psmRowsBySpectrum);
+		} catch (final IOException e) {
+			out.close();
+			tmp.delete();
+			throw e;
+		}
+		out.close();
+		if (indexFile.exists() && !indexFile.delete()) {
+			tmp.delete();
+			throw new IOException("Cannot replace index file " + indexFile.getAbsolutePath());
+		}
+		if (!tmp.renameTo(indexFile)) {
+			throw new IOException("Cannot create index file " + indexFile.getAbsolutePath());
+		}
+		log.info("Index file " + indexFile.getAbsolutePath() + " created");
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * Writes the positions sorted by the UTF-8 bytes of their keys, as a
+	 * table of fixed size entries (start and length of the key, start and
+	 * number of the positions) followed by the keys and the positions, so
+	 * that they can be binary searched by {@link SortedPositions}
+	 *
+	 * @param out
+	 * @param positions
+	 * @throws IOException
+	 */
+	private static void writePositions(DataOutputStream out, Map<String, TLongArrayList> positions)
+			throws IOException {
+		final List<byte[]> keys = new ArrayList<byte[]>(positions.size());
+		for (final String key : positions.keySet()) {
+			keys.add(key.getBytes(StandardCharsets.UTF_8));
+		}
+		Collections.sort(keys, new Comparator<byte[]>() {
+			@Override
+			public int compare(byte[] key1, byte[] key2) {
+				return compareKeys(key1, key2);
+			}
+		});
+		int keysLength = 0;
+		for (final byte[] key : keys) {
+			keysLength += key.length;
+		}
+		out.writeInt(keys.size());
+		out.writeInt(keysLength);
+		int keyStart = 0;
+		int positionsStart = 0;
+		for (final byte[] key : keys) {
+			final int numPositions = positions.get(new String(key, StandardCharsets.UTF_8)).size();
+			out.writeInt(keyStart);
+			out.writeInt(key.length);
+			out.writeInt(positionsStart);
+			out.writeInt(numPositions);
+			keyStart += key.length;
+			positionsStart += numPositions;
+		}
+		out.writeInt(positionsStart);
+		for (final byte[] key : keys) {
+			out.write(key);
+		}
+		for (final byte[] key : keys) {
+			final TLongArrayList list = positions.get(new String(key, StandardCharsets.UTF_8));
+			for (int i = 0; i < list.size(); i++) {
+				out.writeLong(list.get(i));
+			}
+		}
+	}
+
+	private static int compareKeys(byte[] key1, byte[] key2) {
+		final int length = Math.min(key1.length, key2.length);
+		for (int i = 0; i < length; i++) {
+			final int diff = (key1[i] & 0xff) - (key2[i] & 0xff);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return key1.length - key2.length;
+	}
+
+	/**
+	 * The positions written by {@link DTASelectFileIndex#writePositions(DataOutputStream, Map)},
+	 * read from the memory-mapped index file
+	 *
+	 * @author Salva
+	 *
+	 */
+	private static class SortedPositions {
+		private static final int ENTRY_SIZE = 16;
+		private final ByteBuffer buffer;
+		private final int size;
+		private final int entriesStart;
+		private final int keysStart;
+		private final int positionsStart;
+
+		/**
+		 *
+		 * @param buffer the index file, positioned at the start of the
+		 *               positions, which is left at their end
+		 */
+		private SortedPositions(ByteBuffer buffer) {
+			this.buffer = buffer;
+			size = buffer.getInt();
+			final int keysLength = buffer.getInt();
+			entriesStart = buffer.position();
+			final int numPositionsPosition = entriesStart + size * ENTRY_SIZE;
+			final int numPositions = buffer.getInt(numPositionsPosition);
+			keysStart = numPositionsPosition + 4;
+			positionsStart = keysStart + keysLength;
+			buffer.position(positionsStart + numPositions * 8);
+		}
+
+		private int size() {
+			return size;
+		}
+
+		private String getKey(int entry) {
+			final int entryStart = entriesStart + entry * ENTRY_SIZE;
+			final byte[] key = new byte[buffer.getInt(entryStart + 4)];
+			final int start = keysStart + buffer.getInt(entryStart);
+			for (int i = 0; i < key.length; i++) {
+				key[i] = buffer.get(start + i);
+			}
+			return new String(key, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 *
+		 * @param key
+		 * @return the entry of the key, or -1 if it is not found
+		 */
+		private int indexOf(String key) {
+			final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+			int low = 0;
+			int high = size - 1;
+			while (low <= high) {
+				final int middle = (low + high) >>> 1;
+				final int comparison = compareKey(middle, bytes);
+				if (comparison < 0) {
+					low = middle + 1;
+				} else if (comparison > 0) {
+					high = middle - 1;
+				} else {
+					return middle;
+				}
+			}
+			return -1;
+		}
+
+		private int compareKey(int entry, byte[] key) {
+			final int entryStart = entriesStart + entry * ENTRY_SIZE;
+			final int start = keysStart + buffer.getInt(entryStart);
+			final int keyLength = buffer.getInt(entryStart + 4);
+			final int length = Math.min(keyLength, key.length);
+			for (int i = 0; i < length; i++) {
+				final int diff = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+				if (diff != 0) {
+					return diff;
+				}
+			}
+			return keyLength - key.length;
+		}
+
+		private long[] get(String key) {
+			final int entry = indexOf(key);
+			if (entry < 0) {
+				return new long[0];
+			}
+			final int entryStart = entriesStart + entry * ENTRY_SIZE;
+			final int start = positionsStart + buffer.getInt(entryStart + 8) * 8;
+			final long[] ret = new long[buffer.getInt(entryStart + 12)];
+			for (int i = 0; i < ret.length; i++) {
+				ret[i] = buffer.getLong(start + i * 8);
+			}
+			return ret;
+		}
+
+		/**
+		 *
+		 * @return the keys, decoded from the file as they are iterated
+		 */
+		private Set<String> keySet() {
+			return new AbstractSet<String>() {
+				@Override
+				public Iterator<String> iterator() {
+					return new Iterator<String>() {
+						private int entry = 0;
+
+						@Override
+						public boolean hasNext() {
+							return entry < size;
+						}
+
+						@Override
+						public String next() {
+							if (entry >= size) {
+								throw new NoSuchElementException();
+							}
+							return getKey(entry++);
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+
+				@Override
+				public boolean contains(Object o) {
+					return o instanceof String && indexOf((String) o) >= 0;
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+	}
+
+	private static void add(Map<String, TLongArrayList> positions, String key, long... values) {
+		TLongArrayList list = positions.get(key);
+		if (list == null) {
+			list = new TLongArrayList(values.length);
+			positions.put(key, list);
+		}
+		for (final long value : values) {
+			list.add(value);
+		}
+	}
+
+	/**
+	 *
+	 * @param runId  the name of the MS run, as in the 'FileName' column
+	 * @param scan   the scan number
+	 * @param charge the charge state
+	 * @return
+	 */
+	static String getSpectrumKey(String runId, String scan, int charge) {
+		return runId + "|" + scan + "|" + charge;
+	}
+
+	/**
+	 *
+	 * @param psmIdentifier the value of the 'FileName' column of a PSM row
+	 * @return
+	 */
+	static String getSpectrumKey(String psmIdentifier) {
+		return getSpectrumKey(FastaParser.getFileNameFromPSMIdentifier(psmIdentifier),
+				FastaParser.getScanFromPSMIdentifier(psmIdentifier),
+				FastaParser.getChargeStateFromPSMIdentifier(psmIdentifier));
+	}
+
+	void setRunPath(String runPath) {
+		this.runPath = runPath;
+	}
+
+	void setProteinHeader(String proteinHeader) {
+		this.proteinHeader = proteinHeader;
+	}
+
+	void setPSMHeader(String psmHeader) {
+		this.psmHeader = psmHeader;
+	}
+
+	void addProteinGroupBlock(String locus, long start, long end) {
+		add(blocksByLocus, locus, start, end);
+	}
+
+	void addPSMRow(String spectrumKey, long position) {
+		add(psmRowsBySpectrum, spectrumKey, position);
+	}
+
+	/**
+	 *
+	 * @return the DTASelect file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	String getRunPath() {
+		return runPath;
+	}
+
+	String getProteinHeader() {
+		return proteinHeader;
+	}
+
+	String getPSMHeader() {
+		return psmHeader;
+	}
+
+	/**
+	 *
+	 * @return the loci of the proteins of the file, as in the 'Locus' column
+	 */
+	public Set<String> getLoci() {
+		if (loadedBlocksByLocus != null) {
+			return loadedBlocksByLocus.keySet();
+		}
+		return Collections.unmodifiableSet(blocksByLocus.keySet());
+	}
+
+	public boolean containsLocus(String locus) {
+		if (loadedBlocksByLocus != null) {
+			return loadedBlocksByLocus.indexOf(locus) >= 0;
+		}
+		return blocksByLocus.containsKey(locus);
+	}
+
+	/**
+	 *
+	 * @param locus
+	 * @return the start and end positions in the file of each protein group
+	 *         in which the locus appears, one after the other
+	 */
+	public long[] getProteinGroupBlocks(String locus) {
+		if (loadedBlocksByLocus != null) {
+			return loadedBlocksByLocus.get(locus);
+		}
+		final TLongArrayList list = blocksByLocus.get(locus);
+		return list != null ? list.toArray() : new long[0];
+	}
+
+	/**
+	 *
+	 * @param runId
+	 * @param scan
+	 * @param charge
+	 * @return the positions in the file of the PSM rows of that spectrum, which
+	 *         appear once per protein group
+	 */
+	public long[] getPSMRows(String runId, String scan, int charge) {
+		final String key = getSpectrumKey(runId, scan, charge);
+		if (loadedPSMRowsBySpectrum != null) {
+			return loadedPSMRowsBySpectrum.get(key);
+		}
+		final TLongArrayList list = psmRowsBySpectrum.get(key);
+		return list != null ? list.toArray() : new long[0];
+	}
+
+	public int getNumLoci() {
+		if (loadedBlocksByLocus != null) {
+			return loadedBlocksByLocus.size();
+		}
+		return blocksByLocus.size();
+	}
+
+	public int getNumSpectra() {
+		if (loadedPSMRowsBySpectrum != null) {
+			return loadedPSMRowsBySpectrum.size();
+		}
+		return psmRowsBySpectrum.size();
+	}
+}
@@ -0,0 +1,142 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Counts of the content of a DTASelect file, obtained by
+ * {@link DTASelectParser#summarize()} without creating any protein or PSM.<br>
+ * The distinct proteins, PSMs and sequences are counted by a 64-bit hash of
+ * their accessions and columns, so a collision, which is extremely unlikely,
+ * would make them one less.
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectFileSummary {
+	private final String analysisID;
+	private final String dtaSelectVersion;
+	private final String searchEngine;
+	private final String searchEngineVersion;
+	private final List<String> commandLineParameters;
+	private final int numProteins;
+	private final int numDecoyProteins;
+	private final int numProteinGroups;
+	private final int numPSMRows;
+	private final int numPSMs;
+	private final int numPeptideSequences;
+	private final Set<String> msRuns;
+
+	DTASelectFileSummary(String analysisID, String dtaSelectVersion, String searchEngine,
+			String searchEngineVersion, List<String> commandLineParameters, int numProteins, int numDecoyProteins,
+			int numProteinGroups, int numPSMRows, int numPSMs, int numPeptideSequences, Set<String> msRuns) {
+		this.analysisID = analysisID;
+		this.dtaSelectVersion = dtaSelectVersion;
+		this.searchEngine = searchEngine;
+		this.searchEngineVersion = searchEngineVersion;
+		this.commandLineParameters = Collections.unmodifiableList(new ArrayList<String>(commandLineParameters));
+		this.numProteins = numProteins;
+		this.numDecoyProteins = numDecoyProteins;
+		this.numProteinGroups = numProteinGroups;
+		this.numPSMRows = numPSMRows;
+		this.numPSMs = numPSMs;
+		this.numPeptideSequences = numPeptideSequences;
+		this.msRuns = Collections.unmodifiableSet(new LinkedHashSet<String>(msRuns));
+	}
+
+	public String getAnalysisID() {
+		return analysisID;
+	}
+
+	public String getDTASelectVersion() {
+		return dtaSelectVersion;
+	}
+
+	public String getSearchEngine() {
+		return searchEngine;
+	}
+
+	public String getSearchEngineVersion() {
+		return searchEngineVersion;
+	}
+
+	/**
+	 *
+	 * @return the lines of the command line parameters
+	 */
+	public List<String> getCommandLineParameters() {
+		return commandLineParameters;
+	}
+
+	/**
+	 *
+	 * @return the number of distinct accessions that are not decoy
+	 */
+	public int getNumProteins() {
+		return numProteins;
+	}
+
+	/**
+	 *
+	 * @return the number of distinct accessions in which the decoy pattern of
+	 *         the parser is found
+	 */
+	public int getNumDecoyProteins() {
+		return numDecoyProteins;
+	}
+
+	/**
+	 *
+	 * @return the number of protein groups with at least one protein that is
+	 *         not decoy
+	 */
+	public int getNumProteinGroups() {
+		return numProteinGroups;
+	}
+
+	/**
+	 *
+	 * @return the number of PSM rows, counting each time a PSM appears in a
+	 *         different protein group
+	 */
+	public int getNumPSMRows() {
+		return numPSMRows;
+	}
+
+	/**
+	 *
+	 * @return the number of distinct PSMs, by their 'FileName' and 'Sequence'
+	 *         columns
+	 */
+	public int getNumPSMs() {
+		return numPSMs;
+	}
+
+	/**
+	 *
+	 * @return the number of distinct sequences, without the flanking residues
+	 *         and with their modifications
+	 */
+	public int getNumPeptideSequences() {
+		return numPeptideSequences;
+	}
+
+	/**
+	 *
+	 * @return the names of the MS runs of the PSMs
+	 */
+	public Set<String> getMSRuns() {
+		return msRuns;
+	}
+
+	@Override
+	public String toString() {
+		return analysisID + ": DTASelect " + dtaSelectVersion + ", " + searchEngine + " " + searchEngineVersion
+				+ ", " + numProteins + " proteins (" + numDecoyProteins + " decoy), " + numProteinGroups
+				+ " protein groups, " + numPSMs + " PSMs (" + numPSMRows + " rows), " + numPeptideSequences
+				+ " sequences, " + msRuns.size() + " MS runs";
+	}
+}
@@ -0,0 +1,160 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMFilter;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProteinFilter;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProteinSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRow;
+
+/**
+ * Sends to another sink only the protein and PSM rows accepted by some filters,
+ * so that the rejected ones are never converted into objects. The accepted
+ * protein rows of a group are kept until the first accepted PSM of the group,
+ * so the groups without accepted proteins or without accepted PSMs are not
+ * sent at all.
+ *
+ * @author Salva
+ *
+ */
+class DTASelectFilteringSink implements DTASelectRowSink {
+	private static final Logger log = Logger.getLogger(DTASelectFilteringSink.class);
+	private final String analysisID;
+	private final DTASelectRowSink sink;
+	private final DTASelectPSMFilter[] psmFilters;
+	private final DTASelectProteinFilter[] proteinFilters;
+	private final List<String> pendingProteins = new ArrayList<String>();
+	private final DTASelectRow pendingRow = new DTASelectRow();
+	private DTASelectPSMSchema psmSchema;
+	private DTASelectProteinSchema proteinSchema;
+	private boolean isPsm = false;
+	// true if the proteins of the current group were sent
+	private boolean groupSent = false;
+	// true if the current group has any row
+	private boolean groupRead = false;
+	private int filteredProteins = 0;
+	private int filteredPSMs = 0;
+	private int prunedGroups = 0;
+
+	/**
+	 *
+	 * @param analysisID
+	 * @param sink           where the accepted rows are sent
+	 * @param psmFilters     the filters of the PSM rows, which are copied
+	 * @param proteinFilters the filters of the protein rows, which are copied
+	 */
+	DTASelectFilteringSink(String analysisID, DTASelectRowSink sink, Collection<DTASelectPSMFilter> psmFilters,
+			Collection<DTASelectProteinFilter> proteinFilters) {
+		this.analysisID = analysisID;
+		this.sink = sink;
+		this.psmFilters = psmFilters.toArray(new DTASelectPSMFilter[psmFilters.size()]);
+		this.proteinFilters = proteinFilters.toArray(new DTASelectProteinFilter[proteinFilters.size()]);
+	}
+
+	@Override
+	public void dtaSelectVersion(String version) {
+		sink.dtaSelectVersion(version);
+	}
+
+	@Override
+	public void runPath(String runPath) {
+		sink.runPath(runPath);
+	}
+
+	@Override
+	public void fastaPath(String fastaPath) {
+		sink.fastaPath(fastaPath);
+	}
+
+	@Override
+	public void searchEngine(String searchEngine, String version) {
+		sink.searchEngine(searchEngine, version);
+	}
+
+	@Override
+	public boolean commandLineParameters(String line) {
+		return sink.commandLineParameters(line);
+	}
+
+	@Override
+	public void proteinHeader(String line) {
+		proteinSchema = DTASelectProteinSchema.parse(line);
+		sink.proteinHeader(line);
+	}
+
+	@Override
+	public void psmHeader(String line) {
+		psmSchema = DTASelectPSMSchema.parse(line);
+		sink.psmHeader(line);
+	}
+
+	/**
+	 * Forgets the current group, which is pruned if it was not sent
+	 */
+	private void endGroup() {
+		if (groupRead && !groupSent) {
+			prunedGroups++;
+		}
+		pendingProteins.clear();
+		groupSent = false;
+		groupRead = false;
+	}
+
+	@Override
+	public boolean protein(DTASelectRow row) {
+		if (isPsm) {
+			endGroup();
+		}
+		isPsm = false;
+		groupRead = true;
+		for (final DTASelectProteinFilter proteinFilter : proteinFilters) {
+			if (!proteinFilter.accept(row, proteinSchema)) {
+				filteredProteins++;
+				return true;
+			}
+		}
+		pendingProteins.add(row.getLine().toString());
+		return true;
+	}
+
+	@Override
+	public boolean psm(DTASelectRow row) throws IOException {
+		isPsm = true;
+		groupRead = true;
+		if (!groupSent && pendingProteins.isEmpty()) {
+			// no protein of the group was accepted
+			filteredPSMs++;
+			return true;
+		}
+		for (final DTASelectPSMFilter psmFilter : psmFilters) {
+			if (!psmFilter.accept(row, psmSchema)) {
+				filteredPSMs++;
+				return true;
+			}
+		}
+		if (!groupSent) {
+			groupSent = true;
+			for (final String proteinLine : pendingProteins) {
+				if (!sink.protein(pendingRow.reset(proteinLine))) {
+					return false;
+				}
+			}
+			pendingProteins.clear();
+		}
+		return sink.psm(row);
+	}
+
+	@Override
+	public void endOfStream() {
+		endGroup();
+		log.info(filteredProteins + " proteins and " + filteredPSMs + " PSMs filtered out and " + prunedGroups
+				+ " protein groups pruned in " + analysisID);
+		sink.endOfStream();
+	}
+}
@@ -0,0 +1,119 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProteinSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRow;
+import edu.scripps.yates.dtaselectparser.util.MappedFileLineSource;
+
+/**
+ * Records in a {@link DTASelectFileIndex} the position of the rows read from a
+ * memory-mapped file before sending them to another sink
+ *
+ * @author Salva
+ *
+ */
+class DTASelectIndexingSink implements DTASelectRowSink {
+	private final DTASelectRowSink sink;
+	private final MappedFileLineSource source;
+	private final DTASelectFileIndex index;
+	// a locus may be repeated in a group
+	private final Set<String> groupLoci = new LinkedHashSet<String>();
+	private DTASelectPSMSchema psmSchema;
+	private DTASelectProteinSchema proteinSchema;
+	private long groupStart = -1;
+	private long groupEnd = -1;
+	private boolean isPsm = false;
+
+	/**
+	 *
+	 * @param sink   where the rows are sent
+	 * @param source the file being read
+	 * @param index  where the positions are recorded
+	 */
+	DTASelectIndexingSink(DTASelectRowSink sink, MappedFileLineSource source, DTASelectFileIndex index) {
+		this.sink = sink;
+		this.source = source;
+		this.index = index;
+	}
+
+	@Override
+	public void dtaSelectVersion(String version) {
+		sink.dtaSelectVersion(version);
+	}
+
+	@Override
+	public void runPath(String runPath) {
+		index.setRunPath(runPath);
+		sink.runPath(runPath);
+	}
+
+	@Override
+	public void fastaPath(String fastaPath) {
+		sink.fastaPath(fastaPath);
+	}
+
+	@Override
+	public void searchEngine(String searchEngine, String version) {
+		sink.searchEngine(searchEngine, version);
+	}
+
+	@Override
+	public boolean commandLineParameters(String line) {
+		return sink.commandLineParameters(line);
+	}
+
+	@Override
+	public void proteinHeader(String line) {
+		proteinSchema = DTASelectProteinSchema.parse(line);
+		index.setProteinHeader(line);
+		sink.proteinHeader(line);
+	}
+
+	@Override
+	public void psmHeader(String line) {
+		psmSchema = DTASelectPSMSchema.parse(line);
+		index.setPSMHeader(line);
+		sink.psmHeader(line);
+	}
+
+	private void closeGroup() {
+		for (final String locus : groupLoci) {
+			index.addProteinGroupBlock(locus, groupStart, groupEnd);
+		}
+		groupLoci.clear();
+		groupStart = -1;
+	}
+
+	@Override
+	public boolean protein(DTASelectRow row) throws IOException {
+		if (isPsm) {
+			closeGroup();
+		}
+		isPsm = false;
+		if (groupStart == -1) {
+			groupStart = source.getLineStart();
+		}
+		groupEnd = source.getPosition();
+		groupLoci.add(row.getString(proteinSchema.getLocusColumn()));
+		return sink.protein(row);
+	}
+
+	@Override
+	public boolean psm(DTASelectRow row) throws IOException {
+		isPsm = true;
+		groupEnd = source.getPosition();
+		index.addPSMRow(DTASelectFileIndex.getSpectrumKey(row.getString(psmSchema.getPSMIdColumn())),
+				source.getLineStart());
+		return sink.psm(row);
+	}
+
+	@Override
+	public void endOfStream() {
+		closeGroup();
+		sink.endOfStream();
+	}
+}
@@ -0,0 +1,25 @@
+package edu.scripps.yates.dtaselectparser;
+
+/**
+ * Receives the metrics of a {@link DTASelectParser} when it finishes reading
+ * each input and when it finishes processing all of them
+ *
+ * @author Salva
+ *
+ */
+public interface DTASelectMetricsListener {
+	/**
+	 * Called after an input stream is read
+	 *
+	 * @param analysisID
+	 * @param metrics    the metrics accumulated so far
+	 */
+	void onInputRead(String analysisID, DTASelectParseMetrics metrics);
+
+	/**
+	 * Called after all the input streams are read
+	 *
+	 * @param metrics the metrics accumulated so far
+	 */
+	void onProcessFinished(DTASelectParseMetrics metrics);
+}
@@ -0,0 +1,183 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.IOException;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectLocusResolver;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProtein;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProteinSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRow;
+import edu.scripps.yates.utilities.grouping.GroupableProtein;
+import edu.scripps.yates.utilities.grouping.ProteinGroup;
+import edu.scripps.yates.utilities.proteomicsmodel.MSRun;
+import edu.scripps.yates.utilities.proteomicsmodel.PSM;
+import edu.scripps.yates.utilities.proteomicsmodel.Protein;
+import edu.scripps.yates.utilities.proteomicsmodel.factories.MSRunEx;
+
+/**
+ * Builds the model of proteins, PSMs, peptides and protein groups in the
+ * parser from the lines of the input streams, one stream after the other,
+ * keeping the protein group being read.
+ *
+ * @author Salva
+ *
+ */
+class DTASelectModelSink implements DTASelectParsedRowSink {
+	private final DTASelectParser parser;
+	private final boolean checkFormat;
+	private DTASelectPSMSchema psmSchema;
+	private DTASelectProteinSchema proteinSchema;
+	private String analysisID;
+	private ProteinGroup currentProteinGroup;
+	// if we only get proteins, because the protein's msRuns are coming
+	// from the PSMs, we need to assign them a fake msRun that is unique
+	// for each input stream
+	private MSRun uniqueMSRun;
+	private boolean isPsm;
+
+	DTASelectModelSink(DTASelectParser parser, boolean checkFormat) {
+		this.parser = parser;
+		this.checkFormat = checkFormat;
+	}
+
+	void startStream(String analysisID) {
+		this.analysisID = analysisID;
+		currentProteinGroup = new ProteinGroup();
+		isPsm = false;
+		uniqueMSRun = null;
+		if (parser.isReadingOnlyProteins()) {
+			uniqueMSRun = new MSRunEx(analysisID, null);
+		}
+	}
+
+	@Override
+	public void dtaSelectVersion(String version) {
+		parser.dtaSelectVersionRead(version);
+	}
+
+	@Override
+	public void runPath(String path) {
+		parser.runPathRead(path);
+	}
+
+	@Override
+	public void fastaPath(String path) {
+		parser.fastaPathRead(path);
+	}
+
+	@Override
+	public void searchEngine(String searchEngine, String version) {
+		parser.searchEngineRead(searchEngine, version);
+	}
+
+	@Override
+	public boolean commandLineParameters(String line) {
+		return parser.commandLineParametersRead(line);
+	}
+
+	@Override
+	public void proteinHeader(String line) {
+		proteinSchema = DTASelectProteinSchema.parse(line);
+	}
+
+	@Override
+	public void psmHeader(String line) {
+		psmSchema = DTASelectPSMSchema.parse(line);
+	}
+
+	@Override
+	public boolean protein(DTASelectRow row) {
+		final DTASelectLocusResolver.Locus locus = parser.getLocusResolver()
+				.resolve(row.getString(proteinSchema.getLocusColumn()));
+		final String acc = locus.getAccession();
+		final boolean decoy = locus.isDecoy();
+		DTASelectProtein protein = null;
+		if (!decoy && !parser.isProteinRead(acc)) {
+			protein = parser.createProtein(row, proteinSchema);
+		}
+		addProtein(acc, decoy, protein);
+		return true;
+	}
+
+	/**
+	 *
+	 * @param acc
+	 * @param decoy
+	 * @param newProtein the protein to add if there is not already a protein
+	 *                   with that accession
+	 */
+	void addProtein(String acc, boolean decoy, Protein newProtein) {
+		final DTASelectParseMetrics metrics = parser.getMetrics();
+		final long start = metrics != null ? System.nanoTime() : 0;
+		// if comes from a psm line, clear the current group of
+		// proteins
+		if (isPsm) {
+			parser.closeProteinGroup(currentProteinGroup);
+
+			// restart the protein group
+			currentProteinGroup = new ProteinGroup();
+
+		}
+		if (decoy) {
+			parser.decoySkipped();
+		} else {
+			parser.addProtein(acc, newProtein, currentProteinGroup);
+		}
+
+		isPsm = false;
+		if (metrics != null) {
+			metrics.addTime(DTASelectParseMetrics.Phase.ASSEMBLY, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public boolean psm(DTASelectRow row) throws IOException {
+		if (parser.isReadingOnlyProteins()) {
+			return addPSM(null);
+		}
+		return addPSM(parser.createPSM(row, psmSchema, parser.getCurrentRunPath()));
+	}
+
+	@Override
+	public void parsedProtein(String accession, boolean decoy, DTASelectProtein protein) {
+		addProtein(accession, decoy, protein);
+	}
+
+	@Override
+	public boolean parsedPSM(DTASelectPSM psm) throws IOException {
+		return addPSM(parser.isReadingOnlyProteins() ? null : psm);
+	}
+
+	/**
+	 *
+	 * @param newPSM the PSM to add, unless there is already a PSM with the
+	 *               same identifier
+	 * @return false if it was only needed to check the format
+	 * @throws IOException
+	 */
+	boolean addPSM(PSM newPSM) throws IOException {
+		isPsm = true;
+		if (parser.isReadingOnlyProteins()) {
+			// if I only need proteins, because they get the
+			// msRuns from their PSMs, we have to add them a
+			// fake msRun for the entire collection of proteins
+			// here
+			for (final GroupableProtein protein : currentProteinGroup) {
+				((Protein) protein).addMSRun(uniqueMSRun);
+			}
+			return true;
+		}
+		parser.addPSM(newPSM, currentProteinGroup, analysisID);
+		if (checkFormat) {
+			// just return with no errors
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void endOfStream() {
+		parser.closeLastProteinGroup(currentProteinGroup);
+	}
+}
@@ -0,0 +1,244 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timers of the parsing of DTASelect files, accumulated since
+ * they were created or reset.<br>
+ * The time of each phase is the sum of the time spent on it by all the
+ * threads, so when several input streams are read in parallel the time of the
+ * phases may be greater than the total time.<br>
+ * It is safe to update it from different threads.
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectParseMetrics implements DTASelectParseMetricsMBean {
+	public enum Phase {
+		/**
+		 * Reading the lines from the input
+		 */
+		READ,
+		/**
+		 * Splitting the lines in columns and classifying them
+		 */
+		TOKENIZE,
+		/**
+		 * Creating the protein objects
+		 */
+		PROTEIN_CONSTRUCTION,
+		/**
+		 * Creating the PSM objects
+		 */
+		PSM_CONSTRUCTION,
+		/**
+		 * Looking for and creating peptides in the model storage
+		 */
+		MODEL_STORAGE,
+		/**
+		 * Looking for the proteins of the peptides in the dbIndex
+		 */
+		DBINDEX,
+		/**
+		 * Adding the proteins and PSMs to the maps and protein groups of the
+		 * parser
+		 */
+		ASSEMBLY
+	}
+
+	private final LongAdder inputsRead = new LongAdder();
+	private final LongAdder linesRead = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder proteins = new LongAdder();
+	private final LongAdder psms = new LongAdder();
+	private final LongAdder duplicatePSMs = new LongAdder();
+	private final LongAdder decoys = new LongAdder();
+	private final LongAdder dbIndexHits = new LongAdder();
+	private final LongAdder dbIndexMisses = new LongAdder();
+	private final LongAdder totalTime = new LongAdder();
+	private final LongAdder[] phaseTimes = new LongAdder[Phase.values().length];
+
+	public DTASelectParseMetrics() {
+		for (int i = 0; i < phaseTimes.length; i++) {
+			phaseTimes[i] = new LongAdder();
+		}
+	}
+
+	void inputRead() {
+		inputsRead.increment();
+	}
+
+	void lineRead() {
+		linesRead.increment();
+	}
+
+	/**
+	 *
+	 * @param bytes the number of bytes consumed by a line source, including
+	 *              the line terminators, as counted by
+	 *              {@link edu.scripps.yates.dtaselectparser.util.DTASelectLineSource#getBytesRead()}
+	 */
+	void bytesRead(long bytes) {
+		bytesRead.add(bytes);
+	}
+
+	void protein() {
+		proteins.increment();
+	}
+
+	void psm() {
+		psms.increment();
+	}
+
+	void duplicatePSM() {
+		duplicatePSMs.increment();
+	}
+
+	void decoy() {
+		decoys.increment();
+	}
+
+	void dbIndexLookups(long hits, long misses) {
+		dbIndexHits.add(hits);
+		dbIndexMisses.add(misses);
+	}
+
+	void addTime(Phase phase, long nanos) {
+		phaseTimes[phase.ordinal()].add(nanos);
+	}
+
+	void addTotalTime(long nanos) {
+		totalTime.add(nanos);
+	}
+
+	@Override
+	public long getInputsRead() {
+		return inputsRead.sum();
+	}
+
+	@Override
+	public long getLinesRead() {
+		return linesRead.sum();
+	}
+
+	@Override
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	@Override
+	public long getProteins() {
+		return proteins.sum();
+	}
+
+	@Override
+	public long getPSMs() {
+		return psms.sum();
+	}
+
+	@Override
+	public long getDuplicatePSMs() {
+		return duplicatePSMs.sum();
+	}
+
+	@Override
+	public long getDecoys() {
+		return decoys.sum();
+	}
+
+	@Override
+	public long getDBIndexHits() {
+		return dbIndexHits.sum();
+	}
+
+	@Override
+	public long getDBIndexMisses() {
+		return dbIndexMisses.sum();
+	}
+
+	/**
+	 *
+	 * @param phase
+	 * @return the time spent on that phase in nanoseconds
+	 */
+	public long getTimeNanos(Phase phase) {
+		return phaseTimes[phase.ordinal()].sum();
+	}
+
+	private long getTimeMillis(Phase phase) {
+		return TimeUnit.NANOSECONDS.toMillis(getTimeNanos(phase));
+	}
+
+	@Override
+	public long getTotalTimeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(totalTime.sum());
+	}
+
+	@Override
+	public long getReadTimeMillis() {
+		return getTimeMillis(Phase.READ);
+	}
+
+	@Override
+	public long getTokenizeTimeMillis() {
+		return getTimeMillis(Phase.TOKENIZE);
+	}
+
+	@Override
+	public long getProteinConstructionTimeMillis() {
+		return getTimeMillis(Phase.PROTEIN_CONSTRUCTION);
+	}
+
+	@Override
+	public long getPSMConstructionTimeMillis() {
+		return getTimeMillis(Phase.PSM_CONSTRUCTION);
+	}
+
+	@Override
+	public long getModelStorageTimeMillis() {
+		return getTimeMillis(Phase.MODEL_STORAGE);
+	}
+
+	@Override
+	public long getDBIndexTimeMillis() {
+		return getTimeMillis(Phase.DBINDEX);
+	}
+
+	@Override
+	public long getAssemblyTimeMillis() {
+		return getTimeMillis(Phase.ASSEMBLY);
+	}
+
+	@Override
+	public void reset() {
+		inputsRead.reset();
+		linesRead.reset();
+		bytesRead.reset();
+		proteins.reset();
+		psms.reset();
+		duplicatePSMs.reset();
+		decoys.reset();
+		dbIndexHits.reset();
+		dbIndexMisses.reset();
+		totalTime.reset();
+		for (final LongAdder phaseTime : phaseTimes) {
+			phaseTime.reset();
+		}
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(getInputsRead()).append(" inputs, ").append(getLinesRead()).append(" lines, ")
+				.append(getBytesRead()).append(" bytes, ").append(getProteins()).append(" proteins, ")
+				.append(getPSMs()).append(" PSMs (").append(getDuplicatePSMs()).append(" duplicated), ")
+				.append(getDecoys()).append(" decoys, dbIndex hits/misses ").append(getDBIndexHits()).append("/")
+				.append(getDBIndexMisses()).append(", total ").append(getTotalTimeMillis()).append("ms");
+		for (final Phase phase : Phase.values()) {
+			sb.append(", ").append(phase.name().toLowerCase()).append(" ").append(getTimeMillis(phase))
+					.append("ms");
+		}
+		return sb.toString();
+	}
+}
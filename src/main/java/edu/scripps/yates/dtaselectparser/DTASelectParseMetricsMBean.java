@@ -0,0 +1,45 @@
+package edu.scripps.yates.dtaselectparser;
+
+/**
+ * JMX interface of {@link DTASelectParseMetrics}
+ *
+ * @author Salva
+ *
+ */
+public interface DTASelectParseMetricsMBean {
+	long getInputsRead();
+
+	long getLinesRead();
+
+	long getBytesRead();
+
+	long getProteins();
+
+	long getPSMs();
+
+	long getDuplicatePSMs();
+
+	long getDecoys();
+
+	long getDBIndexHits();
+
+	long getDBIndexMisses();
+
+	long getTotalTimeMillis();
+
+	long getReadTimeMillis();
+
+	long getTokenizeTimeMillis();
+
+	long getProteinConstructionTimeMillis();
+
+	long getPSMConstructionTimeMillis();
+
+	long getModelStorageTimeMillis();
+
+	long getDBIndexTimeMillis();
+
+	long getAssemblyTimeMillis();
+
+	void reset();
+}
@@ -0,0 +1,34 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.IOException;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProtein;
+
+/**
+ * A {@link DTASelectRowSink} that can also receive the protein and PSM rows
+ * already converted into objects, as they are read from a cache file.
+ *
+ * @author Salva
+ *
+ */
+interface DTASelectParsedRowSink extends DTASelectRowSink {
+
+	/**
+	 * Receives a protein row that has already been converted into a protein
+	 *
+	 * @param accession
+	 * @param decoy
+	 * @param protein   the protein, which is null if it is a decoy
+	 */
+	void parsedProtein(String accession, boolean decoy, DTASelectProtein protein);
+
+	/**
+	 * Receives a PSM row that has already been converted into a PSM
+	 *
+	 * @param psm
+	 * @return
+	 * @throws IOException
+	 */
+	boolean parsedPSM(DTASelectPSM psm) throws IOException;
+}
@@ -4,23 +4,66 @@
 package edu.scripps.yates.dtaselectparser;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.apache.log4j.Logger;
 
 import edu.scripps.yates.dbindex.util.PeptideNotFoundInDBIndexException;
+import edu.scripps.yates.dtaselectparser.util.BufferedReaderLineSource;
+import edu.scripps.yates.dtaselectparser.util.CompactKeyMap;
+import edu.scripps.yates.dtaselectparser.util.ConcurrentModelRegistry;
+import edu.scripps.yates.dtaselectparser.util.DBIndexLookupCache;
+import edu.scripps.yates.dtaselectparser.util.DTASelectKeys;
+import edu.scripps.yates.dtaselectparser.util.DTASelectLineSource;
+import edu.scripps.yates.dtaselectparser.util.DTASelectLocusResolver;
+import edu.scripps.yates.dtaselectparser.util.DTASelectModelRegistry;
 import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMFilter;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMColumnStore;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMIndex;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMSchema;
 import edu.scripps.yates.dtaselectparser.util.DTASelectProtein;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProteinFilter;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProteinSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRow;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRowStore;
+import edu.scripps.yates.dtaselectparser.util.ExternalSorter;
+import edu.scripps.yates.dtaselectparser.util.IndexedProteinGroup;
+import edu.scripps.yates.dtaselectparser.util.InputStreamPrefetcher;
+import edu.scripps.yates.dtaselectparser.util.MappedFileLineSource;
+import edu.scripps.yates.dtaselectparser.util.ParallelGzipInputStream;
+import edu.scripps.yates.dtaselectparser.util.StaticModelRegistry;
 import edu.scripps.yates.utilities.fasta.FastaParser;
 import edu.scripps.yates.utilities.fasta.dbindex.DBIndexStoreException;
 import edu.scripps.yates.utilities.fasta.dbindex.IndexedProtein;
@@ -31,12 +74,11 @@ import edu.scripps.yates.utilities.proteomicsmodel.MSRun;
 import edu.scripps.yates.utilities.proteomicsmodel.PSM;
 import edu.scripps.yates.utilities.proteomicsmodel.Peptide;
 import edu.scripps.yates.utilities.proteomicsmodel.Protein;
-import edu.scripps.yates.utilities.proteomicsmodel.factories.MSRunEx;
 import edu.scripps.yates.utilities.proteomicsmodel.factories.PeptideEx;
 import edu.scripps.yates.utilities.proteomicsmodel.staticstorage.StaticProteomicsModelStorage;
 import edu.scripps.yates.utilities.proteomicsmodel.utils.KeyUtils;
 import edu.scripps.yates.utilities.remote.RemoteSSHFileReference;
-import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.map.hash.THashMap;
 import gnu.trove.set.hash.THashSet;
 
 public class DTASelectParser extends IdentificationsParser {
@@ -45,6 +87,67 @@ public class DTASelectParser extends IdentificationsParser {
 	public static final String PROLUCID = "ProLuCID";
 	public static final String SEQUEST = "Sequest";
 	private static final String UNKNOWN = "Unknown";
+	private int numThreads = 1;
+	private int numDecoy = 0;
+	private boolean memoryMapLocalFiles = false;
+	private final DTASelectPSMIndex psmIndex = new DTASelectPSMIndex();
+	private boolean useCache = false;
+	private File cacheDirectory;
+	private boolean partialCacheChecksum = false;
+	private int dbIndexCacheSize = 100000;
+	private boolean batchDBIndexLookups = false;
+	private DBIndexLookupCache dbIndexLookups;
+	private DTASelectLocusResolver locusResolver;
+	private boolean lazyPSMs = false;
+	private DTASelectRowStore lazyRows;
+	private boolean useColumnStore = false;
+	private DTASelectPSMColumnStore psmColumnStore;
+	private boolean incremental = false;
+	private final Map<String, TailState> tailStates = new LinkedHashMap<String, TailState>();
+	private final List<File> watchedDirectories = new ArrayList<File>();
+	private DTASelectParseMetrics metrics;
+	private final List<DTASelectMetricsListener> metricsListeners = new ArrayList<DTASelectMetricsListener>();
+	private ObjectName metricsMBeanName;
+	private int prefetchRemoteInputs = 0;
+	private long prefetchMaxSpoolBytes = 1024l * 1024 * 1024;
+	private File prefetchSpoolDirectory;
+	private InputStreamPrefetcher prefetcher;
+	private int decompressionThreads = Runtime.getRuntime().availableProcessors();
+	private boolean pipelineFiles = false;
+	// time of the phases measured within the current PSM, to not count it as
+	// assembly time
+	private long subPhasesTime;
+	private DTASelectModelRegistry modelRegistry = new ConcurrentModelRegistry();
+	// false if the registry was set by the user, so it may be shared
+	private boolean ownModelRegistry = true;
+	// the groups added by this parser, to be indexed
+	private final List<ProteinGroup> readProteinGroups = new ArrayList<ProteinGroup>();
+	// the number of groups of readProteinGroups already indexed
+	private int indexedProteinGroups = 0;
+	private boolean compactKeys = false;
+	// the PSMs read, and a PSM of each peptide, by the hash of their keys
+	private CompactKeyMap<PSM> psmKeys;
+	private CompactKeyMap<PSM> peptideKeys;
+	// the PSMs of psmKeys by identifier, built only when a PSM is requested by
+	// its identifier
+	private Map<String, PSM> psmsByIdentifier;
+	private int pipelineChunkSize = 2000;
+	private final List<DTASelectPSMFilter> psmFilters = new ArrayList<DTASelectPSMFilter>();
+	private final List<DTASelectProteinFilter> proteinFilters = new ArrayList<DTASelectProteinFilter>();
+	private boolean buildIndex = false;
+	private long aggregationMemoryBudget = 256l * 1024 * 1024;
+	private File spillDirectory;
+	private File indexDirectory;
+	// values at the beginning of the current call, to compute the increments
+	private long metricsStart;
+	private int dbIndexHitsStart;
+	private int dbIndexMissesStart;
+	private FileFilter watchedFileFilter = new FileFilter() {
+		@Override
+		public boolean accept(File file) {
+			return file.getName().toLowerCase().endsWith("dtaselect-filter.txt");
+		}
+	};
 
 	public DTASelectParser(URL u) throws IOException {
 		this(u.getFile(), u.openStream());
@@ -74,326 +177,1972 @@ public class DTASelectParser extends IdentificationsParser {
 
 	}
 
+	/**
+	 * Sets the number of threads used to read the input streams. If greater
+	 * than 1 and more than one input stream is provided, each stream is parsed
+	 * independently in a pool of that number of threads and the results are
+	 * merged in the same order in which they would be read sequentially, so the
+	 * result is the same than the one of the sequential parsing.
+	 *
+	 * @param numThreads
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("The number of threads should be at least 1");
+		}
+		this.numThreads = numThreads;
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
 	@Override
 	protected void process(boolean checkFormat) throws IOException {
-		final Set<String> psmIds = new THashSet<String>();
+		numDecoy = 0;
+		updateLocusResolver();
+		psmColumnStore = useColumnStore ? new DTASelectPSMColumnStore() : null;
+		lazyRows = lazyPSMs && !useColumnStore ? new DTASelectRowStore() : null;
+		if (dbIndex != null && (dbIndexLookups == null || dbIndexLookups.getDBIndex() != dbIndex
+				|| dbIndexLookups.getMaxSize() != dbIndexCacheSize)) {
+			dbIndexLookups = new DBIndexLookupCache(dbIndex, dbIndexCacheSize);
+		}
+		startMetrics();
+		startPrefetching();
+		try {
+			processInputs(checkFormat);
+		} finally {
+			stopPrefetching();
+			finishMetrics();
+		}
+	}
+
+	private void processInputs(boolean checkFormat) throws IOException {
+		readProteinGroups.clear();
+		indexedProteinGroups = 0;
+		psmsByIdentifier = null;
+		if (compactKeys) {
+			psmKeys = new CompactKeyMap<PSM>(
+					DTASelectKeys.spectrumKeys(isDistinguishModifiedSequences(), isChargeSensible()));
+			peptideKeys = new CompactKeyMap<PSM>(DTASelectKeys.peptideKeys(isDistinguishModifiedSequences(),
+					isChargeSensible(), isSeparatePeptidesByMSRun()));
+		} else {
+			psmKeys = null;
+			peptideKeys = null;
+		}
+		final DTASelectModelSink modelSink = new DTASelectModelSink(this, checkFormat);
+		final boolean batch = batchDBIndexLookups && dbIndex != null && !onlyReadProteins;
+		if (incremental && !checkFormat) {
+			if (!processIncrementally()) {
+				return;
+			}
+		} else if (pipelineFiles && numThreads > 1 && !checkFormat && !onlyReadParameters) {
+			if (!processPipelined(modelSink)) {
+				return;
+			}
+		} else if ((numThreads > 1 && fs.size() > 1 || batch) && !checkFormat && !onlyReadParameters) {
+			processInParallel(modelSink);
+		} else {
+			for (final String analysisID : fs.keySet()) {
+				modelSink.startStream(analysisID);
+				final boolean completed;
+				try {
+					completed = readStream(analysisID, modelSink);
+				} finally {
+					log.info(numDecoy + " proteins discarded as decoy.");
+				}
+				if (!completed) {
+					return;
+				}
+			}
+		}
+		processed = true;
+		indexProteinGroups();
+	}
+
+	void closeProteinGroup(ProteinGroup proteinGroup) {
+		addProteinGroup(proteinGroup);
+		readProteinGroups.add(proteinGroup);
+	}
+
+	/**
+	 * Indexes the protein groups read since the last call, once all their PSMs
+	 * are read, so that {@link DTASelectProtein#getIndexedProteinGroup()}
+	 * returns the index of the group of each protein. The groups indexed
+	 * before are indexed again only if they have proteins of the new groups,
+	 * since these proteins may have new PSMs.
+	 */
+	private void indexProteinGroups() {
+		final long start = metrics != null ? System.nanoTime() : 0;
+		final List<ProteinGroup> newGroups = readProteinGroups.subList(indexedProteinGroups,
+				readProteinGroups.size());
+		// the proteins of the new groups that were already in an indexed group
+		final Set<GroupableProtein> indexedProteins = new THashSet<GroupableProtein>();
+		for (final ProteinGroup proteinGroup : newGroups) {
+			for (final GroupableProtein protein : proteinGroup) {
+				if (protein instanceof DTASelectProtein
+						&& ((DTASelectProtein) protein).getIndexedProteinGroup() != null) {
+					indexedProteins.add(protein);
+				}
+			}
+		}
+		if (!indexedProteins.isEmpty()) {
+			for (final ProteinGroup proteinGroup : readProteinGroups.subList(0, indexedProteinGroups)) {
+				for (final GroupableProtein protein : proteinGroup) {
+					if (indexedProteins.contains(protein)) {
+						indexProteinGroup(proteinGroup);
+						break;
+					}
+				}
+			}
+		}
+		for (final ProteinGroup proteinGroup : newGroups) {
+			indexProteinGroup(proteinGroup);
+		}
+		indexedProteinGroups = readProteinGroups.size();
+		if (metrics != null) {
+			metrics.addTime(DTASelectParseMetrics.Phase.ASSEMBLY, System.nanoTime() - start);
+		}
+	}
+
+	static void indexProteinGroup(ProteinGroup proteinGroup) {
+		final IndexedProteinGroup indexedProteinGroup = new IndexedProteinGroup(proteinGroup);
+		for (final GroupableProtein protein : proteinGroup) {
+			if (protein instanceof DTASelectProtein) {
+				((DTASelectProtein) protein).setIndexedProteinGroup(indexedProteinGroup);
+			}
+		}
+	}
 
-		ProteinGroup currentProteinGroup = null;
-		final TObjectIntHashMap<String> psmHeaderPositions = new TObjectIntHashMap<String>();
-		final TObjectIntHashMap<String> proteinHeaderPositions = new TObjectIntHashMap<String>();
-		int numDecoy = 0;
+	/**
+	 * Reads the input streams keeping the position and the state of the reading
+	 * of each local file, so that {@link #refresh()} can continue reading them
+	 * later
+	 *
+	 * @return false if the reading was stopped before the end of the input
+	 * @throws IOException
+	 */
+	private boolean processIncrementally() throws IOException {
+		tailStates.clear();
 		for (final String analysisID : fs.keySet()) {
-			log.info("Reading input stream: " + analysisID + "...");
-			// if we only get proteins, because the protein's msRuns are coming
-			// from the PSMs, we need to assign them a fake msRun that is unique
-			// for each input stream
-			MSRun uniqueMSRun = null;
-			if (onlyReadProteins) {
-				uniqueMSRun = new MSRunEx(analysisID, null);
-			}
-			BufferedReader dis = null;
+			final File file = new File(analysisID);
+			// compressed files cannot be tailed, so they are read once
+			if (file.isFile() && !ParallelGzipInputStream.isGzip(file)) {
+				fs.get(analysisID).close();
+				final TailState tailState = new TailState(analysisID, file);
+				tailStates.put(analysisID, tailState);
+				if (!tail(tailState)) {
+					return false;
+				}
+			} else {
+				final DTASelectModelSink modelSink = new DTASelectModelSink(this, false);
+				modelSink.startStream(analysisID);
+				if (!readStream(analysisID, modelSink)) {
+					return false;
+				}
+			}
+		}
+		return tailNewFiles();
+	}
+
+	/**
+	 * Reads the lines appended to the local files since the last call to this
+	 * method (or since they were first read), and the files added to the
+	 * watched directories, adding the new proteins, PSMs and protein groups to
+	 * the ones already read. The content previously read is not read again.
+	 * <br>
+	 * The last protein group of a file is added when the next one starts or
+	 * when the summary at the end of the file is read.<br>
+	 * It requires the incremental mode enabled by
+	 * {@link #setIncremental(boolean)}. If the input was not read yet, it is
+	 * read entirely.
+	 *
+	 * @return the number of new protein groups
+	 * @throws IOException
+	 */
+	public int refresh() throws IOException {
+		if (!incremental) {
+			throw new IllegalStateException("The incremental mode is not enabled");
+		}
+		final int previousGroups = getProteinGroupsNumber();
+		if (!processed) {
+			process(false);
+		} else {
+			startMetrics();
 			try {
-				final InputStream f = fs.get(analysisID);
-				currentProteinGroup = new ProteinGroup();
-				final BufferedInputStream bis = new BufferedInputStream(f);
-				dis = new BufferedReader(new InputStreamReader(bis));
-
-				String line;
-				int numLine = 0;
-				int searchEngineLine = -1;
-				boolean intro = false;
-				boolean conclusion = false;
-				boolean isPsm = false;
-				boolean locusStarted = false;
-				while ((line = dis.readLine()) != null) {
-					numLine++;
-					if ("".equals(line.trim())) {
-						continue;
+				for (final TailState tailState : new ArrayList<TailState>(tailStates.values())) {
+					if (!tail(tailState)) {
+						break;
 					}
-					// if (numLine % 10 == 0) {
-					// log.info(numLine + " lines read");
-					// }
-					// log.info(line);
-					if (numLine == 1) {
-						dtaSelectVersion = line.split(" ")[1];
-					}
-					if (numLine == 2) {
-						runPath = line.trim();
+				}
+				tailNewFiles();
+				indexProteinGroups();
+			} finally {
+				finishMetrics();
+			}
+		}
+		final int newGroups = getProteinGroupsNumber() - previousGroups;
+		log.info(newGroups + " new protein groups read from " + tailStates.size() + " files");
+		return newGroups;
+	}
+
+	/**
+	 * Looks for new files in the watched directories and reads them
+	 *
+	 * @return false if the reading was stopped before the end of the input
+	 * @throws IOException
+	 */
+	private boolean tailNewFiles() throws IOException {
+		final List<File> files = new ArrayList<File>();
+		for (final File directory : watchedDirectories) {
+			addWatchedFiles(directory, files);
+		}
+		for (final File file : files) {
+			final String analysisID = file.getAbsolutePath();
+			if (!tailStates.containsKey(analysisID) && !fs.containsKey(analysisID)) {
+				log.info("New file found: " + analysisID);
+				if (ParallelGzipInputStream.isGzip(file)) {
+					fs.put(analysisID, new FileInputStream(file));
+					final DTASelectModelSink modelSink = new DTASelectModelSink(this, false);
+					modelSink.startStream(analysisID);
+					if (!readStream(analysisID, modelSink)) {
+						return false;
 					}
-					if (numLine == 3) {
-						fastaPath = line.trim();
+					continue;
+				}
+				final TailState tailState = new TailState(analysisID, file);
+				tailStates.put(analysisID, tailState);
+				if (!tail(tailState)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private void addWatchedFiles(File directory, List<File> files) {
+		final File[] children = directory.listFiles();
+		if (children == null) {
+			return;
+		}
+		Arrays.sort(children);
+		for (final File child : children) {
+			if (child.isDirectory()) {
+				addWatchedFiles(child, files);
+			} else if (watchedFileFilter.accept(child)) {
+				files.add(child);
+			}
+		}
+	}
+
+	/**
+	 * Reads the complete lines of the file after the position in which its
+	 * previous reading ended
+	 *
+	 * @param tailState
+	 * @return false if the reading was stopped by the sink
+	 * @throws IOException
+	 */
+	private boolean tail(TailState tailState) throws IOException {
+		if (tailState.completed) {
+			return true;
+		}
+		final long size = tailState.file.length();
+		if (size < tailState.position) {
+			log.warn(tailState.analysisID + " is smaller than when it was read. It will be ignored.");
+			tailState.completed = true;
+			return true;
+		}
+		if (size == tailState.position) {
+			return true;
+		}
+		log.debug("Reading " + tailState.analysisID + " from position " + tailState.position);
+		final MappedFileLineSource source = new MappedFileLineSource(tailState.file, tailState.position,
+				MappedFileLineSource.DEFAULT_WINDOW_SIZE);
+		source.setCompleteLinesOnly(true);
+		try {
+			final boolean completed = tailState.reader.readAvailable(source);
+			tailState.position = source.getPosition();
+			if (!completed) {
+				tailState.completed = true;
+				return false;
+			}
+			if (tailState.reader.isConclusion()) {
+				// nothing else is expected after the summary
+				tailState.completed = true;
+				tailState.sink.endOfStream();
+				inputRead(tailState.analysisID);
+			}
+			return true;
+		} finally {
+			source.close();
+			log.info(numDecoy + " proteins discarded as decoy.");
+		}
+	}
+
+	/**
+	 * If true, the local files are read keeping the position and the state of
+	 * the reading, so that the lines appended to them later, and the new files
+	 * in the watched directories, can be read by {@link #refresh()} and merged
+	 * into the proteins, PSMs and protein groups already read. In this mode the
+	 * files are read sequentially, memory-mapping them, and the cache is not
+	 * used. False by default.
+	 *
+	 * @param incremental
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * Adds a directory in which new DTASelect files are looked for, including
+	 * its subdirectories, when reading in incremental mode
+	 *
+	 * @param directory
+	 */
+	public void addWatchedDirectory(File directory) {
+		watchedDirectories.add(directory);
+	}
+
+	public List<File> getWatchedDirectories() {
+		return watchedDirectories;
+	}
+
+	/**
+	 * Sets the filter of the files in the watched directories that are read.
+	 * By default, the files whose name ends with 'DTASelect-filter.txt'.
+	 *
+	 * @param watchedFileFilter
+	 */
+	public void setWatchedFileFilter(FileFilter watchedFileFilter) {
+		this.watchedFileFilter = watchedFileFilter;
+	}
+
+	/**
+	 * Sets the maximum number of peptide sequences for which the proteins
+	 * returned by the dbIndex are kept in memory, so that the dbIndex is not
+	 * queried again for the same sequence. The least recently used sequences
+	 * are evicted first. 100000 by default. If 0, the lookups are not cached.
+	 *
+	 * @param dbIndexCacheSize
+	 */
+	public void setDBIndexCacheSize(int dbIndexCacheSize) {
+		if (dbIndexCacheSize < 0) {
+			throw new IllegalArgumentException("The size of the cache cannot be negative");
+		}
+		this.dbIndexCacheSize = dbIndexCacheSize;
+	}
+
+	public int getDBIndexCacheSize() {
+		return dbIndexCacheSize;
+	}
+
+	/**
+	 * If true and a dbIndex is provided, each input stream is read completely
+	 * before building the model, and the distinct peptide sequences in it are
+	 * looked up in the dbIndex at once, using the number of threads set by
+	 * {@link #setNumThreads(int)}, which requires a dbIndex that supports
+	 * concurrent lookups. False by default.
+	 *
+	 * @param batchDBIndexLookups
+	 */
+	public void setBatchDBIndexLookups(boolean batchDBIndexLookups) {
+		this.batchDBIndexLookups = batchDBIndexLookups;
+	}
+
+	public boolean isBatchDBIndexLookups() {
+		return batchDBIndexLookups;
+	}
+
+	/**
+	 * Gets the index of the PSMs read by this parser by MS run and scan
+	 * number. It is released together with the parser, or by calling to
+	 * {@link DTASelectPSMIndex#clear()}.
+	 *
+	 * @return
+	 */
+	public DTASelectPSMIndex getPSMIndex() {
+		return psmIndex;
+	}
+
+	/**
+	 * Reads all the input streams, delivering each protein group to the
+	 * listener as soon as it is complete, without keeping them in the parser,
+	 * so the memory used doesn't depend on the size of the input.<br>
+	 * Proteins and PSMs are only merged within the same protein group, so a PSM
+	 * that appears in several groups is delivered as a different object in each
+	 * one of them. The peptides are not shared between groups either. The
+	 * dbIndex, if provided, is not used in this mode.<br>
+	 * The information of the header of the files (version, command line
+	 * parameters, search engine...) is available in the parser after this
+	 * call.
+	 *
+	 * @param listener
+	 * @throws IOException
+	 */
+	public void stream(DTASelectStreamListener listener) throws IOException {
+		numDecoy = 0;
+		updateLocusResolver();
+		psmColumnStore = null;
+		lazyRows = null;
+		startMetrics();
+		startPrefetching();
+		try {
+			for (final String analysisID : fs.keySet()) {
+				try {
+					if (!readStream(analysisID, new DTASelectStreamingSink(this, analysisID, listener))) {
+						return;
 					}
-					if (line.length() >= SEQUEST.length()
-							&& SEQUEST.equalsIgnoreCase(line.substring(0, SEQUEST.length()))) {
-						searchEngineLine = numLine;
-						searchEngines.add(SEQUEST);
-						setSearchEngineVersion(line.split(" ")[1]);
-					} else if (line.length() >= PROLUCID.length()
-							&& PROLUCID.equalsIgnoreCase(line.substring(0, PROLUCID.length()))) {
-						searchEngineLine = numLine;
-						searchEngines.add(PROLUCID);
-						setSearchEngineVersion(line.split(" ")[1]);
-					} else if (line.startsWith("?")) {
-						searchEngineLine = numLine;
-						// searchEngines.add(UNKNOWN);
-						// if not known, report as SEQUEST as it is the most
-						// common
-						searchEngines.add(SEQUEST);
-						setSearchEngineVersion(line.split(" ")[1]);
-					} else if (searchEngineLine > -1 && numLine >= searchEngineLine + 1 && !locusStarted
-							&& !line.startsWith("Locus")) {
-						commandLineParameterStrings.add(line);
-						commandLineParameter = new DTASelectCommandLineParameters(line);
-						if (onlyReadParameters) {
-							return;
-						}
-					} else if (line.startsWith("DTASelect")) {
-						// DTASelectProtein p = new DTASelectProtein("DTA", 0,
-						// 0, 0,
-						// line);
-						// ptable.put("DTA", p);
-						intro = true;
-						continue;
-					} else if (line.startsWith("Locus")) {
-						locusStarted = true;
-						// parse psm header positions
-						final String[] splitted = line.split("\t");
-						for (int position = 0; position < splitted.length; position++) {
-							final String header = splitted[position];
-							proteinHeaderPositions.put(header, position);
-						}
-
-						// DTASelectProtein p = new DTASelectProtein("Title", 0,
-						// 0,
-						// 0,
-						// line);
-						// ptable.put("Title", p);
-						intro = false;
-						continue;
-					} else if (line.startsWith("Unique")) {
-						// parse psm header positions
-						final String[] splitted = line.split("\t");
-						for (int position = 0; position < splitted.length; position++) {
-							final String header = splitted[position];
-							psmHeaderPositions.put(header, position);
-						}
-
-						// DTASelectProtein p = new DTASelectProtein("Unique",
-						// 0, 0,
-						// 0, line);
-						// ptable.put("Unique", p);
-						continue;
+				} finally {
+					log.info(numDecoy + " proteins discarded as decoy.");
+				}
+			}
+		} finally {
+			stopPrefetching();
+			finishMetrics();
+		}
+	}
+
+	/**
+	 * Scans all the input streams, only counting their proteins, protein
+	 * groups, PSMs, sequences and MS runs, without creating any protein, PSM or
+	 * peptide, and without keeping anything in the parser. The local files are
+	 * always memory-mapped and the distinct values are counted by the hash of
+	 * their columns, so it runs at almost the speed of the disk.<br>
+	 * The filters of the parser are applied. The input streams are consumed, so
+	 * the parser cannot read them again afterwards.
+	 *
+	 * @return the summary of each input stream, by analysisID, in the order of
+	 *         the input streams
+	 * @throws IOException
+	 */
+	public Map<String, DTASelectFileSummary> summarize() throws IOException {
+		final Map<String, DTASelectFileSummary> ret = new LinkedHashMap<String, DTASelectFileSummary>();
+		updateLocusResolver();
+		startMetrics();
+		startPrefetching();
+		try {
+			for (final String analysisID : fs.keySet()) {
+				log.info("Summarizing input stream: " + analysisID + "...");
+				final DTASelectSummarySink sink = new DTASelectSummarySink(analysisID, locusResolver);
+				final DTASelectLineSource source = openLineSource(analysisID, true);
+				try {
+					new DTASelectStreamReader(filter(analysisID, sink), metrics).read(source);
+				} finally {
+					source.close();
+				}
+				inputRead(analysisID);
+				ret.put(analysisID, sink.getSummary());
+				log.info(sink.getSummary());
+			}
+		} finally {
+			stopPrefetching();
+			finishMetrics();
+		}
+		return ret;
+	}
+
+	/**
+	 * Reads all the input streams and delivers each distinct PSM and protein
+	 * to the listener once, with the keys of the proteins and PSMs with which
+	 * they appear, without keeping them in the parser, so that inputs larger
+	 * than the memory can be aggregated.<br>
+	 * The PSM and protein rows are kept in memory, as text, until their size
+	 * reaches the budget of {@link #setAggregationMemoryBudget(long)}, when
+	 * they are sorted by key and written to a temporary file. The key of a PSM
+	 * row is made of its columns, with the same values than the identifier of
+	 * the PSM. At the end, the temporary files are merged by key, and the
+	 * first row of each PSM and protein is converted into an object, as the
+	 * in-memory parsing does, so
+	 * the PSMs and proteins are the same than the ones of the in-memory
+	 * parsing, except that they are not linked to each other nor to
+	 * peptides. The dbIndex and the cache are not
+	 * used in this mode, and the filters of the parser are applied.<br>
+	 * The information of the header of the files is available in the parser
+	 * after this call.
+	 *
+	 * @param listener
+	 * @throws IOException
+	 */
+	public void aggregate(DTASelectAggregationListener listener) throws IOException {
+		numDecoy = 0;
+		updateLocusResolver();
+		psmColumnStore = null;
+		lazyRows = null;
+		startMetrics();
+		startPrefetching();
+		final ExternalSorter psmSorter = new ExternalSorter(aggregationMemoryBudget / 2, spillDirectory);
+		final ExternalSorter proteinSorter = new ExternalSorter(aggregationMemoryBudget / 4, spillDirectory);
+		// the identifiers of the PSMs of each protein, by accession
+		final ExternalSorter proteinPSMSorter = new ExternalSorter(aggregationMemoryBudget / 4, spillDirectory);
+		try {
+			final List<DTASelectAggregatingSink> sinks = new ArrayList<DTASelectAggregatingSink>();
+			for (final String analysisID : fs.keySet()) {
+				log.info("Aggregating input stream: " + analysisID + "...");
+				final DTASelectAggregatingSink sink = new DTASelectAggregatingSink(this, sinks.size(), psmSorter,
+						proteinSorter, isDistinguishModifiedSequences(), isChargeSensible());
+				final DTASelectLineSource source = openLineSource(analysisID);
+				try {
+					new DTASelectStreamReader(filter(analysisID, sink), metrics).read(source);
+				} finally {
+					source.close();
+				}
+				sink.closeGroup();
+				sinks.add(sink);
+				inputRead(analysisID);
+			}
+			log.info(numDecoy + " proteins discarded as decoy.");
+			stopPrefetching();
+			psmSorter.sort();
+			final DTASelectRow row = new DTASelectRow();
+			ExternalSorter.Record record = psmSorter.next();
+			while (record != null) {
+				final String key = record.getKey();
+				final String[] values = record.getValues();
+				final DTASelectAggregatingSink sink = sinks.get(Integer.valueOf(values[0]));
+				final DTASelectPSM psm = createPSM(row.reset(values[1]), sink.getPSMSchema(), sink.getStreamRunPath());
+				if (!searchEngines.isEmpty()) {
+					psm.setSearchEngine(searchEngines.iterator().next());
+				}
+				final Set<String> accessions = new LinkedHashSet<String>();
+				while (record != null && record.getKey().equals(key)) {
+					split(record.getValues()[2], accessions);
+					record = psmSorter.next();
+				}
+				listener.onPSM(psm, accessions);
+				for (final String accession : accessions) {
+					proteinPSMSorter.add(accession, psm.getIdentifier());
+				}
+			}
+			proteinSorter.sort();
+			proteinPSMSorter.sort();
+			ExternalSorter.Record proteinPSM = proteinPSMSorter.next();
+			record = proteinSorter.next();
+			while (record != null) {
+				final String accession = record.getKey();
+				final String[] values = record.getValues();
+				final DTASelectAggregatingSink sink = sinks.get(Integer.valueOf(values[0]));
+				final DTASelectProtein protein = createProtein(row.reset(values[1]), sink.getProteinSchema());
+				if (!searchEngines.isEmpty()) {
+					protein.setSearchEngine(searchEngines.iterator().next());
+				}
+				while (record != null && record.getKey().equals(accession)) {
+					record = proteinSorter.next();
+				}
+				final Set<String> psmIdentifiers = new LinkedHashSet<String>();
+				while (proteinPSM != null && proteinPSM.getKey().compareTo(accession) <= 0) {
+					if (proteinPSM.getKey().equals(accession)) {
+						psmIdentifiers.add(proteinPSM.getValues()[0]);
 					}
-					if (intro) {
-						if (line.contains("Remove subset proteins")) {
-							final String[] splitted = line.split("\t");
-							if ("TRUE".equals(splitted[0])) {
-							}
-						}
-						// DTASelectProtein p = ptable.get("DTA");
-						// p.addExtra(line);
-						continue;
+					proteinPSM = proteinPSMSorter.next();
+				}
+				listener.onProtein(protein, psmIdentifiers);
+			}
+		} finally {
+			psmSorter.close();
+			proteinSorter.close();
+			proteinPSMSorter.close();
+			stopPrefetching();
+			finishMetrics();
+		}
+	}
+
+	private static void split(String joined, Set<String> values) {
+		if (!joined.isEmpty()) {
+			values.addAll(Arrays.asList(joined.split("\t")));
+		}
+	}
+
+	/**
+	 * Sets the estimated memory, in bytes, used to keep the rows read by
+	 * {@link #aggregate(DTASelectAggregationListener)} before writing them to
+	 * temporary files. 256MB by default.
+	 *
+	 * @param aggregationMemoryBudget
+	 */
+	public void setAggregationMemoryBudget(long aggregationMemoryBudget) {
+		this.aggregationMemoryBudget = aggregationMemoryBudget;
+	}
+
+	public long getAggregationMemoryBudget() {
+		return aggregationMemoryBudget;
+	}
+
+	/**
+	 * Sets the folder of the temporary files of
+	 * {@link #aggregate(DTASelectAggregationListener)}. If null, which is the
+	 * default, the default temporary folder is used.
+	 *
+	 * @param spillDirectory
+	 */
+	public void setSpillDirectory(File spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+
+	public File getSpillDirectory() {
+		return spillDirectory;
+	}
+
+	/**
+	 * Reads the input stream with that analysisID, sending its lines to the
+	 * sink
+	 *
+	 * @param analysisID
+	 * @param sink
+	 * @return false if the sink stopped the reading before the end of the
+	 *         stream
+	 * @throws IOException
+	 */
+	private boolean readStream(String analysisID, DTASelectParsedRowSink sink) throws IOException {
+		log.info("Reading input stream: " + analysisID + "...");
+		DTASelectRowSink rowSink = filter(analysisID, sink);
+		final boolean indexing = buildIndex && needsIndex(analysisID);
+		final DTASelectCache cache = getCache(analysisID);
+		DataOutputStream cacheOutput = null;
+		DTASelectCachingSink cachingSink = null;
+		if (cache != null) {
+			// the file has to be read to be indexed
+			final DataInputStream cacheInput = indexing ? null : cache.openForReading();
+			if (cacheInput != null) {
+				log.info("Reading from cache file " + cache.getCacheFile().getAbsolutePath());
+				fs.get(analysisID).close();
+				// there are no filters when the cache is used
+				final boolean completed = readCache(cacheInput, sink);
+				if (completed) {
+					inputRead(analysisID);
+				}
+				return completed;
+			}
+			cacheOutput = cache.openForWriting();
+			cachingSink = new DTASelectCachingSink(rowSink, cacheOutput, locusResolver);
+			rowSink = cachingSink;
+		}
+		DTASelectLineSource source = null;
+		boolean completed = false;
+		try {
+			source = openLineSource(analysisID, memoryMapLocalFiles || indexing);
+			DTASelectFileIndex fileIndex = null;
+			if (indexing) {
+				if (source instanceof MappedFileLineSource) {
+					fileIndex = new DTASelectFileIndex(new File(analysisID), partialCacheChecksum);
+					rowSink = new DTASelectIndexingSink(rowSink, (MappedFileLineSource) source, fileIndex);
+				} else {
+					log.info(analysisID + " cannot be indexed because it is compressed");
+				}
+			}
+			completed = new DTASelectStreamReader(rowSink, metrics).read(source);
+			if (completed) {
+				inputRead(analysisID);
+				if (fileIndex != null) {
+					try {
+						fileIndex.write(indexDirectory);
+					} catch (final IOException e) {
+						log.warn("Error creating index file of " + analysisID + ": " + e.getMessage());
 					}
-					if (conclusion) {
-						// DTASelectProtein p = ptable.get("Conclusion");
-						// p.addExtra(line);
-						continue;
+				}
+			}
+			return completed;
+		} catch (final IOException e) {
+			log.error(e.getMessage(), e);
+			throw e;
+		} finally {
+			try {
+				if (source != null) {
+					log.debug("Closing input stream");
+					source.close();
+					log.debug("Input stream closed");
+
+				}
+			} catch (final IOException e) {
+				log.error(e.getMessage(), e);
+			}
+			if (cacheOutput != null) {
+				if (completed && !cachingSink.isFailed()) {
+					try {
+						cache.commit(cacheOutput);
+					} catch (final IOException e) {
+						log.warn("Error creating cache file: " + e.getMessage());
+						cache.discard(cacheOutput);
 					}
+				} else {
+					cache.discard(cacheOutput);
+				}
+			}
+		}
+	}
 
-					final String[] elements = line.split("\t");
-					// if (elements[1].equals("DTASelectProteins")) {
-					if (elements[1].equals("Proteins")) {
-						conclusion = true;
-						// DTASelectProtein p = new
-						// DTASelectProtein("Conclusion",
-						// 0,
-						// 0, 0, line);
-						// ptable.put("Conclusion", p);
-						continue;
+	/**
+	 * Gets the cache of the input stream with that analysisID if the cache is
+	 * enabled, the input stream is a local file and no dbIndex is used, since
+	 * the result of using a dbIndex depends on its content. The cache is not
+	 * used either when there are row filters, since they are evaluated on the
+	 * rows of the text file
+	 *
+	 * @param analysisID
+	 * @return
+	 * @throws IOException
+	 */
+	private DTASelectCache getCache(String analysisID) throws IOException {
+		if (!useCache || dbIndex != null || !psmFilters.isEmpty() || !proteinFilters.isEmpty()) {
+			return null;
+		}
+		final File file = new File(analysisID);
+		if (!file.isFile()) {
+			return null;
+		}
+		final String options = isDistinguishModifiedSequences() + "|" + isChargeSensible() + "|" + ignoreACCFormat
+				+ "|" + (decoyPattern != null ? decoyPattern.pattern() : "");
+		return new DTASelectCache(file, cacheDirectory, options, partialCacheChecksum);
+	}
+
+	/**
+	 * Sends the records of a cache file to the sink
+	 *
+	 * @param in
+	 * @param sink
+	 * @return false if the sink stopped the reading before the end of the
+	 *         cache
+	 * @throws IOException
+	 */
+	private boolean readCache(DataInputStream in, DTASelectParsedRowSink sink) throws IOException {
+		try {
+			String streamRunPath = null;
+			while (true) {
+				final byte tag = in.readByte();
+				switch (tag) {
+				case DTASelectCache.VERSION:
+					sink.dtaSelectVersion(in.readUTF());
+					break;
+				case DTASelectCache.RUN_PATH:
+					streamRunPath = in.readUTF();
+					sink.runPath(streamRunPath);
+					break;
+				case DTASelectCache.FASTA_PATH:
+					sink.fastaPath(in.readUTF());
+					break;
+				case DTASelectCache.SEARCH_ENGINE:
+					sink.searchEngine(in.readUTF(), in.readUTF());
+					break;
+				case DTASelectCache.PARAMETERS:
+					if (!sink.commandLineParameters(in.readUTF())) {
+						return false;
+					}
+					break;
+				case DTASelectCache.PROTEIN_HEADER:
+					sink.proteinHeader(in.readUTF());
+					break;
+				case DTASelectCache.PSM_HEADER:
+					sink.psmHeader(in.readUTF());
+					break;
+				case DTASelectCache.PROTEIN:
+					if (metrics != null) {
+						metrics.protein();
+					}
+					final String accession = in.readUTF();
+					final boolean decoy = in.readBoolean();
+					sink.parsedProtein(accession, decoy, decoy ? null : new DTASelectProtein(in, locusResolver));
+					break;
+				case DTASelectCache.PSM:
+					if (metrics != null) {
+						metrics.psm();
+					}
+					final DTASelectPSM psm = new DTASelectPSM(in, streamRunPath, isDistinguishModifiedSequences(),
+							isChargeSensible(), psmColumnStore, modelRegistry);
+					if (!sink.parsedPSM(psm)) {
+						return false;
 					}
+					break;
+				case DTASelectCache.END:
+					sink.endOfStream();
+					return true;
+				default:
+					throw new IOException("Invalid cache file: unknown record " + tag);
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
 
-					// this is the case of a protein
-					if (isNumeric(elements[1])) {
-						// log.info(line);
-						// if comes from a psm line, clear the current group of
-						// proteins
-						if (isPsm) {
-							addProteinGroup(currentProteinGroup);
-
-							// restart the protein group
-							currentProteinGroup = new ProteinGroup();
-
-						}
-						String acc = line.split("\t")[proteinHeaderPositions.get(DTASelectProtein.LOCUS)];
-						if (!ignoreACCFormat) {
-							acc = FastaParser.getACC(acc).getAccession();
-						}
-						boolean skip = false;
-						if (decoyPattern != null) {
-							final Matcher matcher = decoyPattern.matcher(acc);
-							if (matcher.find()) {
-								numDecoy++;
-								skip = true;
-							}
-						}
-						if (!skip) {
-							Protein p;
-							if (containsProteinByAccession(acc)) {
-								p = getProteinByAccession(acc);
-							} else {
-								p = new DTASelectProtein(line, proteinHeaderPositions, ignoreACCFormat);
-							}
-							if (!searchEngines.isEmpty()) {
-								p.setSearchEngine(searchEngines.iterator().next());
-							}
-
-							addProteinToMapAndList(p);
-							currentProteinGroup.add(p);
-						}
-
-						isPsm = false;
-					} else {
-						// log.info(line);
-
-						// this is the case of a psm
-						isPsm = true;
-						if (onlyReadProteins) {
-							// if I only need proteins, because they get the
-							// msRuns from their PSMs, we have to add them a
-							// fake msRun for the entire collection of proteins
-							// here
-							for (final GroupableProtein protein : currentProteinGroup) {
-								((Protein) protein).addMSRun(uniqueMSRun);
-							}
-							continue;
-						}
-
-						PSM psm = new DTASelectPSM(line, psmHeaderPositions, runPath, isDistinguishModifiedSequences(),
-								isChargeSensible());
-						if (super.containsPSMByPSMID(psm.getIdentifier())) {
-							psm = super.getPSMByPSMID(psm.getIdentifier());
-						}
-						addPSMToMaps(psm);
-						if (!searchEngines.isEmpty()) {
-							psm.setSearchEngine(searchEngines.iterator().next());
-						}
-						if (!spectraFileNames.contains(psm.getMSRun().getRunId())) {
-							spectraFileNames.add(psm.getMSRun().getRunId());
-							log.debug(psm.getMSRun().getRunId() + " added to a set of " + spectraFileNames.size()
-									+ " spectra file names in total");
-						}
-						final String spectraFileFullPath = new File(analysisID).getParent() + File.separator
-								+ psm.getMSRun().getRunId() + ".ms2";
-						if (!spectraFileFullPaths.contains(spectraFileFullPath)) {
-							spectraFileFullPaths.add(spectraFileFullPath);
-							log.debug(spectraFileFullPath + " added to a set of " + spectraFileFullPaths.size()
-									+ " spectra paths in total");
-						}
-						// create the peptide
-						Peptide peptide = null;
-						final String peptideKey = KeyUtils.getInstance().getSequenceChargeKey(psm,
-								isDistinguishModifiedSequences(), isChargeSensible());
-//psm.getMSRun()
-						MSRun run = null;
-						if (isSeparatePeptidesByMSRun()) {
-							run = psm.getMSRun();
-						}
-						if (StaticProteomicsModelStorage.containsPeptide(run, null, peptideKey)) {
-							peptide = StaticProteomicsModelStorage.getSinglePeptide(run, null, peptideKey);
-						} else {
-							peptide = new PeptideEx(psm.getFullSequence(), peptideKey);
-							StaticProteomicsModelStorage.addPeptide(peptide, run, null, peptideKey);
-							peptide.setSearchEngine(psm.getSearchEngine());
-							peptide.addMSRun(psm.getMSRun());
-						}
-						psm.setPeptide(peptide, true);
-						addPeptide(peptide);
-						if (dbIndex != null) {
-							final Set<IndexedProtein> indexedProteins = dbIndex.getProteins(psm.getSequence());
-							if (indexedProteins.isEmpty()) {
-								if (!ignoreNotFoundPeptidesInDB) {
-									throw new PeptideNotFoundInDBIndexException("The peptide " + psm.getSequence()
-											+ " is not found in Fasta DB.\nReview the default indexing parameters such as the number of allowed misscleavages.");
-								}
-							}
-							if (indexedProteins != null) {
-								log.debug(indexedProteins.size() + " proteins contains " + psm.getSequence()
-										+ " on fasta file");
-								for (final IndexedProtein indexedProtein : indexedProteins) {
-									final String indexedAccession = indexedProtein.getAccession();
-									// we should take into account that in
-									// the
-									// indexed database you may have decoy
-									// hits
-									// that you want to avoid
-									if (decoyPattern != null) {
-										final Matcher matcher = decoyPattern.matcher(indexedAccession);
-										if (matcher.find()) {
-											numDecoy++;
-											continue;
-										}
-									}
-									Protein protein = null;
-									if (super.containsProteinByAccession(indexedAccession)) {
-										protein = super.getProteinByAccession(indexedAccession);
-									} else {
-										protein = new DTASelectProtein(indexedProtein, ignoreACCFormat);
-										addProteinToMapAndList(protein);
-									}
-									// add the psm to the protein and
-									// vice-versa
-									psm.addProtein(protein, true);
-									peptide.addProtein(protein, true);
-								}
-							}
-						}
-
-						if (dbIndex == null || psm.getProteins().isEmpty()) {
-							// add the PSM to all the proteins in the current
-							// group and all the proteins to the psm
-							for (final GroupableProtein prot : currentProteinGroup) {
-								((Protein) prot).addPSM(psm, true);
-								((Protein) prot).addPeptide(peptide, true);
-							}
-						}
-						if (checkFormat) {
-							// just return with no errors
-							return;
-						}
+	/**
+	 * If true, the result of parsing each local file is stored in a binary
+	 * cache file, which is read instead of the DTASelect file the next time the
+	 * same file is parsed with the same options. The cache is not used when a
+	 * dbIndex is provided. False by default.
+	 *
+	 * @param useCache
+	 */
+	public void setUseCache(boolean useCache) {
+		this.useCache = useCache;
+	}
+
+	public boolean isUseCache() {
+		return useCache;
+	}
+
+	/**
+	 * Sets the folder in which the cache files are stored. If null, which is
+	 * the default, they are stored next to the DTASelect files.
+	 *
+	 * @param cacheDirectory
+	 */
+	public void setCacheDirectory(File cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	public File getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	/**
+	 * If true, a cache or index file is considered valid when the path, the
+	 * size, the modification time and the checksum of the first and last 64KB
+	 * of the DTASelect file are the same, instead of the checksum of the whole
+	 * file, so that it is validated without reading the DTASelect file. The
+	 * risk is that a DTASelect file changed only in the middle, keeping its
+	 * size and its modification time, is read from an outdated cache or
+	 * queried with an outdated index. False by default.
+	 *
+	 * @param partialCacheChecksum
+	 */
+	public void setPartialCacheChecksum(boolean partialCacheChecksum) {
+		this.partialCacheChecksum = partialCacheChecksum;
+	}
+
+	public boolean isPartialCacheChecksum() {
+		return partialCacheChecksum;
+	}
+
+	/**
+	 * If true, an index file is created next to each local DTASelect file that
+	 * is read and doesn't have one yet, with the position of the protein group
+	 * of each locus and of the PSM rows of each spectrum. The files are then
+	 * read by memory-mapping them, and the cache is not read for the files that
+	 * have to be indexed. Compressed files are not indexed. The index is used
+	 * by {@link #getFileIndex(File)},
+	 * {@link #queryProteinGroups(DTASelectFileIndex, String, DTASelectStreamListener)}
+	 * and {@link #queryPSMs(DTASelectFileIndex, String, String, int)}. False by
+	 * default.
+	 *
+	 * @param buildIndex
+	 */
+	public void setBuildIndex(boolean buildIndex) {
+		this.buildIndex = buildIndex;
+	}
+
+	public boolean isBuildIndex() {
+		return buildIndex;
+	}
+
+	/**
+	 * Sets the folder in which the index files are stored. If null, which is
+	 * the default, they are stored next to the DTASelect files.
+	 *
+	 * @param indexDirectory
+	 */
+	public void setIndexDirectory(File indexDirectory) {
+		this.indexDirectory = indexDirectory;
+	}
+
+	public File getIndexDirectory() {
+		return indexDirectory;
+	}
+
+	private boolean needsIndex(String analysisID) {
+		final File file = new File(analysisID);
+		return file.isFile() && !DTASelectFileIndex.exists(file, indexDirectory, partialCacheChecksum);
+	}
+
+	/**
+	 *
+	 * @param file a DTASelect file
+	 * @return the index of the file, from the folder of
+	 *         {@link #setIndexDirectory(File)}, or null if the file has no
+	 *         valid index
+	 * @throws IOException
+	 */
+	public DTASelectFileIndex getFileIndex(File file) throws IOException {
+		return DTASelectFileIndex.load(file, indexDirectory, partialCacheChecksum);
+	}
+
+	/**
+	 * Reads from an indexed file only the protein groups in which a locus
+	 * appears, delivering them to the listener as {@link #stream(DTASelectStreamListener)}
+	 * does. The filters of the parser are applied.
+	 *
+	 * @param index
+	 * @param locus    the locus, as in the 'Locus' column
+	 * @param listener
+	 * @throws IOException
+	 */
+	public void queryProteinGroups(DTASelectFileIndex index, String locus, DTASelectStreamListener listener)
+			throws IOException {
+		updateLocusResolver();
+		final long[] blocks = index.getProteinGroupBlocks(locus);
+		final String analysisID = index.getFile().getAbsolutePath();
+		final DTASelectStreamingSink streamingSink = new DTASelectStreamingSink(this, analysisID, listener);
+		streamingSink.setStreamRunPath(index.getRunPath());
+		final DTASelectRowSink sink = filter(analysisID, streamingSink);
+		sink.proteinHeader(index.getProteinHeader());
+		sink.psmHeader(index.getPSMHeader());
+		final DTASelectStreamReader reader = new DTASelectStreamReader(sink, metrics);
+		final MappedFileLineSource source = new MappedFileLineSource(index.getFile());
+		try {
+			for (int i = 0; i < blocks.length; i += 2) {
+				source.seek(blocks[i]);
+				CharSequence line;
+				while (source.getPosition() < blocks[i + 1] && (line = source.readLine()) != null) {
+					if (!DTASelectStreamReader.isBlank(line) && !reader.processRow(line)) {
+						return;
 					}
+				}
+			}
+		} finally {
+			source.close();
+		}
+		sink.endOfStream();
+	}
 
+	/**
+	 * Reads from an indexed file only the PSMs of a spectrum, without their
+	 * proteins. The PSM filters of the parser are applied.
+	 *
+	 * @param index
+	 * @param runId  the name of the MS run, as in the 'FileName' column
+	 * @param scan   the scan number
+	 * @param charge the charge state
+	 * @return the PSMs of the spectrum, once each one even if they appear in
+	 *         several protein groups
+	 * @throws IOException
+	 */
+	public List<DTASelectPSM> queryPSMs(DTASelectFileIndex index, String runId, String scan, int charge)
+			throws IOException {
+		final long[] positions = index.getPSMRows(runId, scan, charge);
+		final Map<String, DTASelectPSM> ret = new LinkedHashMap<String, DTASelectPSM>();
+		if (positions.length == 0) {
+			return new ArrayList<DTASelectPSM>();
+		}
+		final DTASelectPSMSchema psmSchema = DTASelectPSMSchema.parse(index.getPSMHeader());
+		final DTASelectRow row = new DTASelectRow();
+		final MappedFileLineSource source = new MappedFileLineSource(index.getFile());
+		try {
+			for (final long position : positions) {
+				source.seek(position);
+				final CharSequence line = source.readLine();
+				if (line == null) {
+					throw new IOException("Invalid index of " + index.getFile().getAbsolutePath()
+							+ ": no PSM row at position " + position);
 				}
-				if (dbIndex == null) {
-					super.addProteinGroup(currentProteinGroup);
-					log.info(super.getProteinGroupsNumber() + " proteins groups read in " + fs.size()
-							+ " DTASelect file(s).");
+				row.reset(line);
+				if (!accept(row, psmSchema)) {
+					continue;
 				}
-			} catch (final IOException e) {
-				e.printStackTrace();
-				log.error(e.getMessage());
-				throw e;
-			} catch (final DBIndexStoreException e) {
-				e.printStackTrace();
-				log.error(e.getMessage());
-				throw new IOException(e);
+				final DTASelectPSM psm = createPSM(row, psmSchema, index.getRunPath());
+				if (!ret.containsKey(psm.getIdentifier())) {
+					ret.put(psm.getIdentifier(), psm);
+				}
+			}
+		} finally {
+			source.close();
+		}
+		return new ArrayList<DTASelectPSM>(ret.values());
+	}
+
+	boolean accept(DTASelectRow row, DTASelectPSMSchema psmSchema) {
+		for (final DTASelectPSMFilter psmFilter : psmFilters) {
+			if (!psmFilter.accept(row, psmSchema)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	boolean accept(DTASelectRow row, DTASelectProteinSchema proteinSchema) {
+		for (final DTASelectProteinFilter proteinFilter : proteinFilters) {
+			if (!proteinFilter.accept(row, proteinSchema)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes a copy of a DTASelect file with only the protein groups and PSM
+	 * rows accepted by the filters of the parser, without creating any protein
+	 * or PSM. The groups without accepted proteins or without accepted PSMs are
+	 * not written. The rest of the file (header, parameters and summary at the
+	 * end) is copied as it is, so the summary is the one of the original
+	 * file.<br>
+	 * The file is memory-mapped to find the rows, and the selected bytes are
+	 * copied from the file to the output, including their line terminators, in
+	 * runs as long as possible.
+	 *
+	 * @param input an uncompressed DTASelect file
+	 * @param out   where to write the copy, which is not closed
+	 * @throws IOException
+	 */
+	public void writeFiltered(File input, OutputStream out) throws IOException {
+		if (ParallelGzipInputStream.isGzip(input)) {
+			throw new IllegalArgumentException(input.getAbsolutePath() + " is compressed");
+		}
+		log.info("Writing filtered copy of " + input.getAbsolutePath() + "...");
+		final WritableByteChannel output = out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel()
+				: Channels.newChannel(out);
+		final MappedFileLineSource source = new MappedFileLineSource(input);
+		try {
+			final RandomAccessFile file = new RandomAccessFile(input, "r");
+			try {
+				final DTASelectWritingSink sink = new DTASelectWritingSink(this, source, file.getChannel(), output);
+				sink.copyLines(new DTASelectStreamReader(sink, metrics));
+				sink.logCounts(input.getAbsolutePath());
 			} finally {
-				log.info(numDecoy + " proteins discarded as decoy.");
+				file.close();
+			}
+		} finally {
+			source.close();
+		}
+	}
+
+	/**
+	 * Opens the lines of the input stream with that analysisID, decompressing
+	 * it in the background if it is gzipped, or memory-mapping the file if it
+	 * is a local file and {@link #setMemoryMapLocalFiles(boolean)} is enabled
+	 *
+	 * @param analysisID
+	 * @return
+	 * @throws IOException
+	 */
+	private DTASelectLineSource openLineSource(String analysisID) throws IOException {
+		return openLineSource(analysisID, memoryMapLocalFiles);
+	}
+
+	private DTASelectLineSource openLineSource(String analysisID, boolean memoryMapLocalFiles) throws IOException {
+		final InputStream f = prefetcher != null && prefetcher.contains(analysisID) ? prefetcher.open(analysisID)
+				: fs.get(analysisID);
+		final BufferedInputStream bis = new BufferedInputStream(f);
+		if (ParallelGzipInputStream.isGzip(bis)) {
+			log.debug("Decompressing " + analysisID);
+			final InputStream gzip = new ParallelGzipInputStream(bis, decompressionThreads);
+			return new BufferedReaderLineSource(gzip);
+		}
+		if (memoryMapLocalFiles) {
+			final File file = new File(analysisID);
+			if (file.isFile()) {
+				log.debug("Memory-mapping " + file.getAbsolutePath());
+				bis.close();
+				return new MappedFileLineSource(file);
+			}
+		}
+		return new BufferedReaderLineSource(bis);
+	}
+
+	/**
+	 * Starts downloading the remote input streams in the background, if
+	 * {@link #setPrefetchRemoteInputs(int)} is enabled and there is more than
+	 * one input stream
+	 */
+	private void startPrefetching() {
+		if (prefetchRemoteInputs < 1 || fs.size() < 2) {
+			return;
+		}
+		final List<String> remoteIDs = new ArrayList<String>();
+		for (final String analysisID : fs.keySet()) {
+			if (!new File(analysisID).isFile()) {
+				remoteIDs.add(analysisID);
+			}
+		}
+		if (!remoteIDs.isEmpty()) {
+			log.info("Prefetching " + remoteIDs.size() + " remote input streams, " + prefetchRemoteInputs
+					+ " at a time...");
+			prefetcher = new InputStreamPrefetcher(remoteIDs, fs, prefetchRemoteInputs, prefetchMaxSpoolBytes,
+					prefetchSpoolDirectory);
+		}
+	}
+
+	private void stopPrefetching() {
+		if (prefetcher != null) {
+			prefetcher.close();
+			prefetcher = null;
+		}
+	}
+
+	/**
+	 * Sets the number of remote input streams (the ones that are not local
+	 * files, such as the ones of {@link RemoteSSHFileReference}s) that are
+	 * downloaded at the same time into temporary local files, in the order in
+	 * which they are going to be read, while the previous ones are being
+	 * parsed. If 0, which is the default, each remote stream is parsed as it is
+	 * downloaded.
+	 *
+	 * @param prefetchRemoteInputs
+	 */
+	public void setPrefetchRemoteInputs(int prefetchRemoteInputs) {
+		if (prefetchRemoteInputs < 0) {
+			throw new IllegalArgumentException("The number of prefetched inputs cannot be negative");
+		}
+		this.prefetchRemoteInputs = prefetchRemoteInputs;
+	}
+
+	public int getPrefetchRemoteInputs() {
+		return prefetchRemoteInputs;
+	}
+
+	/**
+	 * Sets the maximum number of bytes of the remote input streams that are
+	 * downloaded and not parsed yet. When it is reached, the downloads wait
+	 * until the files already downloaded are parsed. 1GB by default.
+	 *
+	 * @param prefetchMaxSpoolBytes
+	 */
+	public void setPrefetchMaxSpoolBytes(long prefetchMaxSpoolBytes) {
+		this.prefetchMaxSpoolBytes = prefetchMaxSpoolBytes;
+	}
+
+	public long getPrefetchMaxSpoolBytes() {
+		return prefetchMaxSpoolBytes;
+	}
+
+	/**
+	 * Sets the folder of the temporary files of the prefetched remote input
+	 * streams. If null, which is the default, the default temporary folder is
+	 * used.
+	 *
+	 * @param prefetchSpoolDirectory
+	 */
+	public void setPrefetchSpoolDirectory(File prefetchSpoolDirectory) {
+		this.prefetchSpoolDirectory = prefetchSpoolDirectory;
+	}
+
+	public File getPrefetchSpoolDirectory() {
+		return prefetchSpoolDirectory;
+	}
+
+	/**
+	 * Sets the number of threads that inflate the blocks of the block-gzipped
+	 * (BGZF) input streams. Gzipped input streams are detected and decompressed
+	 * in a background thread while they are parsed, and if they are
+	 * block-gzipped, their blocks are inflated in parallel using that number of
+	 * threads. By default, the number of available processors.
+	 *
+	 * @param decompressionThreads
+	 */
+	public void setDecompressionThreads(int decompressionThreads) {
+		if (decompressionThreads < 1) {
+			throw new IllegalArgumentException("The number of threads should be at least 1");
+		}
+		this.decompressionThreads = decompressionThreads;
+	}
+
+	public int getDecompressionThreads() {
+		return decompressionThreads;
+	}
+
+	/**
+	 * If true, and the number of threads set by {@link #setNumThreads(int)} is
+	 * greater than 1, each input stream is cut into chunks of whole protein
+	 * groups, whose protein and PSM objects are created in parallel, and that
+	 * are merged into the parser in the order of the stream, so the result is
+	 * the same than the one of the sequential parsing. Useful for large input
+	 * streams. The input streams are read one after the other. False by
+	 * default.
+	 *
+	 * @param pipelineFiles
+	 */
+	public void setPipelineFiles(boolean pipelineFiles) {
+		this.pipelineFiles = pipelineFiles;
+	}
+
+	public boolean isPipelineFiles() {
+		return pipelineFiles;
+	}
+
+	/**
+	 * Sets the minimum number of lines of the chunks in which the input
+	 * streams are cut when {@link #setPipelineFiles(boolean)} is enabled. The
+	 * chunks are only cut where a protein group starts. 2000 by default.
+	 *
+	 * @param pipelineChunkSize
+	 */
+	public void setPipelineChunkSize(int pipelineChunkSize) {
+		if (pipelineChunkSize < 1) {
+			throw new IllegalArgumentException("The size of the chunks should be at least 1");
+		}
+		this.pipelineChunkSize = pipelineChunkSize;
+	}
+
+	public int getPipelineChunkSize() {
+		return pipelineChunkSize;
+	}
+
+	/**
+	 * Sets the registry in which the MS runs and peptides are looked up, so
+	 * that the PSMs of the same run and peptide share the same object. By
+	 * default, each parser has its own {@link ConcurrentModelRegistry}, so
+	 * parsers running at the same time don't share their objects, which are
+	 * released with the parser. Use {@link StaticModelRegistry#INSTANCE} to
+	 * share them with other parsers through the
+	 * {@link StaticProteomicsModelStorage}.
+	 *
+	 * @param modelRegistry
+	 */
+	public void setModelRegistry(DTASelectModelRegistry modelRegistry) {
+		if (modelRegistry == null) {
+			throw new IllegalArgumentException("The model registry cannot be null");
+		}
+		this.modelRegistry = modelRegistry;
+		ownModelRegistry = false;
+	}
+
+	public DTASelectModelRegistry getModelRegistry() {
+		return modelRegistry;
+	}
+
+	/**
+	 * If true, the PSMs already read and the peptides already created are
+	 * kept by a 64-bit hash of their keys (MS run, scan number, charge state
+	 * and sequence for the PSMs, and sequence and charge state for the
+	 * peptides) instead of by their keys as Strings, comparing the values of
+	 * the keys only when the hashes are the same. The PSMs are then not added
+	 * to the maps by identifier of {@link IdentificationsParser}, so their
+	 * identifiers are not built unless requested:
+	 * {@link #getPSMByPSMID(String)} and {@link #containsPSMByPSMID(String)}
+	 * build the identifiers of all the PSMs the first time they are called.
+	 * The key of a peptide is only built when the peptide is created, and the
+	 * peptides are not registered in the model registry unless it was set by
+	 * {@link #setModelRegistry(DTASelectModelRegistry)}. False by default.
+	 *
+	 * @param compactKeys
+	 */
+	public void setCompactKeys(boolean compactKeys) {
+		this.compactKeys = compactKeys;
+	}
+
+	public boolean isCompactKeys() {
+		return compactKeys;
+	}
+
+	/**
+	 *
+	 * @return the number of PSMs and peptides whose compact key had the same
+	 *         hash than a different key, which were distinguished by comparing
+	 *         their keys
+	 */
+	public int getCompactKeyCollisions() {
+		int ret = 0;
+		if (psmKeys != null) {
+			ret += psmKeys.getCollisions();
+		}
+		if (peptideKeys != null) {
+			ret += peptideKeys.getCollisions();
+		}
+		return ret;
+	}
+
+	@Override
+	public boolean containsPSMByPSMID(String psmID) {
+		if (psmKeys != null) {
+			return getPSMsByIdentifier().containsKey(psmID);
+		}
+		return super.containsPSMByPSMID(psmID);
+	}
+
+	@Override
+	public PSM getPSMByPSMID(String psmID) {
+		if (psmKeys != null) {
+			return getPSMsByIdentifier().get(psmID);
+		}
+		return super.getPSMByPSMID(psmID);
+	}
+
+	/**
+	 *
+	 * @return the PSMs kept by their compact keys, by identifier, built again
+	 *         if PSMs were added since the last call
+	 */
+	private synchronized Map<String, PSM> getPSMsByIdentifier() {
+		if (psmsByIdentifier == null || psmsByIdentifier.size() != psmKeys.size()) {
+			final List<PSM> psms = psmKeys.values();
+			psmsByIdentifier = new THashMap<String, PSM>(psms.size());
+			for (final PSM psm : psms) {
+				psmsByIdentifier.put(psm.getIdentifier(), psm);
+			}
+		}
+		return psmsByIdentifier;
+	}
+
+	/**
+	 * Adds a filter of the PSM rows, which is evaluated on the columns of each
+	 * row before the PSM is created, so the PSMs rejected by any of the filters
+	 * are never created nor added to the parser. The protein groups left
+	 * without PSMs are not read at all. The cache is not used while there are
+	 * filters.<br>
+	 * See {@link edu.scripps.yates.dtaselectparser.util.DTASelectFilters} for
+	 * the common ones.
+	 *
+	 * @param psmFilter
+	 */
+	public void addPSMFilter(DTASelectPSMFilter psmFilter) {
+		psmFilters.add(psmFilter);
+	}
+
+	/**
+	 * Adds a filter of the protein rows, which is evaluated on the columns of
+	 * each row before the protein is created, so the proteins rejected by any
+	 * of the filters are never created nor added to the parser. The protein
+	 * groups left without proteins are not read at all, including their PSMs.
+	 * The cache is not used while there are filters.
+	 *
+	 * @param proteinFilter
+	 */
+	public void addProteinFilter(DTASelectProteinFilter proteinFilter) {
+		proteinFilters.add(proteinFilter);
+	}
+
+	public void clearFilters() {
+		psmFilters.clear();
+		proteinFilters.clear();
+	}
+
+	/**
+	 *
+	 * @param analysisID
+	 * @param sink
+	 * @return a sink that sends to that sink only the rows accepted by the
+	 *         filters, or the same sink if there are no filters
+	 */
+	private DTASelectRowSink filter(String analysisID, DTASelectRowSink sink) {
+		if (psmFilters.isEmpty() && proteinFilters.isEmpty()) {
+			return sink;
+		}
+		return new DTASelectFilteringSink(analysisID, sink, psmFilters, proteinFilters);
+	}
+
+	/**
+	 * If true, the input streams that correspond to local files are read by
+	 * memory-mapping the files and scanning their bytes, which is much faster
+	 * than decoding them with a {@link java.io.Reader}. The files are assumed
+	 * to be ASCII, as DTASelect files are. False by default.
+	 *
+	 * @param memoryMapLocalFiles
+	 */
+	public void setMemoryMapLocalFiles(boolean memoryMapLocalFiles) {
+		this.memoryMapLocalFiles = memoryMapLocalFiles;
+	}
+
+	public boolean isMemoryMapLocalFiles() {
+		return memoryMapLocalFiles;
+	}
+
+	/**
+	 * Parses each input stream in a different thread, creating the protein and
+	 * PSM objects, and then merges them into the parser in the order of the
+	 * input streams, as soon as each one is ready. If the dbIndex lookups are
+	 * done in batch, the sequences of each stream are looked up before merging
+	 * it.
+	 *
+	 * @param modelSink
+	 * @throws IOException
+	 */
+	private void processInParallel(DTASelectModelSink modelSink) throws IOException {
+		final List<String> analysisIDs = new ArrayList<String>(fs.keySet());
+		log.info("Reading " + analysisIDs.size() + " input streams using " + numThreads + " threads...");
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, analysisIDs.size()));
+		try {
+			final List<Future<DTASelectRecordingSink>> futures = new ArrayList<Future<DTASelectRecordingSink>>();
+			for (final String analysisID : analysisIDs) {
+				futures.add(executor.submit(new Callable<DTASelectRecordingSink>() {
+					@Override
+					public DTASelectRecordingSink call() throws Exception {
+						final DTASelectRecordingSink recordingSink = new DTASelectRecordingSink(DTASelectParser.this);
+						readStream(analysisID, recordingSink);
+						return recordingSink;
+					}
+				}));
+			}
+			for (int i = 0; i < analysisIDs.size(); i++) {
+				final DTASelectRecordingSink recordingSink = getResult(futures.get(i));
+				modelSink.startStream(analysisIDs.get(i));
 				try {
-					if (dis != null) {
-						log.debug("Closing input stream");
-						dis.close();
-						log.debug("Input stream closed");
+					replay(recordingSink, modelSink);
+				} finally {
+					log.info(numDecoy + " proteins discarded as decoy.");
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
 
+	/**
+	 * Parses the input streams one after the other, each one of them with a
+	 * {@link DTASelectPipelineSink}, so that the protein and PSM objects of each stream
+	 * are created in parallel
+	 *
+	 * @param modelSink
+	 * @return false if the reading was stopped before the end of the input
+	 * @throws IOException
+	 */
+	private boolean processPipelined(DTASelectModelSink modelSink) throws IOException {
+		log.info("Reading " + fs.size() + " input streams in chunks of " + pipelineChunkSize + " lines using "
+				+ numThreads + " threads...");
+		final ExecutorService workers = Executors.newFixedThreadPool(numThreads);
+		final ExecutorService merger = Executors.newSingleThreadExecutor();
+		try {
+			for (final String analysisID : fs.keySet()) {
+				modelSink.startStream(analysisID);
+				final DTASelectPipelineSink pipelineSink = new DTASelectPipelineSink(this, modelSink, workers,
+						numThreads, merger, pipelineChunkSize);
+				boolean completed = false;
+				try {
+					completed = readStream(analysisID, pipelineSink);
+				} finally {
+					// the model is not modified anymore after this
+					if (!pipelineSink.finish()) {
+						completed = false;
 					}
-				} catch (final IOException e) {
-					e.printStackTrace();
-					log.error(e.getMessage());
+					log.info(numDecoy + " proteins discarded as decoy.");
+				}
+				if (!completed) {
+					return false;
 				}
 			}
+			return true;
+		} finally {
+			workers.shutdownNow();
+			merger.shutdownNow();
 		}
+	}
 
-		processed = true;
+	static <T> T getResult(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading input streams", e);
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	DTASelectPSM createPSM(DTASelectRow row, DTASelectPSMSchema psmSchema, String psmRunPath) {
+		final long start = metrics != null ? System.nanoTime() : 0;
+		final DTASelectPSM psm = new DTASelectPSM(row, psmSchema, psmRunPath, isDistinguishModifiedSequences(),
+				isChargeSensible(), lazyRows, psmColumnStore, modelRegistry);
+		if (metrics != null) {
+			metrics.addTime(DTASelectParseMetrics.Phase.PSM_CONSTRUCTION, System.nanoTime() - start);
+		}
+		return psm;
+	}
+
+	DTASelectProtein createProtein(DTASelectRow row, DTASelectProteinSchema proteinSchema) {
+		if (metrics == null) {
+			return new DTASelectProtein(row, proteinSchema, locusResolver);
+		}
+		final long start = System.nanoTime();
+		final DTASelectProtein protein = new DTASelectProtein(row, proteinSchema, locusResolver);
+		metrics.addTime(DTASelectParseMetrics.Phase.PROTEIN_CONSTRUCTION, System.nanoTime() - start);
+		return protein;
+	}
+
+	void decoySkipped() {
+		numDecoy++;
+		if (metrics != null) {
+			metrics.decoy();
+		}
+	}
+
+	private void inputRead(String analysisID) {
+		if (metrics != null) {
+			metrics.inputRead();
+			for (final DTASelectMetricsListener listener : metricsListeners) {
+				listener.onInputRead(analysisID, metrics);
+			}
+		}
+	}
+
+	private void startMetrics() {
+		if (metrics != null) {
+			metricsStart = System.nanoTime();
+			dbIndexHitsStart = dbIndexLookups != null ? dbIndexLookups.getHits() : 0;
+			dbIndexMissesStart = dbIndexLookups != null ? dbIndexLookups.getMisses() : 0;
+		}
+	}
+
+	private void finishMetrics() {
+		if (metrics != null) {
+			metrics.addTotalTime(System.nanoTime() - metricsStart);
+			if (dbIndexLookups != null) {
+				metrics.dbIndexLookups(dbIndexLookups.getHits() - dbIndexHitsStart,
+						dbIndexLookups.getMisses() - dbIndexMissesStart);
+			}
+			log.info("Parsing metrics: " + metrics);
+			for (final DTASelectMetricsListener listener : metricsListeners) {
+				listener.onProcessFinished(metrics);
+			}
+		}
+	}
 
+	/**
+	 * If true, the parser counts the lines, proteins, PSMs... read and the time
+	 * spent in each phase of the parsing, available in {@link #getMetrics()},
+	 * notified to the listeners added by
+	 * {@link #addMetricsListener(DTASelectMetricsListener)} and, if registered
+	 * by {@link #registerMetricsMBean(String)}, through JMX. The metrics are
+	 * accumulated over all the calls to process, refresh or stream, until they
+	 * are reset. False by default.
+	 *
+	 * @param collectMetrics
+	 */
+	public void setCollectMetrics(boolean collectMetrics) {
+		if (collectMetrics && metrics == null) {
+			metrics = new DTASelectParseMetrics();
+		} else if (!collectMetrics) {
+			metrics = null;
+		}
+	}
+
+	public boolean isCollectMetrics() {
+		return metrics != null;
+	}
+
+	/**
+	 *
+	 * @return the metrics of the parsing, or null if they are not collected
+	 */
+	public DTASelectParseMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Adds a listener to be notified with the metrics when each input is read,
+	 * which may be done from the threads reading the inputs, and when all of
+	 * them are read. The metrics are only collected if
+	 * {@link #setCollectMetrics(boolean)} is enabled.
+	 *
+	 * @param listener
+	 */
+	public void addMetricsListener(DTASelectMetricsListener listener) {
+		metricsListeners.add(listener);
+	}
+
+	public void removeMetricsListener(DTASelectMetricsListener listener) {
+		metricsListeners.remove(listener);
+	}
+
+	/**
+	 * Registers the metrics in the platform MBean server, with the name
+	 * edu.scripps.yates.dtaselectparser:type=DTASelectParser,name=<name>.
+	 * It enables the collection of metrics.
+	 *
+	 * @param name
+	 * @return the name of the MBean
+	 * @throws JMException
+	 */
+	public ObjectName registerMetricsMBean(String name) throws JMException {
+		setCollectMetrics(true);
+		unregisterMetricsMBean();
+		final ObjectName objectName = new ObjectName(
+				"edu.scripps.yates.dtaselectparser:type=DTASelectParser,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+		metricsMBeanName = objectName;
+		return objectName;
+	}
+
+	public void unregisterMetricsMBean() throws JMException {
+		if (metricsMBeanName != null) {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(metricsMBeanName)) {
+				server.unregisterMBean(metricsMBeanName);
+			}
+			metricsMBeanName = null;
+		}
+	}
+
+	/**
+	 * If true, the scores of the PSMs are kept in a
+	 * {@link DTASelectPSMColumnStore}, in primitive arrays with one row per
+	 * PSM, and the PSMs read them from there. This reduces the memory used by
+	 * the PSMs, and the store, available by {@link #getPSMColumnStore()},
+	 * allows to read the scores of all the PSMs without going through them.
+	 * It takes precedence over {@link #setLazyPSMs(boolean)}, and it is not
+	 * used by {@link #stream(DTASelectStreamListener)}. False by default.<br>
+	 * Note that the store contains a row for each PSM row read, even for the
+	 * ones that are merged with a previous PSM with the same identifier, and
+	 * that the order of the rows is not the order of the files when they are
+	 * read by several threads.
+	 *
+	 * @param useColumnStore
+	 */
+	public void setUseColumnStore(boolean useColumnStore) {
+		this.useColumnStore = useColumnStore;
+	}
+
+	public boolean isUseColumnStore() {
+		return useColumnStore;
+	}
+
+	/**
+	 *
+	 * @return the store of the scores of the PSMs read by the last call to
+	 *         process, or null if {@link #setUseColumnStore(boolean)} was not
+	 *         enabled
+	 */
+	public DTASelectPSMColumnStore getPSMColumnStore() {
+		return psmColumnStore;
+	}
+
+	/**
+	 * If true, the PSMs only parse their identity (MS run, scan number, charge
+	 * state and sequence) when they are read, keeping the position of their
+	 * row in a {@link DTASelectRowStore} shared by all the PSMs of the
+	 * process, from which the rest of the columns are parsed the first time
+	 * any of them is requested. This is faster and uses less memory when only
+	 * the proteins and the identifiers of the PSMs are needed. The PSMs read
+	 * from the cache files, the ones kept in a column store and the ones
+	 * delivered by {@link #stream(DTASelectStreamListener)} and
+	 * {@link #aggregate(DTASelectAggregationListener)} are not lazy. False by
+	 * default.
+	 *
+	 * @param lazyPSMs
+	 */
+	public void setLazyPSMs(boolean lazyPSMs) {
+		this.lazyPSMs = lazyPSMs;
+	}
+
+	public boolean isLazyPSMs() {
+		return lazyPSMs;
+	}
+
+	/**
+	 * Creates the resolver of the loci of the proteins, that is shared by all
+	 * the input streams, unless the current one was created with the same
+	 * options
+	 */
+	private void updateLocusResolver() {
+		if (locusResolver == null || locusResolver.isIgnoreACCFormat() != ignoreACCFormat
+				|| locusResolver.getDecoyPattern() != decoyPattern) {
+			locusResolver = new DTASelectLocusResolver(ignoreACCFormat, decoyPattern);
+		}
+	}
+
+	DTASelectLocusResolver getLocusResolver() {
+		return locusResolver;
+	}
+
+	void dtaSelectVersionRead(String version) {
+		dtaSelectVersion = version;
+	}
+
+	void runPathRead(String path) {
+		runPath = path;
+	}
+
+	/**
+	 *
+	 * @return the run path of the last input stream whose header was read
+	 */
+	String getCurrentRunPath() {
+		return runPath;
+	}
+
+	void fastaPathRead(String path) {
+		fastaPath = path;
+	}
+
+	void searchEngineRead(String searchEngine, String version) {
+		searchEngines.add(searchEngine);
+		setSearchEngineVersion(version);
+	}
+
+	/**
+	 *
+	 * @param line
+	 * @return false if only the parameters have to be read
+	 */
+	boolean commandLineParametersRead(String line) {
+		commandLineParameterStrings.add(line);
+		commandLineParameter = new DTASelectCommandLineParameters(line);
+		return !onlyReadParameters;
+	}
+
+	/**
+	 *
+	 * @return the search engine set to the proteins and PSMs read, or null if
+	 *         it is not known yet
+	 */
+	String getFirstSearchEngine() {
+		if (searchEngines.isEmpty()) {
+			return null;
+		}
+		return searchEngines.iterator().next();
+	}
+
+	boolean isReadingOnlyProteins() {
+		return onlyReadProteins;
+	}
+
+	boolean isBatchingDBIndexLookups() {
+		return batchDBIndexLookups && dbIndex != null;
+	}
+
+	String getPeptideKey(PSM psm) {
+		return KeyUtils.getInstance().getSequenceChargeKey(psm, isDistinguishModifiedSequences(), isChargeSensible());
+	}
+
+	boolean isProteinRead(String acc) {
+		return containsProteinByAccession(acc);
+	}
+
+	/**
+	 * Adds a protein to the parser and to a protein group
+	 *
+	 * @param acc
+	 * @param newProtein   the protein to add if there is not already a protein
+	 *                     with that accession
+	 * @param proteinGroup
+	 */
+	void addProtein(String acc, Protein newProtein, ProteinGroup proteinGroup) {
+		Protein p;
+		if (containsProteinByAccession(acc)) {
+			p = getProteinByAccession(acc);
+		} else {
+			p = newProtein;
+		}
+		if (!searchEngines.isEmpty()) {
+			p.setSearchEngine(searchEngines.iterator().next());
+		}
+
+		addProteinToMapAndList(p);
+		proteinGroup.add(p);
+	}
+
+	/**
+	 * Adds a PSM to the parser, with its peptide, and to the proteins of a
+	 * protein group, or to the proteins of the dbIndex that contain its
+	 * sequence
+	 *
+	 * @param newPSM       the PSM to add, unless there is already a PSM with
+	 *                     the same identifier
+	 * @param proteinGroup
+	 * @param analysisID   the input stream of the PSM
+	 * @throws IOException
+	 */
+	void addPSM(PSM newPSM, ProteinGroup proteinGroup, String analysisID) throws IOException {
+		if (metrics == null) {
+			addPSMToModel(newPSM, proteinGroup, analysisID);
+			return;
+		}
+		final long start = System.nanoTime();
+		subPhasesTime = 0;
+		try {
+			addPSMToModel(newPSM, proteinGroup, analysisID);
+		} finally {
+			metrics.addTime(DTASelectParseMetrics.Phase.ASSEMBLY, System.nanoTime() - start - subPhasesTime);
+		}
+	}
+
+	private void addPSMToModel(PSM newPSM, ProteinGroup proteinGroup, String analysisID) throws IOException {
+		PSM psm = newPSM;
+		final PSM existingPSM;
+		if (psmKeys != null) {
+			existingPSM = psmKeys.putIfAbsent(psm);
+		} else {
+			existingPSM = containsPSMByPSMID(psm.getIdentifier()) ? getPSMByPSMID(psm.getIdentifier()) : null;
+		}
+		if (existingPSM != null) {
+			psm = existingPSM;
+			if (metrics != null) {
+				metrics.duplicatePSM();
+			}
+		} else {
+			psmIndex.add((DTASelectPSM) psm);
+		}
+		if (psmKeys == null) {
+			// with compact keys the PSMs are only kept by the hash of their keys
+			addPSMToMaps(psm);
+		}
+		if (!searchEngines.isEmpty()) {
+			psm.setSearchEngine(searchEngines.iterator().next());
+		}
+		if (!spectraFileNames.contains(psm.getMSRun().getRunId())) {
+			spectraFileNames.add(psm.getMSRun().getRunId());
+			log.debug(psm.getMSRun().getRunId() + " added to a set of " + spectraFileNames.size()
+					+ " spectra file names in total");
+		}
+		final String spectraFileFullPath = new File(analysisID).getParent() + File.separator
+				+ psm.getMSRun().getRunId() + ".ms2";
+		if (!spectraFileFullPaths.contains(spectraFileFullPath)) {
+			spectraFileFullPaths.add(spectraFileFullPath);
+			log.debug(spectraFileFullPath + " added to a set of " + spectraFileFullPaths.size()
+					+ " spectra paths in total");
+		}
+		// create the peptide
+		Peptide peptide = null;
+		final long storageStart = metrics != null ? System.nanoTime() : 0;
+		// a PSM of the same peptide, if compact keys are used
+		final PSM peptidePSM = peptideKeys != null ? peptideKeys.get(psm) : null;
+		if (peptidePSM != null) {
+			peptide = peptidePSM.getPeptide();
+		}
+		if (peptide == null) {
+			final String peptideKey = getPeptideKey(psm);
+			MSRun run = null;
+			if (isSeparatePeptidesByMSRun()) {
+				run = psm.getMSRun();
+			}
+			// with compact keys, the peptides of this parser are in peptideKeys
+			if (peptideKeys == null || !ownModelRegistry) {
+				peptide = modelRegistry.getPeptide(run, peptideKey);
+			}
+			if (peptide == null) {
+				final Peptide newPeptide = new PeptideEx(psm.getFullSequence(), peptideKey);
+				if (peptideKeys == null || !ownModelRegistry) {
+					peptide = modelRegistry.addPeptide(run, peptideKey, newPeptide);
+				}
+				if (peptide == null) {
+					peptide = newPeptide;
+					peptide.setSearchEngine(psm.getSearchEngine());
+					peptide.addMSRun(psm.getMSRun());
+				}
+			}
+		}
+		if (metrics != null) {
+			subPhase(DTASelectParseMetrics.Phase.MODEL_STORAGE, storageStart);
+		}
+		psm.setPeptide(peptide, true);
+		if (peptideKeys != null && peptidePSM == null) {
+			peptideKeys.putIfAbsent(psm);
+		}
+		addPeptide(peptide);
+		if (dbIndex != null) {
+			final long dbIndexStart = metrics != null ? System.nanoTime() : 0;
+			final Set<IndexedProtein> indexedProteins;
+			try {
+				indexedProteins = dbIndexLookups.getProteins(psm.getSequence());
+			} catch (final DBIndexStoreException e) {
+				log.error(e.getMessage(), e);
+				throw new IOException(e);
+			}
+			if (metrics != null) {
+				subPhase(DTASelectParseMetrics.Phase.DBINDEX, dbIndexStart);
+			}
+			if (indexedProteins.isEmpty()) {
+				if (!ignoreNotFoundPeptidesInDB) {
+					throw new PeptideNotFoundInDBIndexException("The peptide " + psm.getSequence()
+							+ " is not found in Fasta DB.\nReview the default indexing parameters such as the number of allowed misscleavages.");
+				}
+			}
+			if (indexedProteins != null) {
+				log.debug(indexedProteins.size() + " proteins contains " + psm.getSequence() + " on fasta file");
+				for (final IndexedProtein indexedProtein : indexedProteins) {
+					final String indexedAccession = indexedProtein.getAccession();
+					// we should take into account that in
+					// the
+					// indexed database you may have decoy
+					// hits
+					// that you want to avoid
+					if (locusResolver.resolve(indexedAccession).isDecoyLocus()) {
+						decoySkipped();
+						continue;
+					}
+					Protein protein = null;
+					if (containsProteinByAccession(indexedAccession)) {
+						protein = getProteinByAccession(indexedAccession);
+					} else {
+						protein = new DTASelectProtein(indexedProtein, locusResolver);
+						addProteinToMapAndList(protein);
+					}
+					// add the psm to the protein and
+					// vice-versa
+					psm.addProtein(protein, true);
+					peptide.addProtein(protein, true);
+				}
+			}
+		}
+
+		if (dbIndex == null || psm.getProteins().isEmpty()) {
+			// add the PSM to all the proteins in the current
+			// group and all the proteins to the psm
+			for (final GroupableProtein prot : proteinGroup) {
+				((Protein) prot).addPSM(psm, true);
+				((Protein) prot).addPeptide(peptide, true);
+			}
+		}
+	}
+
+	private void subPhase(DTASelectParseMetrics.Phase phase, long start) {
+		final long time = System.nanoTime() - start;
+		metrics.addTime(phase, time);
+		subPhasesTime += time;
+	}
+
+	/**
+	 * Adds the last protein group of an input stream, unless the proteins come
+	 * from the dbIndex
+	 *
+	 * @param proteinGroup
+	 */
+	void closeLastProteinGroup(ProteinGroup proteinGroup) {
+		if (dbIndex == null && !proteinGroup.isEmpty()) {
+			closeProteinGroup(proteinGroup);
+			log.info(getProteinGroupsNumber() + " proteins groups read in " + fs.size() + " DTASelect file(s).");
+		}
+	}
+
+	/**
+	 * Adds the rows recorded by a sink to the model, looking up their
+	 * sequences in the dbIndex first if the lookups are done in batch
+	 *
+	 * @param recordingSink
+	 * @param modelSink
+	 * @return false if the model sink stopped the reading
+	 * @throws IOException
+	 */
+	boolean replay(DTASelectRecordingSink recordingSink, DTASelectModelSink modelSink) throws IOException {
+		if (isBatchingDBIndexLookups()) {
+			dbIndexLookups.resolve(recordingSink.getSequences(), numThreads);
+		}
+		try {
+			return recordingSink.replay(modelSink);
+		} finally {
+			if (dbIndex != null) {
+				dbIndexLookups.releaseResolved();
+			}
+		}
+	}
+
+	/**
+	 * Position and state of the reading of a file read in incremental mode
+	 *
+	 * @author Salva
+	 *
+	 */
+	private class TailState {
+		private final String analysisID;
+		private final File file;
+		private final DTASelectModelSink sink;
+		private final DTASelectStreamReader reader;
+		private long position = 0;
+		private boolean completed = false;
+
+		private TailState(String analysisID, File file) {
+			this.analysisID = analysisID;
+			this.file = file;
+			sink = new DTASelectModelSink(DTASelectParser.this, false);
+			sink.startStream(analysisID);
+			reader = new DTASelectStreamReader(filter(analysisID, sink), metrics);
+		}
 	}
 
 	// /**
@@ -0,0 +1,281 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProtein;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProteinSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRow;
+
+/**
+ * Cuts the rows of an input stream into chunks of whole protein groups, which
+ * are converted into protein and PSM objects in parallel by a pool of workers,
+ * and merges them into a {@link DTASelectModelSink} in a single thread, in the
+ * order of the stream, so the result is the same than the one of the
+ * sequential parsing.<br>
+ * The rows that are not proteins or PSMs, and the ones already converted (from
+ * a cache file), are recorded directly in the reading thread.
+ *
+ * @author Salva
+ *
+ */
+class DTASelectPipelineSink implements DTASelectParsedRowSink {
+	private static final Future<DTASelectRecordingSink> END_OF_PIPELINE = CompletableFuture.completedFuture(null);
+	private final DTASelectParser parser;
+	private final DTASelectModelSink modelSink;
+	private final ExecutorService workers;
+	private final int chunkSize;
+	private final BlockingQueue<Future<DTASelectRecordingSink>> chunks;
+	private final Future<Boolean> merge;
+	private List<String> lines = new ArrayList<String>();
+	private BitSet proteinLines = new BitSet();
+	private DTASelectRecordingSink direct;
+	private DTASelectPSMSchema psmSchema;
+	private DTASelectProteinSchema proteinSchema;
+	private String streamRunPath;
+	private boolean isPsm = false;
+	private boolean completed = false;
+	private boolean finished = false;
+	private volatile boolean stopped = false;
+
+	/**
+	 *
+	 * @param parser
+	 * @param modelSink  where the chunks are merged
+	 * @param workers    the threads converting the chunks
+	 * @param numWorkers the number of threads of the workers
+	 * @param merger     the thread merging the chunks
+	 * @param chunkSize  the minimum number of lines of the chunks
+	 */
+	DTASelectPipelineSink(DTASelectParser parser, DTASelectModelSink modelSink, ExecutorService workers,
+			int numWorkers, ExecutorService merger, int chunkSize) {
+		this.parser = parser;
+		this.modelSink = modelSink;
+		this.workers = workers;
+		this.chunkSize = chunkSize;
+		chunks = new ArrayBlockingQueue<Future<DTASelectRecordingSink>>(numWorkers * 4);
+		merge = merger.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return merge();
+			}
+		});
+	}
+
+	/**
+	 * Replays the chunks into the model sink as they are ready, until the end
+	 * of the stream is queued
+	 *
+	 * @return true if the whole stream was merged
+	 * @throws Exception
+	 */
+	private boolean merge() throws Exception {
+		Exception error = null;
+		while (true) {
+			final Future<DTASelectRecordingSink> chunk = chunks.take();
+			if (chunk == END_OF_PIPELINE) {
+				break;
+			}
+			if (stopped) {
+				// the rest of the chunks are ignored
+				continue;
+			}
+			try {
+				if (!parser.replay(DTASelectParser.getResult(chunk), modelSink)) {
+					stopped = true;
+				}
+			} catch (final Exception e) {
+				error = e;
+				stopped = true;
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+		if (stopped) {
+			return false;
+		}
+		if (completed) {
+			modelSink.endOfStream();
+		}
+		return true;
+	}
+
+	private void queue(Future<DTASelectRecordingSink> chunk) {
+		try {
+			chunks.put(chunk);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			stopped = true;
+		}
+	}
+
+	private DTASelectRecordingSink direct() {
+		flushLines();
+		if (direct == null) {
+			direct = new DTASelectRecordingSink(parser);
+		}
+		return direct;
+	}
+
+	private void flushDirect() {
+		if (direct != null) {
+			final CompletableFuture<DTASelectRecordingSink> chunk = CompletableFuture.completedFuture(direct);
+			direct = null;
+			queue(chunk);
+		}
+	}
+
+	/**
+	 * Sends the rows read since the last chunk to be converted by the workers
+	 */
+	private void flushLines() {
+		if (lines.isEmpty()) {
+			return;
+		}
+		final List<String> chunkLines = lines;
+		final BitSet chunkProteinLines = proteinLines;
+		final DTASelectPSMSchema chunkPSMSchema = psmSchema;
+		final DTASelectProteinSchema chunkProteinSchema = proteinSchema;
+		final String chunkRunPath = streamRunPath;
+		lines = new ArrayList<String>(chunkSize);
+		proteinLines = new BitSet();
+		queue(workers.submit(new Callable<DTASelectRecordingSink>() {
+			@Override
+			public DTASelectRecordingSink call() throws Exception {
+				final DTASelectRecordingSink recordingSink = new DTASelectRecordingSink(parser, chunkPSMSchema,
+						chunkProteinSchema, chunkRunPath);
+				final DTASelectRow row = new DTASelectRow();
+				for (int i = 0; i < chunkLines.size(); i++) {
+					row.reset(chunkLines.get(i));
+					if (chunkProteinLines.get(i)) {
+						recordingSink.protein(row);
+					} else {
+						recordingSink.psm(row);
+					}
+				}
+				return recordingSink;
+			}
+		}));
+	}
+
+	@Override
+	public void dtaSelectVersion(String version) {
+		direct().dtaSelectVersion(version);
+	}
+
+	@Override
+	public void runPath(String runPath) {
+		streamRunPath = runPath;
+		direct().runPath(runPath);
+	}
+
+	@Override
+	public void fastaPath(String fastaPath) {
+		direct().fastaPath(fastaPath);
+	}
+
+	@Override
+	public void searchEngine(String searchEngine, String version) {
+		direct().searchEngine(searchEngine, version);
+	}
+
+	@Override
+	public boolean commandLineParameters(String line) {
+		return direct().commandLineParameters(line) && !stopped;
+	}
+
+	@Override
+	public void proteinHeader(String line) {
+		proteinSchema = DTASelectProteinSchema.parse(line);
+		direct().proteinHeader(line);
+	}
+
+	@Override
+	public void psmHeader(String line) {
+		psmSchema = DTASelectPSMSchema.parse(line);
+		direct().psmHeader(line);
+	}
+
+	@Override
+	public boolean protein(DTASelectRow row) {
+		flushDirect();
+		// the chunks are only cut where a protein group starts
+		if (isPsm && lines.size() >= chunkSize) {
+			flushLines();
+		}
+		isPsm = false;
+		proteinLines.set(lines.size());
+		lines.add(row.getLine().toString());
+		return !stopped;
+	}
+
+	@Override
+	public boolean psm(DTASelectRow row) {
+		flushDirect();
+		isPsm = true;
+		lines.add(row.getLine().toString());
+		return !stopped;
+	}
+
+	@Override
+	public void parsedProtein(String accession, boolean decoy, DTASelectProtein protein) {
+		isPsm = false;
+		direct().parsedProtein(accession, decoy, protein);
+	}
+
+	@Override
+	public boolean parsedPSM(DTASelectPSM psm) throws IOException {
+		isPsm = true;
+		direct().parsedPSM(psm);
+		return !stopped;
+	}
+
+	/**
+	 * Waits until the whole stream is merged, so that the input is not
+	 * considered read before it is in the model
+	 */
+	@Override
+	public void endOfStream() {
+		completed = true;
+		try {
+			finish();
+		} catch (final IOException e) {
+			// thrown again by finish()
+		}
+	}
+
+	/**
+	 * Sends the pending rows and waits for the merge of all the chunks. It has
+	 * to be called even if the reading failed, so that the model is not
+	 * modified after it.
+	 *
+	 * @return false if the merge was stopped by the model sink
+	 * @throws IOException if the conversion or the merge of a chunk failed
+	 */
+	boolean finish() throws IOException {
+		if (!finished) {
+			finished = true;
+			flushLines();
+			flushDirect();
+			try {
+				chunks.put(END_OF_PIPELINE);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				merge.cancel(true);
+				throw new IOException("Interrupted while parsing", e);
+			}
+		}
+		return DTASelectParser.getResult(merge);
+	}
+}
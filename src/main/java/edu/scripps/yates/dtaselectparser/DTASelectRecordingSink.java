@@ -0,0 +1,217 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectLocusResolver;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProtein;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProteinSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRow;
+import gnu.trove.set.hash.THashSet;
+
+/**
+ * Keeps the lines of an input stream, already converted into protein and PSM
+ * objects, so that they can be read in a different thread than the one
+ * building the model of the parser. The objects are added to the parser
+ * later, calling to {@link #replay(DTASelectModelSink)}.
+ *
+ * @author Salva
+ *
+ */
+class DTASelectRecordingSink implements DTASelectParsedRowSink {
+	private final DTASelectParser parser;
+	private final List<RecordedRow> rows = new ArrayList<RecordedRow>();
+	// the distinct peptide sequences, to be looked up in the dbIndex
+	private final Set<String> sequences = new THashSet<String>();
+	private DTASelectPSMSchema psmSchema;
+	private DTASelectProteinSchema proteinSchema;
+	private String streamRunPath;
+	private boolean completed = false;
+
+	DTASelectRecordingSink(DTASelectParser parser) {
+		this.parser = parser;
+	}
+
+	/**
+	 * Creates a sink for a part of an input stream whose column headers and
+	 * run path were already read
+	 *
+	 * @param parser
+	 * @param psmSchema
+	 * @param proteinSchema
+	 * @param streamRunPath
+	 */
+	DTASelectRecordingSink(DTASelectParser parser, DTASelectPSMSchema psmSchema,
+			DTASelectProteinSchema proteinSchema, String streamRunPath) {
+		this.parser = parser;
+		this.psmSchema = psmSchema;
+		this.proteinSchema = proteinSchema;
+		this.streamRunPath = streamRunPath;
+	}
+
+	/**
+	 *
+	 * @return the distinct sequences of the PSMs recorded, if the dbIndex
+	 *         lookups are done in batch
+	 */
+	Set<String> getSequences() {
+		return sequences;
+	}
+
+	@Override
+	public void dtaSelectVersion(final String version) {
+		rows.add(new RecordedRow() {
+			@Override
+			public boolean replay(DTASelectModelSink sink) {
+				sink.dtaSelectVersion(version);
+				return true;
+			}
+		});
+	}
+
+	@Override
+	public void runPath(final String path) {
+		streamRunPath = path;
+		rows.add(new RecordedRow() {
+			@Override
+			public boolean replay(DTASelectModelSink sink) {
+				sink.runPath(path);
+				return true;
+			}
+		});
+	}
+
+	@Override
+	public void fastaPath(final String path) {
+		rows.add(new RecordedRow() {
+			@Override
+			public boolean replay(DTASelectModelSink sink) {
+				sink.fastaPath(path);
+				return true;
+			}
+		});
+	}
+
+	@Override
+	public void searchEngine(final String searchEngine, final String version) {
+		rows.add(new RecordedRow() {
+			@Override
+			public boolean replay(DTASelectModelSink sink) {
+				sink.searchEngine(searchEngine, version);
+				return true;
+			}
+		});
+	}
+
+	@Override
+	public boolean commandLineParameters(final String line) {
+		rows.add(new RecordedRow() {
+			@Override
+			public boolean replay(DTASelectModelSink sink) {
+				return sink.commandLineParameters(line);
+			}
+		});
+		return true;
+	}
+
+	@Override
+	public void proteinHeader(final String line) {
+		proteinSchema = DTASelectProteinSchema.parse(line);
+		rows.add(new RecordedRow() {
+			@Override
+			public boolean replay(DTASelectModelSink sink) {
+				sink.proteinHeader(line);
+				return true;
+			}
+		});
+	}
+
+	@Override
+	public void psmHeader(final String line) {
+		psmSchema = DTASelectPSMSchema.parse(line);
+		rows.add(new RecordedRow() {
+			@Override
+			public boolean replay(DTASelectModelSink sink) {
+				sink.psmHeader(line);
+				return true;
+			}
+		});
+	}
+
+	@Override
+	public boolean protein(DTASelectRow row) {
+		final DTASelectLocusResolver.Locus locus = parser.getLocusResolver()
+				.resolve(row.getString(proteinSchema.getLocusColumn()));
+		final boolean decoy = locus.isDecoy();
+		parsedProtein(locus.getAccession(), decoy, decoy ? null : parser.createProtein(row, proteinSchema));
+		return true;
+	}
+
+	@Override
+	public void parsedProtein(final String accession, final boolean decoy, final DTASelectProtein protein) {
+		rows.add(new RecordedRow() {
+			@Override
+			public boolean replay(DTASelectModelSink sink) {
+				sink.addProtein(accession, decoy, protein);
+				return true;
+			}
+		});
+	}
+
+	@Override
+	public boolean psm(DTASelectRow row) {
+		return parsedPSM(parser.isReadingOnlyProteins() ? null : parser.createPSM(row, psmSchema, streamRunPath));
+	}
+
+	@Override
+	public boolean parsedPSM(DTASelectPSM parsedPSM) {
+		final DTASelectPSM psm = parser.isReadingOnlyProteins() ? null : parsedPSM;
+		final String path = streamRunPath;
+		if (psm != null && parser.isBatchingDBIndexLookups()) {
+			sequences.add(psm.getSequence());
+		}
+		rows.add(new RecordedRow() {
+			@Override
+			public boolean replay(DTASelectModelSink sink) throws IOException {
+				if (psm != null) {
+					// the MSRun may be shared with other streams read at
+					// the same time, so its path is set again here
+					psm.getMSRun().setPath(path);
+				}
+				return sink.addPSM(psm);
+			}
+		});
+		return true;
+	}
+
+	@Override
+	public void endOfStream() {
+		completed = true;
+	}
+
+	/**
+	 *
+	 * @param sink
+	 * @return false if the sink stopped the reading
+	 * @throws IOException
+	 */
+	boolean replay(DTASelectModelSink sink) throws IOException {
+		for (final RecordedRow row : rows) {
+			if (!row.replay(sink)) {
+				return false;
+			}
+		}
+		if (completed) {
+			sink.endOfStream();
+		}
+		return true;
+	}
+
+	private interface RecordedRow {
+		boolean replay(DTASelectModelSink sink) throws IOException;
+	}
+}
@@ -0,0 +1,36 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.IOException;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectRow;
+
+/**
+ * Receives the lines of a DTASelect file already classified by a
+ * {@link DTASelectStreamReader}. The methods returning a boolean return false
+ * when the reading should stop.
+ *
+ * @author Salva
+ *
+ */
+interface DTASelectRowSink {
+
+	void dtaSelectVersion(String version);
+
+	void runPath(String runPath);
+
+	void fastaPath(String fastaPath);
+
+	void searchEngine(String searchEngine, String version);
+
+	boolean commandLineParameters(String line);
+
+	void proteinHeader(String line);
+
+	void psmHeader(String line);
+
+	boolean protein(DTASelectRow row) throws IOException;
+
+	boolean psm(DTASelectRow row) throws IOException;
+
+	void endOfStream();
+}
@@ -0,0 +1,27 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.util.List;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.utilities.grouping.ProteinGroup;
+
+/**
+ * Receives the protein groups read by
+ * {@link DTASelectParser#stream(DTASelectStreamListener)} as soon as they are
+ * complete, this is, when the next protein group starts or when the input
+ * stream ends.
+ *
+ * @author Salva
+ *
+ */
+public interface DTASelectStreamListener {
+	/**
+	 *
+	 * @param analysisID   the input stream from which the group was read
+	 * @param proteinGroup the proteins of the group, already linked to their
+	 *                     PSMs and peptides
+	 * @param psms         the PSMs of the group, in the order in which they
+	 *                     appear in the input stream
+	 */
+	void onProteinGroup(String analysisID, ProteinGroup proteinGroup, List<DTASelectPSM> psms);
+}
@@ -0,0 +1,233 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.IOException;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectLineSource;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRow;
+
+/**
+ * Classifies the lines of a DTASelect file (header, search engine, command
+ * line parameters, column headers, proteins and PSMs) and forwards them to a
+ * {@link DTASelectRowSink}.<br>
+ * It keeps the state of the lines read so far, so the lines of one file can be
+ * provided one by one.
+ *
+ * @author Salva
+ *
+ */
+class DTASelectStreamReader {
+	private final DTASelectRowSink sink;
+	private final DTASelectParseMetrics metrics;
+	private final DTASelectRow row = new DTASelectRow();
+	private int numLine = 0;
+	private int searchEngineLine = -1;
+	private boolean intro = false;
+	private boolean conclusion = false;
+	private boolean locusStarted = false;
+
+	DTASelectStreamReader(DTASelectRowSink sink) {
+		this(sink, null);
+	}
+
+	/**
+	 *
+	 * @param sink
+	 * @param metrics where to count the lines read and the time spent reading
+	 *                and tokenizing them, or null
+	 */
+	DTASelectStreamReader(DTASelectRowSink sink, DTASelectParseMetrics metrics) {
+		this.sink = sink;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Reads all the lines of the source
+	 *
+	 * @param source
+	 * @return false if the reading was stopped by the sink before reaching the
+	 *         end of the stream
+	 * @throws IOException
+	 */
+	boolean read(DTASelectLineSource source) throws IOException {
+		if (!readAvailable(source)) {
+			return false;
+		}
+		sink.endOfStream();
+		return true;
+	}
+
+	/**
+	 * Reads the lines of the source that are available, without notifying the
+	 * end of the stream to the sink, so that more lines can be read later,
+	 * from another source positioned where this one ended
+	 *
+	 * @param source
+	 * @return false if the reading was stopped by the sink
+	 * @throws IOException
+	 */
+	boolean readAvailable(DTASelectLineSource source) throws IOException {
+		CharSequence line;
+		if (metrics == null) {
+			while ((line = source.readLine()) != null) {
+				if (!processLine(line)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		long bytesRead = source.getBytesRead();
+		long start = System.nanoTime();
+		try {
+			while ((line = source.readLine()) != null) {
+				metrics.addTime(DTASelectParseMetrics.Phase.READ, System.nanoTime() - start);
+				metrics.lineRead();
+				bytesRead = countBytes(source, bytesRead);
+				if (!processLine(line)) {
+					return false;
+				}
+				start = System.nanoTime();
+			}
+			metrics.addTime(DTASelectParseMetrics.Phase.READ, System.nanoTime() - start);
+			return true;
+		} finally {
+			countBytes(source, bytesRead);
+		}
+	}
+
+	/**
+	 * Adds to the metrics the bytes consumed by the source since the last
+	 * count, if the source counts them
+	 *
+	 * @param source
+	 * @param previous the bytes read by the source at the last count
+	 * @return the bytes read by the source now
+	 */
+	private long countBytes(DTASelectLineSource source, long previous) {
+		final long bytesRead = source.getBytesRead();
+		if (bytesRead >= 0 && previous >= 0) {
+			metrics.bytesRead(bytesRead - previous);
+		}
+		return bytesRead;
+	}
+
+	/**
+	 *
+	 * @return true if the summary at the end of the file was reached, after
+	 *         which no more proteins or PSMs are expected
+	 */
+	boolean isConclusion() {
+		return conclusion;
+	}
+
+	/**
+	 * Process the next line of the file. Only the lines that are kept (header,
+	 * parameters and column headers) are converted to String.
+	 *
+	 * @param line
+	 * @return false if the sink asks to stop reading
+	 * @throws IOException
+	 */
+	boolean processLine(CharSequence line) throws IOException {
+		numLine++;
+		if (isBlank(line)) {
+			return true;
+		}
+		if (numLine == 1) {
+			sink.dtaSelectVersion(line.toString().split(" ")[1]);
+		}
+		if (numLine == 2) {
+			sink.runPath(line.toString().trim());
+		}
+		if (numLine == 3) {
+			sink.fastaPath(line.toString().trim());
+		}
+		if (startsWith(line, DTASelectParser.SEQUEST, true)) {
+			searchEngineLine = numLine;
+			sink.searchEngine(DTASelectParser.SEQUEST, line.toString().split(" ")[1]);
+		} else if (startsWith(line, DTASelectParser.PROLUCID, true)) {
+			searchEngineLine = numLine;
+			sink.searchEngine(DTASelectParser.PROLUCID, line.toString().split(" ")[1]);
+		} else if (startsWith(line, "?", false)) {
+			searchEngineLine = numLine;
+			// if not known, report as SEQUEST as it is the most
+			// common
+			sink.searchEngine(DTASelectParser.SEQUEST, line.toString().split(" ")[1]);
+		} else if (searchEngineLine > -1 && numLine >= searchEngineLine + 1 && !locusStarted
+				&& !startsWith(line, "Locus", false)) {
+			if (!sink.commandLineParameters(line.toString())) {
+				return false;
+			}
+		} else if (startsWith(line, "DTASelect", false)) {
+			intro = true;
+			return true;
+		} else if (startsWith(line, "Locus", false)) {
+			locusStarted = true;
+			sink.proteinHeader(line.toString());
+			intro = false;
+			return true;
+		} else if (startsWith(line, "Unique", false)) {
+			sink.psmHeader(line.toString());
+			return true;
+		}
+		if (intro || conclusion) {
+			return true;
+		}
+		return processRow(line);
+	}
+
+	/**
+	 * Process a protein or PSM row, which can be read out of the context of
+	 * the rest of the file, once the column headers are known by the sink
+	 *
+	 * @param line
+	 * @return false if the sink asks to stop reading
+	 * @throws IOException
+	 */
+	boolean processRow(CharSequence line) throws IOException {
+		final long start = metrics != null ? System.nanoTime() : 0;
+		row.reset(line);
+		if (row.equals(1, "Proteins")) {
+			conclusion = true;
+			return true;
+		}
+		final boolean protein = row.isNumeric(1);
+		if (metrics != null) {
+			metrics.addTime(DTASelectParseMetrics.Phase.TOKENIZE, System.nanoTime() - start);
+			if (protein) {
+				metrics.protein();
+			} else {
+				metrics.psm();
+			}
+		}
+
+		// this is the case of a protein
+		if (protein) {
+			return sink.protein(row);
+		}
+		// this is the case of a psm
+		return sink.psm(row);
+	}
+
+	static boolean startsWith(CharSequence line, String prefix, boolean ignoreCase) {
+		if (line.length() < prefix.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			final char c = line.charAt(i);
+			final char p = prefix.charAt(i);
+			if (c != p && (!ignoreCase || Character.toUpperCase(c) != Character.toUpperCase(p))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean isBlank(CharSequence line) {
+		for (int i = 0; i < line.length(); i++) {
+			if (line.charAt(i) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,187 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectLocusResolver;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProtein;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProteinSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRow;
+import edu.scripps.yates.utilities.grouping.GroupableProtein;
+import edu.scripps.yates.utilities.grouping.ProteinGroup;
+import edu.scripps.yates.utilities.proteomicsmodel.MSRun;
+import edu.scripps.yates.utilities.proteomicsmodel.Peptide;
+import edu.scripps.yates.utilities.proteomicsmodel.Protein;
+import edu.scripps.yates.utilities.proteomicsmodel.factories.MSRunEx;
+import edu.scripps.yates.utilities.proteomicsmodel.factories.PeptideEx;
+import gnu.trove.map.hash.THashMap;
+
+/**
+ * Builds each protein group with its proteins, PSMs and peptides, only until
+ * the next group starts, when it is delivered to a
+ * {@link DTASelectStreamListener} and forgotten.
+ *
+ * @author Salva
+ *
+ */
+class DTASelectStreamingSink implements DTASelectParsedRowSink {
+	private final DTASelectParser parser;
+	private final String analysisID;
+	private final DTASelectStreamListener listener;
+	private final Map<String, Protein> proteinsByAccession = new THashMap<String, Protein>();
+	private final Map<String, Peptide> peptidesByKey = new THashMap<String, Peptide>();
+	private DTASelectPSMSchema psmSchema;
+	private DTASelectProteinSchema proteinSchema;
+	private String streamRunPath;
+	private ProteinGroup currentProteinGroup = new ProteinGroup();
+	private List<DTASelectPSM> currentPSMs = new ArrayList<DTASelectPSM>();
+	private final MSRun uniqueMSRun;
+	private boolean isPsm;
+
+	DTASelectStreamingSink(DTASelectParser parser, String analysisID, DTASelectStreamListener listener) {
+		this.parser = parser;
+		this.analysisID = analysisID;
+		this.listener = listener;
+		if (parser.isReadingOnlyProteins()) {
+			uniqueMSRun = new MSRunEx(analysisID, null);
+		} else {
+			uniqueMSRun = null;
+		}
+	}
+
+	/**
+	 * Sets the run path of the stream, when its header is not read
+	 *
+	 * @param streamRunPath
+	 */
+	void setStreamRunPath(String streamRunPath) {
+		this.streamRunPath = streamRunPath;
+	}
+
+	@Override
+	public void dtaSelectVersion(String version) {
+		parser.dtaSelectVersionRead(version);
+	}
+
+	@Override
+	public void runPath(String path) {
+		parser.runPathRead(path);
+		streamRunPath = path;
+	}
+
+	@Override
+	public void fastaPath(String path) {
+		parser.fastaPathRead(path);
+	}
+
+	@Override
+	public void searchEngine(String searchEngine, String version) {
+		parser.searchEngineRead(searchEngine, version);
+	}
+
+	@Override
+	public boolean commandLineParameters(String line) {
+		return parser.commandLineParametersRead(line);
+	}
+
+	@Override
+	public void proteinHeader(String line) {
+		proteinSchema = DTASelectProteinSchema.parse(line);
+	}
+
+	@Override
+	public void psmHeader(String line) {
+		psmSchema = DTASelectPSMSchema.parse(line);
+	}
+
+	@Override
+	public boolean protein(DTASelectRow row) {
+		final DTASelectLocusResolver.Locus locus = parser.getLocusResolver()
+				.resolve(row.getString(proteinSchema.getLocusColumn()));
+		final String acc = locus.getAccession();
+		final boolean decoy = locus.isDecoy();
+		DTASelectProtein protein = null;
+		if (!decoy && (isPsm || !proteinsByAccession.containsKey(acc))) {
+			protein = parser.createProtein(row, proteinSchema);
+		}
+		parsedProtein(acc, decoy, protein);
+		return true;
+	}
+
+	@Override
+	public void parsedProtein(String accession, boolean decoy, DTASelectProtein protein) {
+		if (isPsm) {
+			flush();
+		}
+		isPsm = false;
+		if (decoy) {
+			parser.decoySkipped();
+			return;
+		}
+		if (!proteinsByAccession.containsKey(accession)) {
+			final String searchEngine = parser.getFirstSearchEngine();
+			if (searchEngine != null) {
+				protein.setSearchEngine(searchEngine);
+			}
+			proteinsByAccession.put(accession, protein);
+			currentProteinGroup.add(protein);
+		}
+	}
+
+	@Override
+	public boolean psm(DTASelectRow row) {
+		if (parser.isReadingOnlyProteins()) {
+			return parsedPSM(null);
+		}
+		return parsedPSM(parser.createPSM(row, psmSchema, streamRunPath));
+	}
+
+	@Override
+	public boolean parsedPSM(DTASelectPSM psm) {
+		isPsm = true;
+		if (parser.isReadingOnlyProteins()) {
+			for (final GroupableProtein protein : currentProteinGroup) {
+				((Protein) protein).addMSRun(uniqueMSRun);
+			}
+			return true;
+		}
+		final String searchEngine = parser.getFirstSearchEngine();
+		if (searchEngine != null) {
+			psm.setSearchEngine(searchEngine);
+		}
+		final String peptideKey = parser.getPeptideKey(psm);
+		Peptide peptide = peptidesByKey.get(peptideKey);
+		if (peptide == null) {
+			peptide = new PeptideEx(psm.getFullSequence(), peptideKey);
+			peptide.setSearchEngine(psm.getSearchEngine());
+			peptide.addMSRun(psm.getMSRun());
+			peptidesByKey.put(peptideKey, peptide);
+		}
+		psm.setPeptide(peptide, true);
+		for (final GroupableProtein prot : currentProteinGroup) {
+			((Protein) prot).addPSM(psm, true);
+			((Protein) prot).addPeptide(peptide, true);
+		}
+		currentPSMs.add(psm);
+		return true;
+	}
+
+	@Override
+	public void endOfStream() {
+		flush();
+	}
+
+	private void flush() {
+		if (!currentProteinGroup.isEmpty()) {
+			DTASelectParser.indexProteinGroup(currentProteinGroup);
+			listener.onProteinGroup(analysisID, currentProteinGroup, currentPSMs);
+		}
+		currentProteinGroup = new ProteinGroup();
+		currentPSMs = new ArrayList<DTASelectPSM>();
+		proteinsByAccession.clear();
+		peptidesByKey.clear();
+	}
+}
@@ -0,0 +1,170 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectKeys;
+import edu.scripps.yates.dtaselectparser.util.DTASelectLocusResolver;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProteinSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRow;
+import edu.scripps.yates.utilities.fasta.FastaParser;
+import gnu.trove.set.hash.TLongHashSet;
+
+/**
+ * Counts the rows of an input stream into a {@link DTASelectFileSummary},
+ * looking only at the 64-bit hashes of the columns needed to count the
+ * distinct proteins, PSMs, sequences and MS runs, so that nothing is created
+ * per row. Each locus is only resolved into its accession the first time it
+ * is found.
+ *
+ * @author Salva
+ *
+ */
+class DTASelectSummarySink implements DTASelectRowSink {
+	private final String analysisID;
+	private final DTASelectLocusResolver locusResolver;
+	private final List<String> commandLineParameters = new ArrayList<String>();
+	// the loci already resolved
+	private final TLongHashSet targetLoci = new TLongHashSet();
+	private final TLongHashSet decoyLoci = new TLongHashSet();
+	private final TLongHashSet accessions = new TLongHashSet();
+	private final TLongHashSet decoyAccessions = new TLongHashSet();
+	private final TLongHashSet psmKeys = new TLongHashSet();
+	private final TLongHashSet sequences = new TLongHashSet();
+	private final TLongHashSet runs = new TLongHashSet();
+	private final Set<String> msRuns = new LinkedHashSet<String>();
+	private String version;
+	private String searchEngine;
+	private String searchEngineVersion;
+	private DTASelectPSMSchema psmSchema;
+	private DTASelectProteinSchema proteinSchema;
+	private int numProteinGroups = 0;
+	private int numPSMRows = 0;
+	private boolean isPsm = false;
+	// true if the current group has a protein that is not decoy
+	private boolean groupCounted = false;
+	private DTASelectFileSummary summary;
+
+	/**
+	 *
+	 * @param analysisID
+	 * @param locusResolver to get the accession of the proteins and whether
+	 *                      they are decoys
+	 */
+	DTASelectSummarySink(String analysisID, DTASelectLocusResolver locusResolver) {
+		this.analysisID = analysisID;
+		this.locusResolver = locusResolver;
+	}
+
+	/**
+	 *
+	 * @return the summary, once the end of the stream is reached
+	 */
+	DTASelectFileSummary getSummary() {
+		return summary;
+	}
+
+	@Override
+	public void dtaSelectVersion(String version) {
+		this.version = version;
+	}
+
+	@Override
+	public void runPath(String runPath) {
+	}
+
+	@Override
+	public void fastaPath(String fastaPath) {
+	}
+
+	@Override
+	public void searchEngine(String searchEngine, String version) {
+		this.searchEngine = searchEngine;
+		searchEngineVersion = version;
+	}
+
+	@Override
+	public boolean commandLineParameters(String line) {
+		commandLineParameters.add(line);
+		return true;
+	}
+
+	@Override
+	public void proteinHeader(String line) {
+		proteinSchema = DTASelectProteinSchema.parse(line);
+	}
+
+	@Override
+	public void psmHeader(String line) {
+		psmSchema = DTASelectPSMSchema.parse(line);
+	}
+
+	@Override
+	public boolean protein(DTASelectRow row) {
+		if (isPsm) {
+			groupCounted = false;
+		}
+		isPsm = false;
+		if (!isDecoy(row, proteinSchema.getLocusColumn())) {
+			if (!groupCounted) {
+				groupCounted = true;
+				numProteinGroups++;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Counts the accession of the locus of the column the first time the
+	 * locus is found
+	 *
+	 * @param row
+	 * @param locusColumn
+	 * @return true if the accession of the locus is decoy
+	 */
+	private boolean isDecoy(DTASelectRow row, int locusColumn) {
+		final long locusHash = row.hash(locusColumn);
+		if (targetLoci.contains(locusHash)) {
+			return false;
+		}
+		if (decoyLoci.contains(locusHash)) {
+			return true;
+		}
+		final DTASelectLocusResolver.Locus locus = locusResolver.resolve(row.getString(locusColumn));
+		final String accession = locus.getAccession();
+		final long accessionHash = DTASelectKeys.hash(accession, 0, accession.length());
+		if (locus.isDecoy()) {
+			decoyLoci.add(locusHash);
+			decoyAccessions.add(accessionHash);
+		} else {
+			targetLoci.add(locusHash);
+			accessions.add(accessionHash);
+		}
+		return locus.isDecoy();
+	}
+
+	@Override
+	public boolean psm(DTASelectRow row) {
+		isPsm = true;
+		numPSMRows++;
+		final int psmIdColumn = psmSchema.getPSMIdColumn();
+		final long sequence = row.hashSequence(psmSchema.getSequenceColumn());
+		sequences.add(sequence);
+		psmKeys.add(31 * row.hash(psmIdColumn) + sequence);
+		// the file name is the part before the scan numbers and the charge
+		if (runs.add(row.hashBeforeLast(psmIdColumn, '.', 3))) {
+			msRuns.add(FastaParser.getFileNameFromPSMIdentifier(row.getString(psmIdColumn)));
+		}
+		return true;
+	}
+
+	@Override
+	public void endOfStream() {
+		summary = new DTASelectFileSummary(analysisID, version, searchEngine, searchEngineVersion,
+				commandLineParameters, accessions.size(), decoyAccessions.size(), numProteinGroups, numPSMRows, psmKeys.size(),
+				sequences.size(), msRuns);
+	}
+}
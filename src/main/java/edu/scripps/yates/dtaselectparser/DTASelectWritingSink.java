@@ -0,0 +1,209 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.log4j.Logger;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProteinSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRow;
+import edu.scripps.yates.dtaselectparser.util.MappedFileLineSource;
+import gnu.trove.list.array.TLongArrayList;
+
+/**
+ * Copies the rows accepted by the filters of the parser from a memory-mapped
+ * file to an output, as the {@link DTASelectFilteringSink} does but with the
+ * positions of the rows in the file. The consecutive ranges of bytes to copy
+ * are joined, so they are copied with as few calls as possible.
+ *
+ * @author Salva
+ *
+ */
+class DTASelectWritingSink implements DTASelectRowSink {
+	private static final Logger log = Logger.getLogger(DTASelectWritingSink.class);
+	private final DTASelectParser parser;
+	private final MappedFileLineSource source;
+	private final FileChannel input;
+	private final WritableByteChannel output;
+	// start and end of the accepted protein rows and the blank lines of the
+	// current group, until a PSM of the group is accepted
+	private final TLongArrayList pendingLines = new TLongArrayList();
+	private DTASelectPSMSchema psmSchema;
+	private DTASelectProteinSchema proteinSchema;
+	// true if the last line was a protein or PSM row
+	private boolean isRow = false;
+	private boolean isPsm = false;
+	private boolean groupSent = false;
+	private boolean groupRead = false;
+	// true if a protein row of the current group was accepted
+	private boolean proteinAccepted = false;
+	// the range of bytes to copy, not copied yet
+	private long copyStart = -1;
+	private long copyEnd = -1;
+	private int filteredProteins = 0;
+	private int filteredPSMs = 0;
+	private int prunedGroups = 0;
+
+	/**
+	 *
+	 * @param parser the parser with the filters
+	 * @param source the lines of the file
+	 * @param input  the file, to copy its bytes
+	 * @param output
+	 */
+	DTASelectWritingSink(DTASelectParser parser, MappedFileLineSource source, FileChannel input,
+			WritableByteChannel output) {
+		this.parser = parser;
+		this.source = source;
+		this.input = input;
+		this.output = output;
+	}
+
+	/**
+	 * Reads all the lines of the source, copying the lines that are not
+	 * protein or PSM rows as they are, except the blank lines within the
+	 * protein groups, which are copied only if their group is copied
+	 *
+	 * @param reader the reader sending the rows to this sink
+	 * @throws IOException
+	 */
+	void copyLines(DTASelectStreamReader reader) throws IOException {
+		CharSequence line;
+		while ((line = source.readLine()) != null) {
+			isRow = false;
+			reader.processLine(line);
+			if (!isRow) {
+				if (reader.isConclusion()) {
+					// no more rows will be accepted in the current group
+					endGroup();
+				}
+				if (groupRead && !groupSent && DTASelectStreamReader.isBlank(line)) {
+					pendingLines.add(source.getLineStart());
+					pendingLines.add(source.getPosition());
+				} else {
+					copy(source.getLineStart(), source.getPosition());
+				}
+			}
+		}
+		endGroup();
+		flush();
+	}
+
+	/**
+	 *
+	 * @param name the name of the file, to be logged
+	 */
+	void logCounts(String name) {
+		log.info(filteredProteins + " proteins and " + filteredPSMs + " PSMs filtered out and " + prunedGroups
+				+ " protein groups pruned in " + name);
+	}
+
+	@Override
+	public void dtaSelectVersion(String version) {
+	}
+
+	@Override
+	public void runPath(String runPath) {
+	}
+
+	@Override
+	public void fastaPath(String fastaPath) {
+	}
+
+	@Override
+	public void searchEngine(String searchEngine, String version) {
+	}
+
+	@Override
+	public boolean commandLineParameters(String line) {
+		return true;
+	}
+
+	@Override
+	public void proteinHeader(String line) {
+		proteinSchema = DTASelectProteinSchema.parse(line);
+	}
+
+	@Override
+	public void psmHeader(String line) {
+		psmSchema = DTASelectPSMSchema.parse(line);
+	}
+
+	private void endGroup() {
+		if (groupRead && !groupSent) {
+			prunedGroups++;
+		}
+		pendingLines.clear();
+		groupSent = false;
+		groupRead = false;
+		proteinAccepted = false;
+	}
+
+	@Override
+	public boolean protein(DTASelectRow row) {
+		isRow = true;
+		if (isPsm) {
+			endGroup();
+		}
+		isPsm = false;
+		groupRead = true;
+		if (!parser.accept(row, proteinSchema)) {
+			filteredProteins++;
+			return true;
+		}
+		proteinAccepted = true;
+		pendingLines.add(source.getLineStart());
+		pendingLines.add(source.getPosition());
+		return true;
+	}
+
+	@Override
+	public boolean psm(DTASelectRow row) throws IOException {
+		isRow = true;
+		isPsm = true;
+		groupRead = true;
+		if (!groupSent && !proteinAccepted || !parser.accept(row, psmSchema)) {
+			filteredPSMs++;
+			return true;
+		}
+		if (!groupSent) {
+			groupSent = true;
+			for (int i = 0; i < pendingLines.size(); i += 2) {
+				copy(pendingLines.get(i), pendingLines.get(i + 1));
+			}
+			pendingLines.clear();
+		}
+		copy(source.getLineStart(), source.getPosition());
+		return true;
+	}
+
+	/**
+	 * Copies a range of bytes of the input, joining it to the previous range
+	 * if they are consecutive
+	 *
+	 * @param start
+	 * @param end
+	 * @throws IOException
+	 */
+	private void copy(long start, long end) throws IOException {
+		if (start != copyEnd) {
+			flush();
+			copyStart = start;
+		}
+		copyEnd = end;
+	}
+
+	private void flush() throws IOException {
+		long position = copyStart;
+		while (position < copyEnd) {
+			position += input.transferTo(position, copyEnd - position, output);
+		}
+		copyStart = copyEnd;
+	}
+
+	@Override
+	public void endOfStream() {
+	}
+}
@@ -0,0 +1,83 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * {@link DTASelectLineSource} reading the lines of a {@link BufferedReader}.
+ * The bytes read are only counted when it is created from an
+ * {@link InputStream}, and then they are the bytes taken by the reader, which
+ * reads ahead of the lines returned.
+ *
+ * @author Salva
+ *
+ */
+public class BufferedReaderLineSource implements DTASelectLineSource {
+	private final BufferedReader reader;
+	private final CountingInputStream counter;
+
+	public BufferedReaderLineSource(BufferedReader reader) {
+		this.reader = reader;
+		counter = null;
+	}
+
+	/**
+	 *
+	 * @param in the input, which is decoded with the default charset
+	 */
+	public BufferedReaderLineSource(InputStream in) {
+		counter = new CountingInputStream(in);
+		reader = new BufferedReader(new InputStreamReader(counter));
+	}
+
+	@Override
+	public CharSequence readLine() throws IOException {
+		return reader.readLine();
+	}
+
+	@Override
+	public long getBytesRead() {
+		return counter != null ? counter.count : -1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private static class CountingInputStream extends FilterInputStream {
+		private long count = 0;
+
+		private CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b != -1) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			final int read = super.read(b, off, len);
+			if (read > 0) {
+				count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			final long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+}
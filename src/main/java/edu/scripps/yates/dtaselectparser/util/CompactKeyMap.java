@@ -0,0 +1,146 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+/**
+ * Set of objects identified by a 64-bit hash of their key, instead of by the
+ * key as a String, so that the key of an object doesn't need to be built to
+ * look it up.<br>
+ * The objects whose key has the same hash are compared by
+ * {@link KeyFunction#sameKey(Object, Object)}, so different keys with the
+ * same hash are kept apart.<br>
+ * It is safe to use it from different threads.
+ *
+ * @author Salva
+ *
+ * @param <T>
+ */
+public class CompactKeyMap<T> {
+	/**
+	 * Gets the hash of the key of an object and compares the keys of two
+	 * objects, without building the keys
+	 *
+	 * @author Salva
+	 *
+	 * @param <T>
+	 */
+	public interface KeyFunction<T> {
+		long hash(T object);
+
+		boolean sameKey(T object1, T object2);
+	}
+
+	// the objects with the same hash and different keys
+	private static class Collision {
+		private final List<Object> objects = new ArrayList<Object>(2);
+	}
+
+	private final KeyFunction<T> keyFunction;
+	private final TLongObjectHashMap<Object> objectsByHash = new TLongObjectHashMap<Object>();
+	private int size = 0;
+	private int collisions = 0;
+
+	public CompactKeyMap(KeyFunction<T> keyFunction) {
+		this.keyFunction = keyFunction;
+	}
+
+	/**
+	 *
+	 * @param probe
+	 * @return the object with the same key than the probe, or null
+	 */
+	public synchronized T get(T probe) {
+		return find(objectsByHash.get(keyFunction.hash(probe)), probe);
+	}
+
+	/**
+	 * Adds the object, unless there is already an object with the same key
+	 *
+	 * @param object
+	 * @return the object with the same key that was already in the map, or null
+	 *         if the object was added
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized T putIfAbsent(T object) {
+		final long hash = keyFunction.hash(object);
+		final Object current = objectsByHash.get(hash);
+		if (current == null) {
+			objectsByHash.put(hash, object);
+			size++;
+			return null;
+		}
+		final T existing = find(current, object);
+		if (existing != null) {
+			return existing;
+		}
+		Collision collision;
+		if (current instanceof Collision) {
+			collision = (Collision) current;
+		} else {
+			collision = new Collision();
+			collision.objects.add(current);
+			objectsByHash.put(hash, collision);
+		}
+		collision.objects.add(object);
+		size++;
+		collisions++;
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T find(Object current, T probe) {
+		if (current == null) {
+			return null;
+		}
+		if (current instanceof Collision) {
+			for (final Object object : ((Collision) current).objects) {
+				if (keyFunction.sameKey((T) object, probe)) {
+					return (T) object;
+				}
+			}
+			return null;
+		}
+		return keyFunction.sameKey((T) current, probe) ? (T) current : null;
+	}
+
+	/**
+	 *
+	 * @return a new list with all the objects of the map
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized List<T> values() {
+		final List<T> ret = new ArrayList<T>(size);
+		for (final Object current : objectsByHash.valueCollection()) {
+			if (current instanceof Collision) {
+				for (final Object object : ((Collision) current).objects) {
+					ret.add((T) object);
+				}
+			} else {
+				ret.add((T) current);
+			}
+		}
+		return ret;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 *
+	 * @return the number of objects added whose hash was already used by an
+	 *         object with a different key
+	 */
+	public synchronized int getCollisions() {
+		return collisions;
+	}
+
+	public synchronized void clear() {
+		objectsByHash.clear();
+		size = 0;
+		collisions = 0;
+	}
+}
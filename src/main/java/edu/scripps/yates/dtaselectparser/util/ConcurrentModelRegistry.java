@@ -0,0 +1,83 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import edu.scripps.yates.utilities.proteomicsmodel.MSRun;
+import edu.scripps.yates.utilities.proteomicsmodel.Peptide;
+import edu.scripps.yates.utilities.proteomicsmodel.factories.MSRunEx;
+
+/**
+ * {@link DTASelectModelRegistry} backed by concurrent maps, so that the
+ * lookups don't take any lock and the insertions only lock a part of the
+ * map.<br>
+ * Each parser has its own one by default, so different parsers don't share
+ * their objects and they are released with the parser.
+ *
+ * @author Salva
+ *
+ */
+public class ConcurrentModelRegistry implements DTASelectModelRegistry {
+	private final ConcurrentMap<String, MSRun> msRuns = new ConcurrentHashMap<String, MSRun>();
+	private final ConcurrentMap<String, Peptide> peptides = new ConcurrentHashMap<String, Peptide>();
+	private final ConcurrentMap<String, ConcurrentMap<String, Peptide>> peptidesByRun = new ConcurrentHashMap<String, ConcurrentMap<String, Peptide>>();
+
+	@Override
+	public MSRun getMSRun(String runId, String path) {
+		MSRun run = msRuns.get(runId);
+		if (run == null) {
+			final MSRun newRun = new MSRunEx(runId, path);
+			run = msRuns.putIfAbsent(runId, newRun);
+			if (run == null) {
+				return newRun;
+			}
+		}
+		run.setPath(path);
+		return run;
+	}
+
+	private ConcurrentMap<String, Peptide> getPeptides(MSRun run, boolean create) {
+		if (run == null) {
+			return peptides;
+		}
+		ConcurrentMap<String, Peptide> ret = peptidesByRun.get(run.getRunId());
+		if (ret == null && create) {
+			final ConcurrentMap<String, Peptide> newMap = new ConcurrentHashMap<String, Peptide>();
+			ret = peptidesByRun.putIfAbsent(run.getRunId(), newMap);
+			if (ret == null) {
+				ret = newMap;
+			}
+		}
+		return ret;
+	}
+
+	@Override
+	public Peptide getPeptide(MSRun run, String key) {
+		final ConcurrentMap<String, Peptide> map = getPeptides(run, false);
+		return map != null ? map.get(key) : null;
+	}
+
+	@Override
+	public Peptide addPeptide(MSRun run, String key, Peptide peptide) {
+		return getPeptides(run, true).putIfAbsent(key, peptide);
+	}
+
+	public int getNumMSRuns() {
+		return msRuns.size();
+	}
+
+	public int getNumPeptides() {
+		int ret = peptides.size();
+		for (final ConcurrentMap<String, Peptide> map : peptidesByRun.values()) {
+			ret += map.size();
+		}
+		return ret;
+	}
+
+	@Override
+	public void clear() {
+		msRuns.clear();
+		peptides.clear();
+		peptidesByRun.clear();
+	}
+}
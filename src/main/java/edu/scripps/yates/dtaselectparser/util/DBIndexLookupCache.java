@@ -0,0 +1,224 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import edu.scripps.yates.utilities.fasta.dbindex.DBIndexInterface;
+import edu.scripps.yates.utilities.fasta.dbindex.DBIndexStoreException;
+import edu.scripps.yates.utilities.fasta.dbindex.IndexedProtein;
+import gnu.trove.map.hash.THashMap;
+import gnu.trove.set.hash.THashSet;
+
+/**
+ * Cache of the proteins returned by a {@link DBIndexInterface} for each
+ * peptide sequence.<br>
+ * The last looked up sequences are kept in a LRU map of a maximum size. In
+ * addition, the sequences of a whole file can be resolved in advance by
+ * {@link #resolve(Collection, int)}, in parallel, and they are kept apart from
+ * the LRU map until {@link #releaseResolved()} is called.<br>
+ * It is safe to use it from different threads.
+ *
+ * @author Salva
+ *
+ */
+public class DBIndexLookupCache {
+	private static final Logger log = Logger.getLogger(DBIndexLookupCache.class);
+	private final DBIndexInterface dbIndex;
+	private final int maxSize;
+	private final LinkedHashMap<String, Set<IndexedProtein>> lru;
+	private final Map<String, Set<IndexedProtein>> resolved = new THashMap<String, Set<IndexedProtein>>();
+	private int hits = 0;
+	private int misses = 0;
+
+	/**
+	 *
+	 * @param dbIndex
+	 * @param maxSize maximum number of sequences kept in the LRU map. If 0,
+	 *                only the sequences resolved in advance are cached
+	 */
+	public DBIndexLookupCache(DBIndexInterface dbIndex, final int maxSize) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("The size of the cache cannot be negative");
+		}
+		this.dbIndex = dbIndex;
+		this.maxSize = maxSize;
+		lru = new LinkedHashMap<String, Set<IndexedProtein>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Set<IndexedProtein>> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	public DBIndexInterface getDBIndex() {
+		return dbIndex;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Gets the proteins containing that sequence, looking it up in the dbIndex
+	 * if it is not cached
+	 *
+	 * @param sequence
+	 * @return
+	 * @throws DBIndexStoreException
+	 */
+	public Set<IndexedProtein> getProteins(String sequence) throws DBIndexStoreException {
+		synchronized (this) {
+			Set<IndexedProtein> proteins = resolved.get(sequence);
+			if (proteins == null) {
+				proteins = lru.get(sequence);
+			}
+			if (proteins != null) {
+				hits++;
+				return proteins;
+			}
+			misses++;
+		}
+		// the lookup is done out of the lock so that other threads are not
+		// blocked by it
+		final Set<IndexedProtein> proteins = dbIndex.getProteins(sequence);
+		if (maxSize > 0) {
+			synchronized (this) {
+				lru.put(sequence, proteins);
+			}
+		}
+		return proteins;
+	}
+
+	/**
+	 * Looks up in the dbIndex all the sequences that are not cached, using
+	 * that number of threads, and keeps them until {@link #releaseResolved()}
+	 * is called, independently of the maximum size of the cache. The dbIndex
+	 * has to support concurrent lookups if more than one thread is used.
+	 *
+	 * @param sequences
+	 * @param numThreads
+	 * @throws IOException
+	 */
+	public void resolve(Collection<String> sequences, int numThreads) throws IOException {
+		final Set<String> toResolve = new THashSet<String>();
+		synchronized (this) {
+			for (final String sequence : sequences) {
+				final Set<IndexedProtein> proteins = lru.get(sequence);
+				if (proteins != null) {
+					resolved.put(sequence, proteins);
+				} else if (!resolved.containsKey(sequence)) {
+					toResolve.add(sequence);
+				}
+			}
+		}
+		if (toResolve.isEmpty()) {
+			return;
+		}
+		log.info("Looking up " + toResolve.size() + " distinct sequences in the dbIndex using " + numThreads
+				+ " threads...");
+		final int numChunks = Math.max(1, Math.min(numThreads, toResolve.size()));
+		final List<String> distinct = new ArrayList<String>(toResolve);
+		if (numChunks == 1) {
+			resolveChunk(distinct);
+			return;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(numChunks);
+		try {
+			final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			final int chunkSize = (distinct.size() + numChunks - 1) / numChunks;
+			for (int start = 0; start < distinct.size(); start += chunkSize) {
+				final List<String> chunk = distinct.subList(start, Math.min(start + chunkSize, distinct.size()));
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						resolveChunk(chunk);
+						return null;
+					}
+				}));
+			}
+			for (final Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while looking up sequences in the dbIndex", e);
+				} catch (final ExecutionException e) {
+					final Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					throw new IOException(cause);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void resolveChunk(List<String> sequences) throws IOException {
+		final Map<String, Set<IndexedProtein>> chunkResult = new THashMap<String, Set<IndexedProtein>>();
+		for (final String sequence : sequences) {
+			try {
+				chunkResult.put(sequence, dbIndex.getProteins(sequence));
+			} catch (final DBIndexStoreException e) {
+				throw new IOException(e);
+			}
+		}
+		synchronized (this) {
+			resolved.putAll(chunkResult);
+			misses += sequences.size();
+		}
+	}
+
+	/**
+	 * Moves the sequences resolved by {@link #resolve(Collection, int)} to the
+	 * LRU map, so that they can be evicted
+	 */
+	public synchronized void releaseResolved() {
+		if (maxSize > 0) {
+			lru.putAll(resolved);
+		}
+		resolved.clear();
+	}
+
+	public synchronized void clear() {
+		lru.clear();
+		resolved.clear();
+		hits = 0;
+		misses = 0;
+	}
+
+	public synchronized int size() {
+		return lru.size() + resolved.size();
+	}
+
+	/**
+	 *
+	 * @return the number of lookups answered from the cache
+	 */
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 *
+	 * @return the number of lookups done in the dbIndex
+	 */
+	public synchronized int getMisses() {
+		return misses;
+	}
+}
@@ -0,0 +1,120 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import edu.scripps.yates.utilities.fasta.FastaParser;
+import gnu.trove.set.hash.THashSet;
+
+/**
+ * Common filters of the rows of a DTASelect file
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectFilters {
+
+	private DTASelectFilters() {
+	}
+
+	public static DTASelectPSMFilter minXCorr(final float minXCorr) {
+		return new DTASelectPSMFilter() {
+			@Override
+			public boolean accept(DTASelectRow row, DTASelectPSMSchema schema) {
+				return row.getFloat(schema.getXCorrColumn()) >= minXCorr;
+			}
+		};
+	}
+
+	public static DTASelectPSMFilter minDeltaCn(final float minDeltaCn) {
+		return new DTASelectPSMFilter() {
+			@Override
+			public boolean accept(DTASelectRow row, DTASelectPSMSchema schema) {
+				return row.getFloat(schema.getDeltaCnColumn()) >= minDeltaCn;
+			}
+		};
+	}
+
+	/**
+	 *
+	 * @param minConf the minimum value of the 'Conf%' column, as a percentage
+	 * @return
+	 */
+	public static DTASelectPSMFilter minConf(final float minConf) {
+		return new DTASelectPSMFilter() {
+			@Override
+			public boolean accept(DTASelectRow row, DTASelectPSMSchema schema) {
+				return row.getFloat(schema.getConfColumn()) >= minConf;
+			}
+		};
+	}
+
+	/**
+	 *
+	 * @param runIds the names of the MS runs, as they appear in the 'FileName'
+	 *               column, without the scan numbers and the charge
+	 * @return a filter that accepts the PSMs of those MS runs
+	 */
+	public static DTASelectPSMFilter msRuns(Collection<String> runIds) {
+		final Set<String> acceptedRunIds = new THashSet<String>(runIds);
+		return new DTASelectPSMFilter() {
+			@Override
+			public boolean accept(DTASelectRow row, DTASelectPSMSchema schema) {
+				return acceptedRunIds.contains(
+						FastaParser.getFileNameFromPSMIdentifier(row.getString(schema.getPSMIdColumn())));
+			}
+		};
+	}
+
+	public static DTASelectPSMFilter msRuns(String... runIds) {
+		return msRuns(Arrays.asList(runIds));
+	}
+
+	/**
+	 *
+	 * @param loci
+	 * @return a filter that accepts the proteins whose 'Locus' column is one
+	 *         of those loci
+	 */
+	public static DTASelectProteinFilter loci(Collection<String> loci) {
+		final Set<String> acceptedLoci = new THashSet<String>(loci);
+		return new DTASelectProteinFilter() {
+			@Override
+			public boolean accept(DTASelectRow row, DTASelectProteinSchema schema) {
+				return acceptedLoci.contains(row.getString(schema.getLocusColumn()));
+			}
+		};
+	}
+
+	/**
+	 *
+	 * @param pattern such as a decoy pattern
+	 * @return a filter that accepts the proteins whose 'Locus' column doesn't
+	 *         contain the pattern
+	 */
+	public static DTASelectProteinFilter locusDoesNotMatch(final Pattern pattern) {
+		return new DTASelectProteinFilter() {
+			@Override
+			public boolean accept(DTASelectRow row, DTASelectProteinSchema schema) {
+				return !row.find(schema.getLocusColumn(), pattern);
+			}
+		};
+	}
+
+	/**
+	 *
+	 * @param pattern
+	 * @return a filter that accepts the proteins whose 'Locus' column contains
+	 *         the pattern
+	 */
+	public static DTASelectProteinFilter locusMatches(final Pattern pattern) {
+		return new DTASelectProteinFilter() {
+			@Override
+			public boolean accept(DTASelectRow row, DTASelectProteinSchema schema) {
+				return row.find(schema.getLocusColumn(), pattern);
+			}
+		};
+	}
+}
@@ -0,0 +1,149 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import edu.scripps.yates.utilities.proteomicsmodel.MSRun;
+import edu.scripps.yates.utilities.proteomicsmodel.PSM;
+import edu.scripps.yates.utilities.proteomicsmodel.utils.KeyUtils;
+
+/**
+ * 64-bit hashes of the keys of the PSMs and of their peptides, made of the
+ * same values than the Strings of
+ * {@link KeyUtils#getSpectrumKey(PSM, boolean, boolean)} and
+ * {@link KeyUtils#getSequenceChargeKey(PSM, boolean, boolean)}, to be used in
+ * {@link CompactKeyMap}s.
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectKeys {
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private DTASelectKeys() {
+	}
+
+	/**
+	 *
+	 * @param distinguishModifiedSequence
+	 * @param chargeStateSensible
+	 * @return the key of a PSM: MS run, scan number, charge state and sequence
+	 */
+	public static CompactKeyMap.KeyFunction<PSM> spectrumKeys(final boolean distinguishModifiedSequence,
+			final boolean chargeStateSensible) {
+		return new CompactKeyMap.KeyFunction<PSM>() {
+			@Override
+			public long hash(PSM psm) {
+				long hash = addToHash(FNV_OFFSET, psm.getMSRun().getRunId());
+				hash = addToHash(hash, psm.getScanNumber());
+				if (chargeStateSensible) {
+					hash = addToHash(hash, psm.getChargeState());
+				}
+				return mix(addToHash(hash, getSequence(psm, distinguishModifiedSequence)));
+			}
+
+			@Override
+			public boolean sameKey(PSM psm1, PSM psm2) {
+				return equal(psm1.getMSRun().getRunId(), psm2.getMSRun().getRunId())
+						&& equal(psm1.getScanNumber(), psm2.getScanNumber())
+						&& (!chargeStateSensible || equal(psm1.getChargeState(), psm2.getChargeState()))
+						&& equal(getSequence(psm1, distinguishModifiedSequence),
+								getSequence(psm2, distinguishModifiedSequence));
+			}
+		};
+	}
+
+	/**
+	 *
+	 * @param distinguishModifiedSequence
+	 * @param chargeStateSensible
+	 * @param separateByMSRun
+	 * @return the key of the peptide of a PSM: sequence and charge state, and
+	 *         MS run if the peptides are separated by MS run
+	 */
+	public static CompactKeyMap.KeyFunction<PSM> peptideKeys(final boolean distinguishModifiedSequence,
+			final boolean chargeStateSensible, final boolean separateByMSRun) {
+		return new CompactKeyMap.KeyFunction<PSM>() {
+			@Override
+			public long hash(PSM psm) {
+				long hash = addToHash(FNV_OFFSET, getSequence(psm, distinguishModifiedSequence));
+				if (chargeStateSensible) {
+					hash = addToHash(hash, psm.getChargeState());
+				}
+				if (separateByMSRun) {
+					hash = addToHash(hash, getRunId(psm.getMSRun()));
+				}
+				return mix(hash);
+			}
+
+			@Override
+			public boolean sameKey(PSM psm1, PSM psm2) {
+				return equal(getSequence(psm1, distinguishModifiedSequence),
+						getSequence(psm2, distinguishModifiedSequence))
+						&& (!chargeStateSensible || equal(psm1.getChargeState(), psm2.getChargeState()))
+						&& (!separateByMSRun || equal(getRunId(psm1.getMSRun()), getRunId(psm2.getMSRun())));
+			}
+		};
+	}
+
+	private static String getSequence(PSM psm, boolean distinguishModifiedSequence) {
+		return distinguishModifiedSequence ? psm.getFullSequence() : psm.getSequence();
+	}
+
+	private static String getRunId(MSRun msRun) {
+		return msRun != null ? msRun.getRunId() : null;
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @param start the first character, inclusive
+	 * @param end   the last character, exclusive
+	 * @return the 64-bit hash of those characters of the value
+	 */
+	public static long hash(CharSequence value, int start, int end) {
+		long hash = FNV_OFFSET;
+		for (int i = start; i < end; i++) {
+			hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+		}
+		return mix(hash);
+	}
+
+	/**
+	 * Adds the characters of a value to a FNV-1a hash, followed by a separator
+	 * so that the boundaries between values count
+	 *
+	 * @param hash
+	 * @param value
+	 * @return
+	 */
+	private static long addToHash(long hash, CharSequence value) {
+		if (value != null) {
+			for (int i = 0; i < value.length(); i++) {
+				hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+			}
+		}
+		return (hash ^ 0xffff) * FNV_PRIME;
+	}
+
+	private static long addToHash(long hash, Integer value) {
+		return (hash ^ (value != null ? value : Integer.MIN_VALUE)) * FNV_PRIME;
+	}
+
+	/**
+	 * Final mix of MurmurHash3, to spread the bits of the FNV hash
+	 *
+	 * @param hash
+	 * @return
+	 */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private static boolean equal(Object o1, Object o2) {
+		return o1 == null ? o2 == null : o1.equals(o2);
+	}
+}
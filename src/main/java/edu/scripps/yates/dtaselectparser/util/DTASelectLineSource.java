@@ -0,0 +1,31 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Source of the lines of a DTASelect file
+ *
+ * @author Salva
+ *
+ */
+public interface DTASelectLineSource extends Closeable {
+	/**
+	 * Reads the next line, without the line terminator.<br>
+	 * The returned line may be reused by the source, so it is only valid until
+	 * the next call to this method. Use {@link CharSequence#toString()} to keep
+	 * it.
+	 *
+	 * @return the next line or null if the end of the source is reached
+	 * @throws IOException
+	 */
+	CharSequence readLine() throws IOException;
+
+	/**
+	 *
+	 * @return the number of bytes of the uncompressed input consumed so far,
+	 *         including the line terminators, or -1 if it is not known. It may
+	 *         go ahead of the lines returned if the source reads in blocks.
+	 */
+	long getBytesRead();
+}
@@ -0,0 +1,151 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import edu.scripps.yates.utilities.fasta.FastaParser;
+import edu.scripps.yates.utilities.proteomicsmodel.Accession;
+import edu.scripps.yates.utilities.proteomicsmodel.enums.AccessionType;
+import gnu.trove.map.hash.THashMap;
+
+/**
+ * Resolves the loci of the proteins into accessions, decoy flags and gene
+ * names, keeping the result of each locus so that
+ * {@link FastaParser#getACC(String)}, the decoy pattern and
+ * {@link FastaParser#getGeneFromFastaHeader(String)} are only applied once per
+ * locus, no matter how many times it appears in the input files.<br>
+ * It is safe to use it from different threads.
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectLocusResolver {
+	private final boolean ignoreACCFormat;
+	private final Pattern decoyPattern;
+	private final Map<String, Locus> loci = new THashMap<String, Locus>();
+
+	/**
+	 *
+	 * @param ignoreACCFormat if true, the locus is used as accession as it is
+	 * @param decoyPattern    the pattern to recognize decoy accessions, or null
+	 */
+	public DTASelectLocusResolver(boolean ignoreACCFormat, Pattern decoyPattern) {
+		this.ignoreACCFormat = ignoreACCFormat;
+		this.decoyPattern = decoyPattern;
+	}
+
+	public boolean isIgnoreACCFormat() {
+		return ignoreACCFormat;
+	}
+
+	public Pattern getDecoyPattern() {
+		return decoyPattern;
+	}
+
+	public Locus resolve(String locus) {
+		synchronized (loci) {
+			final Locus resolved = loci.get(locus);
+			if (resolved != null) {
+				return resolved;
+			}
+		}
+		// resolved out of the lock, since two threads resolving the same
+		// locus at the same time get the same result
+		final Locus resolved = new Locus(locus);
+		synchronized (loci) {
+			final Locus previous = loci.get(locus);
+			if (previous != null) {
+				return previous;
+			}
+			loci.put(locus, resolved);
+		}
+		return resolved;
+	}
+
+	public int size() {
+		synchronized (loci) {
+			return loci.size();
+		}
+	}
+
+	public void clear() {
+		synchronized (loci) {
+			loci.clear();
+		}
+	}
+
+	private boolean matchesDecoyPattern(String string) {
+		return decoyPattern != null && decoyPattern.matcher(string).find();
+	}
+
+	/**
+	 * The result of resolving a locus
+	 *
+	 * @author Salva
+	 *
+	 */
+	public class Locus {
+		private final String accession;
+		private final AccessionType accessionType;
+		private final boolean decoy;
+		private final boolean decoyLocus;
+		private String description;
+		private String gene;
+
+		private Locus(String locus) {
+			if (ignoreACCFormat) {
+				accession = locus;
+				accessionType = AccessionType.UNIPROT;
+			} else {
+				final Accession acc = FastaParser.getACC(locus);
+				accession = acc.getAccession();
+				accessionType = acc.getAccessionType();
+			}
+			decoy = matchesDecoyPattern(accession);
+			decoyLocus = accession.equals(locus) ? decoy : matchesDecoyPattern(locus);
+		}
+
+		public String getAccession() {
+			return accession;
+		}
+
+		public AccessionType getAccessionType() {
+			return accessionType;
+		}
+
+		/**
+		 *
+		 * @return true if the accession matches the decoy pattern
+		 */
+		public boolean isDecoy() {
+			return decoy;
+		}
+
+		/**
+		 *
+		 * @return true if the locus, as it is, matches the decoy pattern
+		 */
+		public boolean isDecoyLocus() {
+			return decoyLocus;
+		}
+
+		/**
+		 * Gets the gene name from the description of the protein. The gene of
+		 * the last description is kept, since the description of a locus
+		 * doesn't usually change.
+		 *
+		 * @param description
+		 * @return
+		 */
+		public synchronized String getGene(String description) {
+			if (description == null) {
+				return null;
+			}
+			if (!description.equals(this.description)) {
+				gene = FastaParser.getGeneFromFastaHeader(description);
+				this.description = description;
+			}
+			return gene;
+		}
+	}
+}
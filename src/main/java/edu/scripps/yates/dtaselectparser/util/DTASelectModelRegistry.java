@@ -0,0 +1,51 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import edu.scripps.yates.utilities.proteomicsmodel.MSRun;
+import edu.scripps.yates.utilities.proteomicsmodel.Peptide;
+
+/**
+ * Registry of the MS runs and peptides created while parsing, so that the
+ * PSMs of the same run, and of the same peptide, share the same object.<br>
+ * Implementations have to be safe to use from different threads.
+ *
+ * @author Salva
+ *
+ */
+public interface DTASelectModelRegistry {
+	/**
+	 * Gets the MS run with that identifier, creating it if it was not
+	 * registered, and sets its path
+	 *
+	 * @param runId
+	 * @param path
+	 * @return
+	 */
+	MSRun getMSRun(String runId, String path);
+
+	/**
+	 *
+	 * @param run the MS run of the peptide, or null if the peptides are not
+	 *            separated by MS run
+	 * @param key
+	 * @return the peptide registered with that key, or null
+	 */
+	Peptide getPeptide(MSRun run, String key);
+
+	/**
+	 * Registers the peptide with that key, unless other peptide was already
+	 * registered with it
+	 *
+	 * @param run     the MS run of the peptide, or null if the peptides are not
+	 *                separated by MS run
+	 * @param key
+	 * @param peptide
+	 * @return the peptide already registered with that key, or null if the
+	 *         peptide was registered
+	 */
+	Peptide addPeptide(MSRun run, String key, Peptide peptide);
+
+	/**
+	 * Removes all the MS runs and peptides
+	 */
+	void clear();
+}
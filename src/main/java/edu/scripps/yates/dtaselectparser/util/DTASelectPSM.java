@@ -1,5 +1,8 @@
 package edu.scripps.yates.dtaselectparser.util;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -7,14 +10,13 @@ import java.util.Set;
 import org.apache.log4j.Logger;
 
 import edu.scripps.yates.dtaselectparser.DTASelectParser;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMColumnStore.Column;
 import edu.scripps.yates.utilities.fasta.FastaParser;
 import edu.scripps.yates.utilities.parsers.idparser.PeptideSequence;
 import edu.scripps.yates.utilities.proteomicsmodel.AbstractPSM;
 import edu.scripps.yates.utilities.proteomicsmodel.PTM;
 import edu.scripps.yates.utilities.proteomicsmodel.Score;
-import edu.scripps.yates.utilities.proteomicsmodel.factories.MSRunEx;
 import edu.scripps.yates.utilities.proteomicsmodel.factories.ScoreEx;
-import edu.scripps.yates.utilities.proteomicsmodel.staticstorage.StaticProteomicsModelStorage;
 import edu.scripps.yates.utilities.proteomicsmodel.utils.KeyUtils;
 import edu.scripps.yates.utilities.staticstorage.StaticStrings;
 import gnu.trove.map.hash.THashMap;
@@ -22,117 +24,493 @@ import gnu.trove.map.hash.TObjectIntHashMap;
 
 public class DTASelectPSM extends AbstractPSM {
 	private static final Logger log = Logger.getLogger(DTASelectParser.class);
+	/**
+	 * This map is not populated anymore, since the PSMs of different files
+	 * overwrote each other in it and it was never cleared. Use
+	 * {@link DTASelectParser#getPSMIndex()} to get the PSMs of a parser by
+	 * scan number.
+	 */
+	@Deprecated
 	public static final Map<String, DTASelectPSM> map = new THashMap<String, DTASelectPSM>();
 	public static final String PSM_ID = "FileName";
-	private static final String XCORR = "XCorr";
-	private static final String DELTACN = "DeltCN";
-	private static final String PROB = "Prob%";
-	private static final String CONF = "Conf%";
-	private static final String MH = "M+H+";
-	private static final String CALC_MH = "CalcM+H+";
-	private static final String TOTAL_INTENSITY = "TotalIntensity";
-	private static final String SPR = "SpR";
-	private static final String PPM = "PPM";
-	private static final String PI = "pI";
-	private static final String PROB_SCORE = "Prob Score";
-	private static final String RT = "RT";
-	private static final String ION_PROPORTION = "IonProportion";
-	private static final String REDUNDANCY = "Redundancy";
+	static final String XCORR = "XCorr";
+	static final String DELTACN = "DeltCN";
+	static final String PROB = "Prob%";
+	static final String CONF = "Conf%";
+	static final String MH = "M+H+";
+	static final String CALC_MH = "CalcM+H+";
+	static final String TOTAL_INTENSITY = "TotalIntensity";
+	static final String SPR = "SpR";
+	static final String PPM = "PPM";
+	static final String PI = "pI";
+	static final String PROB_SCORE = "Prob Score";
+	static final String RT = "RT";
+	static final String ION_PROPORTION = "IonProportion";
+	static final String REDUNDANCY = "Redundancy";
 	public static final String SEQUENCE = "Sequence";
 	public static final String XIC = "XIC";
 	public static final String ESTIMATED_XIC = "Estimated_XIC";
 	public static final String CCS = "CCS";
-	private final Float prob;
-	private final Float conf;
-	private final Float prob_score;
-	private final Integer redundancy;
-	private final PeptideSequence peptideSequence;
+	private Float prob;
+	private Float conf;
+	private Float prob_score;
+	private Integer redundancy;
+	// the sequence as in the row, from which the PeptideSequence is created
+	// the first time it is needed
+	private final String rowSequence;
+	private volatile PeptideSequence peptideSequence;
 	private final String rawFileName;
 	private Float xic;
 	private Float estimatedXIC;
 	private Float ccs;
+	// in lazy PSMs, the store with the row, its position in the store and its
+	// schema, kept until the scores are parsed
+	private volatile DTASelectRowStore lazyRows;
+	private long lazyPosition;
+	private DTASelectPSMSchema lazySchema;
+	// if not null, the scores are in this row of the store instead of in the
+	// fields
+	private DTASelectPSMColumnStore columnStore;
+	private int storeRow;
 	private final static String scoreType = "PSM-level identification statistic";
 
 	public DTASelectPSM(String dtaSelectRow, TObjectIntHashMap<String> positions, String runPath,
 			boolean distinguishModifiedSequence, boolean chargeStateSensible) {
-		// log.info("Creating PSM from line: " + dtaSelectRow);
-		super(distinguishModifiedSequence, chargeStateSensible);
-		// parse the headerRow
-		final String[] elements = dtaSelectRow.split("\t");
-		final String rawPSMIdentifier = elements[positions.get(PSM_ID)];
-		setScanNumber(FastaParser.getScanFromPSMIdentifier(rawPSMIdentifier));
-		rawFileName = FastaParser.getFileNameFromPSMIdentifier(rawPSMIdentifier);
+		this(new DTASelectRow(dtaSelectRow), new DTASelectPSMSchema(positions), runPath, distinguishModifiedSequence,
+				chargeStateSensible);
+	}
+
+	public DTASelectPSM(DTASelectRow row, DTASelectPSMSchema schema, String runPath,
+			boolean distinguishModifiedSequence, boolean chargeStateSensible) {
+		this(row, schema, runPath, distinguishModifiedSequence, chargeStateSensible, (DTASelectRowStore) null);
+	}
+
+	/**
+	 *
+	 * @param row
+	 * @param schema
+	 * @param runPath
+	 * @param distinguishModifiedSequence
+	 * @param chargeStateSensible
+	 * @param lazyRows                    if not null, only the identity of the
+	 *                                    PSM (MS run, scan number, charge state
+	 *                                    and sequence) is parsed from the row,
+	 *                                    which is added to this store. The rest
+	 *                                    of the columns are parsed from the
+	 *                                    store the first time any of them is
+	 *                                    requested.
+	 */
+	public DTASelectPSM(DTASelectRow row, DTASelectPSMSchema schema, String runPath,
+			boolean distinguishModifiedSequence, boolean chargeStateSensible, DTASelectRowStore lazyRows) {
+		this(row, schema, runPath, distinguishModifiedSequence, chargeStateSensible, lazyRows, null,
+				StaticModelRegistry.INSTANCE);
+	}
+
+	/**
+	 *
+	 * @param row
+	 * @param schema
+	 * @param runPath
+	 * @param distinguishModifiedSequence
+	 * @param chargeStateSensible
+	 * @param columnStore                 the store in which the scores of the
+	 *                                    PSM are kept, in a new row, instead of
+	 *                                    in the PSM
+	 */
+	public DTASelectPSM(DTASelectRow row, DTASelectPSMSchema schema, String runPath,
+			boolean distinguishModifiedSequence, boolean chargeStateSensible, DTASelectPSMColumnStore columnStore) {
+		this(row, schema, runPath, distinguishModifiedSequence, chargeStateSensible, null, columnStore,
+				StaticModelRegistry.INSTANCE);
+	}
 
-		if (StaticProteomicsModelStorage.containsMSRun(rawFileName)) {
-			setMSRun(StaticProteomicsModelStorage.getMSRun(rawFileName));
-			getMSRun().setPath(runPath);
+	/**
+	 *
+	 * @param row
+	 * @param schema
+	 * @param runPath
+	 * @param distinguishModifiedSequence
+	 * @param chargeStateSensible
+	 * @param lazyRows                    the store of the rows of the lazy
+	 *                                    PSMs, or null. Ignored if columnStore
+	 *                                    is not null
+	 * @param columnStore                 the store in which the scores of the
+	 *                                    PSM are kept, or null
+	 * @param registry                    where the MS run of the PSM is looked
+	 *                                    up or registered
+	 */
+	public DTASelectPSM(DTASelectRow row, DTASelectPSMSchema schema, String runPath,
+			boolean distinguishModifiedSequence, boolean chargeStateSensible, DTASelectRowStore lazyRows,
+			DTASelectPSMColumnStore columnStore, DTASelectModelRegistry registry) {
+		super(distinguishModifiedSequence, chargeStateSensible);
+		rawFileName = setPSMIdentifier(row.getString(schema.psmId), runPath, registry);
+		rowSequence = StaticStrings.getUniqueInstance(row.getString(schema.sequence));
+		if (columnStore != null) {
+			this.columnStore = columnStore;
+			storeScores(row, schema);
+		} else if (lazyRows != null) {
+			lazySchema = schema;
+			lazyPosition = lazyRows.add(row.getLine());
+			this.lazyRows = lazyRows;
 		} else {
-			setMSRun(new MSRunEx(rawFileName, runPath));
-			StaticProteomicsModelStorage.addMSRun(getMSRun());
+			parseScores(row, schema);
 		}
-		setChargeState(FastaParser.getChargeStateFromPSMIdentifier(rawPSMIdentifier));
-
-		// store by scan number in the map
-		map.put(getScanNumber(), this);
+	}
 
-		setXCorr(Float.parseFloat(elements[positions.get(XCORR)]));
-		setDeltaCn(Float.parseFloat(elements[positions.get(DELTACN)]));
-		conf = Float.parseFloat(elements[positions.get(CONF)]);
-		setExperimentalMH(Float.parseFloat(elements[positions.get(MH)]));
-		setCalcMH(Float.parseFloat(elements[positions.get(CALC_MH)]));
-		super.setTotalIntensity(Float.valueOf(elements[positions.get(TOTAL_INTENSITY)]));
-		setSpr(Integer.valueOf(elements[positions.get(SPR)]));
+	private void parseScores(DTASelectRow row, DTASelectPSMSchema schema) {
+		super.setXCorr(row.getFloat(schema.xcorr));
+		super.setDeltaCn(row.getFloat(schema.deltacn));
+		conf = row.getFloat(schema.conf);
+		super.setExperimentalMH(row.getFloat(schema.mh));
+		super.setCalcMH(row.getFloat(schema.calcMH));
+		super.setTotalIntensity(row.getFloat(schema.totalIntensity));
+		super.setSpr(row.getInt(schema.spr));
 
-		setIonProportion(Float.parseFloat(elements[positions.get(ION_PROPORTION)]));
-		redundancy = Integer.valueOf(elements[positions.get(REDUNDANCY)]);
-		peptideSequence = new PeptideSequence(StaticStrings.getUniqueInstance(elements[positions.get(SEQUENCE)]), true);
+		super.setIonProportion(row.getFloat(schema.ionProportion));
+		redundancy = row.getInt(schema.redundancy);
 
-		if (positions.containsKey(PROB)) {
-			prob = Float.valueOf(elements[positions.get(PROB)]);
+		if (schema.prob >= 0) {
+			prob = row.getFloat(schema.prob);
 		} else {
 			prob = null;
 		}
-		if (positions.containsKey(PPM)) {
-			setMassErrorPPM(Float.parseFloat(elements[positions.get(PPM)]));
+		if (schema.ppm >= 0) {
+			super.setMassErrorPPM(row.getFloat(schema.ppm));
 		}
-		if (positions.containsKey(PI)) {
-			setPi(Float.parseFloat(elements[positions.get(PI)]));
+		if (schema.pi >= 0) {
+			super.setPi(row.getFloat(schema.pi));
 		}
-		if (positions.containsKey(PROB_SCORE)) {
-			prob_score = Float.parseFloat(elements[positions.get(PROB_SCORE)]);
+		if (schema.probScore >= 0) {
+			prob_score = row.getFloat(schema.probScore);
 		} else {
 			prob_score = null;
 		}
 
-		if (positions.containsKey(RT)) {
-			setRtInMinutes(Float.parseFloat(elements[positions.get(RT)]));
+		if (schema.rt >= 0) {
+			super.setRtInMinutes(row.getFloat(schema.rt));
 		}
 		// XIC added on Dec2020
-		if (positions.containsKey(XIC)) {
-			xic = Float.parseFloat(elements[positions.get(XIC)]);
+		if (schema.xic >= 0) {
+			xic = row.getFloat(schema.xic);
 		} else {
 			xic = null;
 		}
-		if (positions.containsKey(ESTIMATED_XIC)) {
-			estimatedXIC = Float.parseFloat(elements[positions.get(ESTIMATED_XIC)]);
+		if (schema.estimatedXIC >= 0) {
+			estimatedXIC = row.getFloat(schema.estimatedXIC);
 		} else {
 			estimatedXIC = null;
 		}
-		if (positions.containsKey(CCS)) {
-			ccs = Float.parseFloat(elements[positions.get(CCS)]);
+		if (schema.ccs >= 0) {
+			ccs = row.getFloat(schema.ccs);
 		} else {
 			ccs = null;
 		}
+	}
+
+	private void storeScores(DTASelectRow row, DTASelectPSMSchema schema) {
+		final DTASelectPSMColumnStore.RowValues values = new DTASelectPSMColumnStore.RowValues();
+		values.set(Column.XCORR, row.getFloat(schema.xcorr));
+		values.set(Column.DELTACN, row.getFloat(schema.deltacn));
+		values.set(Column.CONF, row.getFloat(schema.conf));
+		values.set(Column.MH, row.getFloat(schema.mh));
+		values.set(Column.CALC_MH, row.getFloat(schema.calcMH));
+		values.set(Column.TOTAL_INTENSITY, row.getFloat(schema.totalIntensity));
+		values.set(Column.SPR, row.getInt(schema.spr));
+		values.set(Column.ION_PROPORTION, row.getFloat(schema.ionProportion));
+		values.set(Column.REDUNDANCY, row.getInt(schema.redundancy));
+		storeOptional(values, Column.PROB, row, schema.prob);
+		storeOptional(values, Column.PPM, row, schema.ppm);
+		storeOptional(values, Column.PI, row, schema.pi);
+		storeOptional(values, Column.PROB_SCORE, row, schema.probScore);
+		storeOptional(values, Column.RT, row, schema.rt);
+		storeOptional(values, Column.XIC, row, schema.xic);
+		storeOptional(values, Column.ESTIMATED_XIC, row, schema.estimatedXIC);
+		storeOptional(values, Column.CCS, row, schema.ccs);
+		storeRow = columnStore.add(values);
+	}
+
+	private static void storeOptional(DTASelectPSMColumnStore.RowValues values, Column column, DTASelectRow row,
+			int index) {
+		if (index >= 0) {
+			values.set(column, row.getFloat(index));
+		}
+	}
+
+	/**
+	 * Moves the scores from the fields of the PSM to a new row of the store
+	 *
+	 * @param columnStore
+	 */
+	private void moveScoresToStore(DTASelectPSMColumnStore columnStore) {
+		final DTASelectPSMColumnStore.RowValues values = new DTASelectPSMColumnStore.RowValues();
+		setValue(values, Column.XCORR, super.getXCorr());
+		setValue(values, Column.DELTACN, super.getDeltaCn());
+		setValue(values, Column.CONF, conf);
+		setValue(values, Column.MH, super.getExperimentalMH());
+		setValue(values, Column.CALC_MH, super.getCalcMH());
+		setValue(values, Column.TOTAL_INTENSITY, super.getTotalIntensity());
+		setValue(values, Column.SPR, super.getSpr());
+		setValue(values, Column.ION_PROPORTION, super.getIonProportion());
+		setValue(values, Column.REDUNDANCY, redundancy);
+		setValue(values, Column.PROB, prob);
+		setValue(values, Column.PPM, super.getMassErrorPPM());
+		setValue(values, Column.PI, super.getPi());
+		setValue(values, Column.PROB_SCORE, prob_score);
+		setValue(values, Column.RT, super.getRtInMinutes());
+		setValue(values, Column.XIC, xic);
+		setValue(values, Column.ESTIMATED_XIC, estimatedXIC);
+		setValue(values, Column.CCS, ccs);
+		storeRow = columnStore.add(values);
+		this.columnStore = columnStore;
+		super.setXCorr(null);
+		super.setDeltaCn(null);
+		super.setExperimentalMH(null);
+		super.setCalcMH(null);
+		super.setTotalIntensity(null);
+		super.setSpr(null);
+		super.setIonProportion(null);
+		super.setMassErrorPPM(null);
+		super.setPi(null);
+		super.setRtInMinutes(null);
+		conf = null;
+		redundancy = null;
+		prob = null;
+		prob_score = null;
+		xic = null;
+		estimatedXIC = null;
+		ccs = null;
+	}
+
+	private static void setValue(DTASelectPSMColumnStore.RowValues values, Column column, Number value) {
+		if (value != null) {
+			if (column.isInteger()) {
+				values.set(column, value.intValue());
+			} else {
+				values.set(column, value.floatValue());
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return the store of the scores of this PSM, or null if they are kept in
+	 *         the PSM
+	 */
+	public DTASelectPSMColumnStore getColumnStore() {
+		return columnStore;
+	}
+
+	/**
+	 *
+	 * @return the row of the store with the scores of this PSM
+	 */
+	public int getColumnStoreRow() {
+		return storeRow;
+	}
+
+	/**
+	 * Parses the scores of a lazy PSM, if not parsed yet
+	 */
+	private void parseLazyScores() {
+		if (lazyRows != null) {
+			synchronized (this) {
+				if (lazyRows != null) {
+					parseScores(new DTASelectRow(lazyRows.get(lazyPosition)), lazySchema);
+					lazySchema = null;
+					lazyRows = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return true if this is a lazy PSM whose scores are not parsed yet
+	 */
+	public boolean isLazy() {
+		return lazyRows != null;
+	}
+
+	/**
+	 * Creates the PSM from the values written by
+	 * {@link #write(DTASelectRow, DTASelectPSMSchema, DataOutput)}
+	 *
+	 * @param in
+	 * @param runPath
+	 * @param distinguishModifiedSequence
+	 * @param chargeStateSensible
+	 * @throws IOException
+	 */
+	public DTASelectPSM(DataInput in, String runPath, boolean distinguishModifiedSequence,
+			boolean chargeStateSensible) throws IOException {
+		this(in, runPath, distinguishModifiedSequence, chargeStateSensible, null, StaticModelRegistry.INSTANCE);
+	}
+
+	/**
+	 * Creates the PSM from the values written by
+	 * {@link #write(DTASelectRow, DTASelectPSMSchema, DataOutput)}, keeping
+	 * its scores in a new row of the store if it is not null
+	 *
+	 * @param in
+	 * @param runPath
+	 * @param distinguishModifiedSequence
+	 * @param chargeStateSensible
+	 * @param columnStore
+	 * @throws IOException
+	 */
+	public DTASelectPSM(DataInput in, String runPath, boolean distinguishModifiedSequence,
+			boolean chargeStateSensible, DTASelectPSMColumnStore columnStore) throws IOException {
+		this(in, runPath, distinguishModifiedSequence, chargeStateSensible, columnStore,
+				StaticModelRegistry.INSTANCE);
+	}
+
+	/**
+	 * Creates the PSM from the values written by
+	 * {@link #write(DTASelectRow, DTASelectPSMSchema, DataOutput)}, keeping
+	 * its scores in a new row of the store if it is not null, and looking up
+	 * its MS run in the registry
+	 *
+	 * @param in
+	 * @param runPath
+	 * @param distinguishModifiedSequence
+	 * @param chargeStateSensible
+	 * @param columnStore
+	 * @param registry
+	 * @throws IOException
+	 */
+	public DTASelectPSM(DataInput in, String runPath, boolean distinguishModifiedSequence,
+			boolean chargeStateSensible, DTASelectPSMColumnStore columnStore, DTASelectModelRegistry registry)
+			throws IOException {
+		super(distinguishModifiedSequence, chargeStateSensible);
+		rawFileName = setPSMIdentifier(in.readUTF(), runPath, registry);
+		setXCorr(in.readFloat());
+		setDeltaCn(in.readFloat());
+		conf = in.readFloat();
+		setExperimentalMH(in.readFloat());
+		setCalcMH(in.readFloat());
+		super.setTotalIntensity(in.readFloat());
+		setSpr(in.readInt());
+		setIonProportion(in.readFloat());
+		redundancy = in.readInt();
+		rowSequence = StaticStrings.getUniqueInstance(in.readUTF());
+		final int optionalColumns = in.readUnsignedByte();
+		prob = readOptional(in, optionalColumns, 0);
+		final Float ppm = readOptional(in, optionalColumns, 1);
+		if (ppm != null) {
+			setMassErrorPPM(ppm);
+		}
+		final Float pi = readOptional(in, optionalColumns, 2);
+		if (pi != null) {
+			setPi(pi);
+		}
+		prob_score = readOptional(in, optionalColumns, 3);
+		final Float rt = readOptional(in, optionalColumns, 4);
+		if (rt != null) {
+			setRtInMinutes(rt);
+		}
+		xic = readOptional(in, optionalColumns, 5);
+		estimatedXIC = readOptional(in, optionalColumns, 6);
+		ccs = readOptional(in, optionalColumns, 7);
+		if (columnStore != null) {
+			moveScoresToStore(columnStore);
+		}
+	}
 
-		setIdentifier(
-				KeyUtils.getInstance().getSpectrumKey(this, isDistinguishModifiedSequence(), isChargeStateSensible()));
-		setKey(getIdentifier());
+	/**
+	 * Sets the scan number, charge state and MS run from the FileName column
+	 *
+	 * @param rawPSMIdentifier
+	 * @param runPath
+	 * @param registry
+	 * @return the raw file name
+	 */
+	private String setPSMIdentifier(String rawPSMIdentifier, String runPath, DTASelectModelRegistry registry) {
+		setScanNumber(FastaParser.getScanFromPSMIdentifier(rawPSMIdentifier));
+		final String rawFileName = FastaParser.getFileNameFromPSMIdentifier(rawPSMIdentifier);
+		setMSRun(registry.getMSRun(rawFileName, runPath));
+		setChargeState(FastaParser.getChargeStateFromPSMIdentifier(rawPSMIdentifier));
+		return rawFileName;
+	}
+
+	/**
+	 * Writes the values of a PSM row in binary form, to be read by
+	 * {@link #DTASelectPSM(DataInput, String, boolean, boolean)}
+	 *
+	 * @param row
+	 * @param schema
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void write(DTASelectRow row, DTASelectPSMSchema schema, DataOutput out) throws IOException {
+		out.writeUTF(row.getString(schema.psmId));
+		out.writeFloat(row.getFloat(schema.xcorr));
+		out.writeFloat(row.getFloat(schema.deltacn));
+		out.writeFloat(row.getFloat(schema.conf));
+		out.writeFloat(row.getFloat(schema.mh));
+		out.writeFloat(row.getFloat(schema.calcMH));
+		out.writeFloat(row.getFloat(schema.totalIntensity));
+		out.writeInt(row.getInt(schema.spr));
+		out.writeFloat(row.getFloat(schema.ionProportion));
+		out.writeInt(row.getInt(schema.redundancy));
+		out.writeUTF(row.getString(schema.sequence));
+		final int[] optionalColumns = { schema.prob, schema.ppm, schema.pi, schema.probScore, schema.rt, schema.xic,
+				schema.estimatedXIC, schema.ccs };
+		int presentColumns = 0;
+		for (int i = 0; i < optionalColumns.length; i++) {
+			if (optionalColumns[i] >= 0) {
+				presentColumns |= 1 << i;
+			}
+		}
+		out.writeByte(presentColumns);
+		for (final int column : optionalColumns) {
+			if (column >= 0) {
+				out.writeFloat(row.getFloat(column));
+			}
+		}
+	}
+
+	private static Float readOptional(DataInput in, int presentColumns, int index) throws IOException {
+		if ((presentColumns & (1 << index)) != 0) {
+			return in.readFloat();
+		}
+		return null;
+	}
+
+	/**
+	 * The identifier is made of the MS run, the scan number, the charge state
+	 * and the sequence of the PSM, and it is built the first time it is
+	 * requested
+	 */
+	@Override
+	public String getIdentifier() {
+		String identifier = super.getIdentifier();
+		if (identifier == null) {
+			identifier = KeyUtils.getInstance().getSpectrumKey(this, isDistinguishModifiedSequence(),
+					isChargeStateSensible());
+			super.setIdentifier(identifier);
+		}
+		return identifier;
+	}
+
+	/**
+	 * The key is the identifier of the PSM unless it was set
+	 */
+	@Override
+	public String getKey() {
+		final String key = super.getKey();
+		if (key == null) {
+			return getIdentifier();
+		}
+		return key;
 	}
 
 	/**
 	 * @return the prob
 	 */
 	public Float getProb() {
+		parseLazyScores();
+		if (columnStore != null) {
+			return columnStore.getFloatValue(Column.PROB, storeRow);
+		}
 		return prob;
 	}
 
@@ -140,6 +518,10 @@ public class DTASelectPSM extends AbstractPSM {
 	 * @return the conf
 	 */
 	public Float getConf() {
+		parseLazyScores();
+		if (columnStore != null) {
+			return columnStore.getFloatValue(Column.CONF, storeRow);
+		}
 		return conf;
 	}
 
@@ -147,6 +529,10 @@ public class DTASelectPSM extends AbstractPSM {
 	 * @return the prob_score
 	 */
 	public Float getProb_score() {
+		parseLazyScores();
+		if (columnStore != null) {
+			return columnStore.getFloatValue(Column.PROB_SCORE, storeRow);
+		}
 		return prob_score;
 	}
 
@@ -154,41 +540,272 @@ public class DTASelectPSM extends AbstractPSM {
 	 * @return the redundancy
 	 */
 	public Integer getRedundancy() {
+		parseLazyScores();
+		if (columnStore != null) {
+			return columnStore.getIntValue(Column.REDUNDANCY, storeRow);
+		}
 		return redundancy;
 	}
 
+	@Override
+	public Float getXCorr() {
+		parseLazyScores();
+		if (columnStore != null) {
+			return columnStore.getFloatValue(Column.XCORR, storeRow);
+		}
+		return super.getXCorr();
+	}
+
+	@Override
+	public void setXCorr(Float xCorr) {
+		parseLazyScores();
+		if (columnStore != null) {
+			columnStore.set(Column.XCORR, storeRow, xCorr);
+		} else {
+			super.setXCorr(xCorr);
+		}
+	}
+
+	@Override
+	public Float getDeltaCn() {
+		parseLazyScores();
+		if (columnStore != null) {
+			return columnStore.getFloatValue(Column.DELTACN, storeRow);
+		}
+		return super.getDeltaCn();
+	}
+
+	@Override
+	public void setDeltaCn(Float deltaCn) {
+		parseLazyScores();
+		if (columnStore != null) {
+			columnStore.set(Column.DELTACN, storeRow, deltaCn);
+		} else {
+			super.setDeltaCn(deltaCn);
+		}
+	}
+
+	@Override
+	public Float getExperimentalMH() {
+		parseLazyScores();
+		if (columnStore != null) {
+			return columnStore.getFloatValue(Column.MH, storeRow);
+		}
+		return super.getExperimentalMH();
+	}
+
+	@Override
+	public void setExperimentalMH(Float experimentalMH) {
+		parseLazyScores();
+		if (columnStore != null) {
+			columnStore.set(Column.MH, storeRow, experimentalMH);
+		} else {
+			super.setExperimentalMH(experimentalMH);
+		}
+	}
+
+	@Override
+	public Float getCalcMH() {
+		parseLazyScores();
+		if (columnStore != null) {
+			return columnStore.getFloatValue(Column.CALC_MH, storeRow);
+		}
+		return super.getCalcMH();
+	}
+
+	@Override
+	public void setCalcMH(Float calcMH) {
+		parseLazyScores();
+		if (columnStore != null) {
+			columnStore.set(Column.CALC_MH, storeRow, calcMH);
+		} else {
+			super.setCalcMH(calcMH);
+		}
+	}
+
+	@Override
+	public Float getTotalIntensity() {
+		parseLazyScores();
+		if (columnStore != null) {
+			return columnStore.getFloatValue(Column.TOTAL_INTENSITY, storeRow);
+		}
+		return super.getTotalIntensity();
+	}
+
+	@Override
+	public void setTotalIntensity(Float totalIntensity) {
+		parseLazyScores();
+		if (columnStore != null) {
+			columnStore.set(Column.TOTAL_INTENSITY, storeRow, totalIntensity);
+		} else {
+			super.setTotalIntensity(totalIntensity);
+		}
+	}
+
+	@Override
+	public Integer getSpr() {
+		parseLazyScores();
+		if (columnStore != null) {
+			return columnStore.getIntValue(Column.SPR, storeRow);
+		}
+		return super.getSpr();
+	}
+
+	@Override
+	public void setSpr(Integer spr) {
+		parseLazyScores();
+		if (columnStore != null) {
+			columnStore.set(Column.SPR, storeRow, spr);
+		} else {
+			super.setSpr(spr);
+		}
+	}
+
+	@Override
+	public Float getIonProportion() {
+		parseLazyScores();
+		if (columnStore != null) {
+			return columnStore.getFloatValue(Column.ION_PROPORTION, storeRow);
+		}
+		return super.getIonProportion();
+	}
+
+	@Override
+	public void setIonProportion(Float ionProportion) {
+		parseLazyScores();
+		if (columnStore != null) {
+			columnStore.set(Column.ION_PROPORTION, storeRow, ionProportion);
+		} else {
+			super.setIonProportion(ionProportion);
+		}
+	}
+
+	@Override
+	public Float getMassErrorPPM() {
+		parseLazyScores();
+		if (columnStore != null) {
+			return columnStore.getFloatValue(Column.PPM, storeRow);
+		}
+		return super.getMassErrorPPM();
+	}
+
+	@Override
+	public void setMassErrorPPM(Float massErrorPPM) {
+		parseLazyScores();
+		if (columnStore != null) {
+			columnStore.set(Column.PPM, storeRow, massErrorPPM);
+		} else {
+			super.setMassErrorPPM(massErrorPPM);
+		}
+	}
+
+	@Override
+	public Float getPi() {
+		parseLazyScores();
+		if (columnStore != null) {
+			return columnStore.getFloatValue(Column.PI, storeRow);
+		}
+		return super.getPi();
+	}
+
+	@Override
+	public void setPi(Float pi) {
+		parseLazyScores();
+		if (columnStore != null) {
+			columnStore.set(Column.PI, storeRow, pi);
+		} else {
+			super.setPi(pi);
+		}
+	}
+
+	@Override
+	public Float getRtInMinutes() {
+		parseLazyScores();
+		if (columnStore != null) {
+			return columnStore.getFloatValue(Column.RT, storeRow);
+		}
+		return super.getRtInMinutes();
+	}
+
+	@Override
+	public void setRtInMinutes(Float rtInMinutes) {
+		parseLazyScores();
+		if (columnStore != null) {
+			columnStore.set(Column.RT, storeRow, rtInMinutes);
+		} else {
+			super.setRtInMinutes(rtInMinutes);
+		}
+	}
+
+	/**
+	 *
+	 * @return the area of the extracted ion chromatogram, or null if the file
+	 *         has no XIC column
+	 */
+	public Float getXIC() {
+		parseLazyScores();
+		if (columnStore != null) {
+			return columnStore.getFloatValue(Column.XIC, storeRow);
+		}
+		return xic;
+	}
+
+	/**
+	 * Creates the {@link PeptideSequence} the first time it is needed. Two
+	 * threads may create it at the same time, but both are equal.
+	 *
+	 * @return
+	 */
+	private PeptideSequence getPeptideSequence() {
+		PeptideSequence ret = peptideSequence;
+		if (ret == null) {
+			ret = new PeptideSequence(rowSequence, true);
+			peptideSequence = ret;
+		}
+		return ret;
+	}
+
 	@Override
 	public List<PTM> getPTMs() {
-		return peptideSequence.getModifications();
+		return getPeptideSequence().getModifications();
 	}
 
 	@Override
 	public String getFullSequence() {
-		return peptideSequence.getFullSequence();
+		return getPeptideSequence().getFullSequence();
 	}
 
 	@Override
 	public String getSequence() {
-		return peptideSequence.getSequence();
+		return getPeptideSequence().getSequence();
 	}
 
 	@Override
 	public String getAfterSeq() {
-		return String.valueOf(peptideSequence.getAfterSeq());
+		return String.valueOf(getPeptideSequence().getAfterSeq());
 	}
 
 	@Override
 	public String getBeforeSeq() {
-		return String.valueOf(peptideSequence.getBeforeSeq());
+		return String.valueOf(getPeptideSequence().getBeforeSeq());
 	}
 
 	@Override
 	public Set<Score> getScores() {
+		parseLazyScores();
 		if (super.getScores().isEmpty()) {
 			// add xcorr and deltacn
 			addScore(new ScoreEx(String.valueOf(getXCorr()), "XCorr", scoreType, "XCorr"));
 			addScore(new ScoreEx(String.valueOf(getDeltaCn()), "DeltaCN", scoreType, "DeltaCN"));
 			// add CCS and XIC and Estimated_XIC as scores
+			Float xic = this.xic;
+			Float estimatedXIC = this.estimatedXIC;
+			Float ccs = this.ccs;
+			if (columnStore != null) {
+				xic = columnStore.getFloatValue(Column.XIC, storeRow);
+				estimatedXIC = columnStore.getFloatValue(Column.ESTIMATED_XIC, storeRow);
+				ccs = columnStore.getFloatValue(Column.CCS, storeRow);
+			}
 			if (xic != null) {
 				addScore(new ScoreEx(String.valueOf(xic), XIC, "quantification datatype",
 						"Area of the extracted ion chromatogram"));
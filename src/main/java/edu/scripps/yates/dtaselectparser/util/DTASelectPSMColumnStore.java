@@ -0,0 +1,315 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.util.BitSet;
+
+/**
+ * Columnar storage of the scores of {@link DTASelectPSM}s, with one row per
+ * PSM and one primitive array per column, plus a bitmap per column telling
+ * which rows have a value.<br>
+ * The PSMs created with a store are views over one of its rows, so they don't
+ * keep their scores as objects, and the scores of all the PSMs can be read in
+ * bulk with {@link #getValues(Column)} or {@link #getHistogram(Column, float,
+ * float, int)}.<br>
+ * The rows are kept in pages that are never moved, so the values of a row can
+ * be read while other rows are being added from other threads.
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectPSMColumnStore {
+	public enum Column {
+		XCORR(DTASelectPSM.XCORR, false), //
+		DELTACN(DTASelectPSM.DELTACN, false), //
+		CONF(DTASelectPSM.CONF, false), //
+		MH(DTASelectPSM.MH, false), //
+		CALC_MH(DTASelectPSM.CALC_MH, false), //
+		TOTAL_INTENSITY(DTASelectPSM.TOTAL_INTENSITY, false), //
+		SPR(DTASelectPSM.SPR, true), //
+		ION_PROPORTION(DTASelectPSM.ION_PROPORTION, false), //
+		REDUNDANCY(DTASelectPSM.REDUNDANCY, true), //
+		PROB(DTASelectPSM.PROB, false), //
+		PPM(DTASelectPSM.PPM, false), //
+		PI(DTASelectPSM.PI, false), //
+		PROB_SCORE(DTASelectPSM.PROB_SCORE, false), //
+		RT(DTASelectPSM.RT, false), //
+		XIC(DTASelectPSM.XIC, false), //
+		ESTIMATED_XIC(DTASelectPSM.ESTIMATED_XIC, false), //
+		CCS(DTASelectPSM.CCS, false);
+
+		private final String header;
+		private final boolean integer;
+
+		private Column(String header, boolean integer) {
+			this.header = header;
+			this.integer = integer;
+		}
+
+		/**
+		 *
+		 * @return the header of the column in the DTASelect file
+		 */
+		public String getHeader() {
+			return header;
+		}
+
+		/**
+		 *
+		 * @return true if the values of the column are integers
+		 */
+		public boolean isInteger() {
+			return integer;
+		}
+	}
+
+	private static final Column[] COLUMNS = Column.values();
+	private static final int PAGE_BITS = 12;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	private volatile Page[] pages = new Page[16];
+	private int size = 0;
+
+	/**
+	 * The values of one row, to be added to the store at once with
+	 * {@link DTASelectPSMColumnStore#add(RowValues)}
+	 *
+	 * @author Salva
+	 *
+	 */
+	public static class RowValues {
+		private final float[] floats = new float[COLUMNS.length];
+		private final int[] ints = new int[COLUMNS.length];
+		private int present = 0;
+
+		public void set(Column column, float value) {
+			if (column.integer) {
+				throw new IllegalArgumentException(column + " is an integer column");
+			}
+			floats[column.ordinal()] = value;
+			present |= 1 << column.ordinal();
+		}
+
+		public void set(Column column, int value) {
+			if (!column.integer) {
+				throw new IllegalArgumentException(column + " is not an integer column");
+			}
+			ints[column.ordinal()] = value;
+			present |= 1 << column.ordinal();
+		}
+	}
+
+	private static class Page {
+		private final float[][] floats = new float[COLUMNS.length][];
+		private final int[][] ints = new int[COLUMNS.length][];
+		private final long[][] present = new long[COLUMNS.length][];
+
+		private void set(Column column, int index, float floatValue, int intValue) {
+			final int c = column.ordinal();
+			if (present[c] == null) {
+				present[c] = new long[PAGE_SIZE / 64];
+				if (column.integer) {
+					ints[c] = new int[PAGE_SIZE];
+				} else {
+					floats[c] = new float[PAGE_SIZE];
+				}
+			}
+			if (column.integer) {
+				ints[c][index] = intValue;
+			} else {
+				floats[c][index] = floatValue;
+			}
+			present[c][index >>> 6] |= 1L << index;
+		}
+
+		private void setNull(Column column, int index) {
+			final long[] bits = present[column.ordinal()];
+			if (bits != null) {
+				bits[index >>> 6] &= ~(1L << index);
+			}
+		}
+
+		private boolean isNull(Column column, int index) {
+			final long[] bits = present[column.ordinal()];
+			return bits == null || (bits[index >>> 6] & (1L << index)) == 0;
+		}
+	}
+
+	/**
+	 * Adds a row
+	 *
+	 * @param values
+	 * @return the index of the row
+	 */
+	public synchronized int add(RowValues values) {
+		final int row = size;
+		final int pageIndex = row >>> PAGE_BITS;
+		Page[] pages = this.pages;
+		if (pageIndex == pages.length) {
+			final Page[] newPages = new Page[pages.length * 2];
+			System.arraycopy(pages, 0, newPages, 0, pages.length);
+			pages = newPages;
+			this.pages = pages;
+		}
+		Page page = pages[pageIndex];
+		if (page == null) {
+			page = new Page();
+			pages[pageIndex] = page;
+		}
+		final int index = row & PAGE_MASK;
+		for (final Column column : COLUMNS) {
+			final int c = column.ordinal();
+			if ((values.present & (1 << c)) != 0) {
+				page.set(column, index, values.floats[c], values.ints[c]);
+			}
+		}
+		size++;
+		return row;
+	}
+
+	/**
+	 * Sets the value of a column in a row, or removes it if the value is null
+	 *
+	 * @param column
+	 * @param row
+	 * @param value
+	 */
+	public synchronized void set(Column column, int row, Number value) {
+		final Page page = getPage(row);
+		if (value == null) {
+			page.setNull(column, row & PAGE_MASK);
+		} else {
+			page.set(column, row & PAGE_MASK, value.floatValue(), value.intValue());
+		}
+	}
+
+	private Page getPage(int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row " + row + " out of " + size);
+		}
+		return pages[row >>> PAGE_BITS];
+	}
+
+	public boolean isNull(Column column, int row) {
+		return pages[row >>> PAGE_BITS].isNull(column, row & PAGE_MASK);
+	}
+
+	/**
+	 *
+	 * @param column
+	 * @param row
+	 * @return the value, or {@link Float#NaN} if the row has no value in that
+	 *         column
+	 */
+	public float getFloat(Column column, int row) {
+		final Page page = pages[row >>> PAGE_BITS];
+		final int index = row & PAGE_MASK;
+		if (page.isNull(column, index)) {
+			return Float.NaN;
+		}
+		if (column.integer) {
+			return page.ints[column.ordinal()][index];
+		}
+		return page.floats[column.ordinal()][index];
+	}
+
+	/**
+	 *
+	 * @param column
+	 * @param row
+	 * @return the value, or 0 if the row has no value in that column
+	 */
+	public int getInt(Column column, int row) {
+		final Page page = pages[row >>> PAGE_BITS];
+		final int index = row & PAGE_MASK;
+		if (page.isNull(column, index)) {
+			return 0;
+		}
+		if (column.integer) {
+			return page.ints[column.ordinal()][index];
+		}
+		return (int) page.floats[column.ordinal()][index];
+	}
+
+	public Float getFloatValue(Column column, int row) {
+		if (isNull(column, row)) {
+			return null;
+		}
+		return getFloat(column, row);
+	}
+
+	public Integer getIntValue(Column column, int row) {
+		if (isNull(column, row)) {
+			return null;
+		}
+		return getInt(column, row);
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the values of a column for all the rows
+	 *
+	 * @param column
+	 * @return an array with one value per row, with {@link Float#NaN} in the
+	 *         rows without value
+	 */
+	public float[] getValues(Column column) {
+		final int size = size();
+		final float[] ret = new float[size];
+		for (int row = 0; row < size; row++) {
+			ret[row] = getFloat(column, row);
+		}
+		return ret;
+	}
+
+	/**
+	 *
+	 * @param column
+	 * @return the rows without value in that column
+	 */
+	public BitSet getNulls(Column column) {
+		final int size = size();
+		final BitSet ret = new BitSet(size);
+		for (int row = 0; row < size; row++) {
+			if (isNull(column, row)) {
+				ret.set(row);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Counts the values of a column in each of numBins bins of the same width
+	 * between min and max. The values out of that range and the rows without
+	 * value are not counted.
+	 *
+	 * @param column
+	 * @param min
+	 * @param max
+	 * @param numBins
+	 * @return
+	 */
+	public int[] getHistogram(Column column, float min, float max, int numBins) {
+		if (numBins < 1 || max <= min) {
+			throw new IllegalArgumentException("Invalid histogram range or number of bins");
+		}
+		final int[] histogram = new int[numBins];
+		final float width = (max - min) / numBins;
+		final int size = size();
+		for (int row = 0; row < size; row++) {
+			final float value = getFloat(column, row);
+			if (Float.isNaN(value) || value < min || value > max) {
+				continue;
+			}
+			final int bin = Math.min(numBins - 1, (int) ((value - min) / width));
+			histogram[bin]++;
+		}
+		return histogram;
+	}
+
+	public synchronized void clear() {
+		pages = new Page[16];
+		size = 0;
+	}
+}
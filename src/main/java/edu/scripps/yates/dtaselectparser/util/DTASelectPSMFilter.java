@@ -0,0 +1,18 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+/**
+ * Decides whether a PSM row of a DTASelect file is read, looking at its
+ * columns before the PSM is created.
+ *
+ * @author Salva
+ *
+ */
+public interface DTASelectPSMFilter {
+	/**
+	 *
+	 * @param row    the PSM row. It is only valid during the call
+	 * @param schema the positions of the columns of the PSM rows
+	 * @return true if the PSM has to be read
+	 */
+	boolean accept(DTASelectRow row, DTASelectPSMSchema schema);
+}
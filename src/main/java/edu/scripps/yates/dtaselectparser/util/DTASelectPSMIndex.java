@@ -0,0 +1,124 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import gnu.trove.map.hash.THashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+/**
+ * Index of {@link DTASelectPSM}s by MS run and scan number.<br>
+ * Each MS run gets a numeric code, and MS run and scan number are combined in
+ * a single long key, so no String key is created per PSM. Scan numbers that
+ * are not integers are indexed in a separate map.<br>
+ * It is safe to use it from different threads.
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectPSMIndex {
+	private final TObjectIntHashMap<String> runCodes = new TObjectIntHashMap<String>();
+	private final TLongObjectHashMap<List<DTASelectPSM>> psmsByKey = new TLongObjectHashMap<List<DTASelectPSM>>();
+	private final Map<String, List<DTASelectPSM>> psmsByNonNumericScan = new THashMap<String, List<DTASelectPSM>>();
+	private int size = 0;
+
+	public synchronized void add(DTASelectPSM psm) {
+		final String runId = psm.getMSRun().getRunId();
+		final String scan = psm.getScanNumber();
+		final int scanNumber = parseScanNumber(scan);
+		List<DTASelectPSM> psms;
+		if (scanNumber >= 0) {
+			final long key = getKey(getRunCode(runId, true), scanNumber);
+			psms = psmsByKey.get(key);
+			if (psms == null) {
+				psms = new ArrayList<DTASelectPSM>(1);
+				psmsByKey.put(key, psms);
+			}
+		} else {
+			final String key = runId + "-" + scan;
+			psms = psmsByNonNumericScan.get(key);
+			if (psms == null) {
+				psms = new ArrayList<DTASelectPSM>(1);
+				psmsByNonNumericScan.put(key, psms);
+			}
+		}
+		psms.add(psm);
+		size++;
+	}
+
+	/**
+	 *
+	 * @param runId
+	 * @param scan
+	 * @return the PSMs of that scan number in that MS run, which can be more
+	 *         than one if the spectrum was assigned to different charge states
+	 *         or sequences
+	 */
+	public synchronized List<DTASelectPSM> get(String runId, String scan) {
+		List<DTASelectPSM> psms;
+		final int scanNumber = parseScanNumber(scan);
+		if (scanNumber >= 0) {
+			final int runCode = getRunCode(runId, false);
+			psms = runCode < 0 ? null : psmsByKey.get(getKey(runCode, scanNumber));
+		} else {
+			psms = psmsByNonNumericScan.get(runId + "-" + scan);
+		}
+		if (psms == null) {
+			return Collections.emptyList();
+		}
+		return new ArrayList<DTASelectPSM>(psms);
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Releases all the PSMs of the index
+	 */
+	public synchronized void clear() {
+		runCodes.clear();
+		psmsByKey.clear();
+		psmsByNonNumericScan.clear();
+		size = 0;
+	}
+
+	private int getRunCode(String runId, boolean create) {
+		if (runCodes.containsKey(runId)) {
+			return runCodes.get(runId);
+		}
+		if (!create) {
+			return -1;
+		}
+		final int code = runCodes.size();
+		runCodes.put(runId, code);
+		return code;
+	}
+
+	private static long getKey(int runCode, int scanNumber) {
+		return ((long) runCode << 32) | (scanNumber & 0xffffffffL);
+	}
+
+	/**
+	 *
+	 * @param scan
+	 * @return the scan number or -1 if it is not a non negative integer
+	 */
+	private static int parseScanNumber(String scan) {
+		if (scan == null || scan.isEmpty() || scan.length() > 9) {
+			return -1;
+		}
+		int scanNumber = 0;
+		for (int i = 0; i < scan.length(); i++) {
+			final char c = scan.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			scanNumber = scanNumber * 10 + (c - '0');
+		}
+		return scanNumber;
+	}
+}
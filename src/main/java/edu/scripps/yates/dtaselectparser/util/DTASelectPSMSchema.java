@@ -0,0 +1,105 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+/**
+ * Positions of the columns of the PSM rows, compiled once from the PSM header
+ * row (the one starting by 'Unique'), so that the rows can be read by position
+ * without looking up the header names.
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectPSMSchema {
+	private final TObjectIntHashMap<String> positions;
+	final int psmId;
+	final int xcorr;
+	final int deltacn;
+	final int conf;
+	final int mh;
+	final int calcMH;
+	final int totalIntensity;
+	final int spr;
+	final int ionProportion;
+	final int redundancy;
+	final int sequence;
+	// optional columns, -1 if not present
+	final int prob;
+	final int ppm;
+	final int pi;
+	final int probScore;
+	final int rt;
+	final int xic;
+	final int estimatedXIC;
+	final int ccs;
+
+	public DTASelectPSMSchema(TObjectIntHashMap<String> positions) {
+		this.positions = positions;
+		psmId = positions.get(DTASelectPSM.PSM_ID);
+		xcorr = positions.get(DTASelectPSM.XCORR);
+		deltacn = positions.get(DTASelectPSM.DELTACN);
+		conf = positions.get(DTASelectPSM.CONF);
+		mh = positions.get(DTASelectPSM.MH);
+		calcMH = positions.get(DTASelectPSM.CALC_MH);
+		totalIntensity = positions.get(DTASelectPSM.TOTAL_INTENSITY);
+		spr = positions.get(DTASelectPSM.SPR);
+		ionProportion = positions.get(DTASelectPSM.ION_PROPORTION);
+		redundancy = positions.get(DTASelectPSM.REDUNDANCY);
+		sequence = positions.get(DTASelectPSM.SEQUENCE);
+		prob = optional(positions, DTASelectPSM.PROB);
+		ppm = optional(positions, DTASelectPSM.PPM);
+		pi = optional(positions, DTASelectPSM.PI);
+		probScore = optional(positions, DTASelectPSM.PROB_SCORE);
+		rt = optional(positions, DTASelectPSM.RT);
+		xic = optional(positions, DTASelectPSM.XIC);
+		estimatedXIC = optional(positions, DTASelectPSM.ESTIMATED_XIC);
+		ccs = optional(positions, DTASelectPSM.CCS);
+	}
+
+	/**
+	 * Compiles the schema from the PSM header row
+	 *
+	 * @param headerLine
+	 * @return
+	 */
+	public static DTASelectPSMSchema parse(CharSequence headerLine) {
+		return new DTASelectPSMSchema(new DTASelectRow(headerLine).getHeaderPositions());
+	}
+
+	static int optional(TObjectIntHashMap<String> positions, String header) {
+		if (positions.containsKey(header)) {
+			return positions.get(header);
+		}
+		return -1;
+	}
+
+	/**
+	 *
+	 * @param header
+	 * @return the position of the column with that header, or -1 if there is
+	 *         not such column
+	 */
+	public int getColumn(String header) {
+		return optional(positions, header);
+	}
+
+	public int getPSMIdColumn() {
+		return psmId;
+	}
+
+	public int getXCorrColumn() {
+		return xcorr;
+	}
+
+	public int getDeltaCnColumn() {
+		return deltacn;
+	}
+
+	public int getConfColumn() {
+		return conf;
+	}
+
+	public int getSequenceColumn() {
+		return sequence;
+	}
+}
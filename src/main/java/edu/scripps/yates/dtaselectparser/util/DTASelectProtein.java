@@ -1,6 +1,10 @@
 package edu.scripps.yates.dtaselectparser.util;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -14,66 +18,170 @@ import edu.scripps.yates.utilities.proteomicsmodel.Accession;
 import edu.scripps.yates.utilities.proteomicsmodel.MSRun;
 import edu.scripps.yates.utilities.proteomicsmodel.PSM;
 import edu.scripps.yates.utilities.proteomicsmodel.Protein;
-import edu.scripps.yates.utilities.proteomicsmodel.enums.AccessionType;
 import edu.scripps.yates.utilities.proteomicsmodel.factories.GeneEx;
+import gnu.trove.map.hash.TObjectDoubleHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
 import gnu.trove.set.hash.THashSet;
 
 public class DTASelectProtein extends AbstractProtein {
 	private static final Logger log = Logger.getLogger(DTASelectProtein.class);
 	public static final String LOCUS = "Locus";
-	private static final String SP_COUNT = "Spectrum Count";
-	private static final String COVERAGE = "Sequence Coverage";
-	private static final String LENGTH = "Length";
-	private static final String MW = "MolWt";
-	private static final String PI = "pI";
-	private static final String DESCRIPTION = "Descriptive Name";
-	private static final String NSAF = "NSAF";
-	private static final String EMPAI = "EMPAI";
+	static final String SP_COUNT = "Spectrum Count";
+	static final String COVERAGE = "Sequence Coverage";
+	static final String LENGTH = "Length";
+	static final String MW = "MolWt";
+	static final String PI = "pI";
+	static final String DESCRIPTION = "Descriptive Name";
+	static final String NSAF = "NSAF";
+	static final String EMPAI = "EMPAI";
 	private String locus;
 
-	// whether to use locus or to parse the locus from input dtaselect file to
-	// get the accession (which may be more time consuming)
-	private final boolean ignoreACCFormat;
+	// resolves the locus into the accession, either using the locus as it is
+	// or parsing it (which may be more time consuming)
+	private final DTASelectLocusResolver locusResolver;
+	// index of the group of the protein, if it was built
+	private volatile IndexedProteinGroup indexedProteinGroup;
+	// statistics derived from the PSMs, computed when they are first requested
+	private DerivedStatistics statistics;
 
 	public DTASelectProtein(String lineToParse, TObjectIntHashMap<String> positions, boolean ignoreACCFormat) {
-		// log.info("Creating protein from line: " + lineToParse);
-		this.ignoreACCFormat = ignoreACCFormat;
-		final String[] elements = lineToParse.split("\t");
-		locus = elements[positions.get(LOCUS)];
+		this(new DTASelectRow(lineToParse), new DTASelectProteinSchema(positions), ignoreACCFormat);
+	}
+
+	public DTASelectProtein(DTASelectRow row, DTASelectProteinSchema schema, boolean ignoreACCFormat) {
+		this(row, schema, new DTASelectLocusResolver(ignoreACCFormat, null));
+	}
+
+	/**
+	 *
+	 * @param row
+	 * @param schema
+	 * @param locusResolver the resolver of the loci, which can be shared by
+	 *                      all the proteins of a parser
+	 */
+	public DTASelectProtein(DTASelectRow row, DTASelectProteinSchema schema, DTASelectLocusResolver locusResolver) {
+		this.locusResolver = locusResolver;
+		locus = row.getString(schema.locus);
+		final DTASelectLocusResolver.Locus resolvedLocus = locusResolver.resolve(locus);
+		setPrimaryAccession(resolvedLocus.getAccessionType(), resolvedLocus.getAccession());
 		setKey(getAccession());
-		setSpectrumCount(Integer.parseInt(elements[positions.get(SP_COUNT)]));
-		setCoverage(Float.parseFloat(elements[positions.get(COVERAGE)].replace("%", "")));
+		setSpectrumCount(row.getInt(schema.spectrumCount));
+		setCoverage(row.getPercentage(schema.coverage));
+
+		setLength(row.getInt(schema.length));
+		setMw(row.getFloat(schema.mw));
+		setPi(row.getFloat(schema.pi));
+		final String description = row.getString(schema.description);
+		getPrimaryAccession().setDescription(description);
+		// get gene name from description
+		final String gene = resolvedLocus.getGene(description);
+		if (gene != null) {
+			addGene(new GeneEx(gene));
+		}
+		if (getSpectrumCount() != null && getLength() != null) {
+			setNsaf_norm(Float.valueOf(getSpectrumCount()) / Float.valueOf(getLength()));
+		}
+		if (schema.nsaf >= 0) {
+			setNsaf(row.getFloat(schema.nsaf));
+		} else {
+			setNsaf(null);
+		}
+		if (schema.empai >= 0) {
+			setEmpai(row.getFloat(schema.empai));
+		} else {
+			setEmpai(null);
+		}
+	}
+
+	/**
+	 * Creates the protein from the values written by
+	 * {@link #write(DTASelectRow, DTASelectProteinSchema, DataOutput)}
+	 *
+	 * @param in
+	 * @param ignoreACCFormat
+	 * @throws IOException
+	 */
+	public DTASelectProtein(DataInput in, boolean ignoreACCFormat) throws IOException {
+		this(in, new DTASelectLocusResolver(ignoreACCFormat, null));
+	}
 
-		setLength(Integer.parseInt(elements[positions.get(LENGTH)]));
-		setMw(Float.parseFloat(elements[positions.get(MW)]));
-		setPi(Float.parseFloat(elements[positions.get(PI)]));
-		final String description = elements[positions.get(DESCRIPTION)];
+	/**
+	 * Creates the protein from the values written by
+	 * {@link #write(DTASelectRow, DTASelectProteinSchema, DataOutput)}
+	 *
+	 * @param in
+	 * @param locusResolver
+	 * @throws IOException
+	 */
+	public DTASelectProtein(DataInput in, DTASelectLocusResolver locusResolver) throws IOException {
+		this.locusResolver = locusResolver;
+		locus = in.readUTF();
+		final DTASelectLocusResolver.Locus resolvedLocus = locusResolver.resolve(locus);
+		setPrimaryAccession(resolvedLocus.getAccessionType(), resolvedLocus.getAccession());
+		setKey(getAccession());
+		setSpectrumCount(in.readInt());
+		setCoverage(in.readFloat());
+		setLength(in.readInt());
+		setMw(in.readFloat());
+		setPi(in.readFloat());
+		final String description = in.readUTF();
 		getPrimaryAccession().setDescription(description);
 		// get gene name from description
-		final String gene = FastaParser.getGeneFromFastaHeader(description);
+		final String gene = resolvedLocus.getGene(description);
 		if (gene != null) {
 			addGene(new GeneEx(gene));
 		}
 		if (getSpectrumCount() != null && getLength() != null) {
 			setNsaf_norm(Float.valueOf(getSpectrumCount()) / Float.valueOf(getLength()));
 		}
-		if (positions.containsKey(NSAF)) {
-			setNsaf(Float.valueOf(elements[positions.get(NSAF)]));
+		if (in.readBoolean()) {
+			setNsaf(in.readFloat());
 		} else {
 			setNsaf(null);
 		}
-		if (positions.containsKey(EMPAI)) {
-			setEmpai(Float.parseFloat(elements[positions.get(EMPAI)]));
+		if (in.readBoolean()) {
+			setEmpai(in.readFloat());
 		} else {
 			setEmpai(null);
 		}
 	}
 
+	/**
+	 * Writes the values of a protein row in binary form, to be read by
+	 * {@link #DTASelectProtein(DataInput, boolean)}
+	 *
+	 * @param row
+	 * @param schema
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void write(DTASelectRow row, DTASelectProteinSchema schema, DataOutput out) throws IOException {
+		out.writeUTF(row.getString(schema.locus));
+		out.writeInt(row.getInt(schema.spectrumCount));
+		out.writeFloat(row.getPercentage(schema.coverage));
+		out.writeInt(row.getInt(schema.length));
+		out.writeFloat(row.getFloat(schema.mw));
+		out.writeFloat(row.getFloat(schema.pi));
+		out.writeUTF(row.getString(schema.description));
+		out.writeBoolean(schema.nsaf >= 0);
+		if (schema.nsaf >= 0) {
+			out.writeFloat(row.getFloat(schema.nsaf));
+		}
+		out.writeBoolean(schema.empai >= 0);
+		if (schema.empai >= 0) {
+			out.writeFloat(row.getFloat(schema.empai));
+		}
+	}
+
 	public DTASelectProtein(IndexedProtein indexedProtein, boolean ignoreACCFormat) {
-		this.ignoreACCFormat = ignoreACCFormat;
+		this(indexedProtein, new DTASelectLocusResolver(ignoreACCFormat, null));
+	}
+
+	public DTASelectProtein(IndexedProtein indexedProtein, DTASelectLocusResolver locusResolver) {
+		this.locusResolver = locusResolver;
 		locus = indexedProtein.getAccession();
 
+		// the accession of indexed proteins is always parsed
 		final Accession accession2 = FastaParser.getACC(locus);
 		super.setPrimaryAccession(accession2);
 		setKey(getAccession());
@@ -110,10 +218,17 @@ public class DTASelectProtein extends AbstractProtein {
 	}
 
 	/**
+	 * Gets the other proteins of the group of the protein, excluding the ones
+	 * with the same accession. If the group is indexed, they are obtained from
+	 * the index, without comparing accessions.
 	 *
 	 * @return
 	 */
 	public List<Protein> getSibilingProteinsInGroup() {
+		final IndexedProteinGroup indexedProteinGroup = getIndexedProteinGroup();
+		if (indexedProteinGroup != null) {
+			return new ArrayList<Protein>(indexedProteinGroup.getSiblings(this));
+		}
 		final List<Protein> ret = new ArrayList<Protein>();
 
 		for (final GroupableProtein protein : getProteinGroup()) {
@@ -127,6 +242,23 @@ public class DTASelectProtein extends AbstractProtein {
 		return ret;
 	}
 
+	/**
+	 *
+	 * @return the index of the group of the protein, or null if the group was
+	 *         not indexed or the protein is now in another group
+	 */
+	public IndexedProteinGroup getIndexedProteinGroup() {
+		final IndexedProteinGroup ret = indexedProteinGroup;
+		if (ret != null && (getProteinGroup() == null || ret.getProteinGroup() == getProteinGroup())) {
+			return ret;
+		}
+		return null;
+	}
+
+	public void setIndexedProteinGroup(IndexedProteinGroup indexedProteinGroup) {
+		this.indexedProteinGroup = indexedProteinGroup;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -141,6 +273,7 @@ public class DTASelectProtein extends AbstractProtein {
 	public void mergeWithProtein(Protein protein) {
 
 		super.mergeWithProtein(protein);
+		invalidateStatistics();
 		if (protein instanceof DTASelectProtein) {
 			if (((DTASelectProtein) protein).getLocus() != null) {
 				setLocus(((DTASelectProtein) protein).getLocus());
@@ -149,14 +282,104 @@ public class DTASelectProtein extends AbstractProtein {
 
 	}
 
-	public Set<String> getPeptideSequences() {
-		final Set<String> peptideSequences = new THashSet<String>();
-		final List<PSM> psMs2 = getPSMs();
-		for (final PSM psm : psMs2) {
-			final DTASelectPSM dtaSelectPSM = (DTASelectPSM) psm;
-			peptideSequences.add(dtaSelectPSM.getSequence());
+	/**
+	 *
+	 * @return a new set with the distinct sequences of the PSMs of the
+	 *         protein
+	 */
+	public synchronized Set<String> getPeptideSequences() {
+		return new THashSet<String>(getStatistics().peptideSequences);
+	}
+
+	public synchronized int getNumPeptideSequences() {
+		return getStatistics().peptideSequences.size();
+	}
+
+	/**
+	 *
+	 * @param msRun
+	 * @return the number of PSMs of the protein in that MS run
+	 */
+	public synchronized int getSpectralCount(MSRun msRun) {
+		return getStatistics().spectralCounts.get(msRun.getRunId());
+	}
+
+	/**
+	 *
+	 * @param msRun
+	 * @return the sum of the XIC of the PSMs of the protein in that MS run
+	 *         that have it
+	 */
+	public synchronized double getXICSum(MSRun msRun) {
+		final DerivedStatistics statistics = getStatistics();
+		if (statistics.xicSums == null) {
+			statistics.xicSums = new TObjectDoubleHashMap<String>();
+			for (final PSM psm : getPSMs()) {
+				statistics.addXIC(psm);
+			}
+		}
+		return statistics.xicSums.get(msRun.getRunId());
+	}
+
+	/**
+	 * Gets the statistics derived from the PSMs, computing them if they were
+	 * not computed since the last time that they were invalidated
+	 *
+	 * @return
+	 */
+	private synchronized DerivedStatistics getStatistics() {
+		if (statistics == null) {
+			final DerivedStatistics statistics = new DerivedStatistics();
+			final List<PSM> psms = getPSMs();
+			if (psms != null) {
+				for (final PSM psm : psms) {
+					statistics.add(psm);
+				}
+			}
+			this.statistics = statistics;
+		}
+		return statistics;
+	}
+
+	private synchronized void invalidateStatistics() {
+		statistics = null;
+	}
+
+	/**
+	 * Statistics of a protein derived from its PSMs, which are updated as new
+	 * PSMs are added
+	 *
+	 * @author Salva
+	 *
+	 */
+	private static class DerivedStatistics {
+		private final Set<String> peptideSequences = new THashSet<String>();
+		private final Set<MSRun> msRuns = new LinkedHashSet<MSRun>();
+		private final TObjectIntHashMap<String> spectralCounts = new TObjectIntHashMap<String>();
+		// only computed when requested, since it requires to parse the scores
+		// of lazy PSMs
+		private TObjectDoubleHashMap<String> xicSums;
+
+		private void add(PSM psm) {
+			peptideSequences.add(psm.getSequence());
+			final MSRun msRun = psm.getMSRun();
+			if (msRun != null) {
+				msRuns.add(msRun);
+				spectralCounts.adjustOrPutValue(msRun.getRunId(), 1, 1);
+			}
+			if (xicSums != null) {
+				addXIC(psm);
+			}
+		}
+
+		private void addXIC(PSM psm) {
+			if (psm instanceof DTASelectPSM && psm.getMSRun() != null) {
+				final Float xic = ((DTASelectPSM) psm).getXIC();
+				if (xic != null) {
+					xicSums.adjustOrPutValue(psm.getMSRun().getRunId(), xic, xic);
+				}
+			}
 		}
-		return peptideSequences;
 	}
 
 	/**
@@ -167,11 +390,8 @@ public class DTASelectProtein extends AbstractProtein {
 	@Override
 	public Accession getPrimaryAccession() {
 		if (super.getPrimaryAccession() == null) {
-			if (ignoreACCFormat) {
-				setPrimaryAccession(AccessionType.UNIPROT, getLocus());
-			} else {
-				setPrimaryAccession(FastaParser.getACC(getLocus()));
-			}
+			final DTASelectLocusResolver.Locus resolvedLocus = locusResolver.resolve(getLocus());
+			setPrimaryAccession(resolvedLocus.getAccessionType(), resolvedLocus.getAccession());
 		}
 		return super.getPrimaryAccession();
 	}
@@ -180,19 +400,32 @@ public class DTASelectProtein extends AbstractProtein {
 	public Set<MSRun> getMSRuns() {
 		if (super.getMSRuns() == null || super.getMSRuns().isEmpty()) {
 			// get msruns from psms
-			if (getPSMs() != null) {
-				for (final PSM psm : getPSMs()) {
-					addMSRun(psm.getMSRun());
-				}
+			final List<MSRun> msRuns;
+			synchronized (this) {
+				msRuns = new ArrayList<MSRun>(getStatistics().msRuns);
+			}
+			for (final MSRun msRun : msRuns) {
+				addMSRun(msRun);
 			}
-			// getPSMs().stream().forEach(psm -> addMSRun(psm.getMSRun()));
 		}
 		return super.getMSRuns();
 	}
 
+	/**
+	 * Adds the PSM, updating the derived statistics if they were already
+	 * computed
+	 */
 	@Override
 	public boolean addPSM(PSM psm, boolean recursively) {
-		return super.addPSM(psm, recursively);
+		final boolean added = super.addPSM(psm, recursively);
+		if (added) {
+			synchronized (this) {
+				if (statistics != null) {
+					statistics.add(psm);
+				}
+			}
+		}
+		return added;
 	}
 
 }
@@ -0,0 +1,18 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+/**
+ * Decides whether a protein row of a DTASelect file is read, looking at its
+ * columns before the protein is created.
+ *
+ * @author Salva
+ *
+ */
+public interface DTASelectProteinFilter {
+	/**
+	 *
+	 * @param row    the protein row. It is only valid during the call
+	 * @param schema the positions of the columns of the protein rows
+	 * @return true if the protein has to be read
+	 */
+	boolean accept(DTASelectRow row, DTASelectProteinSchema schema);
+}
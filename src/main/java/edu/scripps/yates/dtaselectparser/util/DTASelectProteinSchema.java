@@ -0,0 +1,62 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+/**
+ * Positions of the columns of the protein rows, compiled once from the protein
+ * header row (the one starting by 'Locus'), so that the rows can be read by
+ * position without looking up the header names.
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectProteinSchema {
+	private final TObjectIntHashMap<String> positions;
+	final int locus;
+	final int spectrumCount;
+	final int coverage;
+	final int length;
+	final int mw;
+	final int pi;
+	final int description;
+	// optional columns, -1 if not present
+	final int nsaf;
+	final int empai;
+
+	public DTASelectProteinSchema(TObjectIntHashMap<String> positions) {
+		this.positions = positions;
+		locus = positions.get(DTASelectProtein.LOCUS);
+		spectrumCount = positions.get(DTASelectProtein.SP_COUNT);
+		coverage = positions.get(DTASelectProtein.COVERAGE);
+		length = positions.get(DTASelectProtein.LENGTH);
+		mw = positions.get(DTASelectProtein.MW);
+		pi = positions.get(DTASelectProtein.PI);
+		description = positions.get(DTASelectProtein.DESCRIPTION);
+		nsaf = DTASelectPSMSchema.optional(positions, DTASelectProtein.NSAF);
+		empai = DTASelectPSMSchema.optional(positions, DTASelectProtein.EMPAI);
+	}
+
+	/**
+	 * Compiles the schema from the protein header row
+	 *
+	 * @param headerLine
+	 * @return
+	 */
+	public static DTASelectProteinSchema parse(CharSequence headerLine) {
+		return new DTASelectProteinSchema(new DTASelectRow(headerLine).getHeaderPositions());
+	}
+
+	/**
+	 *
+	 * @param header
+	 * @return the position of the column with that header, or -1 if there is
+	 *         not such column
+	 */
+	public int getColumn(String header) {
+		return DTASelectPSMSchema.optional(positions, header);
+	}
+
+	public int getLocusColumn() {
+		return locus;
+	}
+}
@@ -0,0 +1,328 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.util.regex.Pattern;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+/**
+ * Cursor over the tab separated columns of a line of a DTASelect file.<br>
+ * The positions of the tabs are located once per line and the numeric values
+ * are decoded directly from the characters of the line, without creating a
+ * String per column. The same instance can be reused for all the lines of a
+ * file by calling to {@link #reset(CharSequence)}.
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectRow {
+	// powers of ten exactly representable as floats
+	private static final float[] POWERS_OF_TEN = { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f,
+			1e10f };
+	// integers up to 2^24 are exactly representable as floats
+	private static final long MAX_EXACT_FLOAT_MANTISSA = 1 << 24;
+	private CharSequence line;
+	private int[] columnStarts = new int[32];
+	private int numColumns;
+
+	public DTASelectRow() {
+	}
+
+	public DTASelectRow(CharSequence line) {
+		reset(line);
+	}
+
+	/**
+	 * Points this cursor to a new line
+	 *
+	 * @param line
+	 * @return this cursor
+	 */
+	public DTASelectRow reset(CharSequence line) {
+		this.line = line;
+		numColumns = 0;
+		addColumnStart(0);
+		final int length = line.length();
+		for (int i = 0; i < length; i++) {
+			if (line.charAt(i) == '\t') {
+				addColumnStart(i + 1);
+			}
+		}
+		return this;
+	}
+
+	private void addColumnStart(int start) {
+		if (numColumns == columnStarts.length) {
+			final int[] newColumnStarts = new int[columnStarts.length * 2];
+			System.arraycopy(columnStarts, 0, newColumnStarts, 0, numColumns);
+			columnStarts = newColumnStarts;
+		}
+		columnStarts[numColumns++] = start;
+	}
+
+	public CharSequence getLine() {
+		return line;
+	}
+
+	public int getColumnCount() {
+		return numColumns;
+	}
+
+	private int start(int column) {
+		if (column < 0 || column >= numColumns) {
+			throw new ArrayIndexOutOfBoundsException(column);
+		}
+		return columnStarts[column];
+	}
+
+	private int end(int column) {
+		if (column + 1 < numColumns) {
+			return columnStarts[column + 1] - 1;
+		}
+		return line.length();
+	}
+
+	public String getString(int column) {
+		return line.subSequence(start(column), end(column)).toString();
+	}
+
+	public boolean isEmpty(int column) {
+		return start(column) == end(column);
+	}
+
+	/**
+	 *
+	 * @param column
+	 * @param value
+	 * @return true if the column has exactly that value
+	 */
+	public boolean equals(int column, String value) {
+		final int start = start(column);
+		final int end = end(column);
+		if (end - start != value.length()) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (line.charAt(i) != value.charAt(i - start)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @param column
+	 * @return true if the column is a decimal number, with an optional sign, an
+	 *         optional decimal point and an optional exponent
+	 */
+	public boolean isNumeric(int column) {
+		final int end = end(column);
+		int i = start(column);
+		if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+			i++;
+		}
+		boolean digits = false;
+		boolean point = false;
+		for (; i < end; i++) {
+			final char c = line.charAt(i);
+			if (c >= '0' && c <= '9') {
+				digits = true;
+			} else if (c == '.' && !point) {
+				point = true;
+			} else if ((c == 'E' || c == 'e') && digits) {
+				return isExponent(i + 1, end);
+			} else {
+				return false;
+			}
+		}
+		return digits;
+	}
+
+	private boolean isExponent(int start, int end) {
+		int i = start;
+		if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+			i++;
+		}
+		if (i == end) {
+			return false;
+		}
+		for (; i < end; i++) {
+			final char c = line.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getInt(int column) {
+		final int start = start(column);
+		final int end = end(column);
+		int i = start;
+		boolean negative = false;
+		if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+			negative = line.charAt(i) == '-';
+			i++;
+		}
+		// up to 9 digits cannot overflow an int
+		if (i == end || end - i > 9) {
+			return Integer.parseInt(getString(column));
+		}
+		int value = 0;
+		for (; i < end; i++) {
+			final char c = line.charAt(i);
+			if (c < '0' || c > '9') {
+				return Integer.parseInt(getString(column));
+			}
+			value = value * 10 + (c - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	public float getFloat(int column) {
+		return parseFloat(start(column), end(column));
+	}
+
+	/**
+	 * Gets the float value of a column like '12.5%', ignoring the percentage
+	 * sign
+	 *
+	 * @param column
+	 * @return
+	 */
+	public float getPercentage(int column) {
+		final int start = start(column);
+		int end = end(column);
+		if (end > start && line.charAt(end - 1) == '%') {
+			end--;
+		}
+		return parseFloat(start, end);
+	}
+
+	/**
+	 * Parses a float between start (inclusive) and end (exclusive). Plain
+	 * decimal numbers with up to 7 significant digits are computed as an exact
+	 * integer divided by an exact power of ten, which gives the same correctly
+	 * rounded value than {@link Float#parseFloat(String)}. Any other format is
+	 * delegated to {@link Float#parseFloat(String)}.
+	 *
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	private float parseFloat(int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+			negative = line.charAt(i) == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int decimals = 0;
+		boolean digits = false;
+		boolean point = false;
+		for (; i < end; i++) {
+			final char c = line.charAt(i);
+			if (c >= '0' && c <= '9') {
+				digits = true;
+				mantissa = mantissa * 10 + (c - '0');
+				if (point) {
+					decimals++;
+				}
+				if (mantissa > MAX_EXACT_FLOAT_MANTISSA || decimals >= POWERS_OF_TEN.length) {
+					return Float.parseFloat(line.subSequence(start, end).toString());
+				}
+			} else if (c == '.' && !point) {
+				point = true;
+			} else {
+				return Float.parseFloat(line.subSequence(start, end).toString());
+			}
+		}
+		if (!digits) {
+			return Float.parseFloat(line.subSequence(start, end).toString());
+		}
+		final float value = mantissa / POWERS_OF_TEN[decimals];
+		return negative ? -value : value;
+	}
+
+	/**
+	 *
+	 * @param column
+	 * @return a 64-bit hash of the characters of the column, computed without
+	 *         creating a String
+	 */
+	public long hash(int column) {
+		return DTASelectKeys.hash(line, start(column), end(column));
+	}
+
+	/**
+	 * Gets a 64-bit hash of the sequence of a column such as 'K.PEPTIDE.R',
+	 * without the flanking residues. The flanking residues are only removed
+	 * when the column starts with one character and a '.' and ends with a '.'
+	 * and one character, so that the '.' of the masses of sequences without
+	 * flanking residues, such as 'M(15.99)PEPM(15.99)', are kept.
+	 *
+	 * @param column
+	 * @return
+	 */
+	public long hashSequence(int column) {
+		final int start = start(column);
+		final int end = end(column);
+		if (end - start >= 4 && line.charAt(start + 1) == '.' && line.charAt(end - 2) == '.') {
+			return DTASelectKeys.hash(line, start + 2, end - 2);
+		}
+		return DTASelectKeys.hash(line, start, end);
+	}
+
+	/**
+	 * Gets a 64-bit hash of the part of the column before the n-th last
+	 * occurrence of the separator, such as the file name of
+	 * 'file.1234.1234.2' (n=3)
+	 *
+	 * @param column
+	 * @param separator
+	 * @param n
+	 * @return the hash of the whole column if the separator doesn't appear n
+	 *         times
+	 */
+	public long hashBeforeLast(int column, char separator, int n) {
+		final int start = start(column);
+		int end = end(column);
+		int found = 0;
+		for (int i = end - 1; i >= start && found < n; i--) {
+			if (line.charAt(i) == separator && ++found == n) {
+				end = i;
+			}
+		}
+		return DTASelectKeys.hash(line, start, end);
+	}
+
+	/**
+	 *
+	 * @param column
+	 * @param pattern
+	 * @return true if the pattern is found in the column
+	 */
+	public boolean find(int column, Pattern pattern) {
+		return pattern.matcher(line.subSequence(start(column), end(column))).find();
+	}
+
+	/**
+	 * Gets the position of each column, considering this row as a header row
+	 * ('Locus' or 'Unique' rows)
+	 *
+	 * @return
+	 */
+	public TObjectIntHashMap<String> getHeaderPositions() {
+		final TObjectIntHashMap<String> positions = new TObjectIntHashMap<String>();
+		for (int column = 0; column < numColumns; column++) {
+			positions.put(getString(column), column);
+		}
+		return positions;
+	}
+
+	@Override
+	public String toString() {
+		return line == null ? null : line.toString();
+	}
+}
@@ -0,0 +1,108 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+/**
+ * Append-only storage of the text of rows, encoded as bytes in pages that are
+ * never moved, so that a lazy {@link DTASelectPSM} keeps the position of its
+ * row in the store instead of a copy of the row as a String.<br>
+ * The characters below 0x80 take one byte and the rest two or three, as in
+ * modified UTF-8, and each row is followed by a '\n', which is never part of
+ * the encoding of other characters. A row is never split between pages.<br>
+ * It is safe to use it from different threads.
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectRowStore {
+	private static final int PAGE_BITS = 20;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	private byte[][] pages = new byte[16][];
+	// the position after the last row
+	private long size = 0;
+
+	/**
+	 * Adds a row
+	 *
+	 * @param row a line without line terminators
+	 * @return the position of the row, to get it with {@link #get(long)}
+	 */
+	public synchronized long add(CharSequence row) {
+		final int maxLength = row.length() * 3 + 1;
+		if (maxLength > PAGE_SIZE) {
+			throw new IllegalArgumentException("Row too long to be stored: " + row.length() + " characters");
+		}
+		int pageIndex = (int) (size >>> PAGE_BITS);
+		int offset = (int) (size & PAGE_MASK);
+		if (offset + maxLength > PAGE_SIZE) {
+			pageIndex++;
+			offset = 0;
+		}
+		if (pageIndex == pages.length) {
+			final byte[][] newPages = new byte[pages.length * 2][];
+			System.arraycopy(pages, 0, newPages, 0, pages.length);
+			pages = newPages;
+		}
+		byte[] page = pages[pageIndex];
+		if (page == null) {
+			page = new byte[PAGE_SIZE];
+			pages[pageIndex] = page;
+		}
+		final long position = ((long) pageIndex << PAGE_BITS) + offset;
+		for (int i = 0; i < row.length(); i++) {
+			final char c = row.charAt(i);
+			if (c > 0 && c < 0x80 && c != '\n') {
+				page[offset++] = (byte) c;
+			} else if (c < 0x800) {
+				page[offset++] = (byte) (0xc0 | (c >> 6));
+				page[offset++] = (byte) (0x80 | (c & 0x3f));
+			} else {
+				page[offset++] = (byte) (0xe0 | (c >> 12));
+				page[offset++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				page[offset++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+		page[offset++] = '\n';
+		size = ((long) pageIndex << PAGE_BITS) + offset;
+		return position;
+	}
+
+	/**
+	 *
+	 * @param position as returned by {@link #add(CharSequence)}
+	 * @return the row stored in that position
+	 */
+	public synchronized String get(long position) {
+		if (position < 0 || position >= size) {
+			throw new IndexOutOfBoundsException("Position " + position + " out of " + size);
+		}
+		final byte[] page = pages[(int) (position >>> PAGE_BITS)];
+		int offset = (int) (position & PAGE_MASK);
+		final StringBuilder sb = new StringBuilder();
+		byte b;
+		while ((b = page[offset++]) != '\n') {
+			if (b >= 0) {
+				sb.append((char) b);
+			} else if ((b & 0xe0) == 0xc0) {
+				sb.append((char) (((b & 0x1f) << 6) | (page[offset++] & 0x3f)));
+			} else {
+				final int c = ((b & 0x0f) << 12) | ((page[offset++] & 0x3f) << 6);
+				sb.append((char) (c | (page[offset++] & 0x3f)));
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 *
+	 * @return the number of bytes used by the rows, including the unused end
+	 *         of the pages that are full
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public synchronized void clear() {
+		pages = new byte[16][];
+		size = 0;
+	}
+}
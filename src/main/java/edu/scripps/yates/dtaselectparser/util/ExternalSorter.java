@@ -0,0 +1,369 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Sorts records by key using a limited amount of memory. The records are kept
+ * in memory until their estimated size reaches the memory budget, when they
+ * are sorted and written to a temporary file (a sorted run). When all the
+ * records are added, {@link #sort()} merges the runs and the records still in
+ * memory, so that {@link #next()} returns all the records sorted by key, and
+ * the ones with the same key in the order in which they were added.<br>
+ * The temporary files are deleted by {@link #close()}.
+ *
+ * @author Salva
+ *
+ */
+public class ExternalSorter implements Closeable {
+	private static final Logger log = Logger.getLogger(ExternalSorter.class);
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// maximum number of runs merged at once, to limit the open files
+	private static final int MAX_FAN_IN = 64;
+	// estimated memory used by a record and by a String, besides their
+	// characters
+	private static final int RECORD_OVERHEAD = 64;
+	private static final int STRING_OVERHEAD = 40;
+	private static final Comparator<Record> ORDER = new Comparator<Record>() {
+		@Override
+		public int compare(Record record1, Record record2) {
+			final int ret = record1.key.compareTo(record2.key);
+			if (ret != 0) {
+				return ret;
+			}
+			return Long.compare(record1.sequence, record2.sequence);
+		}
+	};
+	private final long memoryBudget;
+	private final File directory;
+	private final List<File> runs = new ArrayList<File>();
+	private List<Record> records = new ArrayList<Record>();
+	private long recordsSize = 0;
+	private long sequence = 0;
+	private PriorityQueue<RunReader> merge;
+	private boolean sorted = false;
+
+	/**
+	 *
+	 * @param memoryBudget the estimated size in bytes of the records kept in
+	 *                     memory before writing them to a temporary file
+	 * @param directory    the folder of the temporary files, or null for the
+	 *                     default temporary folder
+	 */
+	public ExternalSorter(long memoryBudget, File directory) {
+		this.memoryBudget = memoryBudget;
+		this.directory = directory;
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @param values the values of the record, which may be null
+	 * @throws IOException if the records could not be written to a temporary
+	 *                     file
+	 */
+	public void add(String key, String... values) throws IOException {
+		if (sorted) {
+			throw new IllegalStateException("The records are already sorted");
+		}
+		final Record record = new Record(key, sequence++, values);
+		records.add(record);
+		recordsSize += record.estimateSize();
+		if (recordsSize >= memoryBudget) {
+			spill();
+		}
+	}
+
+	/**
+	 * Writes the records in memory, sorted, into a new temporary file
+	 *
+	 * @throws IOException
+	 */
+	private void spill() throws IOException {
+		Collections.sort(records, ORDER);
+		final File run = File.createTempFile("dtaselect-spill", ".tmp", directory);
+		runs.add(run);
+		log.debug("Writing " + records.size() + " records to " + run.getAbsolutePath());
+		final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE));
+		try {
+			for (final Record record : records) {
+				record.write(out);
+			}
+		} finally {
+			out.close();
+		}
+		records = new ArrayList<Record>();
+		recordsSize = 0;
+	}
+
+	/**
+	 * Finishes adding records and prepares the merge of the sorted runs
+	 *
+	 * @throws IOException
+	 */
+	public void sort() throws IOException {
+		if (sorted) {
+			return;
+		}
+		sorted = true;
+		Collections.sort(records, ORDER);
+		if (!runs.isEmpty()) {
+			log.info("Merging " + runs.size() + " sorted runs");
+		}
+		while (runs.size() > MAX_FAN_IN) {
+			mergeRuns();
+		}
+		merge = newMerge();
+		for (final File run : runs) {
+			addToMerge(new FileRunReader(run));
+		}
+		addToMerge(new MemoryRunReader(records));
+		records = null;
+	}
+
+	private PriorityQueue<RunReader> newMerge() {
+		return new PriorityQueue<RunReader>(MAX_FAN_IN + 1, new Comparator<RunReader>() {
+			@Override
+			public int compare(RunReader reader1, RunReader reader2) {
+				return ORDER.compare(reader1.current, reader2.current);
+			}
+		});
+	}
+
+	/**
+	 * Merges the first runs into a new run, which is added at the end
+	 *
+	 * @throws IOException
+	 */
+	private void mergeRuns() throws IOException {
+		final List<File> mergedRuns = new ArrayList<File>(runs.subList(0, MAX_FAN_IN));
+		runs.subList(0, MAX_FAN_IN).clear();
+		final File run = File.createTempFile("dtaselect-spill", ".tmp", directory);
+		runs.add(run);
+		merge = newMerge();
+		try {
+			for (final File mergedRun : mergedRuns) {
+				addToMerge(new FileRunReader(mergedRun));
+			}
+			final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE));
+			try {
+				RunReader reader;
+				while ((reader = merge.poll()) != null) {
+					reader.current.write(out);
+					addToMerge(reader);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			for (final RunReader reader : merge) {
+				reader.close();
+			}
+			for (final File mergedRun : mergedRuns) {
+				mergedRun.delete();
+			}
+		}
+	}
+
+	private void addToMerge(RunReader reader) throws IOException {
+		if (reader.advance()) {
+			merge.add(reader);
+		} else {
+			reader.close();
+		}
+	}
+
+	/**
+	 *
+	 * @return the next record in order, or null if there are no more records
+	 * @throws IOException
+	 */
+	public Record next() throws IOException {
+		if (!sorted) {
+			throw new IllegalStateException("sort() has to be called before reading the records");
+		}
+		final RunReader reader = merge.poll();
+		if (reader == null) {
+			return null;
+		}
+		final Record ret = reader.current;
+		addToMerge(reader);
+		return ret;
+	}
+
+	/**
+	 *
+	 * @return the number of sorted runs in temporary files
+	 */
+	public int getNumRuns() {
+		return runs.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (merge != null) {
+			for (final RunReader reader : merge) {
+				reader.close();
+			}
+			merge.clear();
+		}
+		for (final File run : runs) {
+			if (run.exists() && !run.delete()) {
+				run.deleteOnExit();
+			}
+		}
+		runs.clear();
+	}
+
+	public static class Record {
+		private final String key;
+		private final long sequence;
+		private final String[] values;
+
+		private Record(String key, long sequence, String[] values) {
+			this.key = key;
+			this.sequence = sequence;
+			this.values = values;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public String[] getValues() {
+			return values;
+		}
+
+		private long estimateSize() {
+			long ret = RECORD_OVERHEAD + STRING_OVERHEAD + 2l * key.length();
+			for (final String value : values) {
+				if (value != null) {
+					ret += STRING_OVERHEAD + 2l * value.length();
+				}
+			}
+			return ret;
+		}
+
+		private void write(DataOutputStream out) throws IOException {
+			writeString(out, key);
+			out.writeLong(sequence);
+			out.writeInt(values.length);
+			for (final String value : values) {
+				writeString(out, value);
+			}
+		}
+
+		/**
+		 *
+		 * @param in
+		 * @return the next record, or null if the end of the stream was
+		 *         reached
+		 * @throws IOException
+		 */
+		private static Record read(DataInputStream in) throws IOException {
+			final String key;
+			try {
+				key = readString(in);
+			} catch (final EOFException e) {
+				return null;
+			}
+			final long sequence = in.readLong();
+			final String[] values = new String[in.readInt()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = readString(in);
+			}
+			return new Record(key, sequence, values);
+		}
+
+		// writeUTF is limited to 64KB
+		private static void writeString(DataOutputStream out, String value) throws IOException {
+			if (value == null) {
+				out.writeInt(-1);
+				return;
+			}
+			final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		private static String readString(DataInputStream in) throws IOException {
+			final int length = in.readInt();
+			if (length == -1) {
+				return null;
+			}
+			final byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+
+	private static abstract class RunReader implements Closeable {
+		private Record current;
+
+		/**
+		 *
+		 * @return false if there are no more records
+		 * @throws IOException
+		 */
+		private boolean advance() throws IOException {
+			current = read();
+			return current != null;
+		}
+
+		protected abstract Record read() throws IOException;
+	}
+
+	private static class MemoryRunReader extends RunReader {
+		private final List<Record> records;
+		private int index = 0;
+
+		private MemoryRunReader(List<Record> records) {
+			this.records = records;
+		}
+
+		@Override
+		protected Record read() {
+			return index < records.size() ? records.get(index++) : null;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private static class FileRunReader extends RunReader {
+		private final DataInputStream in;
+
+		private FileRunReader(File run) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), BUFFER_SIZE));
+		}
+
+		@Override
+		protected Record read() throws IOException {
+			return Record.read(in);
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
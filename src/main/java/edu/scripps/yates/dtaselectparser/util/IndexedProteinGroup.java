@@ -0,0 +1,275 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.scripps.yates.utilities.grouping.GroupableProtein;
+import edu.scripps.yates.utilities.grouping.ProteinGroup;
+import edu.scripps.yates.utilities.proteomicsmodel.PSM;
+import edu.scripps.yates.utilities.proteomicsmodel.Protein;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+/**
+ * Index of the proteins of a {@link ProteinGroup} and of their PSMs, in which
+ * each protein and each PSM has a dense integer identifier within the group,
+ * and the PSMs of each protein and the proteins of each PSM are kept as
+ * bitsets.<br>
+ * The siblings, the PSMs shared with other proteins of the group and the PSMs
+ * unique to a protein are then obtained without comparing accessions. The
+ * proteins and PSMs are identified by identity, not by equality.<br>
+ * It reflects the PSMs of the proteins when it was built.
+ *
+ * @author Salva
+ *
+ */
+public class IndexedProteinGroup {
+	private final ProteinGroup proteinGroup;
+	private final Protein[] proteins;
+	private final Map<Protein, Integer> proteinIDs;
+	private final PSM[] psms;
+	private final Map<PSM, Integer> psmIDs;
+	private final BitSet[] psmsByProtein;
+	private final BitSet[] proteinsByPSM;
+	// the PSMs of only one protein of the group
+	private final BitSet uniquePSMs = new BitSet();
+	// for each protein, the identifier of the first protein with the same
+	// accession, which is itself if the accessions are not repeated
+	private final int[] accessionIDs;
+	private final boolean repeatedAccessions;
+
+	public IndexedProteinGroup(ProteinGroup proteinGroup) {
+		this.proteinGroup = proteinGroup;
+		final int numProteins = proteinGroup.size();
+		proteins = new Protein[numProteins];
+		proteinIDs = new IdentityHashMap<Protein, Integer>(numProteins);
+		accessionIDs = new int[numProteins];
+		final TObjectIntHashMap<String> firstByAccession = new TObjectIntHashMap<String>(numProteins, 0.5f, -1);
+		boolean repeated = false;
+		int numPSMs = 0;
+		int i = 0;
+		for (final GroupableProtein groupableProtein : proteinGroup) {
+			final Protein protein = (Protein) groupableProtein;
+			proteins[i] = protein;
+			proteinIDs.put(protein, i);
+			final int first = firstByAccession.putIfAbsent(protein.getAccession(), i);
+			accessionIDs[i] = first == -1 ? i : first;
+			repeated |= first != -1;
+			if (protein.getPSMs() != null) {
+				numPSMs += protein.getPSMs().size();
+			}
+			i++;
+		}
+		repeatedAccessions = repeated;
+
+		psmIDs = new IdentityHashMap<PSM, Integer>(numPSMs);
+		final List<PSM> psmList = new ArrayList<PSM>(numPSMs);
+		psmsByProtein = new BitSet[numProteins];
+		for (i = 0; i < numProteins; i++) {
+			final BitSet bits = new BitSet();
+			psmsByProtein[i] = bits;
+			final List<PSM> proteinPSMs = proteins[i].getPSMs();
+			if (proteinPSMs == null) {
+				continue;
+			}
+			for (final PSM psm : proteinPSMs) {
+				Integer psmID = psmIDs.get(psm);
+				if (psmID == null) {
+					psmID = psmList.size();
+					psmIDs.put(psm, psmID);
+					psmList.add(psm);
+				}
+				bits.set(psmID);
+			}
+		}
+		psms = psmList.toArray(new PSM[psmList.size()]);
+		proteinsByPSM = new BitSet[psms.length];
+		for (int psmID = 0; psmID < psms.length; psmID++) {
+			proteinsByPSM[psmID] = new BitSet(numProteins);
+		}
+		for (i = 0; i < numProteins; i++) {
+			final BitSet bits = psmsByProtein[i];
+			for (int psmID = bits.nextSetBit(0); psmID >= 0; psmID = bits.nextSetBit(psmID + 1)) {
+				proteinsByPSM[psmID].set(i);
+			}
+		}
+		for (int psmID = 0; psmID < psms.length; psmID++) {
+			if (proteinsByPSM[psmID].cardinality() == 1) {
+				uniquePSMs.set(psmID);
+			}
+		}
+	}
+
+	public ProteinGroup getProteinGroup() {
+		return proteinGroup;
+	}
+
+	public int getNumProteins() {
+		return proteins.length;
+	}
+
+	public int getNumPSMs() {
+		return psms.length;
+	}
+
+	/**
+	 *
+	 * @param protein
+	 * @return the identifier of the protein in the group, or -1 if it is not in
+	 *         the group
+	 */
+	public int getProteinID(Protein protein) {
+		final Integer ret = proteinIDs.get(protein);
+		return ret != null ? ret : -1;
+	}
+
+	public Protein getProtein(int proteinID) {
+		return proteins[proteinID];
+	}
+
+	/**
+	 *
+	 * @param psm
+	 * @return the identifier of the PSM in the group, or -1 if it is not a PSM
+	 *         of any protein of the group
+	 */
+	public int getPSMID(PSM psm) {
+		final Integer ret = psmIDs.get(psm);
+		return ret != null ? ret : -1;
+	}
+
+	public PSM getPSM(int psmID) {
+		return psms[psmID];
+	}
+
+	private int checkProteinID(Protein protein) {
+		final int ret = getProteinID(protein);
+		if (ret == -1) {
+			throw new IllegalArgumentException(protein.getAccession() + " is not in the group");
+		}
+		return ret;
+	}
+
+	/**
+	 * Gets the other proteins of the group, excluding the ones with the same
+	 * accession. The list is a read-only view created in constant time, unless
+	 * the group has repeated accessions.
+	 *
+	 * @param protein
+	 * @return
+	 */
+	public List<Protein> getSiblings(Protein protein) {
+		final int proteinID = checkProteinID(protein);
+		if (repeatedAccessions) {
+			final List<Protein> ret = new ArrayList<Protein>();
+			for (int i = 0; i < proteins.length; i++) {
+				if (accessionIDs[i] != accessionIDs[proteinID]) {
+					ret.add(proteins[i]);
+				}
+			}
+			return Collections.unmodifiableList(ret);
+		}
+		return new AbstractList<Protein>() {
+			@Override
+			public Protein get(int index) {
+				if (index < 0 || index >= size()) {
+					throw new IndexOutOfBoundsException("Index " + index + " out of " + size());
+				}
+				return proteins[index < proteinID ? index : index + 1];
+			}
+
+			@Override
+			public int size() {
+				return proteins.length - 1;
+			}
+		};
+	}
+
+	/**
+	 *
+	 * @param protein
+	 * @return the identifiers of the PSMs of the protein. The bitset is a
+	 *         copy
+	 */
+	public BitSet getPSMIDs(Protein protein) {
+		return (BitSet) psmsByProtein[checkProteinID(protein)].clone();
+	}
+
+	/**
+	 *
+	 * @param psm
+	 * @return the identifiers of the proteins of the group that have the PSM.
+	 *         The bitset is a copy
+	 */
+	public BitSet getProteinIDs(PSM psm) {
+		final int psmID = getPSMID(psm);
+		return psmID == -1 ? new BitSet() : (BitSet) proteinsByPSM[psmID].clone();
+	}
+
+	public List<PSM> getPSMs(Protein protein) {
+		return toPSMs(psmsByProtein[checkProteinID(protein)]);
+	}
+
+	/**
+	 *
+	 * @param protein
+	 * @return the PSMs of the protein that no other protein of the group has
+	 */
+	public List<PSM> getUniquePSMs(Protein protein) {
+		final BitSet bits = getPSMIDs(protein);
+		bits.and(uniquePSMs);
+		return toPSMs(bits);
+	}
+
+	/**
+	 *
+	 * @param protein
+	 * @return the PSMs of the protein that other proteins of the group also
+	 *         have
+	 */
+	public List<PSM> getSharedPSMs(Protein protein) {
+		final BitSet bits = getPSMIDs(protein);
+		bits.andNot(uniquePSMs);
+		return toPSMs(bits);
+	}
+
+	/**
+	 *
+	 * @param psm
+	 * @return the proteins of the group that have the PSM
+	 */
+	public List<Protein> getProteins(PSM psm) {
+		final int psmID = getPSMID(psm);
+		if (psmID == -1) {
+			return Collections.emptyList();
+		}
+		final BitSet bits = proteinsByPSM[psmID];
+		final List<Protein> ret = new ArrayList<Protein>(bits.cardinality());
+		for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+			ret.add(proteins[i]);
+		}
+		return ret;
+	}
+
+	/**
+	 *
+	 * @param psm
+	 * @return true if more than one protein of the group has the PSM
+	 */
+	public boolean isShared(PSM psm) {
+		final int psmID = getPSMID(psm);
+		return psmID != -1 && !uniquePSMs.get(psmID);
+	}
+
+	private List<PSM> toPSMs(BitSet bits) {
+		final List<PSM> ret = new ArrayList<PSM>(bits.cardinality());
+		for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+			ret.add(psms[i]);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,249 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Copies a list of input streams (typically remote ones) into temporary local
+ * files in the background, a number of them at the same time, so that they
+ * are already downloaded when they are going to be read.<br>
+ * The total size of the files downloaded and not read yet is limited: when the
+ * limit is reached, the downloads wait until some of the files are read and
+ * closed. The download of a stream that is requested by {@link #open(String)}
+ * is never stopped by that limit, so the limit can be smaller than the files.
+ * Only one buffer per download is kept in memory.
+ *
+ * @author Salva
+ *
+ */
+public class InputStreamPrefetcher implements Closeable {
+	private static final Logger log = Logger.getLogger(InputStreamPrefetcher.class);
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private final Map<String, Spool> spools = new LinkedHashMap<String, Spool>();
+	private final ExecutorService executor;
+	private final File spoolDirectory;
+	// in units of buffers
+	private final Semaphore spoolBudget;
+
+	/**
+	 *
+	 * @param ids              the identifiers of the streams, in the order in
+	 *                         which they are going to be read
+	 * @param streams          the streams by identifier
+	 * @param numConcurrent    the number of streams downloaded at the same
+	 *                         time
+	 * @param maxSpoolBytes    the maximum number of bytes downloaded and not
+	 *                         read yet
+	 * @param spoolDirectory   the folder of the temporary files, or null for
+	 *                         the default temporary folder
+	 */
+	public InputStreamPrefetcher(List<String> ids, Map<String, InputStream> streams, int numConcurrent,
+			long maxSpoolBytes, File spoolDirectory) {
+		if (numConcurrent < 1) {
+			throw new IllegalArgumentException("At least one stream has to be downloaded at a time");
+		}
+		this.spoolDirectory = spoolDirectory;
+		spoolBudget = new Semaphore((int) Math.max(1, Math.min(Integer.MAX_VALUE, maxSpoolBytes / BUFFER_SIZE)));
+		executor = Executors.newFixedThreadPool(numConcurrent, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				final Thread thread = new Thread(runnable, "DTASelect prefetcher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (final String id : ids) {
+			final Spool spool = new Spool(id, streams.get(id));
+			spools.put(id, spool);
+			executor.execute(spool);
+		}
+		executor.shutdown();
+	}
+
+	public boolean contains(String id) {
+		return spools.containsKey(id);
+	}
+
+	/**
+	 * Waits until the stream with that identifier is downloaded and opens its
+	 * local copy, which is deleted when it is closed. Each stream can only be
+	 * opened once.
+	 *
+	 * @param id
+	 * @return
+	 * @throws IOException if the stream could not be downloaded
+	 */
+	public InputStream open(String id) throws IOException {
+		final Spool spool = spools.get(id);
+		if (spool == null) {
+			throw new IllegalArgumentException(id + " is not prefetched");
+		}
+		return spool.open();
+	}
+
+	/**
+	 * Stops the downloads and deletes the local copies that were not opened
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		for (final Spool spool : spools.values()) {
+			spool.discard();
+		}
+	}
+
+	private class Spool implements Runnable {
+		private final String id;
+		private final InputStream stream;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile boolean requested = false;
+		private File file;
+		private IOException error;
+		// buffers of the budget taken by this spool
+		private int permits = 0;
+		private boolean opened = false;
+		private volatile boolean discarded = false;
+
+		private Spool(String id, InputStream stream) {
+			this.id = id;
+			this.stream = stream;
+		}
+
+		@Override
+		public void run() {
+			try {
+				synchronized (this) {
+					if (discarded) {
+						return;
+					}
+					file = File.createTempFile("dtaselect-prefetch", ".tmp", spoolDirectory);
+				}
+				log.debug("Prefetching " + id + " into " + file.getAbsolutePath());
+				final OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+				try {
+					final byte[] buffer = new byte[BUFFER_SIZE];
+					int read;
+					while (!discarded && (read = stream.read(buffer)) != -1) {
+						acquireBudget();
+						out.write(buffer, 0, read);
+					}
+				} finally {
+					out.close();
+				}
+				log.debug(id + " prefetched");
+			} catch (final IOException e) {
+				error = e;
+			} catch (final InterruptedException e) {
+				error = new IOException("Prefetching of " + id + " interrupted", e);
+				Thread.currentThread().interrupt();
+			} finally {
+				try {
+					stream.close();
+				} catch (final IOException e) {
+					log.warn("Error closing " + id + ": " + e.getMessage());
+				}
+				synchronized (this) {
+					done.countDown();
+					// discarded while downloading
+					if (discarded && !opened) {
+						deleteFile();
+						releaseBudget();
+					}
+				}
+			}
+		}
+
+		/**
+		 * Takes a buffer from the budget, unless the stream has been requested
+		 *
+		 * @throws InterruptedException
+		 */
+		private void acquireBudget() throws InterruptedException {
+			while (!requested) {
+				if (spoolBudget.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+					synchronized (this) {
+						permits++;
+					}
+					return;
+				}
+			}
+		}
+
+		private synchronized void releaseBudget() {
+			spoolBudget.release(permits);
+			permits = 0;
+		}
+
+		private InputStream open() throws IOException {
+			requested = true;
+			try {
+				done.await();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for " + id, e);
+			}
+			synchronized (this) {
+				if (opened) {
+					throw new IllegalStateException(id + " was already opened");
+				}
+				opened = true;
+				if (error != null) {
+					deleteFile();
+					releaseBudget();
+					throw error;
+				}
+				if (file == null) {
+					throw new IOException("Prefetching of " + id + " was cancelled");
+				}
+			}
+			return new FileInputStream(file) {
+				private boolean closed = false;
+
+				@Override
+				public void close() throws IOException {
+					super.close();
+					if (!closed) {
+						closed = true;
+						deleteFile();
+						releaseBudget();
+					}
+				}
+			};
+		}
+
+		/**
+		 * Deletes the local copy if it is not opened. If it is being
+		 * downloaded, it is deleted when the download stops.
+		 */
+		private synchronized void discard() {
+			discarded = true;
+			if (!opened && done.getCount() == 0) {
+				deleteFile();
+				releaseBudget();
+			}
+		}
+
+		private synchronized void deleteFile() {
+			if (file != null && file.exists() && !file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+}
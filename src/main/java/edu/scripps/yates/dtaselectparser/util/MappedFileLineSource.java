@@ -0,0 +1,256 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link DTASelectLineSource} that memory-maps a file and looks for the line
+ * terminators directly on its bytes. The lines are returned as views over the
+ * mapped bytes, so no String is created unless {@link CharSequence#toString()}
+ * is called on them.<br>
+ * The file is mapped in windows of up to 1GB, so files of any size can be
+ * read.<br>
+ * The bytes are read as ASCII characters. Any String created from a range
+ * containing non ASCII bytes is decoded with the default charset, as a
+ * {@link java.io.InputStreamReader} would do.
+ *
+ * @author Salva
+ *
+ */
+public class MappedFileLineSource implements DTASelectLineSource {
+	public static final long DEFAULT_WINDOW_SIZE = 1 << 30;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long size;
+	private final long windowSize;
+	private MappedByteBuffer window;
+	// position in the file of the first byte of the window
+	private long windowStart;
+	// position in the file of the next line to read
+	private long position;
+	// position in the file of the last line returned
+	private long lineStart = -1;
+	private long bytesRead = 0;
+	private final ByteSequence line = new ByteSequence();
+	private boolean completeLinesOnly = false;
+
+	public MappedFileLineSource(File file) throws IOException {
+		this(file, DEFAULT_WINDOW_SIZE);
+	}
+
+	public MappedFileLineSource(File file, long windowSize) throws IOException {
+		this(file, 0, windowSize);
+	}
+
+	/**
+	 *
+	 * @param file
+	 * @param position   the position in the file from which to start reading
+	 * @param windowSize the maximum number of bytes mapped at once, which
+	 *                   limits the maximum length of a line
+	 * @throws IOException
+	 */
+	public MappedFileLineSource(File file, long position, long windowSize) throws IOException {
+		if (windowSize <= 0 || windowSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid window size: " + windowSize);
+		}
+		this.file = new RandomAccessFile(file, "r");
+		channel = this.file.getChannel();
+		size = channel.size();
+		this.windowSize = windowSize;
+		this.position = position;
+	}
+
+	private void map(long start) throws IOException {
+		windowStart = start;
+		window = channel.map(MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+	}
+
+	@Override
+	public CharSequence readLine() throws IOException {
+		if (position >= size) {
+			return null;
+		}
+		if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+			map(position);
+		}
+		int start = (int) (position - windowStart);
+		int end = findLineTerminator(start);
+		if (end == window.limit() && windowStart + end < size && start > 0) {
+			// the line continues after the window
+			map(position);
+			start = 0;
+			end = findLineTerminator(start);
+		}
+		if (end == window.limit() && windowStart + end < size) {
+			throw new IOException("Line at position " + position + " is longer than " + windowSize + " bytes");
+		}
+		if (completeLinesOnly && windowStart + end == size) {
+			// the last line has no terminator, so it may be still being
+			// written
+			return null;
+		}
+		lineStart = position;
+		line.set(start, end);
+		// skip the line terminator
+		position = windowStart + end;
+		if (end < window.limit()) {
+			position++;
+			if (window.get(end) == '\r') {
+				if (end + 1 < window.limit()) {
+					if (window.get(end + 1) == '\n') {
+						position++;
+					}
+				} else if (position < size) {
+					// the '\n' may be at the beginning of the next window
+					map(position);
+					if (window.get(0) == '\n') {
+						position++;
+					}
+				}
+			}
+		}
+		bytesRead += position - lineStart;
+		return line;
+	}
+
+	private int findLineTerminator(int from) {
+		final int limit = window.limit();
+		for (int i = from; i < limit; i++) {
+			final byte b = window.get(i);
+			if (b == '\n' || b == '\r') {
+				return i;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * If true, a last line without line terminator is not returned, so that a
+	 * file that is still being written is only read up to its last complete
+	 * line. False by default.
+	 *
+	 * @param completeLinesOnly
+	 */
+	public void setCompleteLinesOnly(boolean completeLinesOnly) {
+		this.completeLinesOnly = completeLinesOnly;
+	}
+
+	public boolean isCompleteLinesOnly() {
+		return completeLinesOnly;
+	}
+
+	/**
+	 *
+	 * @return the position in the file of the first byte of the last line
+	 *         returned, or -1 if no line was read yet
+	 */
+	public long getLineStart() {
+		return lineStart;
+	}
+
+	/**
+	 *
+	 * @return the position in the file of the next line to be read
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Moves to a position of the file, from which the next line is read. The
+	 * current window is kept if the position is within it.
+	 *
+	 * @param position the position of the first byte of a line
+	 */
+	public void seek(long position) {
+		if (position < 0 || position > size) {
+			throw new IllegalArgumentException("Invalid position: " + position);
+		}
+		this.position = position;
+		lineStart = -1;
+	}
+
+	@Override
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		file.close();
+	}
+
+	private static String decode(ByteBuffer buffer, int start, int length) {
+		final byte[] bytes = new byte[length];
+		boolean ascii = true;
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buffer.get(start + i);
+			if (bytes[i] < 0) {
+				ascii = false;
+			}
+		}
+		if (ascii) {
+			return new String(bytes, StandardCharsets.ISO_8859_1);
+		}
+		return new String(bytes, Charset.defaultCharset());
+	}
+
+	/**
+	 * View of the bytes of the current line
+	 *
+	 * @author Salva
+	 *
+	 */
+	private class ByteSequence implements CharSequence {
+		// the window in which the line was found, which keeps being valid
+		// even if a new window is mapped
+		private MappedByteBuffer buffer;
+		private int start;
+		private int length;
+
+		private void set(int start, int end) {
+			buffer = window;
+			this.start = start;
+			length = end - start;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= length) {
+				throw new StringIndexOutOfBoundsException(index);
+			}
+			return (char) (buffer.get(start + index) & 0xff);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			if (from < 0 || to > length || from > to) {
+				throw new StringIndexOutOfBoundsException("from " + from + " to " + to);
+			}
+			return decode(buffer, start + from, to - from);
+		}
+
+		@Override
+		public String toString() {
+			return decode(buffer, start, length);
+		}
+	}
+}
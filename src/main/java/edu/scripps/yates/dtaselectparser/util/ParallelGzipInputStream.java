@@ -0,0 +1,387 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Decompresses a gzip stream in the background, so that the decompression is
+ * done at the same time than the parsing of the lines already
+ * decompressed.<br>
+ * If the stream is block-gzipped (BGZF, the format of bgzip), whose members
+ * declare their compressed size, the members are read in a background thread
+ * and inflated in parallel in a pool of threads, keeping their order.
+ * Otherwise, including the case of several concatenated gzip members, the
+ * stream is inflated by a {@link GZIPInputStream} in a single background
+ * thread.<br>
+ * The number of decompressed chunks waiting to be read is limited, so the
+ * memory used doesn't depend on the size of the stream.
+ *
+ * @author Salva
+ *
+ */
+public class ParallelGzipInputStream extends InputStream {
+	private static final Logger log = Logger.getLogger(ParallelGzipInputStream.class);
+	private static final int GZIP_MAGIC_1 = 0x1f;
+	private static final int GZIP_MAGIC_2 = 0x8b;
+	private static final int FEXTRA = 4;
+	private static final int HEADER_SIZE = 18;
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final byte[] END = new byte[0];
+	private final InputStream in;
+	private final BlockingQueue<Future<byte[]>> chunks;
+	private final ExecutorService inflaters;
+	private final Thread reader;
+	private byte[] chunk = null;
+	private int chunkPosition = 0;
+	private boolean ended = false;
+	private volatile boolean closed = false;
+
+	/**
+	 *
+	 * @param in         the gzip stream. If it is block-gzipped, it has to
+	 *                   support {@link InputStream#mark(int)} so that it can be
+	 *                   detected
+	 * @param numThreads the number of threads inflating the members of a
+	 *                   block-gzipped stream
+	 * @throws IOException
+	 */
+	public ParallelGzipInputStream(InputStream in, int numThreads) throws IOException {
+		this.in = in;
+		final boolean blocks = numThreads > 1 && isBlockGzip(in);
+		chunks = new ArrayBlockingQueue<Future<byte[]>>(Math.max(16, numThreads * 4));
+		if (blocks) {
+			log.debug("Inflating gzip blocks in " + numThreads + " threads");
+			inflaters = Executors.newFixedThreadPool(numThreads, daemonThreads("gzip inflater"));
+			reader = daemonThreads("gzip reader").newThread(new Runnable() {
+				@Override
+				public void run() {
+					readBlocks();
+				}
+			});
+		} else {
+			inflaters = null;
+			reader = daemonThreads("gzip inflater").newThread(new Runnable() {
+				@Override
+				public void run() {
+					inflateStream();
+				}
+			});
+		}
+		reader.start();
+	}
+
+	private static ThreadFactory daemonThreads(final String name) {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				final Thread thread = new Thread(runnable, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 *
+	 * @param in a stream that supports {@link InputStream#mark(int)}
+	 * @return true if the stream starts with the gzip magic number. The stream
+	 *         is left at the same position
+	 * @throws IOException
+	 */
+	public static boolean isGzip(InputStream in) throws IOException {
+		final byte[] header = peek(in, 2);
+		return header.length == 2 && (header[0] & 0xff) == GZIP_MAGIC_1 && (header[1] & 0xff) == GZIP_MAGIC_2;
+	}
+
+	public static boolean isGzip(File file) throws IOException {
+		final InputStream in = new FileInputStream(file);
+		try {
+			return in.read() == GZIP_MAGIC_1 && in.read() == GZIP_MAGIC_2;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 *
+	 * @param in a stream that supports {@link InputStream#mark(int)}
+	 * @return true if the first gzip member of the stream is a BGZF block. The
+	 *         stream is left at the same position
+	 * @throws IOException
+	 */
+	public static boolean isBlockGzip(InputStream in) throws IOException {
+		if (!in.markSupported()) {
+			return false;
+		}
+		final byte[] header = peek(in, HEADER_SIZE);
+		return header.length == HEADER_SIZE && (header[0] & 0xff) == GZIP_MAGIC_1
+				&& (header[1] & 0xff) == GZIP_MAGIC_2 && (header[3] & FEXTRA) != 0 && header[12] == 'B'
+				&& header[13] == 'C' && header[14] == 2 && header[15] == 0;
+	}
+
+	private static byte[] peek(InputStream in, int length) throws IOException {
+		in.mark(length);
+		try {
+			final byte[] bytes = new byte[length];
+			int read = 0;
+			while (read < length) {
+				final int n = in.read(bytes, read, length - read);
+				if (n < 0) {
+					final byte[] ret = new byte[read];
+					System.arraycopy(bytes, 0, ret, 0, read);
+					return ret;
+				}
+				read += n;
+			}
+			return bytes;
+		} finally {
+			in.reset();
+		}
+	}
+
+	/**
+	 * Inflates the whole stream in the current thread
+	 */
+	private void inflateStream() {
+		try {
+			final GZIPInputStream gzip = new GZIPInputStream(in, CHUNK_SIZE);
+			while (!closed) {
+				final byte[] buffer = new byte[CHUNK_SIZE];
+				int length = 0;
+				int n = 0;
+				while (length < buffer.length && (n = gzip.read(buffer, length, buffer.length - length)) >= 0) {
+					length += n;
+				}
+				if (length > 0) {
+					putChunk(CompletableFuture.completedFuture(trim(buffer, length)));
+				}
+				if (n < 0) {
+					break;
+				}
+			}
+			putChunk(CompletableFuture.completedFuture(END));
+		} catch (final InterruptedException e) {
+			// closed
+		} catch (final Throwable e) {
+			putError(e);
+		}
+	}
+
+	/**
+	 * Reads the BGZF blocks of the stream in the current thread, sending them
+	 * to the pool of inflaters
+	 */
+	private void readBlocks() {
+		try {
+			final DataInputStream data = new DataInputStream(in);
+			final byte[] header = new byte[12];
+			while (!closed) {
+				final int first = data.read();
+				if (first < 0) {
+					break;
+				}
+				header[0] = (byte) first;
+				data.readFully(header, 1, header.length - 1);
+				if ((header[0] & 0xff) != GZIP_MAGIC_1 || (header[1] & 0xff) != GZIP_MAGIC_2
+						|| (header[3] & FEXTRA) == 0) {
+					throw new IOException("Invalid BGZF block");
+				}
+				final int extraLength = (header[10] & 0xff) | (header[11] & 0xff) << 8;
+				final byte[] extra = new byte[extraLength];
+				data.readFully(extra);
+				final int blockSize = getBlockSize(extra);
+				final byte[] block = new byte[blockSize - header.length - extraLength];
+				data.readFully(block);
+				putChunk(inflaters.submit(new Callable<byte[]>() {
+					@Override
+					public byte[] call() throws Exception {
+						return inflateBlock(block);
+					}
+				}));
+			}
+			putChunk(CompletableFuture.completedFuture(END));
+		} catch (final InterruptedException e) {
+			// closed
+		} catch (final Throwable e) {
+			putError(e);
+		}
+	}
+
+	/**
+	 *
+	 * @param extra the extra field of a gzip member header
+	 * @return the total size of the BGZF block
+	 * @throws IOException if the extra field has no BGZF subfield
+	 */
+	private static int getBlockSize(byte[] extra) throws IOException {
+		int i = 0;
+		while (i + 4 <= extra.length) {
+			final int length = (extra[i + 2] & 0xff) | (extra[i + 3] & 0xff) << 8;
+			if (extra[i] == 'B' && extra[i + 1] == 'C' && length == 2 && i + 6 <= extra.length) {
+				return ((extra[i + 4] & 0xff) | (extra[i + 5] & 0xff) << 8) + 1;
+			}
+			i += 4 + length;
+		}
+		throw new IOException("Invalid BGZF block: the gzip member has no block size");
+	}
+
+	/**
+	 *
+	 * @param block the deflated data of a BGZF block followed by its CRC32 and
+	 *              size
+	 * @return the inflated data
+	 * @throws IOException
+	 */
+	private static byte[] inflateBlock(byte[] block) throws IOException {
+		if (block.length < 8) {
+			throw new IOException("Invalid BGZF block: truncated block");
+		}
+		final int size = readInt(block, block.length - 4);
+		final byte[] ret = new byte[size];
+		final Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(block, 0, block.length - 8);
+			int length = 0;
+			while (length < size) {
+				final int n = inflater.inflate(ret, length, size - length);
+				if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+					break;
+				}
+				length += n;
+			}
+			if (length != size) {
+				throw new IOException("Invalid BGZF block: inflated " + length + " bytes instead of " + size);
+			}
+		} catch (final DataFormatException e) {
+			throw new IOException("Invalid BGZF block: " + e.getMessage(), e);
+		} finally {
+			inflater.end();
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(ret);
+		if ((int) crc.getValue() != readInt(block, block.length - 8)) {
+			throw new IOException("Invalid BGZF block: CRC error");
+		}
+		return ret;
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16
+				| (bytes[offset + 3] & 0xff) << 24;
+	}
+
+	private static byte[] trim(byte[] buffer, int length) {
+		if (length == buffer.length) {
+			return buffer;
+		}
+		final byte[] ret = new byte[length];
+		System.arraycopy(buffer, 0, ret, 0, length);
+		return ret;
+	}
+
+	private void putChunk(Future<byte[]> future) throws InterruptedException {
+		chunks.put(future);
+	}
+
+	private void putError(Throwable e) {
+		final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+		future.completeExceptionally(e);
+		try {
+			putChunk(future);
+		} catch (final InterruptedException e2) {
+			// closed
+		}
+	}
+
+	/**
+	 * Makes the next decompressed chunk the current one, waiting for it if
+	 * needed
+	 *
+	 * @return false if the end of the stream was reached
+	 * @throws IOException
+	 */
+	private boolean nextChunk() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		while (!ended && (chunk == null || chunkPosition == chunk.length)) {
+			try {
+				chunk = chunks.take().get();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while decompressing", e);
+			} catch (final ExecutionException e) {
+				final Throwable cause = e.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+				throw new IOException("Error decompressing: " + cause.getMessage(), cause);
+			}
+			chunkPosition = 0;
+			if (chunk == END) {
+				ended = true;
+			}
+		}
+		return !ended;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!nextChunk()) {
+			return -1;
+		}
+		return chunk[chunkPosition++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextChunk()) {
+			return -1;
+		}
+		final int n = Math.min(len, chunk.length - chunkPosition);
+		System.arraycopy(chunk, chunkPosition, b, off, n);
+		chunkPosition += n;
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return chunk == null || ended ? 0 : chunk.length - chunkPosition;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		reader.interrupt();
+		if (inflaters != null) {
+			inflaters.shutdownNow();
+		}
+		// unblocks the background thread if it is waiting to put a chunk
+		chunks.clear();
+		in.close();
+	}
+}
@@ -0,0 +1,65 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import edu.scripps.yates.utilities.proteomicsmodel.MSRun;
+import edu.scripps.yates.utilities.proteomicsmodel.Peptide;
+import edu.scripps.yates.utilities.proteomicsmodel.factories.MSRunEx;
+import edu.scripps.yates.utilities.proteomicsmodel.staticstorage.StaticProteomicsModelStorage;
+
+/**
+ * {@link DTASelectModelRegistry} that uses the global
+ * {@link StaticProteomicsModelStorage}, so that the MS runs and peptides are
+ * shared by all the parsers of the JVM, as they were before the registry
+ * could be set in the parser. Its objects are only released by
+ * {@link #clear()}.
+ *
+ * @author Salva
+ *
+ */
+public class StaticModelRegistry implements DTASelectModelRegistry {
+	public static final StaticModelRegistry INSTANCE = new StaticModelRegistry();
+
+	private StaticModelRegistry() {
+	}
+
+	@Override
+	public MSRun getMSRun(String runId, String path) {
+		synchronized (StaticProteomicsModelStorage.class) {
+			if (StaticProteomicsModelStorage.containsMSRun(runId)) {
+				final MSRun run = StaticProteomicsModelStorage.getMSRun(runId);
+				run.setPath(path);
+				return run;
+			}
+			final MSRun run = new MSRunEx(runId, path);
+			StaticProteomicsModelStorage.addMSRun(run);
+			return run;
+		}
+	}
+
+	@Override
+	public Peptide getPeptide(MSRun run, String key) {
+		synchronized (StaticProteomicsModelStorage.class) {
+			if (StaticProteomicsModelStorage.containsPeptide(run, null, key)) {
+				return StaticProteomicsModelStorage.getSinglePeptide(run, null, key);
+			}
+			return null;
+		}
+	}
+
+	@Override
+	public Peptide addPeptide(MSRun run, String key, Peptide peptide) {
+		synchronized (StaticProteomicsModelStorage.class) {
+			if (StaticProteomicsModelStorage.containsPeptide(run, null, key)) {
+				return StaticProteomicsModelStorage.getSinglePeptide(run, null, key);
+			}
+			StaticProteomicsModelStorage.addPeptide(peptide, run, null, key);
+			return null;
+		}
+	}
+
+	@Override
+	public void clear() {
+		synchronized (StaticProteomicsModelStorage.class) {
+			StaticProteomicsModelStorage.clearData();
+		}
+	}
+}
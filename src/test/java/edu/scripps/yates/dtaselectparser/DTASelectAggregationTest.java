@@ -0,0 +1,117 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectFilters;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProtein;
+
+/**
+ * Tests that {@link DTASelectParser#aggregate(DTASelectAggregationListener)}
+ * delivers each PSM and protein of the sequential parsing once, with the same
+ * proteins and PSMs, whether the rows are kept in memory or spilled to
+ * temporary files
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectAggregationTest {
+	private File spillDirectory;
+
+	/**
+	 * Keeps what the aggregation delivers, failing if a PSM or a protein is
+	 * delivered twice
+	 *
+	 * @author Salva
+	 *
+	 */
+	private static class Aggregation implements DTASelectAggregationListener {
+		private final Map<String, Set<String>> psms = new TreeMap<String, Set<String>>();
+		private final Map<String, Set<String>> proteins = new TreeMap<String, Set<String>>();
+
+		@Override
+		public void onPSM(DTASelectPSM psm, Set<String> proteinAccessions) {
+			Assert.assertNull(psm.getIdentifier(),
+					psms.put(psm.getIdentifier(), new TreeSet<String>(proteinAccessions)));
+		}
+
+		@Override
+		public void onProtein(DTASelectProtein protein, Set<String> psmIdentifiers) {
+			Assert.assertNull(protein.getAccession(),
+					proteins.put(protein.getAccession(), new TreeSet<String>(psmIdentifiers)));
+		}
+	}
+
+	@Before
+	public void createSpillDirectory() throws IOException {
+		spillDirectory = Files.createTempDirectory("dtaselect-test").toFile();
+	}
+
+	@After
+	public void deleteSpillDirectory() {
+		final File[] files = spillDirectory.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+		spillDirectory.delete();
+	}
+
+	private Aggregation aggregate(DTASelectParser parser, long memoryBudget) throws IOException {
+		final Aggregation aggregation = new Aggregation();
+		parser.setAggregationMemoryBudget(memoryBudget);
+		parser.setSpillDirectory(spillDirectory);
+		parser.aggregate(aggregation);
+		Assert.assertEquals(0, spillDirectory.list().length);
+		return aggregation;
+	}
+
+	private void assertAggregatedAsSequential(long memoryBudget) throws Exception {
+		final List<File> files = DTASelectTestFiles.getFiles();
+		final DTASelectParser sequential = DTASelectTestFiles.newParser(files);
+		final DTASelectParser aggregating = DTASelectTestFiles.newParser(files);
+		final Aggregation aggregation = aggregate(aggregating, memoryBudget);
+
+		Assert.assertFalse(aggregation.psms.isEmpty());
+		Assert.assertEquals(DTASelectTestFiles.getPSMs(sequential), aggregation.psms);
+		Assert.assertEquals(DTASelectTestFiles.getProteins(sequential), aggregation.proteins);
+		Assert.assertEquals(sequential.getMetrics().getDecoys(), aggregating.getMetrics().getDecoys());
+	}
+
+	@Test
+	public void testAggregateInMemory() throws Exception {
+		assertAggregatedAsSequential(256l * 1024 * 1024);
+	}
+
+	@Test
+	public void testAggregateSpilling() throws Exception {
+		// a few rows per temporary file
+		assertAggregatedAsSequential(2048);
+	}
+
+	@Test
+	public void testAggregateFiltered() throws Exception {
+		final List<File> files = DTASelectTestFiles.getFiles();
+		final DTASelectParser sequential = DTASelectTestFiles.newParser(files);
+		sequential.addPSMFilter(DTASelectFilters.minXCorr(3f));
+		final DTASelectParser aggregating = DTASelectTestFiles.newParser(files);
+		aggregating.addPSMFilter(DTASelectFilters.minXCorr(3f));
+		final Aggregation aggregation = aggregate(aggregating, 2048);
+
+		Assert.assertEquals(DTASelectTestFiles.getPSMs(sequential), aggregation.psms);
+		Assert.assertEquals(DTASelectTestFiles.getProteins(sequential), aggregation.proteins);
+	}
+}
@@ -0,0 +1,113 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the parsing of the cache files gives the result of parsing the
+ * DTASelect files, and that a cache file is not used when the content of its
+ * DTASelect file changes
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectCacheTest {
+	private File directory;
+	private File cacheDirectory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("dtaselect-test").toFile();
+		cacheDirectory = new File(directory, "cache");
+		cacheDirectory.mkdir();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (final File folder : new File[] { cacheDirectory, directory }) {
+			final File[] files = folder.listFiles();
+			if (files != null) {
+				for (final File file : files) {
+					file.delete();
+				}
+			}
+			folder.delete();
+		}
+	}
+
+	/**
+	 *
+	 * @return copies of the test files in the temporary folder
+	 * @throws Exception
+	 */
+	private List<File> copyFiles() throws Exception {
+		final List<File> ret = new ArrayList<File>();
+		for (final File file : DTASelectTestFiles.getFiles()) {
+			final File copy = new File(directory, file.getName());
+			Files.copy(file.toPath(), copy.toPath());
+			ret.add(copy);
+		}
+		return ret;
+	}
+
+	private DTASelectParser newCachingParser(List<File> files) throws IOException {
+		final DTASelectParser parser = DTASelectTestFiles.newParser(files);
+		parser.setUseCache(true);
+		parser.setCacheDirectory(cacheDirectory);
+		return parser;
+	}
+
+	@Test
+	public void testCachedResult() throws Exception {
+		final List<File> files = copyFiles();
+		final DTASelectParser uncached = DTASelectTestFiles.newParser(files);
+		final DTASelectParser caching = newCachingParser(files);
+		DTASelectTestFiles.assertSameResult(uncached, caching);
+		Assert.assertEquals(files.size(), cacheDirectory.list().length);
+
+		final DTASelectParser cached = newCachingParser(files);
+		DTASelectTestFiles.assertSameResult(uncached, cached);
+	}
+
+	@Test
+	public void testChangedContent() throws Exception {
+		final List<File> files = copyFiles();
+		newCachingParser(files).getProteinGroups();
+
+		// same size and modification time, different protein
+		final File file = files.get(0);
+		final long lastModified = file.lastModified();
+		final String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		final String changed = text.replace("sp|P00045|PROT45_HUMAN", "sp|Q00045|PROT45_HUMAN");
+		Assert.assertNotEquals(text, changed);
+		Files.write(file.toPath(), changed.getBytes(StandardCharsets.UTF_8));
+		file.setLastModified(lastModified);
+
+		final DTASelectParser uncached = DTASelectTestFiles.newParser(files);
+		final DTASelectParser cached = newCachingParser(files);
+		DTASelectTestFiles.assertSameResult(uncached, cached);
+		Assert.assertTrue(DTASelectTestFiles.getProteins(cached).containsKey("Q00045"));
+	}
+
+	@Test
+	public void testPartialChecksum() throws Exception {
+		final File file = copyFiles().get(0);
+		final DTASelectCache full = new DTASelectCache(file, cacheDirectory, "", false);
+		full.commit(full.openForWriting());
+
+		Assert.assertNull(new DTASelectCache(file, cacheDirectory, "", true).openForReading());
+		final DataInputStream in = new DTASelectCache(file, cacheDirectory, "", false).openForReading();
+		Assert.assertNotNull(in);
+		in.close();
+	}
+}
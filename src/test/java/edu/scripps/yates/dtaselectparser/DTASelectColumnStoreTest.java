@@ -0,0 +1,126 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMColumnStore;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMColumnStore.Column;
+import edu.scripps.yates.utilities.grouping.GroupableProtein;
+import edu.scripps.yates.utilities.grouping.ProteinGroup;
+import edu.scripps.yates.utilities.proteomicsmodel.PSM;
+import edu.scripps.yates.utilities.proteomicsmodel.Protein;
+
+/**
+ * Tests that the PSMs backed by a {@link DTASelectPSMColumnStore} give the
+ * same scores than the PSMs that keep them, and the bulk reading and the null
+ * values of the store
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectColumnStoreTest {
+
+	private static Map<String, DTASelectPSM> getPSMs(DTASelectParser parser) throws Exception {
+		final Map<String, DTASelectPSM> ret = new TreeMap<String, DTASelectPSM>();
+		for (final ProteinGroup proteinGroup : parser.getProteinGroups()) {
+			for (final GroupableProtein protein : proteinGroup) {
+				for (final PSM psm : ((Protein) protein).getPSMs()) {
+					ret.put(psm.getIdentifier(), (DTASelectPSM) psm);
+				}
+			}
+		}
+		return ret;
+	}
+
+	@Test
+	public void testStoredScores() throws Exception {
+		final List<File> files = DTASelectTestFiles.getFiles();
+		final DTASelectParser plain = DTASelectTestFiles.newParser(files);
+		final DTASelectParser columnar = DTASelectTestFiles.newParser(files);
+		columnar.setUseColumnStore(true);
+
+		final Map<String, DTASelectPSM> plainPSMs = getPSMs(plain);
+		final Map<String, DTASelectPSM> columnarPSMs = getPSMs(columnar);
+		Assert.assertFalse(plainPSMs.isEmpty());
+		Assert.assertEquals(plainPSMs.keySet(), columnarPSMs.keySet());
+		final DTASelectPSMColumnStore store = columnar.getPSMColumnStore();
+		Assert.assertNotNull(store);
+		Assert.assertTrue(store.size() >= columnarPSMs.size());
+		for (final Map.Entry<String, DTASelectPSM> entry : plainPSMs.entrySet()) {
+			final String id = entry.getKey();
+			final DTASelectPSM expected = entry.getValue();
+			final DTASelectPSM actual = columnarPSMs.get(id);
+			Assert.assertNull(id, expected.getColumnStore());
+			Assert.assertSame(id, store, actual.getColumnStore());
+			Assert.assertEquals(id, expected.getXCorr(), actual.getXCorr());
+			Assert.assertEquals(id, expected.getXCorr(), store.getFloatValue(Column.XCORR, actual.getColumnStoreRow()));
+			Assert.assertEquals(id, expected.getDeltaCn(), actual.getDeltaCn());
+			Assert.assertEquals(id, expected.getConf(), actual.getConf());
+			Assert.assertEquals(id, expected.getExperimentalMH(), actual.getExperimentalMH());
+			Assert.assertEquals(id, expected.getCalcMH(), actual.getCalcMH());
+			Assert.assertEquals(id, expected.getTotalIntensity(), actual.getTotalIntensity());
+			Assert.assertEquals(id, expected.getSpr(), actual.getSpr());
+			Assert.assertEquals(id, expected.getIonProportion(), actual.getIonProportion());
+			Assert.assertEquals(id, expected.getRedundancy(), actual.getRedundancy());
+			Assert.assertEquals(id, expected.getProb(), actual.getProb());
+			Assert.assertEquals(id, expected.getProb_score(), actual.getProb_score());
+			Assert.assertEquals(id, expected.getMassErrorPPM(), actual.getMassErrorPPM());
+			Assert.assertEquals(id, expected.getPi(), actual.getPi());
+			Assert.assertEquals(id, expected.getRtInMinutes(), actual.getRtInMinutes());
+			Assert.assertEquals(id, expected.getXIC(), actual.getXIC());
+		}
+		Assert.assertNull(plain.getPSMColumnStore());
+	}
+
+	@Test
+	public void testStore() {
+		final DTASelectPSMColumnStore store = new DTASelectPSMColumnStore();
+		// rows in several pages, with a value of XCorr in the even ones
+		final int numRows = 10000;
+		for (int i = 0; i < numRows; i++) {
+			final DTASelectPSMColumnStore.RowValues values = new DTASelectPSMColumnStore.RowValues();
+			if (i % 2 == 0) {
+				values.set(Column.XCORR, i / 1000f);
+			}
+			values.set(Column.SPR, i);
+			Assert.assertEquals(i, store.add(values));
+		}
+		Assert.assertEquals(numRows, store.size());
+		final float[] xcorrs = store.getValues(Column.XCORR);
+		Assert.assertEquals(numRows, xcorrs.length);
+		Assert.assertEquals(numRows / 2, store.getNulls(Column.XCORR).cardinality());
+		for (int i = 0; i < numRows; i++) {
+			Assert.assertEquals(i % 2 != 0, store.isNull(Column.XCORR, i));
+			Assert.assertEquals(i % 2 != 0, Float.isNaN(xcorrs[i]));
+			Assert.assertEquals(Integer.valueOf(i), store.getIntValue(Column.SPR, i));
+		}
+		Assert.assertNull(store.getFloatValue(Column.XIC, 0));
+		Assert.assertEquals(0, store.getInt(Column.XIC, 0));
+
+		int histogramCount = 0;
+		for (final int count : store.getHistogram(Column.XCORR, 0f, 10f, 7)) {
+			histogramCount += count;
+		}
+		Assert.assertEquals(numRows / 2, histogramCount);
+
+		store.set(Column.XCORR, 1, 2.5f);
+		store.set(Column.XCORR, 0, null);
+		Assert.assertEquals(Float.valueOf(2.5f), store.getFloatValue(Column.XCORR, 1));
+		Assert.assertTrue(store.isNull(Column.XCORR, 0));
+
+		try {
+			new DTASelectPSMColumnStore.RowValues().set(Column.SPR, 1.5f);
+			Assert.fail("A float is set in an integer column");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+		store.clear();
+		Assert.assertEquals(0, store.size());
+	}
+}
@@ -0,0 +1,73 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.scripps.yates.utilities.grouping.GroupableProtein;
+import edu.scripps.yates.utilities.grouping.ProteinGroup;
+import edu.scripps.yates.utilities.proteomicsmodel.PSM;
+import edu.scripps.yates.utilities.proteomicsmodel.Peptide;
+import edu.scripps.yates.utilities.proteomicsmodel.Protein;
+import gnu.trove.map.hash.THashMap;
+
+/**
+ * Tests that keeping the PSMs and peptides by the hash of their keys gives
+ * the same result than keeping them by their keys as Strings
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectCompactKeysTest {
+
+	@Test
+	public void testCompactKeys() throws Exception {
+		final List<File> files = DTASelectTestFiles.getFiles();
+		final DTASelectParser stringKeys = DTASelectTestFiles.newParser(files);
+		final DTASelectParser compactKeys = DTASelectTestFiles.newParser(files);
+		compactKeys.setCompactKeys(true);
+
+		DTASelectTestFiles.assertSameResult(stringKeys, compactKeys);
+		Assert.assertEquals(0, compactKeys.getCompactKeyCollisions());
+	}
+
+	@Test
+	public void testPSMsByIdentifier() throws Exception {
+		final DTASelectParser parser = DTASelectTestFiles.newParser(DTASelectTestFiles.getFiles());
+		parser.setCompactKeys(true);
+
+		for (final ProteinGroup proteinGroup : parser.getProteinGroups()) {
+			for (final GroupableProtein protein : proteinGroup) {
+				for (final PSM psm : ((Protein) protein).getPSMs()) {
+					Assert.assertTrue(parser.containsPSMByPSMID(psm.getIdentifier()));
+					Assert.assertSame(psm, parser.getPSMByPSMID(psm.getIdentifier()));
+				}
+			}
+		}
+		Assert.assertFalse(parser.containsPSMByPSMID("none"));
+	}
+
+	@Test
+	public void testSharedPeptides() throws Exception {
+		final DTASelectParser parser = DTASelectTestFiles.newParser(DTASelectTestFiles.getFiles());
+		parser.setCompactKeys(true);
+
+		final Map<String, Peptide> peptides = new THashMap<String, Peptide>();
+		for (final ProteinGroup proteinGroup : parser.getProteinGroups()) {
+			for (final GroupableProtein protein : proteinGroup) {
+				for (final PSM psm : ((Protein) protein).getPSMs()) {
+					final String key = psm.getSequence() + "-" + psm.getChargeState();
+					final Peptide peptide = peptides.get(key);
+					if (peptide == null) {
+						peptides.put(key, psm.getPeptide());
+					} else {
+						Assert.assertSame(key, peptide, psm.getPeptide());
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.utilities.grouping.GroupableProtein;
+import edu.scripps.yates.utilities.grouping.ProteinGroup;
+import edu.scripps.yates.utilities.proteomicsmodel.PSM;
+import edu.scripps.yates.utilities.proteomicsmodel.Protein;
+
+/**
+ * Tests that an index built while parsing a DTASelect file is loaded from
+ * disk and that querying it gives the protein groups and PSMs of the file, and
+ * that it is not loaded when the content of the file changes
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectFileIndexTest {
+	private File directory;
+	private File file;
+
+	@Before
+	public void createDirectory() throws Exception {
+		directory = Files.createTempDirectory("dtaselect-test").toFile();
+		final File original = DTASelectTestFiles.getFiles().get(0);
+		file = new File(directory, original.getName());
+		Files.copy(original.toPath(), file.toPath());
+	}
+
+	@After
+	public void deleteDirectory() {
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private DTASelectParser newIndexingParser() throws IOException {
+		final DTASelectParser parser = DTASelectTestFiles.newParser(Collections.singletonList(file));
+		parser.setBuildIndex(true);
+		return parser;
+	}
+
+	private static String getAccessions(ProteinGroup proteinGroup) {
+		final Set<String> accessions = new TreeSet<String>();
+		for (final GroupableProtein protein : proteinGroup) {
+			accessions.add(protein.getAccession());
+		}
+		return accessions.toString();
+	}
+
+	@Test
+	public void testQuery() throws Exception {
+		final DTASelectParser parser = newIndexingParser();
+		final Set<String> groups = new TreeSet<String>();
+		for (final ProteinGroup proteinGroup : parser.getProteinGroups()) {
+			groups.add(getAccessions(proteinGroup));
+		}
+		final DTASelectFileIndex index = parser.getFileIndex(file);
+		Assert.assertNotNull(index);
+		Assert.assertTrue(index.getNumLoci() > 0);
+		Assert.assertEquals(index.getNumLoci(), index.getLoci().size());
+
+		final Set<String> queriedGroups = new TreeSet<String>();
+		for (final String locus : index.getLoci()) {
+			Assert.assertTrue(index.containsLocus(locus));
+			final List<ProteinGroup> found = new ArrayList<ProteinGroup>();
+			parser.queryProteinGroups(index, locus, new DTASelectStreamListener() {
+				@Override
+				public void onProteinGroup(String analysisID, ProteinGroup proteinGroup, List<DTASelectPSM> psms) {
+					found.add(proteinGroup);
+				}
+			});
+			for (final ProteinGroup proteinGroup : found) {
+				queriedGroups.add(getAccessions(proteinGroup));
+			}
+		}
+		Assert.assertEquals(groups, queriedGroups);
+		Assert.assertFalse(index.containsLocus("not a locus"));
+		Assert.assertEquals(0, index.getProteinGroupBlocks("not a locus").length);
+
+		int numPSMs = 0;
+		for (final ProteinGroup proteinGroup : parser.getProteinGroups()) {
+			for (final GroupableProtein protein : proteinGroup) {
+				for (final PSM psm : ((Protein) protein).getPSMs()) {
+					final List<DTASelectPSM> found = parser.queryPSMs(index, psm.getMSRun().getRunId(),
+							psm.getScanNumber(), psm.getChargeState());
+					boolean contained = false;
+					for (final DTASelectPSM foundPSM : found) {
+						contained |= foundPSM.getIdentifier().equals(psm.getIdentifier());
+					}
+					Assert.assertTrue(psm.getIdentifier(), contained);
+					numPSMs++;
+				}
+			}
+		}
+		Assert.assertTrue(numPSMs > 0);
+	}
+
+	@Test
+	public void testChangedContent() throws Exception {
+		newIndexingParser().getProteinGroups();
+		Assert.assertNotNull(DTASelectFileIndex.load(file, null, false));
+
+		// same size and modification time, different protein
+		final long lastModified = file.lastModified();
+		final String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		final String changed = text.replace("sp|P00045|PROT45_HUMAN", "sp|Q00045|PROT45_HUMAN");
+		Assert.assertNotEquals(text, changed);
+		Files.write(file.toPath(), changed.getBytes(StandardCharsets.UTF_8));
+		file.setLastModified(lastModified);
+
+		Assert.assertFalse(DTASelectFileIndex.exists(file, null, false));
+		Assert.assertNull(DTASelectFileIndex.load(file, null, false));
+	}
+}
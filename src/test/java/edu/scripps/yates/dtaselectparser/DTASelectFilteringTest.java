@@ -0,0 +1,123 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectFilters;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMFilter;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProteinFilter;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProteinSchema;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRow;
+import edu.scripps.yates.utilities.grouping.GroupableProtein;
+import edu.scripps.yates.utilities.grouping.ProteinGroup;
+import edu.scripps.yates.utilities.proteomicsmodel.PSM;
+import edu.scripps.yates.utilities.proteomicsmodel.Protein;
+
+/**
+ * Tests the filters of the protein and PSM rows, which are applied before
+ * creating the proteins and PSMs
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectFilteringTest {
+	private static final float MIN_XCORR = 3f;
+	private static final Pattern LOCUS_PATTERN = Pattern.compile("P000[0-4]");
+
+	private static void addFilters(DTASelectParser parser) {
+		parser.addPSMFilter(DTASelectFilters.minXCorr(MIN_XCORR));
+		parser.addProteinFilter(DTASelectFilters.locusMatches(LOCUS_PATTERN));
+	}
+
+	@Test
+	public void testFiltersAcceptingAllRows() throws Exception {
+		final List<File> files = DTASelectTestFiles.getFiles();
+		final DTASelectParser unfiltered = DTASelectTestFiles.newParser(files);
+		final DTASelectParser filtered = DTASelectTestFiles.newParser(files);
+		filtered.addPSMFilter(new DTASelectPSMFilter() {
+			@Override
+			public boolean accept(DTASelectRow row, DTASelectPSMSchema schema) {
+				return true;
+			}
+		});
+		filtered.addProteinFilter(new DTASelectProteinFilter() {
+			@Override
+			public boolean accept(DTASelectRow row, DTASelectProteinSchema schema) {
+				return true;
+			}
+		});
+
+		DTASelectTestFiles.assertSameResult(unfiltered, filtered);
+	}
+
+	@Test
+	public void testFilteredRows() throws Exception {
+		final List<File> files = DTASelectTestFiles.getFiles();
+		final DTASelectParser unfiltered = DTASelectTestFiles.newParser(files);
+		final DTASelectParser filtered = DTASelectTestFiles.newParser(files);
+		addFilters(filtered);
+
+		final List<ProteinGroup> proteinGroups = filtered.getProteinGroups();
+		Assert.assertFalse(proteinGroups.isEmpty());
+		Assert.assertTrue(proteinGroups.size() < unfiltered.getProteinGroups().size());
+		for (final ProteinGroup proteinGroup : proteinGroups) {
+			Assert.assertFalse(proteinGroup.isEmpty());
+			for (final GroupableProtein protein : proteinGroup) {
+				Assert.assertTrue(protein.getAccession(), LOCUS_PATTERN.matcher(protein.getAccession()).find());
+				Assert.assertFalse(((Protein) protein).getPSMs().isEmpty());
+				for (final PSM psm : ((Protein) protein).getPSMs()) {
+					Assert.assertTrue(psm.getIdentifier(), psm.getXCorr() >= MIN_XCORR);
+				}
+			}
+		}
+		// the filtered PSMs of a protein are some of its unfiltered ones
+		final Map<String, Set<String>> unfilteredProteins = DTASelectTestFiles.getProteins(unfiltered);
+		for (final Map.Entry<String, Set<String>> entry : DTASelectTestFiles.getProteins(filtered).entrySet()) {
+			Assert.assertTrue(unfilteredProteins.get(entry.getKey()).containsAll(entry.getValue()));
+		}
+	}
+
+	@Test
+	public void testFiltersInParallel() throws Exception {
+		final List<File> files = DTASelectTestFiles.getFiles();
+		final DTASelectParser sequential = DTASelectTestFiles.newParser(files);
+		addFilters(sequential);
+		final DTASelectParser parallel = DTASelectTestFiles.newParser(files);
+		addFilters(parallel);
+		parallel.setNumThreads(files.size());
+
+		DTASelectTestFiles.assertSameResult(sequential, parallel);
+	}
+
+	@Test
+	public void testFiltersPipelined() throws Exception {
+		final List<File> files = DTASelectTestFiles.getFiles();
+		final DTASelectParser sequential = DTASelectTestFiles.newParser(files);
+		addFilters(sequential);
+		final DTASelectParser pipelined = DTASelectTestFiles.newParser(files);
+		addFilters(pipelined);
+		pipelined.setNumThreads(3);
+		pipelined.setPipelineFiles(true);
+		pipelined.setPipelineChunkSize(5);
+
+		DTASelectTestFiles.assertSameResult(sequential, pipelined);
+	}
+
+	@Test
+	public void testClearFilters() throws Exception {
+		final List<File> files = DTASelectTestFiles.getFiles();
+		final DTASelectParser unfiltered = DTASelectTestFiles.newParser(files);
+		final DTASelectParser cleared = DTASelectTestFiles.newParser(files);
+		addFilters(cleared);
+		cleared.clearFilters();
+
+		DTASelectTestFiles.assertSameResult(unfiltered, cleared);
+	}
+}
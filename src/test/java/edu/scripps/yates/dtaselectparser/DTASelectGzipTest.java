@@ -0,0 +1,228 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.scripps.yates.dtaselectparser.util.ParallelGzipInputStream;
+
+/**
+ * Tests the reading of gzipped DTASelect files, which are decompressed by a
+ * {@link ParallelGzipInputStream}: as a single gzip member, as several
+ * concatenated members and block-gzipped (BGZF, as written by bgzip), and the
+ * errors of the truncated and corrupt files
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectGzipTest {
+	// small blocks, so that the test files have many of them
+	private static final int BLOCK_SIZE = 1024;
+	private File directory;
+	private File plainFile;
+	private byte[] plain;
+
+	@Before
+	public void createDirectory() throws Exception {
+		directory = Files.createTempDirectory("dtaselect-test").toFile();
+		plainFile = DTASelectTestFiles.getFiles().get(0);
+		plain = Files.readAllBytes(plainFile.toPath());
+	}
+
+	@After
+	public void deleteDirectory() {
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private static byte[] gzip(byte[] bytes, int from, int to) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(bytes, from, to - from);
+		gzip.close();
+		return out.toByteArray();
+	}
+
+	/**
+	 *
+	 * @param bytes
+	 * @return the bytes compressed as several concatenated gzip members
+	 * @throws IOException
+	 */
+	private static byte[] multiMemberGzip(byte[] bytes) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final int third = bytes.length / 3;
+		out.write(gzip(bytes, 0, third));
+		out.write(gzip(bytes, third, 2 * third));
+		out.write(gzip(bytes, 2 * third, bytes.length));
+		return out.toByteArray();
+	}
+
+	/**
+	 *
+	 * @param bytes
+	 * @return the bytes compressed in BGZF blocks, ending with the empty block
+	 *         written by bgzip
+	 * @throws IOException
+	 */
+	private static byte[] bgzip(byte[] bytes) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int from = 0; from < bytes.length; from += BLOCK_SIZE) {
+			writeBlock(out, bytes, from, Math.min(bytes.length, from + BLOCK_SIZE));
+		}
+		writeBlock(out, bytes, 0, 0);
+		return out.toByteArray();
+	}
+
+	private static void writeBlock(ByteArrayOutputStream out, byte[] bytes, int from, int to) {
+		final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		deflater.setInput(bytes, from, to - from);
+		deflater.finish();
+		final byte[] deflated = new byte[2 * BLOCK_SIZE + 64];
+		int length = 0;
+		while (!deflater.finished()) {
+			length += deflater.deflate(deflated, length, deflated.length - length);
+		}
+		deflater.end();
+		final CRC32 crc = new CRC32();
+		crc.update(bytes, from, to - from);
+		// header with the 'BC' extra subfield, whose value is the block size - 1
+		final int blockSize = 18 + length + 8;
+		out.write(new byte[] { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0 }, 0, 16);
+		writeShort(out, blockSize - 1);
+		out.write(deflated, 0, length);
+		writeInt(out, (int) crc.getValue());
+		writeInt(out, to - from);
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value) {
+		out.write(value & 0xff);
+		out.write(value >>> 8 & 0xff);
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int value) {
+		writeShort(out, value & 0xffff);
+		writeShort(out, value >>> 16);
+	}
+
+	private static byte[] decompress(byte[] compressed, int numThreads) throws IOException {
+		final InputStream in = new ParallelGzipInputStream(
+				new BufferedInputStream(new ByteArrayInputStream(compressed)), numThreads);
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[777];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void assertDecompressionError(byte[] compressed, int numThreads) {
+		try {
+			decompress(compressed, numThreads);
+			Assert.fail("The error is not propagated to the reader");
+		} catch (final IOException e) {
+			// expected
+		}
+	}
+
+	private File write(String name, byte[] bytes) throws IOException {
+		final File file = new File(directory, name);
+		Files.write(file.toPath(), bytes);
+		return file;
+	}
+
+	private void assertParsedAsPlain(File compressed, int numThreads) throws Exception {
+		final DTASelectParser plainParser = DTASelectTestFiles.newParser(Collections.singletonList(plainFile));
+		final DTASelectParser parser = DTASelectTestFiles.newParser(Collections.singletonList(compressed));
+		parser.setDecompressionThreads(numThreads);
+		DTASelectTestFiles.assertSameResult(plainParser, parser);
+	}
+
+	@Test
+	public void testDecompression() throws Exception {
+		final byte[] gzipped = gzip(plain, 0, plain.length);
+		final byte[] bgzipped = bgzip(plain);
+		Assert.assertTrue(ParallelGzipInputStream.isBlockGzip(new BufferedInputStream(new ByteArrayInputStream(bgzipped))));
+		Assert.assertFalse(ParallelGzipInputStream.isBlockGzip(new BufferedInputStream(new ByteArrayInputStream(gzipped))));
+		for (final int numThreads : new int[] { 1, 4 }) {
+			Assert.assertTrue(Arrays.equals(plain, decompress(gzipped, numThreads)));
+			Assert.assertTrue(Arrays.equals(plain, decompress(multiMemberGzip(plain), numThreads)));
+			Assert.assertTrue(Arrays.equals(plain, decompress(bgzipped, numThreads)));
+		}
+	}
+
+	@Test
+	public void testParseGzip() throws Exception {
+		final File gzipped = write(plainFile.getName() + ".gz", gzip(plain, 0, plain.length));
+		assertParsedAsPlain(gzipped, 1);
+		assertParsedAsPlain(gzipped, 4);
+	}
+
+	@Test
+	public void testParseMultiMemberGzip() throws Exception {
+		final File gzipped = write(plainFile.getName() + ".gz", multiMemberGzip(plain));
+		assertParsedAsPlain(gzipped, 4);
+	}
+
+	@Test
+	public void testParseBgzip() throws Exception {
+		final File bgzipped = write(plainFile.getName() + ".gz", bgzip(plain));
+		assertParsedAsPlain(bgzipped, 1);
+		assertParsedAsPlain(bgzipped, 4);
+	}
+
+	@Test
+	public void testTruncated() throws Exception {
+		final byte[] gzipped = gzip(plain, 0, plain.length);
+		final byte[] bgzipped = bgzip(plain);
+		for (final int numThreads : new int[] { 1, 4 }) {
+			assertDecompressionError(Arrays.copyOf(gzipped, gzipped.length / 2), numThreads);
+			// in the middle of a block
+			assertDecompressionError(Arrays.copyOf(bgzipped, bgzipped.length / 2 + 3), numThreads);
+		}
+	}
+
+	@Test
+	public void testCorruptBlock() throws Exception {
+		final byte[] bgzipped = bgzip(plain);
+		// the CRC of the first block, which ends at its block size
+		final int firstBlockSize = ((bgzipped[16] & 0xff) | (bgzipped[17] & 0xff) << 8) + 1;
+		bgzipped[firstBlockSize - 8] ^= 0x55;
+		for (final int numThreads : new int[] { 1, 4 }) {
+			assertDecompressionError(bgzipped, numThreads);
+		}
+		final File corrupt = write(plainFile.getName() + ".gz", bgzipped);
+		final DTASelectParser parser = DTASelectTestFiles.newParser(Collections.singletonList(corrupt));
+		parser.setDecompressionThreads(4);
+		try {
+			parser.getProteinGroups();
+			Assert.fail("The error is not propagated to the parser");
+		} catch (final IOException e) {
+			// expected
+		}
+	}
+}
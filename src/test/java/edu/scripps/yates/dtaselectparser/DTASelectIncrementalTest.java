@@ -0,0 +1,92 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that reading files in incremental mode, with lines appended to a file
+ * and a new file in the watched folder between the refreshes, gives the result
+ * of reading the final files at once
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectIncrementalTest {
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("dtaselect-test").toFile();
+	}
+
+	@After
+	public void deleteDirectory() {
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	/**
+	 *
+	 * @param text
+	 * @return the position of the first protein row that follows a PSM row
+	 *         after the middle of the text
+	 */
+	private static int getProteinGroupStart(String text) {
+		int position = text.indexOf('\n', text.length() / 2) + 1;
+		boolean afterPsm = false;
+		while (position < text.length()) {
+			final boolean psm = text.startsWith("\t", position) || text.startsWith("*\t", position);
+			if (afterPsm && !psm) {
+				return position;
+			}
+			afterPsm = psm;
+			position = text.indexOf('\n', position) + 1;
+		}
+		throw new IllegalArgumentException("No protein group after the middle of the text");
+	}
+
+	@Test
+	public void testRefresh() throws Exception {
+		final List<File> inputs = DTASelectTestFiles.getFiles();
+		final String text1 = new String(Files.readAllBytes(inputs.get(0).toPath()), StandardCharsets.UTF_8);
+		final int cut = getProteinGroupStart(text1);
+		final File file1 = new File(directory, "a_DTASelect-filter.txt");
+		final File file2 = new File(directory, "b_DTASelect-filter.txt");
+		Files.write(file1.toPath(), text1.substring(0, cut).getBytes(StandardCharsets.UTF_8));
+
+		final DTASelectParser incremental = DTASelectTestFiles.newParser(Arrays.asList(file1));
+		incremental.setIncremental(true);
+		incremental.addWatchedDirectory(directory);
+		Assert.assertTrue(incremental.refresh() > 0);
+		final int groups = incremental.getProteinGroups().size();
+
+		// the rest of the protein groups of the first file and a new file
+		Files.write(file1.toPath(), text1.substring(cut).getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+		Files.copy(inputs.get(1).toPath(), file2.toPath());
+		Assert.assertTrue(incremental.refresh() > 0);
+		Assert.assertTrue(incremental.getProteinGroups().size() > groups);
+		Assert.assertEquals(0, incremental.refresh());
+
+		final DTASelectParser oneShot = DTASelectTestFiles.newParser(Arrays.asList(file1, file2));
+		Assert.assertEquals(DTASelectTestFiles.getProteinGroups(oneShot),
+				DTASelectTestFiles.getProteinGroups(incremental));
+		Assert.assertEquals(DTASelectTestFiles.getProteins(oneShot), DTASelectTestFiles.getProteins(incremental));
+		Assert.assertEquals(DTASelectTestFiles.getPSMs(oneShot), DTASelectTestFiles.getPSMs(incremental));
+	}
+}
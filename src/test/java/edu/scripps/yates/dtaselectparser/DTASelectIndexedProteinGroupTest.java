@@ -0,0 +1,122 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectProtein;
+import edu.scripps.yates.dtaselectparser.util.IndexedProteinGroup;
+import edu.scripps.yates.utilities.grouping.GroupableProtein;
+import edu.scripps.yates.utilities.grouping.ProteinGroup;
+import edu.scripps.yates.utilities.proteomicsmodel.PSM;
+import edu.scripps.yates.utilities.proteomicsmodel.Protein;
+
+/**
+ * Tests that the index of each protein group read by the parser gives the
+ * siblings, the PSMs and the shared and unique PSMs of its proteins that are
+ * obtained by going through the group, and that each protein read by the
+ * parser has the index of one of its groups
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectIndexedProteinGroupTest {
+
+	private static Set<Object> identitySet(List<?> objects) {
+		final Set<Object> ret = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		ret.addAll(objects);
+		return ret;
+	}
+
+	private static List<Protein> getSiblings(ProteinGroup proteinGroup, Protein protein) {
+		final List<Protein> ret = new ArrayList<Protein>();
+		for (final GroupableProtein other : proteinGroup) {
+			if (!other.getAccession().equals(protein.getAccession())) {
+				ret.add((Protein) other);
+			}
+		}
+		return ret;
+	}
+
+	@Test
+	public void testIndexedGroups() throws Exception {
+		final DTASelectParser parser = DTASelectTestFiles.newParser(DTASelectTestFiles.getFiles());
+		int numGroups = 0;
+		int numSharedPSMs = 0;
+		for (final ProteinGroup proteinGroup : parser.getProteinGroups()) {
+			final IndexedProteinGroup index = new IndexedProteinGroup(proteinGroup);
+			Assert.assertSame(proteinGroup, index.getProteinGroup());
+			Assert.assertEquals(proteinGroup.size(), index.getNumProteins());
+			numGroups++;
+
+			// the proteins of each PSM in the group, by going through the
+			// group
+			final Map<PSM, List<Protein>> proteinsByPSM = new IdentityHashMap<PSM, List<Protein>>();
+			for (final GroupableProtein groupableProtein : proteinGroup) {
+				final Protein protein = (Protein) groupableProtein;
+				for (final PSM psm : protein.getPSMs()) {
+					List<Protein> proteins = proteinsByPSM.get(psm);
+					if (proteins == null) {
+						proteins = new ArrayList<Protein>();
+						proteinsByPSM.put(psm, proteins);
+					}
+					proteins.add(protein);
+				}
+			}
+			Assert.assertEquals(proteinsByPSM.size(), index.getNumPSMs());
+
+			for (final GroupableProtein groupableProtein : proteinGroup) {
+				final DTASelectProtein protein = (DTASelectProtein) groupableProtein;
+				Assert.assertSame(protein, index.getProtein(index.getProteinID(protein)));
+				Assert.assertEquals(identitySet(getSiblings(proteinGroup, protein)),
+						identitySet(index.getSiblings(protein)));
+
+				final List<PSM> psms = new ArrayList<PSM>(protein.getPSMs());
+				Assert.assertEquals(identitySet(psms), identitySet(index.getPSMs(protein)));
+				final List<PSM> unique = new ArrayList<PSM>();
+				final List<PSM> shared = new ArrayList<PSM>();
+				for (final PSM psm : psms) {
+					if (proteinsByPSM.get(psm).size() > 1) {
+						shared.add(psm);
+						Assert.assertTrue(index.isShared(psm));
+					} else {
+						unique.add(psm);
+						Assert.assertFalse(index.isShared(psm));
+					}
+					Assert.assertEquals(identitySet(proteinsByPSM.get(psm)), identitySet(index.getProteins(psm)));
+					Assert.assertSame(psm, index.getPSM(index.getPSMID(psm)));
+				}
+				Assert.assertEquals(identitySet(unique), identitySet(index.getUniquePSMs(protein)));
+				Assert.assertEquals(identitySet(shared), identitySet(index.getSharedPSMs(protein)));
+				numSharedPSMs += shared.size();
+			}
+		}
+		Assert.assertTrue(numGroups > 0);
+		Assert.assertTrue(numSharedPSMs > 0);
+	}
+
+	@Test
+	public void testProteinsOfIndexedGroups() throws Exception {
+		final DTASelectParser parser = DTASelectTestFiles.newParser(DTASelectTestFiles.getFiles());
+		for (final ProteinGroup proteinGroup : parser.getProteinGroups()) {
+			for (final GroupableProtein groupableProtein : proteinGroup) {
+				final DTASelectProtein protein = (DTASelectProtein) groupableProtein;
+				// the index of the last group in which the protein was read
+				final IndexedProteinGroup index = protein.getIndexedProteinGroup();
+				Assert.assertNotNull(index);
+				Assert.assertTrue(index.getProteinID(protein) >= 0);
+				// with all the PSMs of the protein, also the ones read after
+				// the group was indexed for the first time
+				Assert.assertEquals(identitySet(protein.getPSMs()), identitySet(index.getPSMs(protein)));
+				Assert.assertEquals(identitySet(getSiblings(index.getProteinGroup(), protein)),
+						identitySet(protein.getSibilingProteinsInGroup()));
+			}
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRowStore;
+import edu.scripps.yates.utilities.grouping.GroupableProtein;
+import edu.scripps.yates.utilities.grouping.ProteinGroup;
+import edu.scripps.yates.utilities.proteomicsmodel.PSM;
+import edu.scripps.yates.utilities.proteomicsmodel.Protein;
+
+/**
+ * Tests that the lazy PSMs, which keep the position of their rows in a
+ * {@link DTASelectRowStore}, give the same values than the PSMs parsed when
+ * they are read, and that their scores are not parsed until they are needed
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectLazyPSMTest {
+
+	private static Map<String, DTASelectPSM> getPSMs(DTASelectParser parser) throws Exception {
+		final Map<String, DTASelectPSM> ret = new TreeMap<String, DTASelectPSM>();
+		for (final ProteinGroup proteinGroup : parser.getProteinGroups()) {
+			for (final GroupableProtein protein : proteinGroup) {
+				for (final PSM psm : ((Protein) protein).getPSMs()) {
+					ret.put(psm.getIdentifier(), (DTASelectPSM) psm);
+				}
+			}
+		}
+		return ret;
+	}
+
+	@Test
+	public void testLazyValues() throws Exception {
+		final List<File> files = DTASelectTestFiles.getFiles();
+		final DTASelectParser eager = DTASelectTestFiles.newParser(files);
+		final DTASelectParser lazy = DTASelectTestFiles.newParser(files);
+		lazy.setLazyPSMs(true);
+
+		final Map<String, DTASelectPSM> eagerPSMs = getPSMs(eager);
+		final Map<String, DTASelectPSM> lazyPSMs = getPSMs(lazy);
+		Assert.assertFalse(eagerPSMs.isEmpty());
+		Assert.assertEquals(eagerPSMs.keySet(), lazyPSMs.keySet());
+		for (final Map.Entry<String, DTASelectPSM> entry : eagerPSMs.entrySet()) {
+			final String id = entry.getKey();
+			final DTASelectPSM expected = entry.getValue();
+			final DTASelectPSM actual = lazyPSMs.get(id);
+			Assert.assertFalse(id, expected.isLazy());
+			Assert.assertTrue(id, actual.isLazy());
+			Assert.assertEquals(id, expected.getXCorr(), actual.getXCorr());
+			Assert.assertFalse(id, actual.isLazy());
+			Assert.assertEquals(id, expected.getDeltaCn(), actual.getDeltaCn());
+			Assert.assertEquals(id, expected.getConf(), actual.getConf());
+			Assert.assertEquals(id, expected.getExperimentalMH(), actual.getExperimentalMH());
+			Assert.assertEquals(id, expected.getCalcMH(), actual.getCalcMH());
+			Assert.assertEquals(id, expected.getTotalIntensity(), actual.getTotalIntensity());
+			Assert.assertEquals(id, expected.getSpr(), actual.getSpr());
+			Assert.assertEquals(id, expected.getIonProportion(), actual.getIonProportion());
+			Assert.assertEquals(id, expected.getRedundancy(), actual.getRedundancy());
+			Assert.assertEquals(id, expected.getProb(), actual.getProb());
+			Assert.assertEquals(id, expected.getProb_score(), actual.getProb_score());
+			Assert.assertEquals(id, expected.getMassErrorPPM(), actual.getMassErrorPPM());
+			Assert.assertEquals(id, expected.getPi(), actual.getPi());
+			Assert.assertEquals(id, expected.getRtInMinutes(), actual.getRtInMinutes());
+			Assert.assertEquals(id, expected.getXIC(), actual.getXIC());
+			Assert.assertEquals(id, expected.getSequence(), actual.getSequence());
+			Assert.assertEquals(id, expected.getFullSequence(), actual.getFullSequence());
+			Assert.assertEquals(id, expected.getBeforeSeq(), actual.getBeforeSeq());
+			Assert.assertEquals(id, expected.getAfterSeq(), actual.getAfterSeq());
+		}
+	}
+
+	@Test
+	public void testProteinsWithoutScores() throws Exception {
+		final List<File> files = DTASelectTestFiles.getFiles();
+		final DTASelectParser eager = DTASelectTestFiles.newParser(files);
+		final DTASelectParser lazy = DTASelectTestFiles.newParser(files);
+		lazy.setLazyPSMs(true);
+
+		Assert.assertEquals(DTASelectTestFiles.getProteinGroups(eager), DTASelectTestFiles.getProteinGroups(lazy));
+		Assert.assertEquals(DTASelectTestFiles.getProteins(eager), DTASelectTestFiles.getProteins(lazy));
+		for (final DTASelectPSM psm : getPSMs(lazy).values()) {
+			Assert.assertTrue(psm.getIdentifier(), psm.isLazy());
+		}
+	}
+
+	@Test
+	public void testRowStore() {
+		final DTASelectRowStore store = new DTASelectRowStore();
+		final String[] rows = { "*\tRun.1.1.2\t3.5\tK.PEPT(79.97)IDE.R", "", "\tNon ASCII: \u00e9\u00f1 \u4e2d\u6587",
+				"\tnul \u0000 char" };
+		final long[] positions = new long[rows.length];
+		for (int i = 0; i < rows.length; i++) {
+			positions[i] = store.add(rows[i]);
+		}
+		for (int i = 0; i < rows.length; i++) {
+			Assert.assertEquals(rows[i], store.get(positions[i]));
+		}
+		// rows that fill several pages
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append("\tcolumn");
+		}
+		final long[] longPositions = new long[1000];
+		for (int i = 0; i < longPositions.length; i++) {
+			longPositions[i] = store.add(i + sb.toString());
+		}
+		for (int i = 0; i < longPositions.length; i++) {
+			Assert.assertEquals(i + sb.toString(), store.get(longPositions[i]));
+		}
+		Assert.assertEquals(rows[0], store.get(positions[0]));
+	}
+}
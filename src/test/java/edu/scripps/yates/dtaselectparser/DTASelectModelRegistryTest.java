@@ -0,0 +1,143 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.scripps.yates.dtaselectparser.util.ConcurrentModelRegistry;
+import edu.scripps.yates.utilities.grouping.GroupableProtein;
+import edu.scripps.yates.utilities.grouping.ProteinGroup;
+import edu.scripps.yates.utilities.proteomicsmodel.MSRun;
+import edu.scripps.yates.utilities.proteomicsmodel.PSM;
+import edu.scripps.yates.utilities.proteomicsmodel.Peptide;
+import edu.scripps.yates.utilities.proteomicsmodel.Protein;
+import gnu.trove.map.hash.THashMap;
+
+/**
+ * Tests that the MS runs and peptides are shared by the PSMs of a parser but
+ * not between parsers, unless they are given the same registry, and that the
+ * registry creates a single MS run when different threads ask for it
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectModelRegistryTest {
+
+	private static List<PSM> getPSMs(DTASelectParser parser) throws Exception {
+		final List<PSM> ret = new ArrayList<PSM>();
+		for (final ProteinGroup proteinGroup : parser.getProteinGroups()) {
+			for (final GroupableProtein protein : proteinGroup) {
+				ret.addAll(((Protein) protein).getPSMs());
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Asserts that the PSMs with the same MS run share its object
+	 *
+	 * @param psms
+	 * @return the MS runs by identifier
+	 */
+	private static Map<String, MSRun> getMSRuns(List<PSM> psms) {
+		final Map<String, MSRun> ret = new THashMap<String, MSRun>();
+		for (final PSM psm : psms) {
+			final MSRun run = ret.get(psm.getMSRun().getRunId());
+			if (run == null) {
+				ret.put(psm.getMSRun().getRunId(), psm.getMSRun());
+			} else {
+				Assert.assertSame(psm.getIdentifier(), run, psm.getMSRun());
+			}
+		}
+		return ret;
+	}
+
+	@Test
+	public void testParserRegistries() throws Exception {
+		final DTASelectParser parser1 = DTASelectTestFiles.newParser(DTASelectTestFiles.getFiles());
+		final DTASelectParser parser2 = DTASelectTestFiles.newParser(DTASelectTestFiles.getFiles());
+		Assert.assertNotSame(parser1.getModelRegistry(), parser2.getModelRegistry());
+		final List<PSM> psms1 = getPSMs(parser1);
+		final List<PSM> psms2 = getPSMs(parser2);
+		final Map<String, MSRun> runs1 = getMSRuns(psms1);
+		final Map<String, MSRun> runs2 = getMSRuns(psms2);
+		Assert.assertFalse(runs1.isEmpty());
+		Assert.assertEquals(runs1.keySet(), runs2.keySet());
+		for (final String runId : runs1.keySet()) {
+			Assert.assertNotSame(runId, runs1.get(runId), runs2.get(runId));
+		}
+
+		// the peptides of the same sequence and charge are shared in a parser
+		final Map<String, Peptide> peptides = new THashMap<String, Peptide>();
+		for (final PSM psm : psms1) {
+			final String key = psm.getMSRun().getRunId() + "|" + psm.getFullSequence() + "|" + psm.getChargeState();
+			final Peptide peptide = peptides.get(key);
+			if (peptide == null) {
+				peptides.put(key, psm.getPeptide());
+			} else {
+				Assert.assertSame(psm.getIdentifier(), peptide, psm.getPeptide());
+			}
+		}
+		for (final PSM psm : psms2) {
+			Assert.assertNotSame(psm.getIdentifier(), psm.getPeptide(), peptides.get(
+					psm.getMSRun().getRunId() + "|" + psm.getFullSequence() + "|" + psm.getChargeState()));
+		}
+	}
+
+	@Test
+	public void testSharedRegistry() throws Exception {
+		final ConcurrentModelRegistry registry = new ConcurrentModelRegistry();
+		final DTASelectParser parser1 = DTASelectTestFiles.newParser(DTASelectTestFiles.getFiles());
+		final DTASelectParser parser2 = DTASelectTestFiles.newParser(DTASelectTestFiles.getFiles());
+		parser1.setModelRegistry(registry);
+		parser2.setModelRegistry(registry);
+		final Map<String, MSRun> runs1 = getMSRuns(getPSMs(parser1));
+		final Map<String, MSRun> runs2 = getMSRuns(getPSMs(parser2));
+		Assert.assertEquals(runs1.size(), registry.getNumMSRuns());
+		for (final String runId : runs1.keySet()) {
+			Assert.assertSame(runId, runs1.get(runId), runs2.get(runId));
+		}
+		Assert.assertTrue(registry.getNumPeptides() > 0);
+		registry.clear();
+		Assert.assertEquals(0, registry.getNumMSRuns());
+		Assert.assertEquals(0, registry.getNumPeptides());
+	}
+
+	@Test
+	public void testConcurrentMSRuns() throws Exception {
+		final ConcurrentModelRegistry registry = new ConcurrentModelRegistry();
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<List<MSRun>>> futures = new ArrayList<Future<List<MSRun>>>();
+			for (int thread = 0; thread < 4; thread++) {
+				futures.add(executor.submit(new Callable<List<MSRun>>() {
+					@Override
+					public List<MSRun> call() {
+						final List<MSRun> ret = new ArrayList<MSRun>();
+						for (int i = 0; i < 1000; i++) {
+							ret.add(registry.getMSRun("run" + i, "/path"));
+						}
+						return ret;
+					}
+				}));
+			}
+			final List<MSRun> first = futures.get(0).get();
+			for (final Future<List<MSRun>> future : futures) {
+				final List<MSRun> runs = future.get();
+				for (int i = 0; i < runs.size(); i++) {
+					Assert.assertSame(first.get(i), runs.get(i));
+				}
+			}
+			Assert.assertEquals(1000, registry.getNumMSRuns());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
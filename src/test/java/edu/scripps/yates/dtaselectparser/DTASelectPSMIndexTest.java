@@ -0,0 +1,68 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSMIndex;
+import edu.scripps.yates.utilities.grouping.GroupableProtein;
+import edu.scripps.yates.utilities.grouping.ProteinGroup;
+import edu.scripps.yates.utilities.proteomicsmodel.PSM;
+import edu.scripps.yates.utilities.proteomicsmodel.Protein;
+
+import gnu.trove.set.hash.THashSet;
+
+/**
+ * Tests that the PSM index of a parser finds every PSM it read by MS run and
+ * scan number, that it is not shared between parsers and that it is released
+ * by {@link DTASelectPSMIndex#clear()}
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectPSMIndexTest {
+
+	private static boolean containsSame(List<DTASelectPSM> psms, PSM psm) {
+		for (final DTASelectPSM indexed : psms) {
+			if (indexed == psm) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void testIndex() throws Exception {
+		final DTASelectParser parser = DTASelectTestFiles.newParser(DTASelectTestFiles.getFiles());
+		final DTASelectPSMIndex index = parser.getPSMIndex();
+		final Set<String> psmIdentifiers = new THashSet<String>();
+		for (final ProteinGroup proteinGroup : parser.getProteinGroups()) {
+			for (final GroupableProtein protein : proteinGroup) {
+				for (final PSM psm : ((Protein) protein).getPSMs()) {
+					psmIdentifiers.add(psm.getIdentifier());
+					final List<DTASelectPSM> psms = index.get(psm.getMSRun().getRunId(), psm.getScanNumber());
+					Assert.assertTrue(psm.getIdentifier(), containsSame(psms, psm));
+					for (final DTASelectPSM indexed : psms) {
+						Assert.assertEquals(psm.getMSRun().getRunId(), indexed.getMSRun().getRunId());
+						Assert.assertEquals(psm.getScanNumber(), indexed.getScanNumber());
+					}
+				}
+			}
+		}
+		Assert.assertFalse(psmIdentifiers.isEmpty());
+		Assert.assertTrue(index.size() >= psmIdentifiers.size());
+		Assert.assertTrue(index.get("not a run", "1").isEmpty());
+
+		final DTASelectParser other = DTASelectTestFiles.newParser(DTASelectTestFiles.getFiles());
+		Assert.assertNotSame(index, other.getPSMIndex());
+		Assert.assertEquals(0, other.getPSMIndex().size());
+		other.getProteinGroups();
+		Assert.assertEquals(index.size(), other.getPSMIndex().size());
+
+		index.clear();
+		Assert.assertEquals(0, index.size());
+	}
+}
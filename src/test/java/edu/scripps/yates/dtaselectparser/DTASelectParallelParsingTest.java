@@ -0,0 +1,39 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that reading the files in parallel gives the same result than reading
+ * them sequentially
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectParallelParsingTest {
+
+	@Test
+	public void testParallelFiles() throws Exception {
+		final List<File> files = DTASelectTestFiles.getFiles();
+		final DTASelectParser sequential = DTASelectTestFiles.newParser(files);
+		final DTASelectParser parallel = DTASelectTestFiles.newParser(files);
+		parallel.setNumThreads(files.size());
+
+		DTASelectTestFiles.assertSameResult(sequential, parallel);
+		Assert.assertTrue(sequential.getMetrics().getDecoys() > 0);
+		Assert.assertEquals(sequential.getPSMIndex().size(), parallel.getPSMIndex().size());
+	}
+
+	@Test
+	public void testMoreThreadsThanFiles() throws Exception {
+		final List<File> files = DTASelectTestFiles.getFiles();
+		final DTASelectParser sequential = DTASelectTestFiles.newParser(files);
+		final DTASelectParser parallel = DTASelectTestFiles.newParser(files);
+		parallel.setNumThreads(files.size() + 2);
+
+		DTASelectTestFiles.assertSameResult(sequential, parallel);
+	}
+}
@@ -0,0 +1,81 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the bytes counted by the {@link DTASelectParseMetrics} are the
+ * bytes of the uncompressed file, with either line terminator and from every
+ * line source
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectParseMetricsTest {
+	private File directory;
+	private String text;
+
+	@Before
+	public void createDirectory() throws Exception {
+		directory = Files.createTempDirectory("dtaselect-test").toFile();
+		final File original = DTASelectTestFiles.getFiles().get(0);
+		text = new String(Files.readAllBytes(original.toPath()), StandardCharsets.UTF_8).replace("\r\n", "\n");
+	}
+
+	@After
+	public void deleteDirectory() {
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private File write(String name, String content) throws IOException {
+		final File file = new File(directory, name);
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static void assertBytesRead(File file, long expected, boolean memoryMap) throws IOException {
+		final DTASelectParser parser = DTASelectTestFiles.newParser(Collections.singletonList(file));
+		parser.setMemoryMapLocalFiles(memoryMap);
+		parser.getProteinGroups();
+		Assert.assertTrue(parser.getMetrics().getLinesRead() > 0);
+		Assert.assertEquals(expected, parser.getMetrics().getBytesRead());
+	}
+
+	@Test
+	public void testLineTerminators() throws Exception {
+		for (final String terminator : new String[] { "\n", "\r\n" }) {
+			final File file = write("DTASelect-filter.txt", text.replace("\n", terminator));
+			assertBytesRead(file, file.length(), false);
+			assertBytesRead(file, file.length(), true);
+		}
+	}
+
+	@Test
+	public void testGzip() throws Exception {
+		final byte[] bytes = text.replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8);
+		final File file = new File(directory, "DTASelect-filter.txt.gz");
+		final GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		assertBytesRead(file, bytes.length, false);
+	}
+}
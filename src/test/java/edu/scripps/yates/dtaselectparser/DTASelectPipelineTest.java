@@ -0,0 +1,43 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests that cutting the input streams into chunks of protein groups parsed
+ * in parallel gives the same result than reading them sequentially, whatever
+ * the size of the chunks
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectPipelineTest {
+
+	private void assertPipelinedAsSequential(int chunkSize) throws Exception {
+		final List<File> files = DTASelectTestFiles.getFiles();
+		final DTASelectParser sequential = DTASelectTestFiles.newParser(files);
+		final DTASelectParser pipelined = DTASelectTestFiles.newParser(files);
+		pipelined.setNumThreads(3);
+		pipelined.setPipelineFiles(true);
+		pipelined.setPipelineChunkSize(chunkSize);
+
+		DTASelectTestFiles.assertSameResult(sequential, pipelined);
+	}
+
+	@Test
+	public void testOneGroupPerChunk() throws Exception {
+		assertPipelinedAsSequential(1);
+	}
+
+	@Test
+	public void testSmallChunks() throws Exception {
+		assertPipelinedAsSequential(7);
+	}
+
+	@Test
+	public void testOneChunkPerFile() throws Exception {
+		assertPipelinedAsSequential(100000);
+	}
+}
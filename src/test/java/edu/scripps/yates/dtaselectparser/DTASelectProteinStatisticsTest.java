@@ -0,0 +1,116 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.dtaselectparser.util.DTASelectProtein;
+import edu.scripps.yates.utilities.grouping.GroupableProtein;
+import edu.scripps.yates.utilities.grouping.ProteinGroup;
+import edu.scripps.yates.utilities.proteomicsmodel.MSRun;
+import edu.scripps.yates.utilities.proteomicsmodel.PSM;
+import gnu.trove.set.hash.THashSet;
+
+/**
+ * Tests that the statistics derived from the PSMs of a
+ * {@link DTASelectProtein} are the ones computed from its PSMs, also after
+ * adding PSMs and merging proteins once they were computed
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectProteinStatisticsTest {
+
+	private static List<DTASelectProtein> getProteins(DTASelectParser parser) throws Exception {
+		final List<DTASelectProtein> ret = new ArrayList<DTASelectProtein>();
+		final Set<GroupableProtein> seen = new THashSet<GroupableProtein>();
+		for (final ProteinGroup proteinGroup : parser.getProteinGroups()) {
+			for (final GroupableProtein protein : proteinGroup) {
+				if (seen.add(protein)) {
+					ret.add((DTASelectProtein) protein);
+				}
+			}
+		}
+		return ret;
+	}
+
+	private static void assertStatistics(DTASelectProtein protein) {
+		final String accession = protein.getAccession();
+		final Set<String> sequences = new THashSet<String>();
+		final Set<MSRun> msRuns = new THashSet<MSRun>();
+		for (final PSM psm : protein.getPSMs()) {
+			sequences.add(psm.getSequence());
+			msRuns.add(psm.getMSRun());
+		}
+		Assert.assertEquals(accession, sequences, protein.getPeptideSequences());
+		Assert.assertEquals(accession, sequences.size(), protein.getNumPeptideSequences());
+		Assert.assertTrue(accession, protein.getMSRuns().containsAll(msRuns));
+		for (final MSRun msRun : msRuns) {
+			int spectralCount = 0;
+			double xicSum = 0;
+			for (final PSM psm : protein.getPSMs()) {
+				if (psm.getMSRun().getRunId().equals(msRun.getRunId())) {
+					spectralCount++;
+					final Float xic = ((DTASelectPSM) psm).getXIC();
+					if (xic != null) {
+						xicSum += xic;
+					}
+				}
+			}
+			Assert.assertEquals(accession, spectralCount, protein.getSpectralCount(msRun));
+			Assert.assertEquals(accession, xicSum, protein.getXICSum(msRun), 1e-3 * Math.max(1, Math.abs(xicSum)));
+		}
+	}
+
+	@Test
+	public void testStatistics() throws Exception {
+		final DTASelectParser parser = DTASelectTestFiles.newParser(DTASelectTestFiles.getFiles());
+		final List<DTASelectProtein> proteins = getProteins(parser);
+		Assert.assertFalse(proteins.isEmpty());
+		for (final DTASelectProtein protein : proteins) {
+			assertStatistics(protein);
+			// the set is a copy
+			protein.getPeptideSequences().add("NOTAPEPTIDE");
+			Assert.assertFalse(protein.getPeptideSequences().contains("NOTAPEPTIDE"));
+		}
+	}
+
+	@Test
+	public void testUpdatedStatistics() throws Exception {
+		final DTASelectParser parser = DTASelectTestFiles.newParser(DTASelectTestFiles.getFiles());
+		final List<DTASelectProtein> proteins = getProteins(parser);
+		final DTASelectProtein protein = proteins.get(0);
+		assertStatistics(protein);
+
+		// a PSM of another protein, added once the statistics were computed
+		PSM newPSM = null;
+		for (final DTASelectProtein other : proteins) {
+			for (final PSM psm : other.getPSMs()) {
+				if (!protein.getPSMs().contains(psm)
+						&& !protein.getPeptideSequences().contains(psm.getSequence())) {
+					newPSM = psm;
+					break;
+				}
+			}
+			if (newPSM != null) {
+				break;
+			}
+		}
+		Assert.assertNotNull(newPSM);
+		final int numSequences = protein.getNumPeptideSequences();
+		final int spectralCount = protein.getSpectralCount(newPSM.getMSRun());
+		Assert.assertTrue(protein.addPSM(newPSM, false));
+		Assert.assertEquals(numSequences + 1, protein.getNumPeptideSequences());
+		Assert.assertEquals(spectralCount + 1, protein.getSpectralCount(newPSM.getMSRun()));
+		assertStatistics(protein);
+
+		// and the PSMs of another protein, merged with it
+		final DTASelectProtein merged = proteins.get(proteins.size() - 1);
+		protein.mergeWithProtein(merged);
+		assertStatistics(protein);
+	}
+}
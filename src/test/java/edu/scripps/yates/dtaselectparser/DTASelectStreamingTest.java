@@ -0,0 +1,73 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectPSM;
+import edu.scripps.yates.utilities.grouping.GroupableProtein;
+import edu.scripps.yates.utilities.grouping.ProteinGroup;
+import edu.scripps.yates.utilities.proteomicsmodel.PSM;
+import edu.scripps.yates.utilities.proteomicsmodel.Protein;
+
+/**
+ * Tests that streaming a DTASelect file delivers the protein groups of
+ * parsing it in memory, each one with the PSMs of its proteins
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectStreamingTest {
+
+	private static String getAccessions(ProteinGroup proteinGroup) {
+		final Set<String> accessions = new TreeSet<String>();
+		for (final GroupableProtein protein : proteinGroup) {
+			accessions.add(protein.getAccession());
+		}
+		return accessions.toString();
+	}
+
+	@Test
+	public void testStream() throws Exception {
+		for (final File file : DTASelectTestFiles.getFiles()) {
+			final List<File> files = Collections.singletonList(file);
+			final DTASelectParser parser = DTASelectTestFiles.newParser(files);
+			final List<String> expected = new ArrayList<String>();
+			for (final ProteinGroup proteinGroup : parser.getProteinGroups()) {
+				expected.add(getAccessions(proteinGroup));
+			}
+			Collections.sort(expected);
+
+			final DTASelectParser streaming = DTASelectTestFiles.newParser(files);
+			final List<String> streamed = new ArrayList<String>();
+			streaming.stream(new DTASelectStreamListener() {
+				@Override
+				public void onProteinGroup(String analysisID, ProteinGroup proteinGroup, List<DTASelectPSM> psms) {
+					Assert.assertEquals(file.getAbsolutePath(), new File(analysisID).getAbsolutePath());
+					streamed.add(getAccessions(proteinGroup));
+					final Set<String> psmIdentifiers = new TreeSet<String>();
+					for (final DTASelectPSM psm : psms) {
+						psmIdentifiers.add(psm.getIdentifier());
+					}
+					final Set<String> proteinPSMIdentifiers = new TreeSet<String>();
+					for (final GroupableProtein protein : proteinGroup) {
+						for (final PSM psm : ((Protein) protein).getPSMs()) {
+							proteinPSMIdentifiers.add(psm.getIdentifier());
+						}
+					}
+					Assert.assertFalse(psms.isEmpty());
+					Assert.assertEquals(psmIdentifiers, proteinPSMIdentifiers);
+				}
+			});
+			Collections.sort(streamed);
+			Assert.assertEquals(expected, streamed);
+			Assert.assertEquals(parser.getMetrics().getDecoys(), streaming.getMetrics().getDecoys());
+		}
+	}
+}
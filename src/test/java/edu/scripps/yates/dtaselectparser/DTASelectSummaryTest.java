@@ -0,0 +1,167 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectLocusResolver;
+import edu.scripps.yates.dtaselectparser.util.DTASelectRow;
+import edu.scripps.yates.utilities.fasta.FastaParser;
+import gnu.trove.set.hash.THashSet;
+
+/**
+ * Tests that the counts of {@link DTASelectParser#summarize()}, which only
+ * looks at the hashes of the columns, are the ones obtained by keeping the
+ * values of the columns as Strings
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectSummaryTest {
+	private static final Pattern FLANKED_SEQUENCE = Pattern.compile("^.\\.(.+)\\..$");
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("dtaselect-test").toFile();
+	}
+
+	@After
+	public void deleteDirectory() {
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	/**
+	 * Counts the content of a DTASelect file keeping the values of the columns
+	 * as Strings
+	 *
+	 * @author Salva
+	 *
+	 */
+	private static class ExpectedSummary {
+		private final Set<String> accessions = new THashSet<String>();
+		private final Set<String> decoyAccessions = new THashSet<String>();
+		private final Set<String> psmKeys = new THashSet<String>();
+		private final Set<String> sequences = new THashSet<String>();
+		private final Set<String> msRuns = new LinkedHashSet<String>();
+		private int numProteinGroups = 0;
+		private int numPSMRows = 0;
+
+		private ExpectedSummary(File file) throws IOException {
+			final DTASelectLocusResolver locusResolver = new DTASelectLocusResolver(false,
+					Pattern.compile(DTASelectTestFiles.DECOY_PATTERN));
+			boolean inRows = false;
+			boolean isPsm = false;
+			boolean groupCounted = false;
+			for (final String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+				if (line.startsWith("Unique\t")) {
+					inRows = true;
+				} else if (!inRows || line.startsWith("\tProteins")) {
+					inRows = false;
+				} else if (line.startsWith("\t") || line.startsWith("*\t")) {
+					isPsm = true;
+					numPSMRows++;
+					final String[] columns = line.split("\t");
+					final String psmId = columns[1];
+					final String sequence = getSequence(columns[14]);
+					sequences.add(sequence);
+					psmKeys.add(psmId + "|" + sequence);
+					msRuns.add(FastaParser.getFileNameFromPSMIdentifier(psmId));
+				} else {
+					if (isPsm) {
+						groupCounted = false;
+					}
+					isPsm = false;
+					final DTASelectLocusResolver.Locus locus = locusResolver.resolve(line.split("\t")[0]);
+					if (locus.isDecoy()) {
+						decoyAccessions.add(locus.getAccession());
+					} else {
+						accessions.add(locus.getAccession());
+						if (!groupCounted) {
+							groupCounted = true;
+							numProteinGroups++;
+						}
+					}
+				}
+			}
+		}
+
+		private static String getSequence(String fullSequence) {
+			final Matcher matcher = FLANKED_SEQUENCE.matcher(fullSequence);
+			if (matcher.matches()) {
+				return matcher.group(1);
+			}
+			return fullSequence;
+		}
+
+		private void assertSame(DTASelectFileSummary summary) {
+			Assert.assertEquals(accessions.size(), summary.getNumProteins());
+			Assert.assertEquals(decoyAccessions.size(), summary.getNumDecoyProteins());
+			Assert.assertEquals(numProteinGroups, summary.getNumProteinGroups());
+			Assert.assertEquals(numPSMRows, summary.getNumPSMRows());
+			Assert.assertEquals(psmKeys.size(), summary.getNumPSMs());
+			Assert.assertEquals(sequences.size(), summary.getNumPeptideSequences());
+			Assert.assertEquals(new ArrayList<String>(msRuns), new ArrayList<String>(summary.getMSRuns()));
+		}
+	}
+
+	private static void assertSummaries(List<File> files) throws IOException {
+		final Map<String, DTASelectFileSummary> summaries = DTASelectTestFiles.newParser(files).summarize();
+		Assert.assertEquals(files.size(), summaries.size());
+		int i = 0;
+		for (final DTASelectFileSummary summary : summaries.values()) {
+			new ExpectedSummary(files.get(i++)).assertSame(summary);
+		}
+	}
+
+	@Test
+	public void testSummaries() throws Exception {
+		assertSummaries(DTASelectTestFiles.getFiles());
+	}
+
+	@Test
+	public void testUnflankedSequences() throws Exception {
+		final File input = DTASelectTestFiles.getFiles().get(0);
+		final String text = new String(Files.readAllBytes(input.toPath()), StandardCharsets.UTF_8);
+		// the same modified sequence, with and without flanking residues, and
+		// a sequence which would be corrupted by cutting it between its first
+		// and last '.'
+		final String modified = text.replaceFirst("\tK\\.SAMPLER\\.R\t", "\tM(15.99)PEPM(15.99)\t")
+				.replaceFirst("\tK\\.SAMPLER\\.R\t", "\tK.M(15.99)PEPM(15.99).R\t")
+				.replaceFirst("\tK\\.SAMPLER\\.R\t", "\t99)PEPM(15\t");
+		final File file = new File(directory, "unflanked-" + input.getName());
+		Files.write(file.toPath(), modified.getBytes(StandardCharsets.UTF_8));
+
+		assertSummaries(Collections.singletonList(file));
+	}
+
+	@Test
+	public void testSequenceHashes() {
+		final DTASelectRow flanked = new DTASelectRow("\tK.M(15.99)PEPM(15.99).R");
+		final DTASelectRow unflanked = new DTASelectRow("\tM(15.99)PEPM(15.99)");
+		final DTASelectRow cut = new DTASelectRow("\t99)PEPM(15");
+		Assert.assertEquals(unflanked.hash(1), unflanked.hashSequence(1));
+		Assert.assertEquals(unflanked.hashSequence(1), flanked.hashSequence(1));
+		Assert.assertNotEquals(cut.hashSequence(1), unflanked.hashSequence(1));
+	}
+}
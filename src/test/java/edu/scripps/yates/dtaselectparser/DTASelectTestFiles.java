@@ -0,0 +1,145 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+
+import edu.scripps.yates.utilities.grouping.GroupableProtein;
+import edu.scripps.yates.utilities.grouping.ProteinGroup;
+import edu.scripps.yates.utilities.proteomicsmodel.PSM;
+import edu.scripps.yates.utilities.proteomicsmodel.Protein;
+
+/**
+ * The DTASelect files used by the tests, and the description of the result of
+ * a parser as sorted text, so that the results of different reading modes can
+ * be compared
+ *
+ * @author Salva
+ *
+ */
+class DTASelectTestFiles {
+	static final String DECOY_PATTERN = "Reverse";
+	private static final String[] FILE_NAMES = { "/DTASelect-filter_1.txt", "/DTASelect-filter_2.txt" };
+
+	/**
+	 *
+	 * @return the DTASelect files, which have proteins in common and decoy
+	 *         proteins
+	 * @throws URISyntaxException
+	 */
+	static List<File> getFiles() throws URISyntaxException {
+		final List<File> files = new ArrayList<File>();
+		for (final String fileName : FILE_NAMES) {
+			files.add(new File(DTASelectTestFiles.class.getResource(fileName).toURI()));
+		}
+		return files;
+	}
+
+	/**
+	 *
+	 * @param files
+	 * @return a parser of the files, discarding the decoy proteins and
+	 *         collecting the metrics
+	 * @throws FileNotFoundException
+	 */
+	static DTASelectParser newParser(List<File> files) throws FileNotFoundException {
+		final DTASelectParser parser = new DTASelectParser(files);
+		parser.setDecoyPattern(DECOY_PATTERN);
+		parser.setCollectMetrics(true);
+		return parser;
+	}
+
+	/**
+	 *
+	 * @param parser
+	 * @return the accessions of the proteins of each group, in the order of the
+	 *         group, sorted by the first one
+	 * @throws IOException
+	 */
+	static List<String> getProteinGroups(DTASelectParser parser) throws IOException {
+		final List<String> ret = new ArrayList<String>();
+		for (final ProteinGroup proteinGroup : parser.getProteinGroups()) {
+			final StringBuilder sb = new StringBuilder();
+			for (final GroupableProtein protein : proteinGroup) {
+				if (sb.length() > 0) {
+					sb.append(',');
+				}
+				sb.append(protein.getAccession());
+			}
+			ret.add(sb.toString());
+		}
+		Collections.sort(ret);
+		return ret;
+	}
+
+	/**
+	 *
+	 * @param parser
+	 * @return the identifiers of the PSMs of each protein of the groups, by
+	 *         accession
+	 * @throws IOException
+	 */
+	static Map<String, Set<String>> getProteins(DTASelectParser parser) throws IOException {
+		final Map<String, Set<String>> ret = new TreeMap<String, Set<String>>();
+		for (final ProteinGroup proteinGroup : parser.getProteinGroups()) {
+			for (final GroupableProtein groupableProtein : proteinGroup) {
+				final Protein protein = (Protein) groupableProtein;
+				final Set<String> psmIdentifiers = new TreeSet<String>();
+				for (final PSM psm : protein.getPSMs()) {
+					psmIdentifiers.add(psm.getIdentifier());
+				}
+				ret.put(protein.getAccession(), psmIdentifiers);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 *
+	 * @param parser
+	 * @return the accessions of the proteins of each PSM of the groups, by PSM
+	 *         identifier
+	 * @throws IOException
+	 */
+	static Map<String, Set<String>> getPSMs(DTASelectParser parser) throws IOException {
+		final Map<String, Set<String>> ret = new TreeMap<String, Set<String>>();
+		for (final ProteinGroup proteinGroup : parser.getProteinGroups()) {
+			for (final GroupableProtein groupableProtein : proteinGroup) {
+				for (final PSM psm : ((Protein) groupableProtein).getPSMs()) {
+					final Set<String> accessions = new TreeSet<String>();
+					for (final Protein protein : psm.getProteins()) {
+						accessions.add(protein.getAccession());
+					}
+					ret.put(psm.getIdentifier(), accessions);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Asserts that two parsers have the same protein groups, proteins and
+	 * PSMs, and discarded the same number of decoy proteins
+	 *
+	 * @param expected a parser reading the files sequentially
+	 * @param actual
+	 * @throws IOException
+	 */
+	static void assertSameResult(DTASelectParser expected, DTASelectParser actual) throws IOException {
+		Assert.assertFalse(expected.getProteinGroups().isEmpty());
+		Assert.assertEquals(getProteinGroups(expected), getProteinGroups(actual));
+		Assert.assertEquals(getProteins(expected), getProteins(actual));
+		Assert.assertEquals(getPSMs(expected), getPSMs(actual));
+		Assert.assertEquals(expected.getMetrics().getDecoys(), actual.getMetrics().getDecoys());
+	}
+}
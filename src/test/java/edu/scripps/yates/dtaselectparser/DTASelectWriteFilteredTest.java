@@ -0,0 +1,128 @@
+package edu.scripps.yates.dtaselectparser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.scripps.yates.dtaselectparser.util.DTASelectFilters;
+
+/**
+ * Tests the copies of the DTASelect files written by
+ * {@link DTASelectParser#writeFiltered(File, java.io.OutputStream)}, which
+ * parsed without filters should give the same result than the parsing of the
+ * original files with the filters
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectWriteFilteredTest {
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("dtaselect-test").toFile();
+	}
+
+	@After
+	public void deleteDirectory() {
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private static void addFilters(DTASelectParser parser) {
+		parser.addPSMFilter(DTASelectFilters.minXCorr(3f));
+		parser.addProteinFilter(DTASelectFilters.locusMatches(Pattern.compile("P000[0-4]")));
+	}
+
+	private File writeFiltered(DTASelectParser parser, File input) throws IOException {
+		final File output = new File(directory, "filtered-" + input.getName());
+		final FileOutputStream out = new FileOutputStream(output);
+		try {
+			parser.writeFiltered(input, out);
+		} finally {
+			out.close();
+		}
+		return output;
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 *
+	 * @param text the text of a DTASelect file
+	 * @return the same text with a blank line after the last PSM row of each
+	 *         protein group
+	 */
+	private static String addBlankLines(String text) {
+		final StringBuilder sb = new StringBuilder();
+		boolean isPsm = false;
+		for (final String line : text.split("\n")) {
+			final boolean isSummary = line.startsWith("\tProteins");
+			final boolean psmRow = !isSummary && (line.startsWith("\t") || line.startsWith("*\t"));
+			if (isPsm && !psmRow) {
+				sb.append('\n');
+			}
+			isPsm = psmRow;
+			sb.append(line).append('\n');
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testWriteWithoutFilters() throws Exception {
+		final DTASelectParser parser = DTASelectTestFiles.newParser(Collections.<File> emptyList());
+		for (final File input : DTASelectTestFiles.getFiles()) {
+			final File output = writeFiltered(parser, input);
+			Assert.assertArrayEquals(Files.readAllBytes(input.toPath()), Files.readAllBytes(output.toPath()));
+		}
+	}
+
+	@Test
+	public void testReparseFiltered() throws Exception {
+		final List<File> files = DTASelectTestFiles.getFiles();
+		final DTASelectParser writer = DTASelectTestFiles.newParser(Collections.<File> emptyList());
+		addFilters(writer);
+		final List<File> outputs = new ArrayList<File>();
+		for (final File input : files) {
+			final File output = writeFiltered(writer, input);
+			Assert.assertTrue(output.length() < input.length());
+			outputs.add(output);
+		}
+		final DTASelectParser filtered = DTASelectTestFiles.newParser(files);
+		addFilters(filtered);
+		final DTASelectParser reparsed = DTASelectTestFiles.newParser(outputs);
+
+		DTASelectTestFiles.assertSameResult(filtered, reparsed);
+	}
+
+	@Test
+	public void testBlankLinesOfPrunedGroups() throws Exception {
+		final DTASelectParser writer = DTASelectTestFiles.newParser(Collections.<File> emptyList());
+		addFilters(writer);
+		for (final File input : DTASelectTestFiles.getFiles()) {
+			final File inputWithBlankLines = new File(directory, "blank-" + input.getName());
+			Files.write(inputWithBlankLines.toPath(), addBlankLines(read(input)).getBytes(StandardCharsets.UTF_8));
+			final String expected = addBlankLines(read(writeFiltered(writer, input)));
+
+			Assert.assertEquals(expected, read(writeFiltered(writer, inputWithBlankLines)));
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.scripps.yates.utilities.fasta.dbindex.DBIndexInterface;
+import edu.scripps.yates.utilities.fasta.dbindex.IndexedProtein;
+import gnu.trove.set.hash.THashSet;
+
+/**
+ * Tests the LRU map and the resolution in advance of the
+ * {@link DBIndexLookupCache}, with a dbIndex that counts its lookups and
+ * returns a new set of proteins on each one of them
+ *
+ * @author Salva
+ *
+ */
+public class DBIndexLookupCacheTest {
+	private final AtomicInteger lookups = new AtomicInteger();
+
+	private DBIndexInterface newDBIndex() {
+		return (DBIndexInterface) Proxy.newProxyInstance(DBIndexInterface.class.getClassLoader(),
+				new Class<?>[] { DBIndexInterface.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (!method.getName().equals("getProteins")) {
+							throw new UnsupportedOperationException(method.getName());
+						}
+						lookups.incrementAndGet();
+						return new THashSet<IndexedProtein>();
+					}
+				});
+	}
+
+	@Test
+	public void testLRU() throws Exception {
+		final DBIndexLookupCache cache = new DBIndexLookupCache(newDBIndex(), 2);
+		final Set<IndexedProtein> a = cache.getProteins("PEPTIDEA");
+		final Set<IndexedProtein> b = cache.getProteins("PEPTIDEB");
+		Assert.assertSame(a, cache.getProteins("PEPTIDEA"));
+		// evicts PEPTIDEB, the least recently used
+		cache.getProteins("PEPTIDEC");
+		Assert.assertEquals(2, cache.size());
+		Assert.assertSame(a, cache.getProteins("PEPTIDEA"));
+		Assert.assertNotSame(b, cache.getProteins("PEPTIDEB"));
+		Assert.assertEquals(4, lookups.get());
+		Assert.assertEquals(4, cache.getMisses());
+		Assert.assertEquals(2, cache.getHits());
+
+		cache.clear();
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	public void testWithoutLRU() throws Exception {
+		final DBIndexLookupCache cache = new DBIndexLookupCache(newDBIndex(), 0);
+		cache.getProteins("PEPTIDEA");
+		cache.getProteins("PEPTIDEA");
+		Assert.assertEquals(2, lookups.get());
+		Assert.assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testResolve() throws Exception {
+		final DBIndexLookupCache cache = new DBIndexLookupCache(newDBIndex(), 3);
+		final Set<IndexedProtein> cached = cache.getProteins("PEPTIDE0");
+		final List<String> sequences = new ArrayList<String>();
+		for (int i = 0; i < 100; i++) {
+			sequences.add("PEPTIDE" + i);
+		}
+		// repeated sequences are looked up once
+		sequences.addAll(Arrays.asList("PEPTIDE1", "PEPTIDE2"));
+		cache.resolve(sequences, 4);
+		Assert.assertEquals(100, lookups.get());
+		// the resolved sequences are kept beyond the maximum size
+		Assert.assertTrue(cache.size() >= 100);
+		Assert.assertSame(cached, cache.getProteins("PEPTIDE0"));
+		for (int i = 0; i < 100; i++) {
+			cache.getProteins("PEPTIDE" + i);
+		}
+		Assert.assertEquals(100, lookups.get());
+
+		cache.resolve(sequences, 4);
+		Assert.assertEquals(100, lookups.get());
+
+		cache.releaseResolved();
+		Assert.assertEquals(3, cache.size());
+	}
+}
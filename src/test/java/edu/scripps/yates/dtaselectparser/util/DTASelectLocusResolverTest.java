@@ -0,0 +1,90 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link DTASelectLocusResolver} resolves the accession, the
+ * decoy flags and the gene of a locus, and that each locus is resolved once
+ * and shared, also from different threads
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectLocusResolverTest {
+	private static final String LOCUS = "sp|P00045|PROT45_HUMAN";
+	private static final String DECOY_LOCUS = "Reverse_sp|P00069|PROT69_HUMAN";
+
+	@Test
+	public void testResolve() {
+		final DTASelectLocusResolver resolver = new DTASelectLocusResolver(false, Pattern.compile("Reverse"));
+		final DTASelectLocusResolver.Locus locus = resolver.resolve(LOCUS);
+		Assert.assertEquals("P00045", locus.getAccession());
+		Assert.assertFalse(locus.isDecoy());
+		Assert.assertFalse(locus.isDecoyLocus());
+		Assert.assertTrue(resolver.resolve(DECOY_LOCUS).isDecoyLocus());
+
+		Assert.assertSame(locus, resolver.resolve(LOCUS));
+		Assert.assertEquals(2, resolver.size());
+		resolver.clear();
+		Assert.assertEquals(0, resolver.size());
+		Assert.assertNotSame(locus, resolver.resolve(LOCUS));
+	}
+
+	@Test
+	public void testIgnoreACCFormat() {
+		final DTASelectLocusResolver resolver = new DTASelectLocusResolver(true, null);
+		final DTASelectLocusResolver.Locus locus = resolver.resolve(LOCUS);
+		Assert.assertEquals(LOCUS, locus.getAccession());
+		Assert.assertFalse(resolver.resolve(DECOY_LOCUS).isDecoy());
+	}
+
+	@Test
+	public void testGene() {
+		final DTASelectLocusResolver.Locus locus = new DTASelectLocusResolver(false, null).resolve(LOCUS);
+		Assert.assertNull(locus.getGene(null));
+		Assert.assertEquals("G45", locus.getGene("Protein 45 OS=Homo sapiens GN=G45"));
+		Assert.assertEquals("G45", locus.getGene("Protein 45 OS=Homo sapiens GN=G45"));
+		Assert.assertEquals("G46", locus.getGene("Protein 46 OS=Homo sapiens GN=G46"));
+	}
+
+	@Test
+	public void testConcurrentResolve() throws Exception {
+		final DTASelectLocusResolver resolver = new DTASelectLocusResolver(false, Pattern.compile("Reverse"));
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<List<DTASelectLocusResolver.Locus>>> futures = new ArrayList<
+					Future<List<DTASelectLocusResolver.Locus>>>();
+			for (int thread = 0; thread < 4; thread++) {
+				futures.add(executor.submit(new Callable<List<DTASelectLocusResolver.Locus>>() {
+					@Override
+					public List<DTASelectLocusResolver.Locus> call() {
+						final List<DTASelectLocusResolver.Locus> ret = new ArrayList<DTASelectLocusResolver.Locus>();
+						for (int i = 0; i < 1000; i++) {
+							ret.add(resolver.resolve("sp|P" + (10000 + i) + "|PROT" + i + "_HUMAN"));
+						}
+						return ret;
+					}
+				}));
+			}
+			final List<DTASelectLocusResolver.Locus> first = futures.get(0).get();
+			for (final Future<List<DTASelectLocusResolver.Locus>> future : futures) {
+				final List<DTASelectLocusResolver.Locus> loci = future.get();
+				for (int i = 0; i < loci.size(); i++) {
+					Assert.assertSame(first.get(i), loci.get(i));
+				}
+			}
+			Assert.assertEquals(1000, resolver.size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
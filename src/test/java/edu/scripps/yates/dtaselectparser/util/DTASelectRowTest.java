@@ -0,0 +1,121 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that the numbers parsed by {@link DTASelectRow} without creating
+ * Strings are the ones given by {@link Float#parseFloat(String)} and
+ * {@link Integer#parseInt(String)}, including the errors
+ *
+ * @author Salva
+ *
+ */
+public class DTASelectRowTest {
+	private static final String[] FLOATS = { "0", "-0", "+0", "0.0", "1", "-1", "+1.5", "3.1415", "-3.1415", ".5",
+			"-.5", "5.", "0.1", "0.3", "123456.7", "1234567", "9999999", "16777216", "16777217", "99999999",
+			"123456789012", "0.12345678901", "-0.000000000001", "1.00000000001", "3.14159265358979", "1e5", "1E-5",
+			"-2.5e+3", "6.02e23", "1.4e-45", "3.5e38", "NaN", "Infinity", "-Infinity", "0x1p3", "2.5f", "2.5d",
+			"1.5e", "", "-", "+", ".", "abc", "1.2.3", "1-2", " 1", "1 ", "12.5%" };
+	private static final String[] INTS = { "0", "-0", "+0", "7", "-7", "+7", "123456789", "-123456789", "2147483647",
+			"-2147483648", "2147483648", "-2147483649", "0000000001", "99999999999", "", "-", "+", "1.5", "1e3",
+			"abc", " 1", "1 ", "--1" };
+
+	private static DTASelectRow row(String value) {
+		// the value in a middle column
+		return new DTASelectRow("first\t" + value + "\tlast");
+	}
+
+	private static void assertFloat(String value) {
+		Float expected = null;
+		try {
+			expected = Float.parseFloat(value);
+		} catch (final NumberFormatException e) {
+		}
+		Float actual = null;
+		try {
+			actual = row(value).getFloat(1);
+		} catch (final NumberFormatException e) {
+		}
+		if (expected == null) {
+			Assert.assertNull("'" + value + "' is not a number", actual);
+		} else {
+			Assert.assertNotNull("'" + value + "' is a number", actual);
+			Assert.assertEquals("'" + value + "'", Float.floatToIntBits(expected), Float.floatToIntBits(actual));
+		}
+	}
+
+	private static void assertInt(String value) {
+		Integer expected = null;
+		try {
+			expected = Integer.parseInt(value);
+		} catch (final NumberFormatException e) {
+		}
+		Integer actual = null;
+		try {
+			actual = row(value).getInt(1);
+		} catch (final NumberFormatException e) {
+		}
+		Assert.assertEquals("'" + value + "'", expected, actual);
+	}
+
+	@Test
+	public void testFloats() {
+		for (final String value : FLOATS) {
+			assertFloat(value);
+		}
+	}
+
+	@Test
+	public void testRandomFloats() {
+		final Random random = new Random(1234);
+		for (int n = 0; n < 100000; n++) {
+			final StringBuilder sb = new StringBuilder();
+			if (random.nextInt(4) == 0) {
+				sb.append('-');
+			}
+			final int numDigits = 1 + random.nextInt(14);
+			final int point = random.nextInt(numDigits + 2) - 1;
+			for (int i = 0; i < numDigits; i++) {
+				if (i == point) {
+					sb.append('.');
+				}
+				sb.append((char) ('0' + random.nextInt(10)));
+			}
+			assertFloat(sb.toString());
+		}
+	}
+
+	@Test
+	public void testPercentages() {
+		Assert.assertEquals(Float.floatToIntBits(12.5f), Float.floatToIntBits(row("12.5%").getPercentage(1)));
+		Assert.assertEquals(Float.floatToIntBits(12.5f), Float.floatToIntBits(row("12.5").getPercentage(1)));
+	}
+
+	@Test
+	public void testInts() {
+		for (final String value : INTS) {
+			assertInt(value);
+		}
+	}
+
+	@Test
+	public void testRandomInts() {
+		final Random random = new Random(1234);
+		for (int n = 0; n < 100000; n++) {
+			final int value = random.nextInt(4) == 0 ? random.nextInt() : random.nextInt(10000) - 5000;
+			assertInt(String.valueOf(value));
+		}
+	}
+
+	@Test
+	public void testEmptyAndLastColumns() {
+		final DTASelectRow row = new DTASelectRow("\t2.5\t7");
+		assertFloat("");
+		Assert.assertTrue(row.isEmpty(0));
+		Assert.assertEquals(Float.floatToIntBits(2.5f), Float.floatToIntBits(row.getFloat(1)));
+		Assert.assertEquals(7, row.getInt(2));
+	}
+}
@@ -0,0 +1,206 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import gnu.trove.map.hash.THashMap;
+
+/**
+ * Tests the limit of the bytes downloaded and not read by the
+ * {@link InputStreamPrefetcher}, and that its temporary files are deleted when
+ * it is closed in the middle of a download, with streams that play the role of
+ * the remote files
+ *
+ * @author Salva
+ *
+ */
+public class InputStreamPrefetcherTest {
+	// the size of the buffers of the prefetcher
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private File spoolDirectory;
+
+	/**
+	 * A stream of a number of bytes, which counts the bytes read from it and
+	 * optionally blocks after the first read until it is released
+	 *
+	 * @author Salva
+	 *
+	 */
+	private static class FakeRemoteStream extends InputStream {
+		private final long length;
+		private final AtomicLong position = new AtomicLong();
+		private final CountDownLatch firstRead = new CountDownLatch(1);
+		private final CountDownLatch release;
+		private final CountDownLatch closed = new CountDownLatch(1);
+
+		private FakeRemoteStream(long length, boolean blocking) {
+			this.length = length;
+			release = new CountDownLatch(blocking ? 1 : 0);
+		}
+
+		private static byte valueAt(long position) {
+			return (byte) (position * 31 + position / 7);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (firstRead.getCount() == 0) {
+				try {
+					release.await();
+				} catch (final InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+			}
+			final long start = position.get();
+			if (start >= length) {
+				return -1;
+			}
+			final int read = (int) Math.min(len, length - start);
+			for (int i = 0; i < read; i++) {
+				b[off + i] = valueAt(start + i);
+			}
+			position.addAndGet(read);
+			firstRead.countDown();
+			return read;
+		}
+
+		@Override
+		public void close() {
+			closed.countDown();
+		}
+
+		private void assertContent(InputStream in) throws IOException {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			final byte[] bytes = out.toByteArray();
+			Assert.assertEquals(length, bytes.length);
+			for (int i = 0; i < bytes.length; i++) {
+				if (bytes[i] != valueAt(i)) {
+					Assert.fail("Different byte at " + i);
+				}
+			}
+		}
+	}
+
+	@Before
+	public void createSpoolDirectory() throws IOException {
+		spoolDirectory = Files.createTempDirectory("dtaselect-test").toFile();
+	}
+
+	@After
+	public void deleteSpoolDirectory() {
+		final File[] files = spoolDirectory.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+		spoolDirectory.delete();
+	}
+
+	/**
+	 * Waits until the streams are not read anymore
+	 *
+	 * @param streams
+	 * @return the bytes read from all of them
+	 * @throws InterruptedException
+	 */
+	private static long waitForStall(FakeRemoteStream... streams) throws InterruptedException {
+		long previous = -1;
+		while (true) {
+			long read = 0;
+			for (final FakeRemoteStream stream : streams) {
+				read += stream.position.get();
+			}
+			if (read == previous) {
+				return read;
+			}
+			previous = read;
+			Thread.sleep(300);
+		}
+	}
+
+	private static void waitForEmptyFolder(File folder) throws InterruptedException {
+		for (int i = 0; i < 100 && folder.list().length > 0; i++) {
+			Thread.sleep(50);
+		}
+	}
+
+	@Test
+	public void testSpoolLimit() throws Exception {
+		final FakeRemoteStream stream1 = new FakeRemoteStream(20 * BUFFER_SIZE, false);
+		final FakeRemoteStream stream2 = new FakeRemoteStream(20 * BUFFER_SIZE, false);
+		final Map<String, InputStream> streams = new THashMap<String, InputStream>();
+		streams.put("1", stream1);
+		streams.put("2", stream2);
+		final List<String> ids = Arrays.asList("1", "2");
+		final InputStreamPrefetcher prefetcher = new InputStreamPrefetcher(ids, streams, 2, 4 * BUFFER_SIZE,
+				spoolDirectory);
+		try {
+			// each download reads a buffer before waiting for the budget
+			final long read = waitForStall(stream1, stream2);
+			Assert.assertTrue("Read " + read, read <= (4 + 2) * BUFFER_SIZE);
+			Assert.assertTrue("Read " + read, read < stream1.length + stream2.length);
+
+			// a requested stream is downloaded beyond the limit
+			final InputStream in1 = prefetcher.open("1");
+			try {
+				stream1.assertContent(in1);
+			} finally {
+				in1.close();
+			}
+			// and closing it releases its part of the budget for the rest
+			final InputStream in2 = prefetcher.open("2");
+			try {
+				stream2.assertContent(in2);
+			} finally {
+				in2.close();
+			}
+			Assert.assertEquals(0, spoolDirectory.list().length);
+		} finally {
+			prefetcher.close();
+		}
+	}
+
+	@Test
+	public void testCloseWhileDownloading() throws Exception {
+		final FakeRemoteStream stream = new FakeRemoteStream(20 * BUFFER_SIZE, true);
+		final Map<String, InputStream> streams = new THashMap<String, InputStream>();
+		streams.put("1", stream);
+		final InputStreamPrefetcher prefetcher = new InputStreamPrefetcher(Arrays.asList("1"), streams, 1,
+				100 * BUFFER_SIZE, spoolDirectory);
+		Assert.assertTrue(stream.firstRead.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(1, spoolDirectory.list().length);
+
+		prefetcher.close();
+		stream.release.countDown();
+		Assert.assertTrue(stream.closed.await(10, TimeUnit.SECONDS));
+		waitForEmptyFolder(spoolDirectory);
+		Assert.assertEquals(0, spoolDirectory.list().length);
+	}
+}
@@ -0,0 +1,155 @@
+package edu.scripps.yates.dtaselectparser.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the lines read by a {@link MappedFileLineSource} are the ones
+ * read by a {@link BufferedReader}, with any line terminator and with lines
+ * that cross the mapped windows
+ *
+ * @author Salva
+ *
+ */
+public class MappedFileLineSourceTest {
+	private static final String TEXT = "DTASelect v2.1.12\n\nfirst\tline\r\nsecond line\rthird\r\n\r\n"
+			+ "a longer line that crosses several windows\nlast line without terminator";
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("dtaselect-test").toFile();
+	}
+
+	@After
+	public void deleteDirectory() {
+		final File[] files = directory.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private File write(String text) throws IOException {
+		final File file = new File(directory, "DTASelect-filter.txt");
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static List<String> readWithReader(String text) throws IOException {
+		final List<String> ret = new ArrayList<String>();
+		final BufferedReader reader = new BufferedReader(new StringReader(text));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			ret.add(line);
+		}
+		return ret;
+	}
+
+	private static List<String> readMapped(File file, long windowSize) throws IOException {
+		final List<String> ret = new ArrayList<String>();
+		final MappedFileLineSource source = new MappedFileLineSource(file, windowSize);
+		try {
+			CharSequence line;
+			while ((line = source.readLine()) != null) {
+				ret.add(line.toString());
+			}
+			Assert.assertEquals(file.length(), source.getPosition());
+		} finally {
+			source.close();
+		}
+		return ret;
+	}
+
+	@Test
+	public void testLines() throws Exception {
+		final File file = write(TEXT);
+		final List<String> expected = readWithReader(TEXT);
+		Assert.assertEquals(expected, readMapped(file, MappedFileLineSource.DEFAULT_WINDOW_SIZE));
+		// windows just larger than the longest line, which cut the lines and
+		// the CRLF terminators
+		for (long windowSize = 45; windowSize <= 64; windowSize++) {
+			Assert.assertEquals("Window of " + windowSize, expected, readMapped(file, windowSize));
+		}
+	}
+
+	@Test
+	public void testLineLongerThanWindow() throws Exception {
+		final File file = write(TEXT);
+		try {
+			readMapped(file, 16);
+			Assert.fail("A line longer than the window is not reported");
+		} catch (final IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCompleteLinesOnly() throws Exception {
+		final File file = write(TEXT);
+		final MappedFileLineSource source = new MappedFileLineSource(file);
+		try {
+			source.setCompleteLinesOnly(true);
+			final List<String> lines = new ArrayList<String>();
+			CharSequence line;
+			while ((line = source.readLine()) != null) {
+				lines.add(line.toString());
+			}
+			final List<String> expected = readWithReader(TEXT);
+			Assert.assertEquals(expected.subList(0, expected.size() - 1), lines);
+			Assert.assertEquals(TEXT.lastIndexOf('\n') + 1, source.getPosition());
+		} finally {
+			source.close();
+		}
+	}
+
+	@Test
+	public void testSeek() throws Exception {
+		final File file = write(TEXT);
+		final MappedFileLineSource source = new MappedFileLineSource(file);
+		try {
+			final List<Long> starts = new ArrayList<Long>();
+			final List<String> lines = new ArrayList<String>();
+			CharSequence line;
+			while ((line = source.readLine()) != null) {
+				starts.add(source.getLineStart());
+				lines.add(line.toString());
+			}
+			for (int i = lines.size() - 1; i >= 0; i--) {
+				source.seek(starts.get(i));
+				Assert.assertEquals(-1, source.getLineStart());
+				Assert.assertEquals(lines.get(i), source.readLine().toString());
+				Assert.assertEquals(starts.get(i).longValue(), source.getLineStart());
+			}
+		} finally {
+			source.close();
+		}
+	}
+
+	@Test
+	public void testCharSequence() throws Exception {
+		final File file = write("Locus\tSequence Count\n");
+		final MappedFileLineSource source = new MappedFileLineSource(file);
+		try {
+			final CharSequence line = source.readLine();
+			Assert.assertEquals(20, line.length());
+			Assert.assertEquals('\t', line.charAt(5));
+			Assert.assertEquals("Sequence", line.subSequence(6, 14).toString());
+		} finally {
+			source.close();
+		}
+	}
+}